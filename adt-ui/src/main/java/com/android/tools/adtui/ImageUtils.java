@@ -26,7 +26,10 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.ImageObserver;
+import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
+import java.lang.reflect.Array;
+import java.util.stream.IntStream;
 
 import static java.awt.RenderingHints.*;
 
@@ -37,6 +40,9 @@ import static java.awt.RenderingHints.*;
 public class ImageUtils {
   public static final double EPSILON = 1e-5;
 
+  /** Size of the square tiles images are rotated in by {@link #rotateByRightAngle}. */
+  private static final int ROTATION_TILE_SIZE = 256;
+
   /** Default scale used by RetinaImage. */
   public static final int RETINA_SCALE = 2;
   /** Filter that checks pixels for being completely transparent. */
@@ -46,19 +52,21 @@ public class ImageUtils {
   };
 
   /**
-   * Rotates given image by given degrees which should be a multiple of 90
+   * Rotates given image by given degrees which should be a multiple of 90. Pixel values are copied as they are,
+   * so the rotated image has the same color model and color space as the source. Large images are rotated in
+   * square tiles, which are processed in parallel.
    * @param source image to be rotated
    * @param degrees the angle by which to rotate, should be a multiple of 90
    * @return the rotated image
    */
   public static BufferedImage rotateByRightAngle(BufferedImage source, int degrees) {
     assert degrees % 90 == 0;
-    degrees = degrees % 360;
+    final int angle = (degrees % 360 + 360) % 360;
 
-    int w = source.getWidth();
-    int h = source.getHeight();
+    final int w = source.getWidth();
+    final int h = source.getHeight();
     int w1, h1;
-    switch (degrees) {
+    switch (angle) {
       case 90:
       case 270:
         w1 = h;
@@ -71,37 +79,100 @@ public class ImageUtils {
 
     // Preserve the color model and color space
     ColorModel model = source.getColorModel();
-    WritableRaster raster = model.createCompatibleWritableRaster(w1, h1);
+    final Raster sourceRaster = source.getRaster();
+    final WritableRaster raster = model.createCompatibleWritableRaster(w1, h1);
     BufferedImage rotated = new BufferedImage(model, raster, source.isAlphaPremultiplied(), null);
 
-    for (int x = 0; x < w; x++) {
-      for (int y = 0; y < h; y++) {
-        int v = source.getRGB(x, y);
-        int x1, y1;
-        switch (degrees) {
+    int tileColumns = (w + ROTATION_TILE_SIZE - 1) / ROTATION_TILE_SIZE;
+    int tileRows = (h + ROTATION_TILE_SIZE - 1) / ROTATION_TILE_SIZE;
+    IntStream tiles = IntStream.range(0, tileColumns * tileRows);
+    if (tileColumns * tileRows > 1) {
+      tiles = tiles.parallel();
+    }
+    tiles.forEach(tile -> {
+      int x0 = (tile % tileColumns) * ROTATION_TILE_SIZE;
+      int y0 = (tile / tileColumns) * ROTATION_TILE_SIZE;
+      rotateTile(sourceRaster, raster, angle, x0, y0, Math.min(ROTATION_TILE_SIZE, w - x0), Math.min(ROTATION_TILE_SIZE, h - y0));
+    });
+
+    return rotated;
+  }
+
+  /**
+   * Copies the {@code tileWidth} x {@code tileHeight} tile at ({@code x0}, {@code y0}) of {@code source} to its
+   * rotated position in {@code destination}.
+   */
+  private static void rotateTile(Raster source, WritableRaster destination, int angle, int x0, int y0, int tileWidth, int tileHeight) {
+    int w = source.getWidth();
+    int h = source.getHeight();
+    Object tile = source.getDataElements(x0, y0, tileWidth, tileHeight, null);
+    int elements = source.getNumDataElements();
+    Object rotatedTile = Array.newInstance(tile.getClass().getComponentType(), Array.getLength(tile));
+
+    // Rotated position and size of the tile in the destination
+    int x1, y1, w1, h1;
+    switch (angle) {
+      case 90:
+        x1 = h - y0 - tileHeight;
+        y1 = x0;
+        w1 = tileHeight;
+        h1 = tileWidth;
+        break;
+      case 180:
+        x1 = w - x0 - tileWidth;
+        y1 = h - y0 - tileHeight;
+        w1 = tileWidth;
+        h1 = tileHeight;
+        break;
+      case 270:
+        x1 = y0;
+        y1 = w - x0 - tileWidth;
+        w1 = tileHeight;
+        h1 = tileWidth;
+        break;
+      default:
+        x1 = x0;
+        y1 = y0;
+        w1 = tileWidth;
+        h1 = tileHeight;
+        break;
+    }
+
+    for (int y = 0; y < tileHeight; y++) {
+      for (int x = 0; x < tileWidth; x++) {
+        int rx, ry;
+        switch (angle) {
           case 90:
-            x1 = h - y - 1;
-            y1 = x;
+            rx = tileHeight - y - 1;
+            ry = x;
             break;
           case 180:
-            x1 = w - x - 1;
-            y1 = h - y - 1;
+            rx = tileWidth - x - 1;
+            ry = tileHeight - y - 1;
             break;
           case 270:
-            x1 = y;
-            y1 = w - x - 1;
+            rx = y;
+            ry = tileWidth - x - 1;
             break;
           default:
-            x1 = x;
-            y1 = y;
+            rx = x;
+            ry = y;
             break;
         }
-
-        rotated.setRGB(x1, y1, v);
+        int from = (y * tileWidth + x) * elements;
+        int to = (ry * w1 + rx) * elements;
+        if (elements == 1 && tile instanceof int[]) {
+          // Packed pixels such as TYPE_INT_ARGB, by far the most common case
+          ((int[])rotatedTile)[to] = ((int[])tile)[from];
+        }
+        else {
+          //noinspection SuspiciousSystemArraycopy
+          System.arraycopy(tile, from, rotatedTile, to, elements);
+        }
       }
     }
 
-    return rotated;
+    destination.setDataElements(x1, y1, w1, h1, rotatedTile);
   }
 
   public static boolean isRetinaImage(@Nullable BufferedImage image) {
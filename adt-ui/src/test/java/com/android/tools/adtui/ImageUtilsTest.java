@@ -86,6 +86,33 @@ public class ImageUtilsTest extends TestCase {
     assertEqualsImage(srcImage, img);
   }
 
+  public void testRotationOfMultipleTiles() {
+    int w = 601;
+    int h = 313;
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage srcImage = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    for (int y = 0; y < h; y++) {
+      for (int x = 0; x < w; x++) {
+        srcImage.setRGB(x, y, 0xFF000000 | (x << 12) | y);
+      }
+    }
+
+    BufferedImage rotated90 = ImageUtils.rotateByRightAngle(srcImage, 90);
+    BufferedImage rotated180 = ImageUtils.rotateByRightAngle(srcImage, 180);
+    BufferedImage rotated270 = ImageUtils.rotateByRightAngle(srcImage, 270);
+    assertEquals(h, rotated90.getWidth());
+    assertEquals(w, rotated90.getHeight());
+    assertEquals(BufferedImage.TYPE_INT_ARGB, rotated90.getType());
+    for (int y = 0; y < h; y++) {
+      for (int x = 0; x < w; x++) {
+        int rgb = srcImage.getRGB(x, y);
+        assertEquals(rgb, rotated90.getRGB(h - y - 1, x));
+        assertEquals(rgb, rotated180.getRGB(w - x - 1, h - y - 1));
+        assertEquals(rgb, rotated270.getRGB(y, w - x - 1));
+      }
+    }
+  }
+
   public void testAddMargin() {
     BufferedImage image = createTestImage(100, 200, BufferedImage.TYPE_INT_ARGB, Color.RED);
 
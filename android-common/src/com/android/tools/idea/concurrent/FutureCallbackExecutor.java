@@ -227,6 +227,94 @@ public class FutureCallbackExecutor implements Executor {
     }
   }
 
+  /**
+   * Execute a task from the {@code taskFactory} for each element of the {@code iterator},
+   * with at most {@code maxConcurrency} tasks running at any given time: a new task is started
+   * as soon as the {@link ListenableFuture} returned by a previous task completes.
+   *
+   * <p>This is the bounded equivalent of {@link #executeFuturesInSequence(Iterator, Function)},
+   * which corresponds to a {@code maxConcurrency} of {@code 1}.
+   *
+   * <p>Returns a {@link ListenableFuture} that completes when all tasks have completed.
+   *
+   * @param iterator       The source of elements to process
+   * @param taskFactory    A factory {@link Function} that returns a {@link ListenableFuture} for a given element
+   * @param maxConcurrency The maximum number of tasks running at the same time
+   * @param <T>            The type of the elements to process
+   */
+  @NotNull
+  public <T> ListenableFuture<Void> executeFuturesInParallel(@NotNull Iterator<T> iterator,
+                                                             @NotNull Function<T, ListenableFuture<Void>> taskFactory,
+                                                             int maxConcurrency) {
+    if (maxConcurrency <= 1) {
+      return executeFuturesInSequence(iterator, taskFactory);
+    }
+
+    SettableFuture<Void> finalResult = SettableFuture.create();
+    ParallelExecutionState<T> state = new ParallelExecutionState<>(iterator, taskFactory, finalResult);
+    for (int i = 0; i < maxConcurrency; i++) {
+      if (!state.startNextTask()) {
+        break;
+      }
+    }
+    state.completeIfDone();
+    return finalResult;
+  }
+
+  /**
+   * State of a {@link #executeFuturesInParallel(Iterator, Function, int)} operation. Tasks
+   * completing on different threads may call {@link #startNextTask()} concurrently, so access
+   * to the iterator is synchronized.
+   */
+  private class ParallelExecutionState<T> {
+    @NotNull private final Iterator<T> myIterator;
+    @NotNull private final Function<T, ListenableFuture<Void>> myTaskFactory;
+    @NotNull private final SettableFuture<Void> myFinalResult;
+    private int myRunningCount;
+    private boolean myIteratorDone;
+
+    private ParallelExecutionState(@NotNull Iterator<T> iterator,
+                                   @NotNull Function<T, ListenableFuture<Void>> taskFactory,
+                                   @NotNull SettableFuture<Void> finalResult) {
+      myIterator = iterator;
+      myTaskFactory = taskFactory;
+      myFinalResult = finalResult;
+    }
+
+    /**
+     * Starts the task for the next element, if any, and returns {@code true} if a task was started.
+     */
+    private boolean startNextTask() {
+      T element;
+      synchronized (this) {
+        if (myIteratorDone || !myIterator.hasNext()) {
+          myIteratorDone = true;
+          return false;
+        }
+        element = myIterator.next();
+        myRunningCount++;
+      }
+      ListenableFuture<Void> future = myTaskFactory.apply(element);
+      addConsumer(future, (aVoid, throwable) -> {
+        synchronized (this) {
+          myRunningCount--;
+        }
+        startNextTask();
+        completeIfDone();
+      });
+      return true;
+    }
+
+    private void completeIfDone() {
+      synchronized (this) {
+        if (!myIteratorDone || myRunningCount > 0) {
+          return;
+        }
+      }
+      myFinalResult.set(null);
+    }
+  }
+
   /**
    * Wrap a {@link ThrowableFunction} into a {@link Function} using a {@link UndeclaredThrowableException}.
    *
@@ -205,6 +205,18 @@ public final class StudioFlags {
     "If enabled, SQLite files downloaded from Android devices or emulators are open in a custom SQLite editor window",
     false);
 
+  private static final FlagGroup DEVICE_EXPLORER = new FlagGroup(FLAGS, "device.explorer", "Device File Explorer");
+  public static final Flag<Integer> DEVICE_EXPLORER_TRANSFER_CHANNELS = Flag.create(
+    DEVICE_EXPLORER, "transfer.channels", "Number of parallel file transfers per device",
+    "The maximum number of files transferred at the same time (each using its own sync connection) when downloading or uploading " +
+    "multiple files from/to a device.",
+    4);
+  public static final Flag<Boolean> DEVICE_EXPLORER_ARCHIVE_DOWNLOAD_ENABLED = Flag.create(
+    DEVICE_EXPLORER, "archive.download", "Download directories as a single archive stream",
+    "If enabled, directories are downloaded by streaming a \"tar\" archive from the device, when supported by the device, " +
+    "instead of downloading each file separately.",
+    true);
+
   private static final FlagGroup RESOURCES_MANAGEMENT = new FlagGroup(FLAGS, "res.manag", "Resource Management");
   public static final Flag<Boolean> RESOURCE_MANAGER_ENABLED = Flag.create(
     RESOURCES_MANAGEMENT, "enabled", "Enable the new resources management tools",
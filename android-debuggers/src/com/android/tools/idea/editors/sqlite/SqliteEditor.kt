@@ -15,25 +15,91 @@
  */
 package com.android.tools.idea.editors.sqlite
 
+import com.android.tools.idea.concurrent.EdtExecutor
+import com.android.tools.idea.concurrent.FutureCallbackExecutor
 import com.android.tools.idea.device.fs.DeviceFileId
+import com.google.common.util.concurrent.FutureCallback
 import com.intellij.codeHighlighting.BackgroundEditorHighlighter
 import com.intellij.openapi.fileEditor.FileEditor
 import com.intellij.openapi.fileEditor.FileEditorLocation
 import com.intellij.openapi.fileEditor.FileEditorState
 import com.intellij.openapi.fileEditor.FileEditorStateLevel
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Disposer
 import com.intellij.openapi.util.UserDataHolderBase
 import com.intellij.openapi.util.io.FileUtil
+import com.intellij.openapi.vfs.VfsUtilCore
 import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.concurrency.AppExecutorUtil
 
 import javax.swing.*
 import java.beans.PropertyChangeListener
 
 class SqliteEditor(private val project: Project, private val sqliteFile: VirtualFile) : UserDataHolderBase(), FileEditor {
   private val panel: SqliteEditorPanel = SqliteEditorPanel()
+  private val edtExecutor = FutureCallbackExecutor.wrap(EdtExecutor.INSTANCE)
+  private val service = SqliteService(VfsUtilCore.virtualToIoFile(sqliteFile),
+                                      AppExecutorUtil.createBoundedApplicationPoolExecutor("SqliteEditor", SqliteService.MAX_CONNECTIONS))
+  private var tableModel: SqliteTableModel? = null
+  private var disposed = false
 
   init {
+    Disposer.register(this, service)
     refreshPanel()
+    panel.tablesComboBox.addActionListener { setTable(panel.tablesComboBox.selectedItem as SqliteTable?) }
+    loadTables()
+  }
+
+  private fun loadTables() {
+    panel.statusLabel.text = "Reading tables..."
+    edtExecutor.addCallback(service.readTables(), object : FutureCallback<List<SqliteTable>> {
+      override fun onSuccess(result: List<SqliteTable>?) {
+        if (disposed) {
+          return
+        }
+        val tables = result ?: emptyList()
+        panel.tablesComboBox.model = DefaultComboBoxModel(tables.toTypedArray())
+        if (tables.isEmpty()) {
+          panel.statusLabel.text = "The database has no tables"
+        }
+        else {
+          setTable(tables.first())
+        }
+      }
+
+      override fun onFailure(t: Throwable) {
+        if (disposed) {
+          return
+        }
+        panel.statusLabel.text = "Error reading database: ${t.message}"
+      }
+    })
+  }
+
+  private fun setTable(table: SqliteTable?) {
+    if (disposed || table == null || table == tableModel?.table) {
+      return
+    }
+    tableModel?.let { Disposer.dispose(it) }
+
+    val model = SqliteTableModel(service, table, edtExecutor)
+    Disposer.register(this, model)
+    model.statusListener = { refreshStatus(model) }
+    tableModel = model
+    panel.table.model = model
+    refreshStatus(model)
+  }
+
+  private fun refreshStatus(model: SqliteTableModel) {
+    if (model !== tableModel) {
+      return
+    }
+    val error = model.lastError
+    panel.statusLabel.text = when {
+      error != null -> "Error reading table: ${error.message}"
+      model.isRowCountKnown -> "${model.rowCount} rows"
+      else -> "Counting rows..."
+    }
   }
 
   private fun refreshPanel() {
@@ -43,7 +109,9 @@ class SqliteEditor(private val project: Project, private val sqliteFile: Virtual
     panel.devicePathText.text = deviceEntry?.devicePath ?: "N/A"
   }
 
-  override fun dispose() {}
+  override fun dispose() {
+    disposed = true
+  }
 
   override fun getComponent(): JComponent {
     return panel.mainPanel
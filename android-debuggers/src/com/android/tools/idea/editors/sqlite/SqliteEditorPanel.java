@@ -15,10 +15,16 @@
  */
 package com.android.tools.idea.editors.sqlite;
 
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.table.JBTable;
+
 import javax.swing.*;
 
 public class SqliteEditorPanel {
   public JPanel mainPanel;
+  public JComboBox<SqliteTable> tablesComboBox;
+  public JBLabel statusLabel;
+  public JBTable table;
   public JTextField localPathText;
   public JTextField deviceIdText;
   public JTextField devicePathText;
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.sqlite
+
+/**
+ * A column of a [SqliteTable], as declared in the table schema.
+ */
+data class SqliteColumn(val name: String, val type: String)
+
+/**
+ * A table (or view) of a SQLite database.
+ *
+ * [keyColumnName] is the column that uniquely identifies and orders the rows of the table, i.e. the
+ * rowid for regular tables or the primary key column of a `WITHOUT ROWID` table. It is `null` when
+ * there is no such column (views, composite primary keys), in which case rows can only be read by offset.
+ */
+data class SqliteTable(val name: String,
+                       val columns: List<SqliteColumn>,
+                       val keyColumnName: String?,
+                       val isView: Boolean) {
+  override fun toString(): String = name
+}
+
+/**
+ * A contiguous range of rows read from a [SqliteTable]. [keys] holds the value of the key column of each
+ * row when the table has one, so that the next page can be read by key range instead of by offset.
+ */
+class SqliteRowPage(val rows: List<List<Any?>>, val keys: List<Any?>) {
+  val size: Int
+    get() = rows.size
+
+  val lastKey: Any?
+    get() = keys.lastOrNull()
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.sqlite
+
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.MoreExecutors
+import com.google.common.util.concurrent.SettableFuture
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.diagnostic.Logger
+import org.sqlite.JDBC
+import org.sqlite.SQLiteConfig
+import java.io.File
+import java.sql.Connection
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Statement
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Runs read-only queries against a local SQLite database file.
+ *
+ * Queries run on [taskExecutor] and never on the calling thread, each with its own connection taken
+ * from a small pool so that a slow query (e.g. counting the rows of a large table) does not hold up the
+ * others. Cancelling a returned future interrupts the corresponding query.
+ */
+class SqliteService(private val sqliteFile: File, private val taskExecutor: Executor) : Disposable {
+  private val idleConnections = ConcurrentLinkedQueue<Connection>()
+  @Volatile private var disposed = false
+
+  /**
+   * Returns the tables and views of the database, sorted by name.
+   */
+  fun readTables(): ListenableFuture<List<SqliteTable>> {
+    return execute { connection ->
+      val tables = mutableListOf<SqliteTable>()
+      connection.createStatement().use { statement ->
+        statement.executeQuery("SELECT name, type, sql FROM sqlite_master WHERE type IN ('table', 'view') ORDER BY name").use { rs ->
+          while (rs.next()) {
+            val name = rs.getString(1)
+            val isView = rs.getString(2) == "view"
+            val sql = rs.getString(3) ?: ""
+            tables.add(readTable(connection, name, isView, WITHOUT_ROWID_REGEX.containsMatchIn(sql)))
+          }
+        }
+      }
+      tables
+    }
+  }
+
+  /**
+   * Returns the number of rows of the table. This is a full scan of the table and may be slow.
+   */
+  fun countRows(table: SqliteTable): ListenableFuture<Long> {
+    return executeQuery("SELECT COUNT(*) FROM ${quote(table.name)}", emptyList()) { rs ->
+      if (rs.next()) rs.getLong(1) else 0L
+    }
+  }
+
+  /**
+   * Reads [limit] rows of the table starting at the given [offset], in key order when the table has a key column.
+   */
+  fun readRows(table: SqliteTable, offset: Long, limit: Int): ListenableFuture<SqliteRowPage> {
+    val keyColumn = table.keyColumnName
+    val sql = if (keyColumn == null) {
+      "SELECT * FROM ${quote(table.name)} LIMIT ? OFFSET ?"
+    }
+    else {
+      "SELECT ${quote(keyColumn)}, * FROM ${quote(table.name)} ORDER BY ${quote(keyColumn)} LIMIT ? OFFSET ?"
+    }
+    return executeQuery(sql, listOf(limit, offset)) { rs -> readPage(rs, keyColumn != null) }
+  }
+
+  /**
+   * Reads at most [limit] rows of the table whose key is greater than [afterKey], in key order. Unlike
+   * [readRows] with an offset, this is a range lookup in the table b-tree, no matter how far the rows are.
+   */
+  fun readRowsAfterKey(table: SqliteTable, afterKey: Any, limit: Int): ListenableFuture<SqliteRowPage> {
+    val keyColumn = table.keyColumnName ?: throw IllegalArgumentException("Table ${table.name} has no key column")
+    val sql = "SELECT ${quote(keyColumn)}, * FROM ${quote(table.name)} WHERE ${quote(keyColumn)} > ? " +
+              "ORDER BY ${quote(keyColumn)} LIMIT ?"
+    return executeQuery(sql, listOf(afterKey, limit)) { rs -> readPage(rs, true) }
+  }
+
+  override fun dispose() {
+    disposed = true
+    while (true) {
+      closeConnection(idleConnections.poll() ?: break)
+    }
+  }
+
+  private fun <T> executeQuery(sql: String, parameters: List<Any>, reader: (ResultSet) -> T): ListenableFuture<T> {
+    val currentStatement = AtomicReference<Statement>()
+    val future = execute { connection ->
+      connection.prepareStatement(sql).use { statement ->
+        parameters.forEachIndexed { index, parameter -> statement.setObject(index + 1, parameter) }
+        currentStatement.set(statement)
+        try {
+          statement.executeQuery().use(reader)
+        }
+        finally {
+          currentStatement.set(null)
+        }
+      }
+    }
+    future.addListener(Runnable {
+      if (future.isCancelled) {
+        try {
+          currentStatement.get()?.cancel()
+        }
+        catch (e: SQLException) {
+          // The statement completed in the meantime
+        }
+      }
+    }, MoreExecutors.directExecutor())
+    return future
+  }
+
+  private fun <T> execute(task: (Connection) -> T): ListenableFuture<T> {
+    val future = SettableFuture.create<T>()
+    taskExecutor.execute {
+      if (future.isCancelled) {
+        return@execute
+      }
+      try {
+        val connection = takeConnection()
+        try {
+          future.set(task(connection))
+        }
+        finally {
+          releaseConnection(connection)
+        }
+      }
+      catch (t: Throwable) {
+        // Ignored by the future if it has been cancelled
+        future.setException(t)
+      }
+    }
+    return future
+  }
+
+  private fun takeConnection(): Connection {
+    if (disposed) {
+      throw IllegalStateException("Database ${sqliteFile.path} is closed")
+    }
+    return idleConnections.poll() ?: openConnection()
+  }
+
+  private fun releaseConnection(connection: Connection) {
+    idleConnections.add(connection)
+    if (disposed) {
+      dispose()
+    }
+  }
+
+  private fun openConnection(): Connection {
+    val config = SQLiteConfig()
+    config.setReadOnly(true)
+    return JDBC.createConnection(JDBC.PREFIX + sqliteFile.path, config.toProperties())
+  }
+
+  private fun readTable(connection: Connection, name: String, isView: Boolean, withoutRowId: Boolean): SqliteTable {
+    val columns = mutableListOf<SqliteColumn>()
+    val primaryKeyColumns = mutableListOf<SqliteColumn>()
+    connection.createStatement().use { statement ->
+      statement.executeQuery("PRAGMA table_info(${quote(name)})").use { rs ->
+        while (rs.next()) {
+          val column = SqliteColumn(rs.getString("name"), rs.getString("type") ?: "")
+          columns.add(column)
+          if (rs.getInt("pk") > 0) {
+            primaryKeyColumns.add(column)
+          }
+        }
+      }
+    }
+    return SqliteTable(name, columns, findKeyColumn(columns, primaryKeyColumns, isView, withoutRowId), isView)
+  }
+
+  private fun findKeyColumn(columns: List<SqliteColumn>,
+                            primaryKeyColumns: List<SqliteColumn>,
+                            isView: Boolean,
+                            withoutRowId: Boolean): String? {
+    if (isView) {
+      return null
+    }
+    val singlePrimaryKey = primaryKeyColumns.singleOrNull()
+    if (withoutRowId) {
+      return singlePrimaryKey?.name
+    }
+    // The rowid aliases can be shadowed by regular columns
+    val rowIdAlias = ROWID_ALIASES.firstOrNull { alias -> columns.none { it.name.equals(alias, ignoreCase = true) } }
+    if (rowIdAlias != null) {
+      return rowIdAlias
+    }
+    // An INTEGER PRIMARY KEY column is itself an alias of the rowid
+    return if (singlePrimaryKey != null && singlePrimaryKey.type.equals("INTEGER", ignoreCase = true)) singlePrimaryKey.name else null
+  }
+
+  private fun readPage(rs: ResultSet, hasKey: Boolean): SqliteRowPage {
+    val columnCount = rs.metaData.columnCount
+    val firstColumn = if (hasKey) 2 else 1
+    val rows = mutableListOf<List<Any?>>()
+    val keys = mutableListOf<Any?>()
+    while (rs.next()) {
+      if (hasKey) {
+        keys.add(rs.getObject(1))
+      }
+      rows.add((firstColumn..columnCount).map { rs.getObject(it) })
+    }
+    return SqliteRowPage(rows, keys)
+  }
+
+  private fun closeConnection(connection: Connection) {
+    try {
+      connection.close()
+    }
+    catch (e: SQLException) {
+      LOG.warn("Error closing database ${sqliteFile.path}", e)
+    }
+  }
+
+  companion object {
+    private val LOG = Logger.getInstance(SqliteService::class.java)
+    private val ROWID_ALIASES = listOf("rowid", "_rowid_", "oid")
+    private val WITHOUT_ROWID_REGEX = Regex("\\bWITHOUT\\s+ROWID\\b", RegexOption.IGNORE_CASE)
+
+    /**
+     * The maximum number of queries to run concurrently against a database, and so of open connections.
+     */
+    const val MAX_CONNECTIONS = 2
+
+    private fun quote(identifier: String): String = "\"" + identifier.replace("\"", "\"\"") + "\""
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.sqlite
+
+import com.android.tools.idea.concurrent.FutureCallbackExecutor
+import com.google.common.util.concurrent.FutureCallback
+import com.google.common.util.concurrent.ListenableFuture
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.diagnostic.Logger
+import java.util.concurrent.CancellationException
+import javax.swing.table.AbstractTableModel
+
+/**
+ * A [javax.swing.table.TableModel] showing the rows of a [SqliteTable] without loading the whole table.
+ *
+ * Rows are read one page at a time, when the table asks for a row that is not loaded yet, and only the
+ * most recently used pages are kept in memory. Pages are read by key range from the end of the previous
+ * page when it is known, or by offset otherwise (e.g. when jumping to the middle of the table). The row
+ * count is computed in the background, the model grows as rows are read until then.
+ *
+ * All the methods of this class must be called on the UI thread, which is also where [edtExecutor] must
+ * run the query callbacks.
+ */
+class SqliteTableModel(private val service: SqliteService,
+                       val table: SqliteTable,
+                       private val edtExecutor: FutureCallbackExecutor,
+                       private val pageSize: Int = DEFAULT_PAGE_SIZE,
+                       private val maxCachedPages: Int = DEFAULT_MAX_CACHED_PAGES) : AbstractTableModel(), Disposable {
+  private val cachedPages = object : LinkedHashMap<Int, SqliteRowPage>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, SqliteRowPage>): Boolean = size > maxCachedPages
+  }
+  private val pendingPages = LinkedHashMap<Int, ListenableFuture<SqliteRowPage>>()
+  // The key of the last row of each page read so far, to read the page after it by key range
+  private val pageLastKeys = HashMap<Int, Any>()
+  private var rowCountFuture: ListenableFuture<Long>? = null
+  private var rowCount = 0
+  private var disposed = false
+
+  /**
+   * Whether [getRowCount] is the actual number of rows of the table, rather than the number of rows read so far.
+   */
+  var isRowCountKnown = false
+    private set
+
+  /**
+   * The error of the last failed query, if any.
+   */
+  var lastError: Throwable? = null
+    private set
+
+  /**
+   * Called when [isRowCountKnown], the row count or [lastError] change.
+   */
+  var statusListener: () -> Unit = {}
+
+  init {
+    loadPage(0)
+    val future = service.countRows(table)
+    rowCountFuture = future
+    edtExecutor.addCallback(future, object : FutureCallback<Long> {
+      override fun onSuccess(result: Long?) {
+        rowCountFuture = null
+        if (!disposed && result != null) {
+          isRowCountKnown = true
+          setRowCount(Math.min(result, Int.MAX_VALUE.toLong()).toInt())
+        }
+      }
+
+      override fun onFailure(t: Throwable) {
+        rowCountFuture = null
+        onQueryFailed(t)
+      }
+    })
+  }
+
+  override fun getRowCount(): Int = rowCount
+
+  override fun getColumnCount(): Int = table.columns.size
+
+  override fun getColumnName(column: Int): String = table.columns[column].name
+
+  override fun getValueAt(rowIndex: Int, columnIndex: Int): Any? {
+    val pageIndex = rowIndex / pageSize
+    val page = cachedPages[pageIndex] ?: run {
+      loadPage(pageIndex)
+      // The page may have been read synchronously
+      cachedPages[pageIndex]
+    } ?: return LOADING_VALUE
+
+    val row = page.rows.getOrNull(rowIndex % pageSize) ?: return null
+    val value = row.getOrNull(columnIndex)
+    return if (value is ByteArray) "BLOB (${value.size} bytes)" else value
+  }
+
+  /**
+   * Whether the row is loaded, as opposed to being shown as [LOADING_VALUE].
+   */
+  fun isRowLoaded(rowIndex: Int): Boolean = cachedPages.containsKey(rowIndex / pageSize)
+
+  override fun dispose() {
+    disposed = true
+    rowCountFuture?.cancel(true)
+    pendingPages.values.toList().forEach { it.cancel(true) }
+    pendingPages.clear()
+    cachedPages.clear()
+  }
+
+  private fun loadPage(pageIndex: Int) {
+    if (disposed || pendingPages.containsKey(pageIndex)) {
+      return
+    }
+
+    // The user scrolled away from the oldest pending pages, no need to finish reading them
+    while (pendingPages.size >= MAX_PENDING_PAGES) {
+      val oldest = pendingPages.keys.first()
+      pendingPages.remove(oldest)?.cancel(true)
+    }
+
+    val previousPageLastKey = if (pageIndex > 0) pageLastKeys[pageIndex - 1] else null
+    val future = if (previousPageLastKey != null) {
+      service.readRowsAfterKey(table, previousPageLastKey, pageSize)
+    }
+    else {
+      service.readRows(table, pageIndex.toLong() * pageSize, pageSize)
+    }
+    pendingPages[pageIndex] = future
+    edtExecutor.addCallback(future, object : FutureCallback<SqliteRowPage> {
+      override fun onSuccess(result: SqliteRowPage?) {
+        if (pendingPages[pageIndex] === future) {
+          pendingPages.remove(pageIndex)
+        }
+        if (!disposed && result != null) {
+          onPageLoaded(pageIndex, result)
+        }
+      }
+
+      override fun onFailure(t: Throwable) {
+        if (pendingPages[pageIndex] === future) {
+          pendingPages.remove(pageIndex)
+        }
+        else if (t is CancellationException && !disposed && !pendingPages.containsKey(pageIndex)) {
+          // Cancelled to read more recent pages: repaint the rows, which requests the page again if they are still visible
+          fireRowsUpdated(pageIndex * pageSize, pageSize)
+        }
+        onQueryFailed(t)
+      }
+    })
+  }
+
+  private fun onPageLoaded(pageIndex: Int, page: SqliteRowPage) {
+    cachedPages[pageIndex] = page
+    page.lastKey?.let { pageLastKeys[pageIndex] = it }
+
+    val firstRow = pageIndex * pageSize
+    fireRowsUpdated(firstRow, page.size)
+    if (!isRowCountKnown && firstRow + page.size > rowCount) {
+      setRowCount(firstRow + page.size)
+    }
+  }
+
+  private fun fireRowsUpdated(firstRow: Int, count: Int) {
+    val lastUpdatedRow = Math.min(firstRow + count, rowCount) - 1
+    if (lastUpdatedRow >= firstRow) {
+      fireTableRowsUpdated(firstRow, lastUpdatedRow)
+    }
+  }
+
+  private fun onQueryFailed(t: Throwable) {
+    if (disposed || t is CancellationException) {
+      return
+    }
+    LOG.warn("Error reading table ${table.name}", t)
+    lastError = t
+    statusListener()
+  }
+
+  private fun setRowCount(count: Int) {
+    val previousCount = rowCount
+    rowCount = count
+    when {
+      count > previousCount -> fireTableRowsInserted(previousCount, count - 1)
+      count < previousCount -> fireTableRowsDeleted(count, previousCount - 1)
+    }
+    statusListener()
+  }
+
+  companion object {
+    private val LOG = Logger.getInstance(SqliteTableModel::class.java)
+
+    const val DEFAULT_PAGE_SIZE = 200
+    const val DEFAULT_MAX_CACHED_PAGES = 50
+    /**
+     * The maximum number of pages read concurrently, older reads are cancelled when scrolling further.
+     */
+    const val MAX_PENDING_PAGES = 4
+
+    /**
+     * The value of the cells of the rows that are still being read.
+     */
+    const val LOADING_VALUE = "Loading..."
+  }
+}
@@ -16,6 +16,7 @@
 package com.android.tools.idea.editors.sqlite
 
 import com.google.common.truth.Truth.assertThat
+import com.intellij.openapi.util.Disposer
 import com.intellij.testFramework.LightPlatformTestCase
 import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory
 import javax.swing.JPanel
@@ -113,5 +114,6 @@ class SqliteEditorProviderTest : LightPlatformTestCase() {
     assertThat(editor.isValid).isTrue()
     assertThat(editor.isModified).isFalse()
     assertThat(editor.component).isInstanceOf(JPanel::class.java)
+    Disposer.dispose(editor)
   }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.sqlite
+
+import com.google.common.truth.Truth.assertThat
+import com.google.common.util.concurrent.MoreExecutors
+import com.intellij.openapi.util.Disposer
+import com.intellij.openapi.vfs.VfsUtilCore
+import com.intellij.testFramework.LightPlatformTestCase
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory
+import java.util.concurrent.ExecutionException
+
+class SqliteServiceTest : LightPlatformTestCase() {
+  private lateinit var sqliteUtil: SqliteTestUtil
+  private lateinit var service: SqliteService
+
+  @Throws(Exception::class)
+  override fun setUp() {
+    super.setUp()
+    sqliteUtil = SqliteTestUtil(IdeaTestFixtureFactory.getFixtureFactory().createTempDirTestFixture())
+    val file = sqliteUtil.createTempSqliteDatabase()
+    service = SqliteService(VfsUtilCore.virtualToIoFile(file), MoreExecutors.directExecutor())
+  }
+
+  @Throws(Exception::class)
+  override fun tearDown() {
+    try {
+      Disposer.dispose(service)
+    }
+    finally {
+      super.tearDown()
+    }
+  }
+
+  @Throws(Exception::class)
+  fun testReadTables() {
+    // Act
+    val tables = service.readTables().get()
+
+    // Assert
+    assertThat(tables.map { it.name }).containsExactly("contacts")
+    val table = tables[0]
+    assertThat(table.columns.map { it.name }).containsExactly("contact_id", "first_name", "last_name", "email", "phone").inOrder()
+    assertThat(table.keyColumnName).isEqualTo("rowid")
+    assertThat(table.isView).isFalse()
+  }
+
+  @Throws(Exception::class)
+  fun testCountRows() {
+    // Prepare
+    val table = service.readTables().get()[0]
+
+    // Act
+    val count = service.countRows(table).get()
+
+    // Assert
+    assertThat(count).isEqualTo(300L)
+  }
+
+  @Throws(Exception::class)
+  fun testReadRowsByOffsetThenByKey() {
+    // Prepare
+    val table = service.readTables().get()[0]
+
+    // Act
+    val page = service.readRows(table, 100, 10).get()
+    val nextPage = service.readRowsAfterKey(table, page.lastKey!!, 10).get()
+
+    // Assert
+    assertThat(page.size).isEqualTo(10)
+    assertThat(page.rows[0]).containsExactly(1000, "MyName 100", "MyLastName 100", "MyEmail@100", "MyPhone: 555-100").inOrder()
+    assertThat(page.lastKey).isEqualTo(1090)
+    assertThat(nextPage.rows.map { it[0] }).containsExactly(1100, 1110, 1120, 1130, 1140, 1150, 1160, 1170, 1180, 1190).inOrder()
+  }
+
+  @Throws(Exception::class)
+  fun testReadRowsPastTheEnd() {
+    // Prepare
+    val table = service.readTables().get()[0]
+
+    // Act
+    val page = service.readRows(table, 295, 10).get()
+    val nextPage = service.readRowsAfterKey(table, page.lastKey!!, 10).get()
+
+    // Assert
+    assertThat(page.size).isEqualTo(5)
+    assertThat(nextPage.size).isEqualTo(0)
+  }
+
+  @Throws(Exception::class)
+  fun testQueriesFailAfterDispose() {
+    // Prepare
+    val table = service.readTables().get()[0]
+    Disposer.dispose(service)
+
+    // Act
+    try {
+      service.countRows(table).get()
+      fail("Query should fail once the service is disposed")
+    }
+    catch (e: ExecutionException) {
+      // Assert
+      assertThat(e.cause).isInstanceOf(IllegalStateException::class.java)
+    }
+  }
+}
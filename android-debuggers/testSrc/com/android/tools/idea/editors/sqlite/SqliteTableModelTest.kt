@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.sqlite
+
+import com.android.tools.idea.concurrent.FutureCallbackExecutor
+import com.google.common.truth.Truth.assertThat
+import com.google.common.util.concurrent.MoreExecutors
+import com.intellij.openapi.util.Disposer
+import com.intellij.openapi.vfs.VfsUtilCore
+import com.intellij.testFramework.LightPlatformTestCase
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory
+import java.util.concurrent.Executor
+import javax.swing.event.TableModelEvent
+
+class SqliteTableModelTest : LightPlatformTestCase() {
+  private lateinit var sqliteUtil: SqliteTestUtil
+  private lateinit var service: SqliteService
+  private lateinit var table: SqliteTable
+  private val queuedTasks = mutableListOf<Runnable>()
+
+  @Throws(Exception::class)
+  override fun setUp() {
+    super.setUp()
+    sqliteUtil = SqliteTestUtil(IdeaTestFixtureFactory.getFixtureFactory().createTempDirTestFixture())
+    val file = sqliteUtil.createTempSqliteDatabase()
+    // Tasks are queued so that the tests can control when the queries run
+    service = SqliteService(VfsUtilCore.virtualToIoFile(file), Executor { queuedTasks.add(it) })
+    val futureTables = service.readTables()
+    runQueuedTasks()
+    table = futureTables.get()[0]
+  }
+
+  @Throws(Exception::class)
+  override fun tearDown() {
+    try {
+      Disposer.dispose(service)
+    }
+    finally {
+      super.tearDown()
+    }
+  }
+
+  @Throws(Exception::class)
+  fun testRowCountGrowsUntilCounted() {
+    // Prepare
+    val model = createModel()
+
+    // Act
+    runNextQueuedTask()
+    val rowCountBeforeCount = model.rowCount
+    val rowCountKnownBeforeCount = model.isRowCountKnown
+    runQueuedTasks()
+
+    // Assert
+    assertThat(rowCountBeforeCount).isEqualTo(50)
+    assertThat(rowCountKnownBeforeCount).isFalse()
+    assertThat(model.rowCount).isEqualTo(300)
+    assertThat(model.isRowCountKnown).isTrue()
+    assertThat(model.columnCount).isEqualTo(5)
+    assertThat(model.getColumnName(1)).isEqualTo("first_name")
+  }
+
+  @Throws(Exception::class)
+  fun testRowsAreLoadedOnDemand() {
+    // Prepare
+    val model = createModel()
+    runQueuedTasks()
+
+    // Act
+    val loadingValue = model.getValueAt(120, 1)
+    runQueuedTasks()
+
+    // Assert
+    assertThat(loadingValue).isEqualTo(SqliteTableModel.LOADING_VALUE)
+    assertThat(model.getValueAt(120, 1)).isEqualTo("MyName 120")
+  }
+
+  @Throws(Exception::class)
+  fun testAllRowsAreRead() {
+    // Prepare
+    val model = createModel()
+    runQueuedTasks()
+
+    // Act
+    for (row in 0 until model.rowCount) {
+      if (!model.isRowLoaded(row)) {
+        model.getValueAt(row, 0)
+        runQueuedTasks()
+      }
+
+      // Assert
+      assertThat(model.getValueAt(row, 0)).isEqualTo(row * 10)
+    }
+  }
+
+  @Throws(Exception::class)
+  fun testOnlyRecentPagesAreCached() {
+    // Prepare
+    val model = createModel()
+    runQueuedTasks()
+
+    // Act
+    model.getValueAt(60, 0)
+    runQueuedTasks()
+    model.getValueAt(120, 0)
+    runQueuedTasks()
+
+    // Assert
+    assertThat(model.isRowLoaded(0)).isFalse()
+    assertThat(model.isRowLoaded(60)).isTrue()
+    assertThat(model.isRowLoaded(120)).isTrue()
+  }
+
+  @Throws(Exception::class)
+  fun testOldestPendingPagesAreCancelled() {
+    // Prepare
+    val model = createModel(maxCachedPages = 10)
+    runQueuedTasks()
+
+    // Act
+    for (page in 1..SqliteTableModel.MAX_PENDING_PAGES + 1) {
+      model.getValueAt(page * 50, 0)
+    }
+    runQueuedTasks()
+
+    // Assert
+    assertThat(model.isRowLoaded(50)).isFalse()
+    assertThat(model.isRowLoaded(100)).isTrue()
+    assertThat(model.isRowLoaded((SqliteTableModel.MAX_PENDING_PAGES + 1) * 50)).isTrue()
+    assertThat(model.lastError).isNull()
+  }
+
+  @Throws(Exception::class)
+  fun testCancelledPagesAreUpdated() {
+    // Prepare
+    val model = createModel(maxCachedPages = 10)
+    runQueuedTasks()
+    val updatedRows = mutableListOf<IntRange>()
+    model.addTableModelListener { event ->
+      if (event.type == TableModelEvent.UPDATE) {
+        updatedRows.add(event.firstRow..event.lastRow)
+      }
+    }
+
+    // Act
+    for (page in 1..SqliteTableModel.MAX_PENDING_PAGES + 1) {
+      model.getValueAt(page * 50, 0)
+    }
+
+    // Assert
+    assertThat(updatedRows).containsExactly(50..99)
+  }
+
+  private fun createModel(maxCachedPages: Int = 2): SqliteTableModel {
+    val model = SqliteTableModel(service, table, FutureCallbackExecutor.wrap(MoreExecutors.directExecutor()), 50, maxCachedPages)
+    Disposer.register(testRootDisposable, model)
+    return model
+  }
+
+  private fun runNextQueuedTask() {
+    queuedTasks.removeAt(0).run()
+  }
+
+  private fun runQueuedTasks() {
+    while (queuedTasks.isNotEmpty()) {
+      queuedTasks.removeAt(0).run()
+    }
+  }
+}
@@ -25,6 +25,7 @@ import com.intellij.psi.search.searches.AnnotatedElementsSearch
 import com.intellij.psi.util.CachedValueProvider
 import com.intellij.psi.util.CachedValuesManager
 import com.intellij.psi.util.PsiModificationTracker
+import com.intellij.psi.util.PsiTreeUtil
 import com.intellij.psi.util.PsiUtil
 
 private val LOG = Logger.getInstance(RoomSchemaManager::class.java)
@@ -38,7 +39,8 @@ class RoomSchemaManager(val project: Project) {
   /**
    * Returns the [RoomSchema] visible from the given [PsiFile] or null if Room is not used in the project.
    *
-   * The schema is cached in the file and recomputed after a change to java structure.
+   * The schema is cached in the file and reassembled after a change to java structure. Reassembling only queries the annotation indexes,
+   * the entities and databases themselves are cached per class, see [getEntity] and [getDatabase].
    *
    * @see PsiModificationTracker.JAVA_STRUCTURE_MODIFICATION_COUNT
    */
@@ -48,7 +50,7 @@ class RoomSchemaManager(val project: Project) {
   private val constantEvaluationHelper = JavaPsiFacade.getInstance(project).constantEvaluationHelper
   private val pointerManager = SmartPointerManager.getInstance(project)
 
-  /** Builds the schema using IJ indexes. */
+  /** Builds the schema using IJ indexes, as an overlay of the per-class [Entity] and [RoomDatabase] fragments. */
   private fun buildSchema(psiFile: PsiFile): RoomSchema? {
     LOG.debug("Recalculating Room schema for file ", psiFile)
     val scope = ResolveScopeManager.getInstance(project).getResolveScope(psiFile)
@@ -59,28 +61,51 @@ class RoomSchemaManager(val project: Project) {
     val daoAnnotation = psiFacade.findClass(DAO_ANNOTATION_NAME, scope) ?: return annotationNotFound("Dao", psiFile)
 
     val entities = AnnotatedElementsSearch.searchPsiClasses(entityAnnotation, scope)
-        .mapNotNullTo(HashSet()) { this.createEntity(it) }
+        .mapNotNullTo(HashSet()) { this.getEntity(it) }
     val databases = AnnotatedElementsSearch.searchPsiClasses(databaseAnnotation, scope)
-        .mapNotNullTo(HashSet()) { this.createDatabase(it, pointerManager) }
+        .mapNotNullTo(HashSet()) { this.getDatabase(it) }
     val daos = AnnotatedElementsSearch.searchPsiClasses(daoAnnotation, scope)
         .mapTo(HashSet()) { Dao(pointerManager.createSmartPsiElementPointer(it)) }
 
     return RoomSchema(databases, entities, daos)
   }
 
-  private fun createEntity(psiClass: PsiClass): Entity? {
+  /**
+   * Returns the [Entity] defined by [psiClass], cached in the class until one of the files it was computed from changes: the file of the
+   * class, of its superclasses, of embedded classes and of constants used in Room annotations. This way editing one entity doesn't
+   * require analyzing all other entities again.
+   */
+  private fun getEntity(psiClass: PsiClass): Entity? = CachedValuesManager.getCachedValue(psiClass) {
+    val dependencies = SchemaDependencies()
+    val entity = createEntity(psiClass, dependencies)
+    CachedValueProvider.Result.create(entity, *dependencies.toArray())
+  }
+
+  /** Returns the [RoomDatabase] defined by [psiClass], cached in the class until its file changes. */
+  private fun getDatabase(psiClass: PsiClass): RoomDatabase? = CachedValuesManager.getCachedValue(psiClass) {
+    val dependencies = SchemaDependencies()
+    dependencies.addClass(psiClass)
+    CachedValueProvider.Result.create(createDatabase(psiClass, pointerManager, dependencies), *dependencies.toArray())
+  }
+
+  private fun createEntity(psiClass: PsiClass, dependencies: SchemaDependencies): Entity? {
+    dependencies.addClassHierarchy(psiClass)
     val (tableName, tableNameElement) = getNameAndNameElement(
-        psiClass, annotationName = ENTITY_ANNOTATION_NAME, annotationAttributeName = "tableName") ?: return null
+        psiClass,
+        annotationName = ENTITY_ANNOTATION_NAME,
+        annotationAttributeName = "tableName",
+        dependencies = dependencies
+    ) ?: return null
 
     return Entity(
         pointerManager.createSmartPsiElementPointer(psiClass),
         tableName,
         pointerManager.createSmartPsiElementPointer(tableNameElement),
-        findColumns(psiClass).toSet()
+        findColumns(psiClass, dependencies = dependencies).toSet()
     )
   }
 
-  private fun findColumns(psiClass: PsiClass, namePrefix: String = ""): Sequence<EntityColumn> {
+  private fun findColumns(psiClass: PsiClass, namePrefix: String = "", dependencies: SchemaDependencies): Sequence<EntityColumn> {
     return psiClass.allFields
         .asSequence()
         .filterNot { it.modifierList?.hasModifierProperty(PsiModifier.STATIC) == true }
@@ -88,12 +113,13 @@ class RoomSchemaManager(val project: Project) {
         .flatMap{ psiField ->
           val embeddedAnnotation = psiField.modifierList?.findAnnotation(EMBEDDED_ANNOTATION_NAME)
           if (embeddedAnnotation != null) {
-            findEmbeddedFields(psiField, embeddedAnnotation, namePrefix)
+            findEmbeddedFields(psiField, embeddedAnnotation, namePrefix, dependencies)
           } else {
             val thisField = getNameAndNameElement(
                 psiField,
                 annotationName = COLUMN_INFO_ANNOTATION_NAME,
-                annotationAttributeName = "name")
+                annotationAttributeName = "name",
+                dependencies = dependencies)
                 ?.let { (columnName, columnNameElement) ->
                   EntityColumn(
                       pointerManager.createSmartPsiElementPointer(psiField),
@@ -107,18 +133,33 @@ class RoomSchemaManager(val project: Project) {
         }
   }
 
-  private fun findEmbeddedFields(embeddedField: PsiField, embeddedAnnotation: PsiAnnotation, currentPrefix: String): Sequence<EntityColumn> {
+  private fun findEmbeddedFields(
+      embeddedField: PsiField,
+      embeddedAnnotation: PsiAnnotation,
+      currentPrefix: String,
+      dependencies: SchemaDependencies
+  ): Sequence<EntityColumn> {
     val newPrefix = embeddedAnnotation.findAttributeValue("prefix")
+        ?.also { dependencies.addConstantsUsedIn(it) }
         ?.let { constantEvaluationHelper.computeConstantExpression(it) }
         ?.toString()
         ?: ""
 
-    val embeddedClass = PsiUtil.resolveClassInClassTypeOnly(embeddedField.type) ?: return emptySequence()
+    val embeddedClass = PsiUtil.resolveClassInClassTypeOnly(embeddedField.type)
+    if (embeddedClass == null) {
+      dependencies.addUnresolvedReference()
+      return emptySequence()
+    }
+    dependencies.addClassHierarchy(embeddedClass)
 
-    return findColumns(embeddedClass, currentPrefix + newPrefix)
+    return findColumns(embeddedClass, currentPrefix + newPrefix, dependencies)
   }
 
-  private fun createDatabase(psiClass: PsiClass, pointerManager: SmartPointerManager): RoomDatabase? {
+  private fun createDatabase(
+      psiClass: PsiClass,
+      pointerManager: SmartPointerManager,
+      dependencies: SchemaDependencies
+  ): RoomDatabase? {
     val entitiesElementValue: HashSet<PsiClassPointer>? =
         psiClass.modifierList
             ?.findAnnotation(DATABASE_ANNOTATION_NAME)
@@ -129,6 +170,7 @@ class RoomSchemaManager(val project: Project) {
               val classObjectAccessExpression = it as? PsiClassObjectAccessExpression ?: return@mapNotNullTo null
               PsiUtil.resolveClassInClassTypeOnly(classObjectAccessExpression.operand.type)
                   ?.let(pointerManager::createSmartPsiElementPointer)
+                  ?: run { dependencies.addUnresolvedReference(); null }
             }
 
     return RoomDatabase(pointerManager.createSmartPsiElementPointer(psiClass), entitiesElementValue ?: emptySet())
@@ -139,12 +181,18 @@ class RoomSchemaManager(val project: Project) {
     return null
   }
 
-  private fun <T> getNameAndNameElement(element: T, annotationName: String, annotationAttributeName: String): Pair<String, PsiElement>?
+  private fun <T> getNameAndNameElement(
+      element: T,
+      annotationName: String,
+      annotationAttributeName: String,
+      dependencies: SchemaDependencies
+  ): Pair<String, PsiElement>?
       where T : PsiModifierListOwner,
             T : PsiNamedElement {
     val nameAttribute = element.modifierList
         ?.findAnnotation(annotationName)
         ?.findDeclaredAttributeValue(annotationAttributeName)
+        ?.also { dependencies.addConstantsUsedIn(it) }
 
     val name = nameAttribute
         ?.let { constantEvaluationHelper.computeConstantExpression(it) }
@@ -155,3 +203,57 @@ class RoomSchemaManager(val project: Project) {
     return Pair(name, nameAttribute ?: element)
   }
 }
+
+/**
+ * Files that a cached schema fragment was computed from. Used as the dependencies of the fragment's [CachedValueProvider.Result].
+ *
+ * A reference that doesn't resolve, e.g. to an embedded class or a superclass, may start resolving to a class in any file, so fragments
+ * with unresolved references also depend on [PsiModificationTracker.JAVA_STRUCTURE_MODIFICATION_COUNT].
+ */
+private class SchemaDependencies {
+  private val files = LinkedHashSet<PsiFile>()
+  private var hasUnresolvedReferences = false
+
+  fun addUnresolvedReference() {
+    hasUnresolvedReferences = true
+  }
+
+  /** Adds the file defining [psiClass]. For light classes (e.g. Kotlin) this is the file of the original declaration. */
+  fun addClass(psiClass: PsiClass) {
+    (psiClass.navigationElement.containingFile ?: psiClass.containingFile)?.let { files.add(it) }
+  }
+
+  /** Adds the files of [psiClass] and its superclasses, which may contribute fields to it. */
+  fun addClassHierarchy(psiClass: PsiClass) {
+    val visited = HashSet<PsiClass>()
+    var current: PsiClass? = psiClass
+    while (current != null && visited.add(current)) {
+      addClass(current)
+      val superClass = current.superClass
+      if (superClass == null && current.extendsListTypes.any { it.resolve() == null }) {
+        addUnresolvedReference()
+      }
+      current = superClass
+    }
+  }
+
+  /** Adds the files defining constants referenced from an annotation attribute value, e.g. `@Entity(tableName = Tables.USERS)`. */
+  fun addConstantsUsedIn(value: PsiElement) {
+    val references = PsiTreeUtil.collectElementsOfType(value, PsiReferenceExpression::class.java)
+    for (reference in references) {
+      val target = reference.resolve()
+      if (target == null) {
+        addUnresolvedReference()
+      }
+      (target as? PsiField)?.containingClass?.let(this::addClass)
+    }
+  }
+
+  fun toArray(): Array<Any> {
+    val dependencies = ArrayList<Any>(files)
+    if (files.isEmpty() || hasUnresolvedReferences) {
+      dependencies.add(PsiModificationTracker.JAVA_STRUCTURE_MODIFICATION_COUNT)
+    }
+    return dependencies.toTypedArray()
+  }
+}
@@ -133,6 +133,90 @@ class RoomSchemaManagerTest : RoomLightTestCase() {
     assertThat(entity.nameElement).isNotSameAs(entity.psiClass)
   }
 
+  fun testEntities_editOneEntity() {
+    val userClass = myFixture.addRoomEntity("com.example.User")
+    val addressClass = myFixture.addClass(
+        """
+        package com.example;
+
+        import android.arch.persistence.room.Entity;
+
+        @Entity
+        public class Address {}
+        """.trimIndent())
+
+    val userBefore = getSchema(userClass).entities.single { it.name == "User" }
+
+    myFixture.openFileInEditor(addressClass.containingFile.virtualFile)
+    myFixture.editor.caretModel.moveToOffset(myFixture.editor.document.getLineEndOffset(4))
+    myFixture.type("""(tableName = "addresses")""")
+
+    PsiDocumentManager.getInstance(project).commitAllDocuments()
+
+    val schema = getSchema(userClass)
+    assertThat(schema.entities.map { it.name }).containsExactly("User", "addresses")
+    // The User entity was not affected by the edit, so it should not have been analyzed again.
+    assertThat(schema.entities.single { it.name == "User" }).isSameAs(userBefore)
+  }
+
+  fun testEntities_editBaseClass() {
+    val baseClass = myFixture.addClass(
+        """
+        package com.example;
+
+        public abstract class Base {
+        }
+        """.trimIndent())
+
+    val userClass = myFixture.addClass(
+        """
+        package com.example;
+
+        import android.arch.persistence.room.Entity;
+
+        @Entity
+        public class User extends Base {}
+        """.trimIndent())
+
+    assertThat(getSchema(userClass).entities.single().columns).isEmpty()
+
+    myFixture.openFileInEditor(baseClass.containingFile.virtualFile)
+    myFixture.editor.caretModel.moveToOffset(myFixture.editor.document.getLineEndOffset(2))
+    myFixture.type("\n  private String name;")
+
+    PsiDocumentManager.getInstance(project).commitAllDocuments()
+
+    assertThat(getSchema(userClass).entities.single().columns.map { it.name }).containsExactly("name")
+  }
+
+  fun testEntities_embeddedClassAddedLater() {
+    val userClass = myFixture.addClass(
+        """
+        package com.example;
+
+        import android.arch.persistence.room.Embedded;
+        import android.arch.persistence.room.Entity;
+
+        @Entity
+        public class User {
+          @Embedded Address address;
+        }
+        """.trimIndent())
+
+    assertThat(getSchema(userClass).entities.single().columns).isEmpty()
+
+    myFixture.addClass(
+        """
+        package com.example;
+
+        public class Address {
+          private String street;
+        }
+        """.trimIndent())
+
+    assertThat(getSchema(userClass).entities.single().columns.map { it.name }).containsExactly("street")
+  }
+
   fun testDatabases_single() {
     myFixture.addRoomEntity("com.example.User")
     myFixture.addRoomEntity("com.example.Address")
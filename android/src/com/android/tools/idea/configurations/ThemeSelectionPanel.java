@@ -21,6 +21,7 @@ import com.android.tools.idea.editors.theme.datamodels.ConfiguredThemeEditorStyl
 import com.android.tools.idea.model.AndroidModuleInfo;
 import com.android.tools.idea.model.MergedManifest;
 import com.android.tools.idea.model.MergedManifest.ActivityAttributes;
+import com.android.tools.idea.model.MergedManifestSnapshot;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -315,7 +316,7 @@ public class ThemeSelectionPanel implements TreeSelectionListener, ListSelection
         }
         break;
       case MANIFEST: {
-        MergedManifest manifest = MergedManifest.get(myConfiguration.getModule());
+        MergedManifestSnapshot manifest = MergedManifest.get(myConfiguration.getModule()).getAvailableSnapshot();
         Map<String, ActivityAttributes> activityAttributesMap = manifest.getActivityAttributesMap();
         /*
         TODO: Until we don't sort the theme lists automatically, no need to call out the preferred one first
@@ -88,20 +88,30 @@ public class ScreenshotTask extends Task.Modal {
     indicator.setText(AndroidBundle.message("android.ddms.screenshot.task.step.load"));
 
     myImage = createImage(rawImage);
-    for (int y = 0; y < rawImage.height; y++) {
-      for (int x = 0; x < rawImage.width; x++) {
-        int argb = rawImage.getARGB((x + y * rawImage.width) * (rawImage.bpp / 8));
-        myImage.setRGB(x, y, argb);
-      }
-    }
   }
 
+  /**
+   * Converts the framebuffer into an image backed by a single int array of ARGB pixels. If the device reports a color
+   * profile, the pixels are then converted from sRGB into an image with that profile in one pass.
+   */
   @NotNull
-  private BufferedImage createImage(RawImage rawImage) {
+  private BufferedImage createImage(@NotNull RawImage rawImage) {
+    int[] pixels = new int[rawImage.width * rawImage.height];
+    int bytesPerPixel = rawImage.bpp / 8;
+    for (int i = 0, offset = 0; i < pixels.length; i++, offset += bytesPerPixel) {
+      pixels[i] = rawImage.getARGB(offset);
+    }
+
+    DirectColorModel rgbColorModel = (DirectColorModel)ColorModel.getRGBdefault();
+    int[] masks = {rgbColorModel.getRedMask(), rgbColorModel.getGreenMask(), rgbColorModel.getBlueMask(), rgbColorModel.getAlphaMask()};
+    WritableRaster rgbRaster =
+      Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length), rawImage.width, rawImage.height, rawImage.width, masks, null);
+    //noinspection UndesirableClassUsage
+    BufferedImage rgbImage = new BufferedImage(rgbColorModel, rgbRaster, false, null);
+
     String profileName = getProfileName(rawImage);
     if (profileName == null) {
-      //noinspection UndesirableClassUsage
-      return new BufferedImage(rawImage.width, rawImage.height, BufferedImage.TYPE_INT_ARGB);
+      return rgbImage;
     }
 
     ICC_Profile profile = ICC_Profile.getInstance(ColorSpace.CS_sRGB);
@@ -117,7 +127,10 @@ public class ScreenshotTask extends Task.Modal {
     WritableRaster raster = colorModel.createCompatibleWritableRaster(rawImage.width, rawImage.height);
 
     //noinspection UndesirableClassUsage
-    return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    BufferedImage image = new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    // Same conversion as setting the sRGB value of every pixel, but done for the whole image at once
+    new ColorConvertOp(null).filter(rgbImage, image);
+    return image;
   }
 
   @Nullable
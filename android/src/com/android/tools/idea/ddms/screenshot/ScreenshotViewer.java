@@ -49,6 +49,7 @@ import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileWrapper;
 import com.intellij.ui.components.JBScrollPane;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.containers.ContainerUtil;
 import org.intellij.images.editor.ImageEditor;
 import org.intellij.images.editor.ImageFileEditor;
@@ -80,6 +81,9 @@ import java.io.IOException;
 import java.util.Calendar;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.Deflater;
 
@@ -115,8 +119,7 @@ public class ScreenshotViewer extends DialogWrapper implements DataProvider {
   private int myRotationAngle = 0;
 
   /**
-   * Reference to the screenshot obtained from the device and then rotated by {@link #myRotationAngle} degrees.
-   * Accessed from both EDT and background threads.
+   * Reference to the screenshot obtained from the device, before rotation. Accessed from both EDT and background threads.
    */
   private AtomicReference<BufferedImage> mySourceImageRef = new AtomicReference<>();
 
@@ -125,6 +128,24 @@ public class ScreenshotViewer extends DialogWrapper implements DataProvider {
    */
   private AtomicReference<BufferedImage> myDisplayedImageRef = new AtomicReference<>();
 
+  /**
+   * Rotated and framed versions of the current screenshot that have already been computed, so that going back
+   * to a previous combination of options doesn't redo the work. Softly referenced since a framed screenshot of a
+   * large device takes tens of megabytes. Only accessed from the EDT.
+   */
+  private final Map<ProcessingOptions, BufferedImage> myProcessedImages = ContainerUtil.createSoftValueMap();
+
+  /**
+   * Incremented whenever a new version of the screenshot is requested, so that the results of processing
+   * started for an earlier request are discarded. Only accessed from the EDT.
+   */
+  private int myProcessingRequest;
+
+  /**
+   * Writes the displayed image to the backing file, one image at a time and in the order they were displayed.
+   */
+  private final ExecutorService myBackingFileWriter = AppExecutorUtil.createBoundedApplicationPoolExecutor("ScreenshotViewer", 1);
+
   /**
    * User specified destination where the screenshot is saved.
    */
@@ -254,6 +275,7 @@ public class ScreenshotViewer extends DialogWrapper implements DataProvider {
   @Override
   protected void dispose() {
     myProvider.disposeEditor(myImageFileEditor);
+    myProcessedImages.clear();
     super.dispose();
   }
 
@@ -270,14 +292,15 @@ public class ScreenshotViewer extends DialogWrapper implements DataProvider {
 
         BufferedImage image = getScreenshot();
         mySourceImageRef.set(image);
-        processScreenshot(myFrameScreenshotCheckBox.isSelected(), myRotationAngle);
+        myProcessedImages.clear();
+        processScreenshot(myFrameScreenshotCheckBox.isSelected());
       }
     }.queue();
   }
 
   private void doRotateScreenshot(int change) {
     myRotationAngle = (myRotationAngle + change) % 360;
-    processScreenshot(myFrameScreenshotCheckBox.isSelected(), change);
+    processScreenshot(myFrameScreenshotCheckBox.isSelected());
   }
 
   private void doFrameScreenshot() {
@@ -287,13 +310,7 @@ public class ScreenshotViewer extends DialogWrapper implements DataProvider {
     myDropShadowCheckBox.setEnabled(shouldFrame);
     myScreenGlareCheckBox.setEnabled(shouldFrame);
 
-    if (shouldFrame) {
-      processScreenshot(true, 0);
-    }
-    else {
-      myDisplayedImageRef.set(mySourceImageRef.get());
-      updateEditorImage();
-    }
+    processScreenshot(shouldFrame);
   }
 
   private void updateZoom() {
@@ -313,87 +330,135 @@ public class ScreenshotViewer extends DialogWrapper implements DataProvider {
     zoomModel.setZoomFactor(ImageUtils.calcFullyDisplayZoomFactor(viewHeight, viewWidth, imageHeight, imageWidth));
   }
 
-  private void processScreenshot(boolean addFrame, int rotateByAngle) {
+  private void processScreenshot(boolean addFrame) {
     DeviceArtDescriptor spec = addFrame ? myDeviceArtDescriptors.get(myDeviceArtCombo.getSelectedIndex()) : null;
     boolean shadow = addFrame && myDropShadowCheckBox.isSelected();
     boolean reflection = addFrame && myScreenGlareCheckBox.isSelected();
+    ProcessingOptions options = new ProcessingOptions(myRotationAngle, spec, shadow, reflection);
+    int request = ++myProcessingRequest;
+
+    BufferedImage sourceImage = mySourceImageRef.get();
+    // Even unrotated and unframed screenshots go through the processing task, which crops their transparent borders
+    BufferedImage processedImage = myProcessedImages.get(options);
+    if (processedImage != null) {
+      showProcessedImage(processedImage);
+      return;
+    }
 
-    new ImageProcessorTask(myProject, mySourceImageRef.get(), rotateByAngle, spec, shadow, reflection, myBackingVirtualFile) {
+    new ImageProcessorTask(myProject, sourceImage, options) {
       @Override
       public void onSuccess() {
-        mySourceImageRef.set(getRotatedImage());
-        myDisplayedImageRef.set(getProcessedImage());
-        updateEditorImage();
+        // The screenshot may have been refreshed in the meantime
+        if (mySourceImageRef.get() != sourceImage) {
+          return;
+        }
+        myProcessedImages.put(options, getProcessedImage());
+        if (request == myProcessingRequest) {
+          showProcessedImage(getProcessedImage());
+        }
       }
     }.queue();
   }
 
-  private static class ImageProcessorTask extends Task.Backgroundable {
-    private final BufferedImage mySrcImage;
+  private void showProcessedImage(@NotNull BufferedImage image) {
+    myDisplayedImageRef.set(image);
+    updateEditorImage();
+
+    // update backing file, this is necessary for operations that read the backing file from the editor,
+    // such as: Right click image -> Open in external editor
+    File file = VfsUtilCore.virtualToIoFile(myBackingVirtualFile);
+    myBackingFileWriter.execute(() -> {
+      // Skip images that have already been replaced by a newer one
+      if (myDisplayedImageRef.get() != image) {
+        return;
+      }
+      try {
+        writePng(image, file);
+      }
+      catch (IOException e) {
+        Logger.getInstance(ScreenshotViewer.class).error("Unexpected error while writing to backing file", e);
+      }
+    });
+  }
+
+  /**
+   * Rotation and device frame applied to the screenshot from the device.
+   */
+  private static final class ProcessingOptions {
     private final int myRotationAngle;
-    private final DeviceArtDescriptor myDescriptor;
+    @Nullable private final DeviceArtDescriptor myDescriptor;
     private final boolean myAddShadow;
     private final boolean myAddReflection;
-    private final VirtualFile myDestinationFile;
 
-    private BufferedImage myRotatedImage;
+    private ProcessingOptions(int rotationAngle, @Nullable DeviceArtDescriptor descriptor, boolean addShadow, boolean addReflection) {
+      myRotationAngle = rotationAngle;
+      myDescriptor = descriptor;
+      myAddShadow = addShadow;
+      myAddReflection = addReflection;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ProcessingOptions)) {
+        return false;
+      }
+      ProcessingOptions other = (ProcessingOptions)o;
+      return myRotationAngle == other.myRotationAngle &&
+             myDescriptor == other.myDescriptor &&
+             myAddShadow == other.myAddShadow &&
+             myAddReflection == other.myAddReflection;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myRotationAngle, System.identityHashCode(myDescriptor), myAddShadow, myAddReflection);
+    }
+  }
+
+  private static class ImageProcessorTask extends Task.Backgroundable {
+    private final BufferedImage mySrcImage;
+    private final ProcessingOptions myOptions;
+
     private BufferedImage myProcessedImage;
 
-    public ImageProcessorTask(@Nullable Project project,
-                              @NotNull BufferedImage srcImage,
-                              int rotateByAngle,
-                              @Nullable DeviceArtDescriptor descriptor,
-                              boolean addShadow,
-                              boolean addReflection,
-                              VirtualFile writeToFile) {
+    public ImageProcessorTask(@Nullable Project project, @NotNull BufferedImage srcImage, @NotNull ProcessingOptions options) {
       super(project, AndroidBundle.message("android.ddms.screenshot.image.processor.task.title"), false);
 
       mySrcImage = srcImage;
-      myRotationAngle = rotateByAngle;
-      myDescriptor = descriptor;
-      myAddShadow = addShadow;
-      myAddReflection = addReflection;
-      myDestinationFile = writeToFile;
+      myOptions = options;
     }
 
     @Override
     public void run(@NotNull ProgressIndicator indicator) {
-      if (myRotationAngle != 0) {
-        myRotatedImage = ImageUtils.rotateByRightAngle(mySrcImage, myRotationAngle);
+      BufferedImage rotatedImage;
+      if (myOptions.myRotationAngle != 0) {
+        rotatedImage = ImageUtils.rotateByRightAngle(mySrcImage, myOptions.myRotationAngle);
       }
       else {
-        myRotatedImage = mySrcImage;
+        rotatedImage = mySrcImage;
       }
 
-      if (myDescriptor != null) {
-        myProcessedImage = DeviceArtPainter.createFrame(myRotatedImage, myDescriptor, myAddShadow, myAddReflection);
+      if (myOptions.myDescriptor != null) {
+        BufferedImage framedImage =
+          DeviceArtPainter.createFrame(rotatedImage, myOptions.myDescriptor, myOptions.myAddShadow, myOptions.myAddReflection);
+        BufferedImage croppedImage = ImageUtils.cropBlank(framedImage, null);
+        myProcessedImage = croppedImage != null ? croppedImage : framedImage;
       }
       else {
-        myProcessedImage = myRotatedImage;
-      }
-
-      myProcessedImage = ImageUtils.cropBlank(myProcessedImage, null);
-
-      // update backing file, this is necessary for operations that read the backing file from the editor,
-      // such as: Right click image -> Open in external editor
-      if (myDestinationFile != null) {
-        File file = VfsUtilCore.virtualToIoFile(myDestinationFile);
-        try {
-          writePng(myProcessedImage, file);
-        }
-        catch (IOException e) {
-          Logger.getInstance(ImageProcessorTask.class).error("Unexpected error while writing to backing file", e);
-        }
+        // Crop without copying the pixels, so that the screenshot keeps its color profile
+        Rectangle cropBounds = ImageUtils.getCropBounds(rotatedImage, ImageUtils.TRANSPARENCY_FILTER, null);
+        myProcessedImage = cropBounds != null
+                           ? rotatedImage.getSubimage(cropBounds.x, cropBounds.y, cropBounds.width, cropBounds.height)
+                           : rotatedImage;
       }
     }
 
     protected BufferedImage getProcessedImage() {
       return myProcessedImage;
     }
-
-    protected BufferedImage getRotatedImage() {
-      return myRotatedImage;
-    }
   }
 
   private void updateEditorImage() {
@@ -17,26 +17,44 @@ package com.android.tools.idea.editors.layoutInspector;
 
 import com.android.layoutinspector.LayoutInspectorCaptureOptions;
 import com.android.layoutinspector.model.ViewNode;
+import com.google.common.io.ByteStreams;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.Iterator;
 
+/**
+ * Contents of a layout inspector capture file.
+ * <p/>
+ * A capture consists of three length prefixed sections: the capture options, the flattened view hierarchy and the
+ * preview image of the window. Only the first two are read when the file is opened, streaming from the file instead
+ * of loading it into memory first, so the view tree can be shown right away. The preview image is decoded on demand,
+ * either at full resolution by {@link #getBufferedImage()} or, much faster for large screens, subsampled by
+ * {@link #loadPreview(int)}.
+ */
 public class LayoutFileData {
-  @Nullable private final BufferedImage myBufferedImage;
+  @NotNull private final VirtualFile myFile;
   @Nullable private final ViewNode myNode;
 
-  public LayoutFileData(@NotNull VirtualFile file) throws IOException {
-    byte[] previewBytes;
+  private final Object myImageLock = new Object();
+  private boolean myImageLoaded;
+  @Nullable private BufferedImage myBufferedImage;
 
-    ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(file.contentsToByteArray()));
+  public LayoutFileData(@NotNull VirtualFile file) throws IOException {
+    myFile = file;
 
-    try {
+    try (ObjectInputStream input = openStream()) {
       // Parse options
       LayoutInspectorCaptureOptions options = new LayoutInspectorCaptureOptions();
       options.parse(input.readUTF());
@@ -48,25 +66,101 @@ public class LayoutFileData {
       if (getNode() == null) {
         throw new IOException("Error parsing view node");
       }
-
-      // Preview image
-      previewBytes = new byte[input.readInt()];
-      input.readFully(previewBytes);
     }
-    finally {
-      input.close();
-    }
-
-    myBufferedImage = ImageIO.read(new ByteArrayInputStream(previewBytes));
   }
 
+  /**
+   * Returns the full resolution preview image, decoding it on first use, or null if it can't be read.
+   */
   @Nullable
   public BufferedImage getBufferedImage() {
-    return myBufferedImage;
+    synchronized (myImageLock) {
+      if (!myImageLoaded) {
+        readImage(0);
+      }
+      return myBufferedImage;
+    }
+  }
+
+  /**
+   * Decodes the preview image subsampled so that neither side is larger than {@code maxSize}, or returns the full
+   * resolution image if it is small enough or has already been decoded. The subsampled image isn't kept.
+   */
+  @Nullable
+  public BufferedImage loadPreview(int maxSize) {
+    synchronized (myImageLock) {
+      return myImageLoaded ? myBufferedImage : readImage(maxSize);
+    }
   }
 
   @Nullable
   public ViewNode getNode() {
     return myNode;
   }
+
+  @NotNull
+  private ObjectInputStream openStream() throws IOException {
+    return new ObjectInputStream(new BufferedInputStream(myFile.getInputStream()));
+  }
+
+  /**
+   * Decodes the preview image, subsampled to fit {@code maxSize} if that is positive. If the result is the full
+   * resolution image, it is also stored in {@link #myBufferedImage}.
+   */
+  @Nullable
+  private BufferedImage readImage(int maxSize) {
+    assert Thread.holdsLock(myImageLock);
+
+    try (ObjectInputStream input = openStream()) {
+      // Skip to the preview section
+      input.readUTF();
+      skipFully(input, input.readInt());
+      int previewLength = input.readInt();
+
+      try (ImageInputStream imageInput = ImageIO.createImageInputStream(ByteStreams.limit(input, previewLength))) {
+        Iterator<ImageReader> readers = imageInput != null ? ImageIO.getImageReaders(imageInput) : null;
+        if (readers == null || !readers.hasNext()) {
+          myImageLoaded = true;
+          return null;
+        }
+
+        ImageReader reader = readers.next();
+        try {
+          reader.setInput(imageInput, true, true);
+          int subsampling = 1;
+          if (maxSize > 0) {
+            int size = Math.max(reader.getWidth(0), reader.getHeight(0));
+            subsampling = Math.max(1, (size + maxSize - 1) / maxSize);
+          }
+          ImageReadParam param = reader.getDefaultReadParam();
+          param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+          BufferedImage image = reader.read(0, param);
+
+          if (subsampling == 1) {
+            myBufferedImage = image;
+            myImageLoaded = true;
+          }
+          return image;
+        }
+        finally {
+          reader.dispose();
+        }
+      }
+    }
+    catch (IOException e) {
+      Logger.getInstance(LayoutFileData.class).warn("Error reading preview image of " + myFile.getPath(), e);
+      myImageLoaded = true;
+      return null;
+    }
+  }
+
+  private static void skipFully(@NotNull ObjectInputStream input, int length) throws IOException {
+    while (length > 0) {
+      int skipped = input.skipBytes(length);
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      length -= skipped;
+    }
+  }
 }
@@ -43,6 +43,7 @@ import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.DataProvider;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.ui.JBCheckboxMenuItem;
 import com.intellij.openapi.ui.JBPopupMenu;
@@ -50,6 +51,7 @@ import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
 import com.intellij.ui.SpeedSearchComparator;
 import com.intellij.ui.TableSpeedSearch;
+import com.intellij.util.ui.UIUtil;
 import org.jetbrains.android.util.AndroidBundle;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -81,6 +83,9 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
   // Hidden from public usage until we get UX/PM input on displaying display list output.
   private static final boolean DUMP_DISPLAYLIST_ENABLED = Boolean.getBoolean("dump.displaylist.enabled");
 
+  // Size of the preview shown while the full resolution image of a capture is being decoded
+  private static final int REDUCED_PREVIEW_SIZE = 1024;
+
   @Nullable
   private Client myClient;
   @Nullable
@@ -122,7 +127,7 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
 
   public LayoutInspectorContext(@NotNull LayoutFileData layoutParser,@NotNull Disposable parentDisposable) {
     myRoot = layoutParser.getNode();
-    myBufferedImage = layoutParser.getBufferedImage();
+    loadPreview(layoutParser, parentDisposable);
 
     myNodeTree = createNodeTree(getRoot());
 
@@ -174,6 +179,43 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
     Disposer.register(parentDisposable, this);
   }
 
+  /**
+   * Decodes the preview image of the capture on a pooled thread, first at a reduced resolution and then at full
+   * resolution, so that the view tree doesn't have to wait for it and large screens show up quickly.
+   */
+  private void loadPreview(@NotNull LayoutFileData layoutData, @NotNull Disposable parentDisposable) {
+    ViewNode root = myRoot;
+    if (root == null) {
+      return;
+    }
+
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      BufferedImage reducedImage = layoutData.loadPreview(REDUCED_PREVIEW_SIZE);
+      if (reducedImage != null) {
+        showLoadedPreview(root, reducedImage, parentDisposable);
+      }
+
+      BufferedImage image = layoutData.getBufferedImage();
+      if (image != null && image != reducedImage) {
+        showLoadedPreview(root, image, parentDisposable);
+      }
+    });
+  }
+
+  private void showLoadedPreview(@NotNull ViewNode root, @NotNull BufferedImage image, @NotNull Disposable parentDisposable) {
+    UIUtil.invokeLaterIfNeeded(() -> {
+      // A sub view may have been shown in the meantime, which comes with its own preview
+      if (Disposer.isDisposed(parentDisposable) || myRoot != root) {
+        return;
+      }
+
+      myBufferedImage = image;
+      if (myPreview != null) {
+        myPreview.setPreview(image, root);
+      }
+    });
+  }
+
   @NotNull
   private RollOverTree createNodeTree(@Nullable ViewNode root) {
     RollOverTree tree = new RollOverTree(root);
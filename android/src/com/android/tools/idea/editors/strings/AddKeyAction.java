@@ -61,7 +61,10 @@ final class AddKeyAction extends AnAction {
 
     WriteCommandAction.runWriteCommandAction(project, () -> {
       StringPsiUtils.addString(file, key, dialog.getDefaultValue());
-      myPanel.reloadData();
+
+      if (!myPanel.getTable().getModel().addKey(key)) {
+        myPanel.reloadData();
+      }
     });
   }
 }
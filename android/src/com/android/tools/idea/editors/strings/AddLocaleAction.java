@@ -34,6 +34,7 @@ import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -105,7 +106,10 @@ final class AddLocaleAction extends AnAction {
 
     WriteCommandAction.runWriteCommandAction(project, () -> {
       StringPsiUtils.addString(file, key, resource.getDefaultValueAsString());
-      myPanel.reloadData();
+
+      if (!myPanel.getTable().getModel().updateKeys(Collections.singletonList(key))) {
+        myPanel.reloadData();
+      }
     });
   }
 
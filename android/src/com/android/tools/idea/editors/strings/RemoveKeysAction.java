@@ -27,6 +27,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 final class RemoveKeysAction extends AnAction {
   private final StringResourceViewPanel myPanel;
@@ -48,12 +50,20 @@ final class RemoveKeysAction extends AnAction {
     StringResourceRepository repository = model.getRepository();
     Project project = myPanel.getFacet().getModule().getProject();
 
-    PsiElement[] elements = Arrays.stream(table.getSelectedRowModelIndices())
-      .mapToObj(index -> model.getStringResourceAt(index).getKey())
+    List<StringResourceKey> keys = Arrays.stream(table.getSelectedRowModelIndices())
+      .mapToObj(model::getKey)
+      .collect(Collectors.toList());
+
+    PsiElement[] elements = keys.stream()
       .flatMap(key -> repository.getItems(key).stream())
       .map(item -> LocalResourceRepository.getItemTag(project, item))
       .toArray(PsiElement[]::new);
 
     DelegateDeleteHandler.deletePsiElement(project, elements, myPanel.getFacet().getModule());
+
+    // Drops the rows of the keys which were deleted, unless the deletion was cancelled
+    if (!model.updateKeys(keys)) {
+      myPanel.reloadData();
+    }
   }
 }
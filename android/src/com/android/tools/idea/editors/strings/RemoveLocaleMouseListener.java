@@ -69,7 +69,10 @@ final class RemoveLocaleMouseListener extends MouseAdapter {
 
     item.addActionListener(e -> {
       StringsWriteUtils.removeLocale(locale, myPanel.getFacet(), this);
-      myPanel.reloadData();
+
+      if (!((StringResourceTableModel)table.getModel()).removeLocale(locale)) {
+        myPanel.reloadData();
+      }
     });
 
     JPopupMenu menu = new JBPopupMenu();
@@ -37,13 +37,19 @@ import java.util.Map;
 
 /**
  * Represents a single entry in the translations editor.
+ * <p/>
+ * The values of the entry are only read from the resource repository (and its translatable attribute from PSI) the first
+ * time they are needed, so that the editor can show the keys of a large project right away and only pays for the rows
+ * which are actually looked at.
  */
 public final class StringResource {
   @NotNull
   private final StringResourceKey myKey;
 
-  @NotNull
-  private final String myResourceFolder;
+  @Nullable
+  private String myResourceFolder;
+
+  private boolean myLoaded;
 
   private boolean myTranslatable;
 
@@ -60,12 +66,25 @@ public final class StringResource {
   private final Project myProject;
 
   public StringResource(@NotNull StringResourceKey key, @NotNull StringResourceRepository repository, @NotNull Project project) {
+    myKey = key;
+    myDefaultValue = new ResourceItemEntry();
+    myLocaleToTranslationMap = new HashMap<>();
+    myRepository = repository;
+    myProject = project;
+  }
+
+  /**
+   * Reads the values of this entry from the repository, unless that has already been done.
+   */
+  private void load() {
+    if (myLoaded) {
+      return;
+    }
+
     boolean translatable = true;
-    ResourceItemEntry defaultValue = new ResourceItemEntry();
-    Map<Locale, ResourceItemEntry> localeToTranslationMap = new HashMap<>();
 
-    for (ResourceItem item : repository.getItems(key)) {
-      XmlTag tag = LocalResourceRepository.getItemTag(project, item);
+    for (ResourceItem item : myRepository.getItems(myKey)) {
+      XmlTag tag = LocalResourceRepository.getItemTag(myProject, item);
 
       if (tag != null && "false".equals(tag.getAttributeValue(SdkConstants.ATTR_TRANSLATABLE))) {
         translatable = false;
@@ -74,23 +93,15 @@ public final class StringResource {
       LocaleQualifier qualifier = item.getConfiguration().getLocaleQualifier();
 
       if (qualifier == null) {
-        defaultValue = new ResourceItemEntry(item);
+        myDefaultValue = new ResourceItemEntry(item);
       }
       else {
-        localeToTranslationMap.put(Locale.create(qualifier), new ResourceItemEntry(item));
+        myLocaleToTranslationMap.put(Locale.create(qualifier), new ResourceItemEntry(item));
       }
     }
 
-    myKey = key;
-
-    VirtualFile folder = key.getDirectory();
-    myResourceFolder = folder == null ? "" : VirtualFiles.toString(folder, project);
-
     myTranslatable = translatable;
-    myDefaultValue = defaultValue;
-    myLocaleToTranslationMap = localeToTranslationMap;
-    myRepository = repository;
-    myProject = project;
+    myLoaded = true;
   }
 
   @NotNull
@@ -100,20 +111,29 @@ public final class StringResource {
 
   @NotNull
   public String getResourceFolder() {
+    if (myResourceFolder == null) {
+      VirtualFile folder = myKey.getDirectory();
+      myResourceFolder = folder == null ? "" : VirtualFiles.toString(folder, myProject);
+    }
+
     return myResourceFolder;
   }
 
   @Nullable
   ResourceItem getDefaultValueAsResourceItem() {
+    load();
     return myDefaultValue.myResourceItem;
   }
 
   @NotNull
   public String getDefaultValueAsString() {
+    load();
     return myDefaultValue.myString;
   }
 
   public boolean setDefaultValue(@NotNull String defaultValue) {
+    load();
+
     if (myDefaultValue.myResourceItem == null) {
       ResourceItem item = createDefaultValue(defaultValue);
 
@@ -165,6 +185,8 @@ public final class StringResource {
 
   @Nullable
   public String validateDefaultValue() {
+    load();
+
     if (myDefaultValue.myResourceItem == null) {
       return "Key \"" + myKey.getName() + "\" is missing its default value";
     }
@@ -177,21 +199,25 @@ public final class StringResource {
   }
 
   public boolean isTranslatable() {
+    load();
     return myTranslatable;
   }
 
   public void setTranslatable(boolean translatable) {
+    load();
     myTranslatable = translatable;
   }
 
   @Nullable
   ResourceItem getTranslationAsResourceItem(@NotNull Locale locale) {
+    load();
     ResourceItemEntry resourceItemEntry = myLocaleToTranslationMap.get(locale);
     return resourceItemEntry == null ? null : resourceItemEntry.myResourceItem;
   }
 
   @NotNull
   public String getTranslationAsString(@NotNull Locale locale) {
+    load();
     ResourceItemEntry resourceItemEntry = myLocaleToTranslationMap.get(locale);
     return resourceItemEntry == null ? "" : resourceItemEntry.myString;
   }
@@ -251,6 +277,8 @@ public final class StringResource {
 
   @Nullable
   public String validateTranslation(@NotNull Locale locale) {
+    load();
+
     ResourceItemEntry entry = myLocaleToTranslationMap.get(locale);
 
     if (entry != null && !entry.myStringValid) {
@@ -271,10 +299,13 @@ public final class StringResource {
 
   @NotNull
   Collection<Locale> getTranslatedLocales() {
+    load();
     return myLocaleToTranslationMap.keySet();
   }
 
   boolean isTranslationMissing(@NotNull Locale locale) {
+    load();
+
     ResourceItemEntry item = myLocaleToTranslationMap.get(locale);
 
     if (isTranslationMissing(item) && locale.hasRegion()) {
@@ -18,12 +18,15 @@ package com.android.tools.idea.editors.strings;
 import com.android.SdkConstants;
 import com.android.annotations.VisibleForTesting;
 import com.android.ide.common.res2.ResourceItem;
+import com.android.ide.common.resources.configuration.LocaleQualifier;
 import com.android.tools.idea.configurations.LocaleMenuAction;
 import com.android.tools.idea.rendering.Locale;
 import com.android.tools.idea.res.LocalResourceRepository;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiField;
@@ -40,19 +43,118 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+/**
+ * The string resources shown by the translations editor. The keys and locales are known up front, the values of each
+ * {@link StringResource} are only read when first accessed.
+ * <p/>
+ * Edits made from the editor itself (added and removed keys, renamed keys, added and removed locales) are applied to the
+ * data in place, see {@link #addKey}, {@link #updateKeys}, {@link #changeKeyName} and {@link #removeLocale}, so that the
+ * editor doesn't have to reload every key.
+ */
 public class StringResourceData {
   private final AndroidFacet myFacet;
+  private final StringResourceRepository myRepository;
   private final Map<StringResourceKey, StringResource> myKeyToResourceMap;
+  private final List<StringResourceKey> myKeys;
+  private final List<StringResourceKey> myUnmodifiableKeys;
+  private final Set<Locale> myLocales;
+
+  StringResourceData(@NotNull AndroidFacet facet,
+                     @NotNull StringResourceRepository repository,
+                     @NotNull Collection<StringResourceKey> keys,
+                     @NotNull Set<Locale> locales) {
+    Project project = facet.getModule().getProject();
 
-  public StringResourceData(@NotNull AndroidFacet facet,
-                            @NotNull Map<StringResourceKey, StringResource> keyToResourceMap) {
     myFacet = facet;
-    myKeyToResourceMap = keyToResourceMap;
+    myRepository = repository;
+    myKeyToResourceMap = Maps.newLinkedHashMapWithExpectedSize(keys.size());
+    myKeys = new ArrayList<>(keys);
+    myUnmodifiableKeys = Collections.unmodifiableList(myKeys);
+    myLocales = new HashSet<>(locales);
+
+    for (StringResourceKey key : keys) {
+      myKeyToResourceMap.put(key, new StringResource(key, repository, project));
+    }
+  }
+
+  /**
+   * Adds a key which was added to the resources after this data was created, so that the editor doesn't have to reload
+   * everything. Returns false if the repository doesn't know the key (yet), in which case nothing is added.
+   */
+  public boolean addKey(@NotNull StringResourceKey key) {
+    if (myKeyToResourceMap.containsKey(key)) {
+      return true;
+    }
+
+    myRepository.sync(key);
+
+    if (myRepository.getItems(key).isEmpty()) {
+      return false;
+    }
+
+    myKeyToResourceMap.put(key, new StringResource(key, myRepository, myFacet.getModule().getProject()));
+    myKeys.add(key);
+    addLocales(key);
+    return true;
+  }
+
+  /**
+   * Rereads keys whose resources changed after this data was created, e.g. because they were deleted or translated to a
+   * new locale. Keys which no longer exist are removed, the locales of the others are added to the locale set. The values
+   * of the keys are read again the next time they are accessed.
+   */
+  public void updateKeys(@NotNull Collection<StringResourceKey> keys) {
+    Project project = myFacet.getModule().getProject();
+    Set<StringResourceKey> removedKeys = new HashSet<>();
+
+    for (StringResourceKey key : keys) {
+      if (!myKeyToResourceMap.containsKey(key)) {
+        continue;
+      }
+
+      myRepository.sync(key);
+
+      if (myRepository.getItems(key).isEmpty()) {
+        myKeyToResourceMap.remove(key);
+        removedKeys.add(key);
+      }
+      else {
+        myKeyToResourceMap.put(key, new StringResource(key, myRepository, project));
+        addLocales(key);
+      }
+    }
+
+    if (!removedKeys.isEmpty()) {
+      myKeys.removeIf(removedKeys::contains);
+    }
+  }
+
+  /**
+   * Removes a locale whose translations were deleted after this data was created. Keys which were only defined in that
+   * locale are removed, the values of the others are read again the next time they are accessed.
+   */
+  public void removeLocale(@NotNull Locale locale) {
+    myLocales.remove(locale);
+    updateKeys(new ArrayList<>(myKeys));
   }
 
-  public void changeKeyName(@NotNull StringResourceKey key, @NotNull String newName) {
+  private void addLocales(@NotNull StringResourceKey key) {
+    // Uses the configurations of the items rather than StringResource#getTranslatedLocales so that no PSI is read
+    for (ResourceItem item : myRepository.getItems(key)) {
+      LocaleQualifier qualifier = item.getConfiguration().getLocaleQualifier();
+
+      if (qualifier != null) {
+        myLocales.add(Locale.create(qualifier));
+      }
+    }
+  }
+
+  /**
+   * Renames a key with the rename refactoring. Once the refactoring ran, the key is replaced in place and
+   * {@code onRenamed} is called, unless the refactoring was cancelled.
+   */
+  public void changeKeyName(@NotNull StringResourceKey key, @NotNull String newName, @NotNull Runnable onRenamed) {
     ResourceItem res = getStringResource(key).getDefaultValueAsResourceItem();
     if (res == null) return; // String does not exist in the default locale.
     XmlTag tag = LocalResourceRepository.getItemTag(myFacet.getModule().getProject(), res);
@@ -77,7 +179,44 @@ public class StringResourceData {
       }
     };
 
-    ApplicationManager.getApplication().invokeLater(rename);
+    ApplicationManager.getApplication().invokeLater(() -> {
+      rename.run();
+
+      if (keyRenamed(key, newName) != null) {
+        onRenamed.run();
+      }
+    });
+  }
+
+  /**
+   * Replaces {@code oldKey} by the key it was renamed to, keeping its position. Returns the new key, or null if the
+   * repository doesn't know it, e.g. because the rename was cancelled.
+   */
+  @Nullable
+  @VisibleForTesting
+  StringResourceKey keyRenamed(@NotNull StringResourceKey oldKey, @NotNull String newName) {
+    StringResourceKey newKey = new StringResourceKey(newName, oldKey.getDirectory());
+    myRepository.sync(newKey);
+
+    if (myRepository.getItems(newKey).isEmpty()) {
+      return null;
+    }
+
+    int index = myKeys.indexOf(oldKey);
+    if (myKeyToResourceMap.containsKey(newKey)) {
+      // Renamed to an existing key, whose items now include the ones of the old key
+      myKeys.remove(oldKey);
+    }
+    else if (index >= 0) {
+      myKeys.set(index, newKey);
+    }
+    else {
+      myKeys.add(newKey);
+    }
+
+    myKeyToResourceMap.remove(oldKey);
+    myKeyToResourceMap.put(newKey, new StringResource(newKey, myRepository, myFacet.getModule().getProject()));
+    return newKey;
   }
 
   public boolean setTranslatable(@NotNull StringResourceKey key, boolean translatable) {
@@ -132,8 +271,8 @@ public class StringResourceData {
   @VisibleForTesting
   Collection<Locale> getMissingTranslations(@NotNull StringResourceKey key) {
     Set<Locale> missingTranslations = Sets.newHashSet();
+    StringResource stringResource = getStringResource(key);
     for (Locale locale : getLocaleSet()) {
-      StringResource stringResource = getStringResource(key);
       if (stringResource.isTranslationMissing(locale)) {
         missingTranslations.add(locale);
       }
@@ -202,26 +341,27 @@ public class StringResourceData {
     return myKeyToResourceMap.values();
   }
 
+  /**
+   * Returns the keys in the order of the resource repositories. The list is not a copy: keys added by
+   * {@link #addKey(StringResourceKey)} show up in it.
+   */
   @NotNull
   public List<StringResourceKey> getKeys() {
-    return new ArrayList<>(myKeyToResourceMap.keySet());
+    return myUnmodifiableKeys;
   }
 
   @NotNull
   public List<Locale> getLocaleList() {
-    return getTranslatedLocaleStream()
-      .distinct()
+    return myLocales.stream()
       .sorted(Locale.LANGUAGE_NAME_COMPARATOR)
       .collect(Collectors.toList());
   }
 
+  /**
+   * Returns the locales any of the keys is translated to.
+   */
   @NotNull
   Set<Locale> getLocaleSet() {
-    return getTranslatedLocaleStream().collect(Collectors.toSet());
-  }
-
-  @NotNull
-  private Stream<Locale> getTranslatedLocaleStream() {
-    return myKeyToResourceMap.values().stream().flatMap(resource -> resource.getTranslatedLocales().stream());
+    return Collections.unmodifiableSet(myLocales);
   }
 }
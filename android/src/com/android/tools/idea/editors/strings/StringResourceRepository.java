@@ -26,7 +26,6 @@ import com.android.tools.idea.res.ModuleResourceRepository.EmptyRepository;
 import com.android.tools.idea.res.MultiResourceRepository;
 import com.android.tools.idea.res.ResourceFolderRepository;
 import com.google.common.collect.Maps;
-import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
@@ -96,22 +95,44 @@ public class StringResourceRepository {
     return new StringResourceRepository(repository);
   }
 
+  /**
+   * Returns the keys of the string resources and the locales they are translated to. The values themselves are read
+   * as the {@link StringResource}s are accessed.
+   */
   @NotNull
   public final StringResourceData getData(@NotNull AndroidFacet facet) {
-    Map<StringResourceKey, StringResource> map = new LinkedHashMap<>();
-    Project project = facet.getModule().getProject();
+    Set<StringResourceKey> keys = new LinkedHashSet<>();
 
     myResourceDirectoryRespositoryMap.entrySet().stream()
       .flatMap(StringResourceRepository::getKeys)
-      .forEach(key -> map.put(key, new StringResource(key, this, project)));
+      .forEach(keys::add);
 
     if (myDynamicResourceRepository != null) {
       myDynamicResourceRepository.getItemsOfType(ResourceType.STRING).stream()
         .map(name -> new StringResourceKey(name, null))
-        .forEach(key -> map.put(key, new StringResource(key, this, project)));
+        .forEach(keys::add);
     }
 
-    return new StringResourceData(facet, map);
+    Set<Locale> locales = new HashSet<>();
+
+    for (StringResourceKey key : keys) {
+      for (ResourceItem item : getItems(key)) {
+        LocaleQualifier qualifier = item.getConfiguration().getLocaleQualifier();
+
+        if (qualifier != null) {
+          locales.add(Locale.create(qualifier));
+        }
+      }
+    }
+
+    return new StringResourceData(facet, this, keys, locales);
+  }
+
+  /**
+   * Brings the repository {@code key} belongs to up to date with pending PSI changes.
+   */
+  final void sync(@NotNull StringResourceKey key) {
+    getRepository(key).sync();
   }
 
   @NotNull
@@ -27,6 +27,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.table.AbstractTableModel;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -40,7 +41,7 @@ public class StringResourceTableModel extends AbstractTableModel {
   private final StringResourceRepository myRepository;
   private final StringResourceData myData;
   private final List<StringResourceKey> myKeys;
-  private final List<Locale> myLocales;
+  private List<Locale> myLocales;
 
   StringResourceTableModel() {
     myRepository = StringResourceRepository.create();
@@ -78,6 +79,82 @@ public class StringResourceTableModel extends AbstractTableModel {
     return myKeys;
   }
 
+  /**
+   * Adds a row for a key which was added to the resources after the model was created. Returns false if that isn't
+   * possible and the model needs to be recreated instead.
+   */
+  public boolean addKey(@NotNull StringResourceKey key) {
+    if (myData == null) {
+      return false;
+    }
+
+    int rowCount = getRowCount();
+
+    if (!myData.addKey(key)) {
+      return false;
+    }
+
+    if (updateLocales()) {
+      fireTableStructureChanged();
+    }
+    else if (getRowCount() > rowCount) {
+      fireTableRowsInserted(rowCount, getRowCount() - 1);
+    }
+
+    return true;
+  }
+
+  /**
+   * Updates the rows of keys whose resources changed after the model was created, see
+   * {@link StringResourceData#updateKeys(Collection)}. Returns false if the model needs to be recreated instead.
+   */
+  public boolean updateKeys(@NotNull Collection<StringResourceKey> keys) {
+    if (myData == null) {
+      return false;
+    }
+
+    myData.updateKeys(keys);
+    fireDataChanged();
+    return true;
+  }
+
+  /**
+   * Removes the column of a locale whose translations were deleted after the model was created. Returns false if the model
+   * needs to be recreated instead.
+   */
+  public boolean removeLocale(@NotNull Locale locale) {
+    if (myData == null) {
+      return false;
+    }
+
+    myData.removeLocale(locale);
+    fireDataChanged();
+    return true;
+  }
+
+  private void fireDataChanged() {
+    if (updateLocales()) {
+      fireTableStructureChanged();
+    }
+    else {
+      fireTableDataChanged();
+    }
+  }
+
+  /**
+   * Returns whether the locale columns changed.
+   */
+  private boolean updateLocales() {
+    List<Locale> locales = myData.getLocaleList();
+
+    if (locales.equals(myLocales)) {
+      return false;
+    }
+
+    myLocales = locales;
+    return true;
+  }
+
   @NotNull
   public StringResourceKey getKey(int row) {
     return myKeys.get(row);
@@ -108,7 +185,7 @@ public class StringResourceTableModel extends AbstractTableModel {
         String oldName = getKey(row).getName();
         String newName = (String)value;
         if (!StringUtil.equals(oldName, newName)) {
-          myData.changeKeyName(getKey(row), newName);
+          myData.changeKeyName(getKey(row), newName, this::fireDataChanged);
         }
         break;
       case RESOURCE_FOLDER_COLUMN:
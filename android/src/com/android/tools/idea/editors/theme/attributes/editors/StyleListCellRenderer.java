@@ -78,8 +78,7 @@ public class StyleListCellRenderer extends ColoredListCellRenderer {
     String defaultAppThemeResourceUrl = null;
     final AndroidFacet facet = AndroidFacet.getInstance(myContext.getCurrentContextModule());
     if (facet != null) {
-      MergedManifest info = MergedManifest.get(facet);
-      defaultAppThemeResourceUrl = info.getManifestTheme();
+      defaultAppThemeResourceUrl = MergedManifest.get(facet).getAvailableSnapshot().getManifestTheme();
     }
 
     if (!style.isProjectStyle()) {
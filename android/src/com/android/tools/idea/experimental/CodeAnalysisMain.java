@@ -20,13 +20,16 @@ import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGClass;
 import com.android.tools.idea.experimental.codeanalysis.utils.PsiCFGAnalysisUtil;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.intellij.analysis.AnalysisScope;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.psi.*;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Set;
 
 public class CodeAnalysisMain {
 
@@ -36,6 +39,14 @@ public class CodeAnalysisMain {
 
   private PsiCFGScene mScene;
 
+  //The files the current scene was built from, and the modification counts
+  //of the PSI and of the project roots at the time, to reuse the scene while
+  //none of them changed. The PSI count covers the files out of the scope
+  //and the library classes the scene also parses.
+  private Set<PsiFile> mFiles;
+  private long mPsiModificationCount;
+  private long mRootsModificationCount;
+
   private CodeAnalysisMain(Project project) {
     mProject = project;
   }
@@ -55,11 +66,6 @@ public class CodeAnalysisMain {
   public void analyze(@NotNull AnalysisScope scope) {
 
 //    PsiDocumentManager.getInstance(mProject).commitAllDocuments();
-    //Create a mScene for this project.
-    //Each project has its own mScene.
-    mScene = PsiCFGScene.createFreshInstance(mProject);
-    PsiCFGAnalysisUtil AnalysisUtil = mScene.analysisUtil;
-
     //Get list of java files available in this project
     int fileCount = scope.getFileCount();
     //LOG.info("File count in scope " + fileCount);
@@ -67,6 +73,22 @@ public class CodeAnalysisMain {
     //LOG.info("File count in visitor " + allFilesInScope.length);
     //outputFileNames(allFilesInScope);
 
+    //The graphs of a class refer to the PsiCFGClasses and PsiCFGMethods of
+    //the classes it uses, so they can only be reused all together.
+    Set<PsiFile> files = Sets.newHashSet(allFilesInScope);
+    long psiModificationCount = PsiManager.getInstance(mProject).getModificationTracker().getModificationCount();
+    long rootsModificationCount = ProjectRootManager.getInstance(mProject).getModificationCount();
+    if (mScene != null && mScene == PsiCFGScene.getInstance(mProject) && files.equals(mFiles) &&
+        psiModificationCount == mPsiModificationCount && rootsModificationCount == mRootsModificationCount) {
+      return;
+    }
+    mFiles = null;
+
+    //Create a mScene for this project.
+    //Each project has its own mScene.
+    mScene = PsiCFGScene.createFreshInstance(mProject);
+    PsiCFGAnalysisUtil AnalysisUtil = mScene.analysisUtil;
+
     //Extract all java classes from java files.
     //Consider these classes are application classes.
     //As they are written by developer
@@ -82,6 +104,10 @@ public class CodeAnalysisMain {
     //AnalysisUtil.summarizeStage();
     AnalysisUtil.performStage5();
     AnalysisUtil.performStage6();
+
+    mFiles = files;
+    mPsiModificationCount = psiModificationCount;
+    mRootsModificationCount = rootsModificationCount;
   }
 
   private void outputFileNames(PsiFile[] filesArray) {
@@ -25,18 +25,22 @@ import com.android.tools.idea.experimental.codeanalysis.utils.PsiCFGAnalysisUtil
 import com.android.tools.idea.experimental.codeanalysis.utils.PsiCFGDebugUtil;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.*;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentMap;
 
 /**
  * A class that saves all information of the interprocedural control
  * flow analysis
+ *
+ * The control flow graphs of the application classes are built concurrently,
+ * so the class maps are concurrent and the methods that create and register
+ * new PsiCFGClasses synchronize on the scene.
  */
 public class PsiCFGScene {
   private static ConcurrentMap<Project, PsiCFGScene> instanceMap = Maps.newConcurrentMap();
@@ -51,7 +55,7 @@ public class PsiCFGScene {
 
   private Project mProject;
 
-  protected ArrayList<GraphNode> mInvocationNodes;
+  protected List<GraphNode> mInvocationNodes;
 
   public PsiCFGAnalysisUtil analysisUtil;
 
@@ -72,15 +76,15 @@ public class PsiCFGScene {
   }
 
   private PsiCFGScene(Project proj) {
-    mAppClassNamePsiMap = Maps.newHashMap();
-    mLibraryClassNamePsiMap = Maps.newHashMap();
+    mAppClassNamePsiMap = Maps.newConcurrentMap();
+    mLibraryClassNamePsiMap = Maps.newConcurrentMap();
     mProject = proj;
     analysisUtil = new PsiCFGAnalysisUtil(this);
-    mAppPsiClassPsiCFGClassMap = Maps.newHashMap();
-    mLibraryPsiClassPsiCFGClassMap = Maps.newHashMap();
-    mLambdaPsiCFGClassMap = Maps.newHashMap();
-    mInvocationNodes = Lists.newArrayList();
-    workingList = Queues.newArrayDeque();
+    mAppPsiClassPsiCFGClassMap = Maps.newConcurrentMap();
+    mLibraryPsiClassPsiCFGClassMap = Maps.newConcurrentMap();
+    mLambdaPsiCFGClassMap = Maps.newConcurrentMap();
+    mInvocationNodes = Collections.synchronizedList(Lists.newArrayList());
+    workingList = new ConcurrentLinkedDeque<>();
   }
 
   public void setCallGraph(Callgraph callGraph) {
@@ -144,12 +148,10 @@ public class PsiCFGScene {
    * @return A new array of PsiClass instances which are application classes.
    */
   public PsiClass[] getAllApplicationPsiClasses() {
-    PsiClass[] retArray = new PsiClass[mAppClassNamePsiMap.size()];
-    int i = 0;
-    for (String className : mAppClassNamePsiMap.keySet()) {
-      PsiCFGClass clazzBase = mAppClassNamePsiMap.get(className);
-      retArray[i] = clazzBase.getPsiClass();
-      i++;
+    PsiCFGClass[] appClasses = getAllApplicationClasses();
+    PsiClass[] retArray = new PsiClass[appClasses.length];
+    for (int i = 0; i < appClasses.length; i++) {
+      retArray[i] = appClasses[i].getPsiClass();
     }
     return retArray;
   }
@@ -159,13 +161,7 @@ public class PsiCFGScene {
    * @return A new array of PsiCFGClass instances which are application classes will be returned.
    */
   public PsiCFGClass[] getAllApplicationClasses() {
-    PsiCFGClass[] retArray = new PsiCFGClass[mAppClassNamePsiMap.size()];
-    int i = 0;
-    for (String className : mAppClassNamePsiMap.keySet()) {
-      PsiCFGClass clazzBase = mAppClassNamePsiMap.get(className);
-      retArray[i++] = clazzBase;
-    }
-    return retArray;
+    return mAppClassNamePsiMap.values().toArray(PsiCFGClass.EMPTY_ARRAY);
   }
 
   /**
@@ -181,13 +177,7 @@ public class PsiCFGScene {
    * @return A new array of PsiCFGClass instances which are library classes will be returned.
    */
   public PsiCFGClass[] getAllLibraryClasses() {
-    PsiCFGClass[] retArray = new PsiCFGClass[mLibraryClassNamePsiMap.size()];
-    int i = 0;
-    for (String className : mLibraryClassNamePsiMap.keySet()) {
-      PsiCFGClass clazzBase = mLibraryClassNamePsiMap.get(className);
-      retArray[i++] = clazzBase;
-    }
-    return retArray;
+    return mLibraryClassNamePsiMap.values().toArray(PsiCFGClass.EMPTY_ARRAY);
   }
 
   /**
@@ -196,13 +186,7 @@ public class PsiCFGScene {
    * returned.
    */
   public PsiCFGClass[] getAllLambdaClass() {
-    PsiCFGClass[] retArray = new PsiCFGClass[mLambdaPsiCFGClassMap.size()];
-    int i = 0;
-    for (PsiLambdaExpression lbdExpr : mLambdaPsiCFGClassMap.keySet()) {
-      PsiCFGClass mLbdClass = mLambdaPsiCFGClassMap.get(lbdExpr);
-      retArray[i++] = mLbdClass;
-    }
-    return retArray;
+    return mLambdaPsiCFGClassMap.values().toArray(PsiCFGClass.EMPTY_ARRAY);
   }
 
   /**
@@ -212,16 +196,15 @@ public class PsiCFGScene {
    * @return The PsiCFGClass instance.
    */
   public PsiCFGClass getPsiCFGClass(String name) {
-    if (mAppClassNamePsiMap.containsKey(name)) {
-      return mAppClassNamePsiMap.get(name);
-    }
-    else if (mLibraryClassNamePsiMap.containsKey(name)) {
-      return mLibraryClassNamePsiMap.get(name);
-    }
-    else {
-      //Both two maps does not have this class
+    if (name == null) {
       return null;
     }
+    PsiCFGClass retClass = mAppClassNamePsiMap.get(name);
+    if (retClass == null) {
+      retClass = mLibraryClassNamePsiMap.get(name);
+    }
+    //Null if both two maps does not have this class
+    return retClass;
   }
 
   /**
@@ -231,29 +214,45 @@ public class PsiCFGScene {
    * @return The PsiCFGClass instance.
    */
   public PsiCFGClass getPsiCFGClass(PsiClass psiClazz) {
-    if (mAppPsiClassPsiCFGClassMap.containsKey(psiClazz)) {
-      return mAppPsiClassPsiCFGClassMap.get(psiClazz);
-    }
-    else if (mLibraryPsiClassPsiCFGClassMap.containsKey(psiClazz)) {
-      return mLibraryPsiClassPsiCFGClassMap.get(psiClazz);
-    }
-    else {
-      //Both two maps does not have this class
+    if (psiClazz == null) {
       return null;
     }
+    PsiCFGClass retClass = mAppPsiClassPsiCFGClassMap.get(psiClazz);
+    if (retClass == null) {
+      retClass = mLibraryPsiClassPsiCFGClassMap.get(psiClazz);
+    }
+    //Null if both two maps does not have this class
+    return retClass;
   }
 
   public PsiCFGClass getOrCreateCFGClass(PsiClass psiClazz) {
     PsiCFGClass retClass = getPsiCFGClass(psiClazz);
     if (retClass == null) {
-      retClass = createAndParsePsiCFGClassOnTheFly(psiClazz);
+      synchronized (this) {
+        //Another thread may have created it in the meantime
+        retClass = getPsiCFGClass(psiClazz);
+        if (retClass == null) {
+          retClass = createAndParsePsiCFGClassOnTheFly(psiClazz);
+        }
+      }
     }
     return retClass;
   }
 
-  public PsiCFGClass createPsiCFGClass(PsiClass psiClass,
-                                       PsiFile declaringFile,
-                                       boolean bAppClass) {
+  public synchronized PsiCFGClass createPsiCFGClass(PsiClass psiClass,
+                                                    PsiFile declaringFile,
+                                                    boolean bAppClass) {
+    PsiCFGClass newClass = newPsiCFGClass(psiClass, declaringFile, bAppClass);
+    registerPsiCFGClass(newClass, bAppClass);
+    return newClass;
+  }
+
+  /**
+   * Create the PsiCFGClass without adding it to the class maps.
+   */
+  private static PsiCFGClass newPsiCFGClass(PsiClass psiClass,
+                                            PsiFile declaringFile,
+                                            boolean bAppClass) {
     String fullClassName = psiClass.getQualifiedName();
     if (fullClassName == null) {
       //TODO: Local or anonymous class
@@ -262,32 +261,24 @@ public class PsiCFGScene {
       throw new RuntimeException(String.format("Class %s does not have a full name",
                                                psiClass.getText()));
     }
-    if (!psiClass.isInterface()) {
-      PsiCFGClass newClass = new PsiCFGClass(psiClass, declaringFile);
-      if (bAppClass) {
-        mAppClassNamePsiMap.put(fullClassName, newClass);
-        mAppPsiClassPsiCFGClassMap.put(psiClass, newClass);
-      }
-      else {
-        mLibraryClassNamePsiMap.put(fullClassName, newClass);
-        mLibraryPsiClassPsiCFGClassMap.put(psiClass, newClass);
-        newClass.setLibraryClass();
-      }
-      return newClass;
+    PsiCFGClass newClass = new PsiCFGClass(psiClass, declaringFile);
+    if (psiClass.isInterface()) {
+      newClass.setIsInterface(true);
+    }
+    if (!bAppClass) {
+      newClass.setLibraryClass();
+    }
+    return newClass;
+  }
+
+  private void registerPsiCFGClass(PsiCFGClass cfgClass, boolean bAppClass) {
+    if (bAppClass) {
+      mAppClassNamePsiMap.put(cfgClass.getQualifiedClassName(), cfgClass);
+      mAppPsiClassPsiCFGClassMap.put(cfgClass.getPsiClass(), cfgClass);
     }
     else {
-      PsiCFGClass newInterface = new PsiCFGClass(psiClass, declaringFile);
-      newInterface.setIsInterface(true);
-      if (bAppClass) {
-        mAppClassNamePsiMap.put(fullClassName, newInterface);
-        mAppPsiClassPsiCFGClassMap.put(psiClass, newInterface);
-      }
-      else {
-        mLibraryClassNamePsiMap.put(fullClassName, newInterface);
-        mLibraryPsiClassPsiCFGClassMap.put(psiClass, newInterface);
-        newInterface.setLibraryClass();
-      }
-      return newInterface;
+      mLibraryClassNamePsiMap.put(cfgClass.getQualifiedClassName(), cfgClass);
+      mLibraryPsiClassPsiCFGClassMap.put(cfgClass.getPsiClass(), cfgClass);
     }
   }
 
@@ -304,7 +295,7 @@ public class PsiCFGScene {
    * @param psiClass
    * @return
    */
-  public PsiCFGClass createAndParsePsiCFGClassOnTheFly(PsiClass psiClass) {
+  public synchronized PsiCFGClass createAndParsePsiCFGClassOnTheFly(PsiClass psiClass) {
     //Sanity check. Make sure the psiClass param is really not in side the App classes.
     if (mAppPsiClassPsiCFGClassMap.containsKey(psiClass)) {
       //Not expected. Print a log
@@ -326,22 +317,30 @@ public class PsiCFGScene {
   }
 
   /**
+   * The classes are parsed before they are added to the class maps, so that
+   * threads looking them up without holding the lock never see a class
+   * without its fields and methods.
    * @param clazz
    * @return
    */
-  public PsiCFGClass createLibraryCFGClassesWInnerClasses(PsiClass clazz) {
+  public synchronized PsiCFGClass createLibraryCFGClassesWInnerClasses(PsiClass clazz) {
     ArrayList<PsiClass> classList = Lists.newArrayList();
     retriveClassAndInnerClass(classList, clazz);
     classList.remove(clazz);
-    PsiCFGClass retVal = createPsiCFGClass(clazz, null, false);
+    PsiCFGClass retVal = newPsiCFGClass(clazz, null, false);
     analysisUtil.parseFields(retVal);
     analysisUtil.parseMethods(retVal);
+    ArrayList<PsiCFGClass> innerCFGClasses = Lists.newArrayList();
     for (PsiClass curClassRef : classList) {
-      PsiCFGClass curCFGClass = createPsiCFGClass(curClassRef, null, false);
+      PsiCFGClass curCFGClass = newPsiCFGClass(curClassRef, null, false);
       analysisUtil.parseFields(curCFGClass);
       analysisUtil.parseMethods(curCFGClass);
+      innerCFGClasses.add(curCFGClass);
+    }
+    registerPsiCFGClass(retVal, false);
+    for (PsiCFGClass curCFGClass : innerCFGClasses) {
+      registerPsiCFGClass(curCFGClass, false);
     }
-    retVal.setLibraryClass();
     return retVal;
   }
 
@@ -358,7 +357,7 @@ public class PsiCFGScene {
   }
 
 
-  public PsiCFGClass getOrCreateNestedClass(PsiClass nestedClass,
+  public synchronized PsiCFGClass getOrCreateNestedClass(PsiClass nestedClass,
                                             PsiCFGClass parentCFGClass,
                                             PsiCFGMethod declaringMethod,
                                             BlockGraph declaringBlock) {
@@ -380,14 +379,14 @@ public class PsiCFGScene {
 
     parentCFGClass.addNestedInnerClass(currentNestedCFGClass, className);
 
-    workingList.addLast(currentNestedCFGClass);
+    analysisUtil.parseFields(currentNestedCFGClass);
+    analysisUtil.parseMethods(currentNestedCFGClass);
 
     this.mAppPsiClassPsiCFGClassMap.put(nestedClass, currentNestedCFGClass);
     this.mAppClassNamePsiMap
       .put(currentNestedCFGClass.getQualifiedClassName(), currentNestedCFGClass);
 
-    analysisUtil.parseFields(currentNestedCFGClass);
-    analysisUtil.parseMethods(currentNestedCFGClass);
+    workingList.addLast(currentNestedCFGClass);
 
     return currentNestedCFGClass;
   }
@@ -403,13 +402,16 @@ public class PsiCFGScene {
     PsiCFGClass wrapperClass = new PsiCFGClass(null, declearingClass.getDeclearingFile());
     wrapperClass.setAnonlymous();
     wrapperClass.setLambdaRef(lambdaExpress);
-    //parentInterfaceCFGClass.addLambda(wrapperClass);
-    declearingClass.addLambda(wrapperClass);
     wrapperClass.setDirectOverride(parentInterfaceCFGClass);
 
     PsiCFGMethod wrapperMethod = new PsiCFGMethod(lambdaExpress, overridedMethod, wrapperClass);
     wrapperClass.addMethod(wrapperMethod);
-    mLambdaPsiCFGClassMap.put(lambdaExpress, wrapperClass);
+    synchronized (this) {
+      //parentInterfaceCFGClass.addLambda(wrapperClass);
+      declearingClass.addLambda(wrapperClass);
+      mLambdaPsiCFGClassMap.put(lambdaExpress, wrapperClass);
+    }
+    //Building the graph of the lambda body does not need the lock
     CFGUtil.constructMethodGraphForLambda(this, wrapperMethod);
     return wrapperClass;
   }
@@ -27,9 +27,14 @@ import com.android.tools.idea.experimental.codeanalysis.datastructs.stmt.Stmt;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.value.*;
 import com.android.tools.idea.experimental.codeanalysis.utils.PsiCFGAnalysisUtil;
 import com.android.tools.idea.experimental.codeanalysis.utils.PsiCFGDebugUtil;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Pair;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiClassType;
@@ -37,13 +42,19 @@ import com.intellij.psi.PsiType;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A call graph builder.
  * It based on the results of the intraprocedural CFG
  * generated in stage 3.
+ *
+ * The targets of the invocation sites are resolved concurrently,
+ * the edges are then added to the call graph on the calling thread.
  */
 public class CallgraphBuilder {
 
@@ -53,14 +64,19 @@ public class CallgraphBuilder {
 
   protected Callgraph mCallGraphInstance;
 
-  protected Map<Pair<PsiCFGClass, PsiCFGPartialMethodSignature>, Set<PsiCFGMethod>> mMethodOrderTreeMap;
+  //Concrete methods in the cone (the class and all its sub classes) of a class
+  protected ConcurrentMap<Pair<PsiCFGClass, PsiCFGPartialMethodSignature>, Set<PsiCFGMethod>> mMethodOrderTreeMap;
+
+  //CHA targets of a virtual invocation, by receiver class and method signature
+  protected ConcurrentMap<Pair<PsiCFGClass, PsiCFGPartialMethodSignature>, List<PsiCFGMethod>> mCHATargetsMap;
 
   public PsiCFGClass JAVA_LANG_OBJECT;
 
   public CallgraphBuilder(@NotNull PsiCFGScene scene, @NotNull PsiCFGAnalysisUtil analysisUtil) {
     this.mScene = scene;
     this.mAnalysisUtil = analysisUtil;
-    this.mMethodOrderTreeMap = Maps.newHashMap();
+    this.mMethodOrderTreeMap = Maps.newConcurrentMap();
+    this.mCHATargetsMap = Maps.newConcurrentMap();
     JAVA_LANG_OBJECT = mScene.getPsiCFGClass("java.lang.Object");
   }
 
@@ -71,10 +87,20 @@ public class CallgraphBuilder {
 
     //Retrive all callsites
 
-    GraphNode[] invocationNodes = mScene.getAllInvocationNode();
-    for (GraphNode invocationNode : invocationNodes) {
+    List<GraphNode> invocationNodes = Arrays.asList(mScene.getAllInvocationNode());
+    Map<GraphNode, List<PsiCFGMethod>> targetsMap = Maps.newConcurrentMap();
+    JobLauncher.getInstance().invokeConcurrentlyUnderProgress(
+      invocationNodes, ProgressManager.getInstance().getProgressIndicator(), true, invocationNode -> {
+        targetsMap.put(invocationNode, ApplicationManager.getApplication().runReadAction(
+          (Computable<List<PsiCFGMethod>>)() -> resolveInvocationTargets(invocationNode)));
+        return true;
+      });
 
-      processSingleInvocation(invocationNode);
+    //The call graph itself is not thread safe
+    for (GraphNode invocationNode : invocationNodes) {
+      for (PsiCFGMethod targetMethod : targetsMap.get(invocationNode)) {
+        addToCallGraph(invocationNode, targetMethod);
+      }
     }
   }
 
@@ -85,6 +111,22 @@ public class CallgraphBuilder {
    *             statement.
    */
   public void processSingleInvocation(GraphNode node) {
+    for (PsiCFGMethod targetMethod : resolveInvocationTargets(node)) {
+      addToCallGraph(node, targetMethod);
+    }
+  }
+
+  /**
+   * Find the target methods of a single invocation site
+   * without changing the call graph.
+   *
+   * @param node The node in CFG that contains an invocation
+   *             statement.
+   * @return The target methods of this invocation.
+   */
+  @NotNull
+  public List<PsiCFGMethod> resolveInvocationTargets(GraphNode node) {
+    List<PsiCFGMethod> targets = Lists.newArrayList();
     Stmt[] stmtWithInvocationArray = node.getStatements();
 
     if (stmtWithInvocationArray.length != 1) {
@@ -92,7 +134,7 @@ public class CallgraphBuilder {
       //For all node that contains invocation
       //there should be only 1 statement
       PsiCFGDebugUtil.LOG.warning("Node contains more than 1 stmt" + node.getSimpleName());
-      return;
+      return targets;
     }
 
     Stmt stmtWithInvocation = stmtWithInvocationArray[0];
@@ -101,11 +143,11 @@ public class CallgraphBuilder {
       Value Rop = ((AssignStmt)stmtWithInvocation).getROp();
       if (Rop instanceof InvokeExpr) {
         //It is a invokeExpr
-        processSingleInvocationWithInvokeWxpr(node, (InvokeExpr)Rop);
+        processSingleInvocationWithInvokeWxpr(targets, (InvokeExpr)Rop);
       }
       else if (Rop instanceof NewExpr) {
         //It is a constructor invocation
-        processSingleInvocationWithConstructorInvoke(node, (NewExpr)Rop);
+        processSingleInvocationWithConstructorInvoke(targets, (NewExpr)Rop);
       }
       else {
         //Unhandled invocation
@@ -113,6 +155,7 @@ public class CallgraphBuilder {
                                     + Rop.getSimpleName());
       }
     }
+    return targets;
   }
 
   /**
@@ -162,7 +205,7 @@ public class CallgraphBuilder {
     }
   }
 
-  public void performCHAForInvocationSite(GraphNode node, PsiType receiverType, PsiCFGMethod targetMethod) {
+  public void performCHAForInvocationSite(List<PsiCFGMethod> targets, PsiType receiverType, PsiCFGMethod targetMethod) {
     //Only Object can perform instance invoke
     if (!(receiverType instanceof PsiClassType)) {
       //The reciever type is not an object
@@ -180,57 +223,72 @@ public class CallgraphBuilder {
         return;
       }
 
+      targets.addAll(getCHATargets(receiverClass, targetMethod.getSignature()));
+    }
+  }
+
+  /**
+   * Return the targets of a virtual invocation of the method with the given signature
+   * on a receiver of the given class. The result is cached as many invocation sites
+   * share the same receiver class and method.
+   */
+  @NotNull
+  public List<PsiCFGMethod> getCHATargets(@NotNull PsiCFGClass receiverClass, PsiCFGPartialMethodSignature signature) {
+    Pair<PsiCFGClass, PsiCFGPartialMethodSignature> keyPair = new Pair<>(receiverClass, signature);
+    List<PsiCFGMethod> targets = mCHATargetsMap.get(keyPair);
+    if (targets == null) {
+      ArrayList<PsiCFGMethod> methodList = Lists.newArrayList();
+
       //Find first concrete method to the top
       //It may not exist
-      PsiCFGPartialMethodSignature methodSignature = targetMethod.getSignature();
-      PsiCFGMethod nearestConcreteMethodFromTop = getNearestConcreteMethod(receiverClass, methodSignature);
+      PsiCFGMethod nearestConcreteMethodFromTop = getNearestConcreteMethod(receiverClass, signature);
       if (nearestConcreteMethodFromTop != null) {
-        addToCallGraph(node, nearestConcreteMethodFromTop);
+        methodList.add(nearestConcreteMethodFromTop);
       }
 
       //Find concrete method to the leaf
-      ArrayList<PsiCFGMethod> methodList = Lists.newArrayList();
-      recursivelyQueryConcreteMethodFromChildrenWithCache(methodList, receiverClass, methodSignature);
-      for (PsiCFGMethod concreteMethodFromSubClass : methodList) {
-        addToCallGraph(node, concreteMethodFromSubClass);
-      }
+      recursivelyQueryConcreteMethodFromChildrenWithCache(methodList, receiverClass, signature);
+
+      targets = ImmutableList.copyOf(methodList);
+      mCHATargetsMap.putIfAbsent(keyPair, targets);
     }
+    return targets;
   }
 
   public void recursivelyQueryConcreteMethodFromChildrenWithCache(
     ArrayList<PsiCFGMethod> methodList, PsiCFGClass receiverClass, PsiCFGPartialMethodSignature signature) {
-    Pair<PsiCFGClass, PsiCFGPartialMethodSignature> keyPair = new Pair<>(receiverClass, signature);
-    if (mMethodOrderTreeMap.containsKey(keyPair)) {
-      methodList.addAll(mMethodOrderTreeMap.get(keyPair));
-    }
-    else {
-      recursivelyQueryConcreteMethodFromChildrenWithOutCache(methodList, receiverClass, signature);
-      mMethodOrderTreeMap.put(keyPair, Sets.newHashSet(methodList));
-    }
+    methodList.addAll(getConcreteMethodsInCone(receiverClass, signature));
   }
 
-  public void recursivelyQueryConcreteMethodFromChildrenWithOutCache(
-    ArrayList<PsiCFGMethod> methodList, PsiCFGClass receiverClass, PsiCFGPartialMethodSignature signature) {
+  /**
+   * Collect the concrete methods with the given signature declared in the class or
+   * any of its sub classes. The cone of every class visited is cached, so the
+   * hierarchy below a class is only walked once per signature.
+   */
+  @NotNull
+  private Set<PsiCFGMethod> getConcreteMethodsInCone(PsiCFGClass receiverClass, PsiCFGPartialMethodSignature signature) {
     Pair<PsiCFGClass, PsiCFGPartialMethodSignature> keyPair = new Pair<>(receiverClass, signature);
-    PsiCFGMethod method = receiverClass.getMethod(signature);
-    if (method != null && (!method.isAbstract())) {
-      methodList.add(method);
-    }
-
-    //Go through sub classes and interfaces
-    for (PsiCFGClass subClass : receiverClass.getSubClassSet()) {
-      if (mMethodOrderTreeMap.containsKey(keyPair)) {
-        methodList.addAll(mMethodOrderTreeMap.get(keyPair));
+    Set<PsiCFGMethod> methodSet = mMethodOrderTreeMap.get(keyPair);
+    if (methodSet == null) {
+      ImmutableSet.Builder<PsiCFGMethod> builder = ImmutableSet.builder();
+      PsiCFGMethod method = receiverClass.getMethod(signature);
+      if (method != null && (!method.isAbstract())) {
+        builder.add(method);
       }
-      else {
-        recursivelyQueryConcreteMethodFromChildrenWithOutCache(methodList, subClass, signature);
+
+      //Go through sub classes and interfaces
+      for (PsiCFGClass subClass : receiverClass.getSubClassSet()) {
+        builder.addAll(getConcreteMethodsInCone(subClass, signature));
       }
+      methodSet = builder.build();
+      mMethodOrderTreeMap.putIfAbsent(keyPair, methodSet);
     }
+    return methodSet;
   }
 
-  public void addInvokeExprWithThisRef(GraphNode node, PsiType thisBaseType, PsiCFGMethod method) {
+  public void addInvokeExprWithThisRef(List<PsiCFGMethod> targets, PsiType thisBaseType, PsiCFGMethod method) {
     if (!method.isAbstract()) {
-      addToCallGraph(node, method);
+      targets.add(method);
     }
     else {
       PsiClassType classType = null;
@@ -265,11 +323,11 @@ public class CallgraphBuilder {
     return null;
   }
 
-  public void processSingleInvocationWithInvokeWxpr(GraphNode node, InvokeExpr invokeExpr) {
+  public void processSingleInvocationWithInvokeWxpr(List<PsiCFGMethod> targets, InvokeExpr invokeExpr) {
 
     if (invokeExpr instanceof StaticInvokeExpr) {
       //Only 1 target
-      addToCallGraph(node, invokeExpr.getMethod());
+      targets.add(invokeExpr.getMethod());
     }
     else if (invokeExpr instanceof InstanceInvokeExpr) {
       InstanceInvokeExpr instanceInvokeExpr = (InstanceInvokeExpr)invokeExpr;
@@ -285,18 +343,18 @@ public class CallgraphBuilder {
       }
 
       if (base instanceof ThisRef) {
-        addInvokeExprWithThisRef(node, baseType, targetMethod);
+        addInvokeExprWithThisRef(targets, baseType, targetMethod);
       }
       else {
-        performCHAForInvocationSite(node, baseType, targetMethod);
+        performCHAForInvocationSite(targets, baseType, targetMethod);
       }
     }
   }
 
-  public void processSingleInvocationWithConstructorInvoke(GraphNode node, NewExpr newExpr) {
+  public void processSingleInvocationWithConstructorInvoke(List<PsiCFGMethod> targets, NewExpr newExpr) {
     PsiCFGMethod constructorMethod = newExpr.getConstructorInvocation();
     if (constructorMethod != null) {
-      addToCallGraph(node, constructorMethod);
+      targets.add(constructorMethod);
     }
     else {
       PsiCFGDebugUtil.LOG.warning("Constructor in New Expr is null: " + newExpr.getSimpleName());
@@ -23,11 +23,16 @@ import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGField;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGMethod;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.graph.MethodGraph;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.graph.node.GraphNode;
+import com.google.common.collect.Lists;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.psi.*;
 import com.intellij.psi.search.GlobalSearchScope;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 public class PsiCFGAnalysisUtil {
@@ -79,6 +84,11 @@ public class PsiCFGAnalysisUtil {
    * The purpose of the Stage3 is create IntraProcedural
    * CFG for the methods and lambdas inside the app
    * class, including the constructor and the init code
+   *
+   * The classes in the working list are processed concurrently,
+   * one class per task. Nested and anonymous classes found while
+   * building the graphs are added to the working list and are
+   * processed in the next round.
    */
   public void performStage3() {
     PsiCFGClass[] appClasses = mScene.getAllApplicationClasses();
@@ -89,29 +99,38 @@ public class PsiCFGAnalysisUtil {
     while (!mScene.workingList.isEmpty()) {
       //While the working list is not empty
       //Process the working list
-      PsiCFGClass currentClass = mScene.workingList.removeFirst();
-      PsiCFGMethod[] allMethods = currentClass.getAllMethods();
+      List<PsiCFGClass> currentRound = Lists.newArrayList(mScene.workingList);
+      mScene.workingList.clear();
+      JobLauncher.getInstance().invokeConcurrentlyUnderProgress(
+        currentRound, ProgressManager.getInstance().getProgressIndicator(), true, currentClass -> {
+          ApplicationManager.getApplication().runReadAction(() -> constructMethodGraphs(currentClass));
+          return true;
+        });
+    }
+  }
 
-      for (PsiCFGMethod currentMethod : allMethods) {
-        //Abstract method does not have a body
-        //Lambda methods' CFG is created by the time it is decleared
-        if (currentMethod.isAbstract() || currentMethod.isLambda()) {
-          continue;
-        }
+  private void constructMethodGraphs(@NotNull PsiCFGClass currentClass) {
+    PsiCFGMethod[] allMethods = currentClass.getAllMethods();
 
-        PsiMethod methodRef = currentMethod.getMethodRef();
-        if (methodRef != null) {
-          PsiCodeBlock codeBlock = methodRef.getBody();
+    for (PsiCFGMethod currentMethod : allMethods) {
+      //Abstract method does not have a body
+      //Lambda methods' CFG is created by the time it is decleared
+      if (currentMethod.isAbstract() || currentMethod.isLambda()) {
+        continue;
+      }
 
-          if (codeBlock == null) {
-            PsiCFGDebugUtil.LOG.info("In " + currentClass.getQualifiedClassName() + "."
-                                     + currentMethod.getName() + "Code block is null");
-            continue;
-          }
+      PsiMethod methodRef = currentMethod.getMethodRef();
+      if (methodRef != null) {
+        PsiCodeBlock codeBlock = methodRef.getBody();
 
-          MethodGraph cfg = CFGUtil.constructMethodGraph(mScene, codeBlock, currentMethod);
-          currentMethod.setControlFlowGraph(cfg);
+        if (codeBlock == null) {
+          PsiCFGDebugUtil.LOG.info("In " + currentClass.getQualifiedClassName() + "."
+                                   + currentMethod.getName() + "Code block is null");
+          continue;
         }
+
+        MethodGraph cfg = CFGUtil.constructMethodGraph(mScene, codeBlock, currentMethod);
+        currentMethod.setControlFlowGraph(cfg);
       }
     }
   }
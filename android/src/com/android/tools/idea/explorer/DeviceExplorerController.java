@@ -19,6 +19,7 @@ import com.android.tools.idea.concurrent.FutureCallbackExecutor;
 import com.android.tools.idea.explorer.adbimpl.AdbPathUtil;
 import com.android.tools.idea.explorer.fs.*;
 import com.android.tools.idea.explorer.ui.TreeUtil;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.utils.FileUtils;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.FutureCallback;
@@ -276,6 +277,23 @@ public class DeviceExplorerController {
     return myEdtExecutor.executeFuturesInSequence(iterator, taskFactory);
   }
 
+  /**
+   * Execute the transfer tasks of a list of entries, where {@code isDirectory} identifies directory entries.
+   * Directory entries are processed in sequence, as each of them transfers its own children, whereas the
+   * other entries are transferred in parallel, using up to {@link StudioFlags#DEVICE_EXPLORER_TRANSFER_CHANNELS}
+   * concurrent transfers.
+   */
+  @NotNull
+  private <T> ListenableFuture<Void> executeTransfers(@NotNull List<T> entries,
+                                                      @NotNull Predicate<T> isDirectory,
+                                                      @NotNull Function<T, ListenableFuture<Void>> taskFactory) {
+    List<T> directories = entries.stream().filter(isDirectory).collect(Collectors.toList());
+    List<T> files = entries.stream().filter(isDirectory.negate()).collect(Collectors.toList());
+    ListenableFuture<Void> futureFiles =
+      myEdtExecutor.executeFuturesInParallel(files.iterator(), taskFactory, StudioFlags.DEVICE_EXPLORER_TRANSFER_CHANNELS.get());
+    return myEdtExecutor.transformAsync(futureFiles, aVoid -> executeFuturesInSequence(directories.iterator(), taskFactory));
+  }
+
   private void startNodeDownload(@NotNull DeviceFileEntryNode node) {
     startNodeTransfer(node, true);
   }
@@ -555,7 +573,7 @@ public class DeviceExplorerController {
 
       return wrapFileTransfer(
         tracker -> addDownloadOperationWork(tracker, treeNodes),
-        tracker -> executeFuturesInSequence(treeNodes.iterator(), treeNode -> {
+        tracker -> executeTransfers(treeNodes, node -> node.getEntry().isDirectory(), treeNode -> {
           Path nodePath = localDirectory.resolve(treeNode.getEntry().getName());
           return downloadSingleNode(treeNode, nodePath, tracker);
         }));
@@ -658,8 +676,25 @@ public class DeviceExplorerController {
     private ListenableFuture<Void> downloadSingleNode(@NotNull DeviceFileEntryNode node,
                                                       @NotNull Path localPath,
                                                       @NotNull FileTransferOperationTracker tracker) {
+      return downloadSingleNode(node, localPath, tracker, null);
+    }
+
+    /**
+     * Download a single node to {@code localPath}.
+     *
+     * @param transferredPaths The set of local paths already transferred by a failed archive download, which are
+     *                         skipped, or {@code null} if no archive download has been attempted yet
+     */
+    @NotNull
+    private ListenableFuture<Void> downloadSingleNode(@NotNull DeviceFileEntryNode node,
+                                                      @NotNull Path localPath,
+                                                      @NotNull FileTransferOperationTracker tracker,
+                                                      @Nullable Set<Path> transferredPaths) {
       if (node.getEntry().isDirectory()) {
-        return downloadSingleDirectory(node, localPath, tracker);
+        return downloadSingleDirectory(node, localPath, tracker, transferredPaths);
+      }
+      else if (transferredPaths != null && transferredPaths.contains(localPath)) {
+        return Futures.immediateFuture(null);
       }
       else {
         return downloadSingleFile(node, localPath, tracker);
@@ -698,31 +733,95 @@ public class DeviceExplorerController {
     private ListenableFuture<Void> downloadSingleDirectory(@NotNull DeviceFileEntryNode treeNode,
                                                            @NotNull Path localDirectoryPath,
                                                            @NotNull FileTransferOperationTracker tracker) {
+      return downloadSingleDirectory(treeNode, localDirectoryPath, tracker, null);
+    }
+
+    @NotNull
+    private ListenableFuture<Void> downloadSingleDirectory(@NotNull DeviceFileEntryNode treeNode,
+                                                           @NotNull Path localDirectoryPath,
+                                                           @NotNull FileTransferOperationTracker tracker,
+                                                           @Nullable Set<Path> transferredPaths) {
       assert treeNode.getEntry().isDirectory() || treeNode.isSymbolicLinkToDirectory();
       if (tracker.isCancelled()) {
         return Futures.immediateCancelledFuture();
       }
-      tracker.processDirectory();
 
-      // Ensure directory is created locally
-      try {
-        FileUtils.mkdirs(localDirectoryPath.toFile());
+      // Directories extracted from a previous archive download have already been accounted for
+      if (transferredPaths == null || !transferredPaths.contains(localDirectoryPath)) {
+        tracker.processDirectory();
+
+        // Ensure directory is created locally
+        try {
+          FileUtils.mkdirs(localDirectoryPath.toFile());
+        }
+        catch (Exception e) {
+          return Futures.immediateFailedFuture(e);
+        }
+        tracker.getSummary().addDirectoryCount(1);
       }
-      catch (Exception e) {
-        return Futures.immediateFailedFuture(e);
+
+      // Try downloading the whole directory as a single archive, which is much faster than
+      // transferring entries one by one when there are many small files.
+      if (transferredPaths == null &&
+          treeNode.getEntry().isDirectory() &&
+          StudioFlags.DEVICE_EXPLORER_ARCHIVE_DOWNLOAD_ENABLED.get()) {
+        return downloadDirectoryArchive(treeNode, localDirectoryPath, tracker);
       }
-      tracker.getSummary().addDirectoryCount(1);
 
+      Set<Path> skippedPaths = transferredPaths == null ? new HashSet<>() : transferredPaths;
+      return downloadDirectoryChildren(treeNode, localDirectoryPath, tracker, skippedPaths);
+    }
+
+    @NotNull
+    private ListenableFuture<Void> downloadDirectoryArchive(@NotNull DeviceFileEntryNode treeNode,
+                                                            @NotNull Path localDirectoryPath,
+                                                            @NotNull FileTransferOperationTracker tracker) {
+      DeviceFileEntry entry = treeNode.getEntry();
+      startNodeDownload(treeNode);
+      ArchiveDownloadProgress progress = new ArchiveDownloadProgress(tracker);
+      ListenableFuture<Void> futureArchive = entry.downloadDirectoryArchive(localDirectoryPath, progress);
+      myEdtExecutor.addListener(futureArchive, () -> stopNodeDownload(treeNode));
+      logFuture(futureArchive, millis -> String.format("Downloaded directory archive in %,d msec: %s", millis, entry.getFullPath()));
+
+      SettableFuture<Void> futureResult = SettableFuture.create();
+      myEdtExecutor.addConsumer(futureArchive, (aVoid, throwable) -> {
+        if (throwable == null || tracker.isCancelled()) {
+          futureResult.set(null);
+          return;
+        }
+
+        // Resume with a download of individual entries, skipping the ones the archive already contained. The entry
+        // that was being extracted is downloaded again, so the progress made on it so far doesn't count.
+        LOGGER.info(String.format("Archive download of directory %s failed, downloading entries individually", entry.getFullPath()),
+                    throwable);
+        tracker.processFileBytes(-progress.getPartialEntryBytes());
+        ListenableFuture<Void> futureChildren =
+          downloadDirectoryChildren(treeNode, localDirectoryPath, tracker, progress.getTransferredPaths());
+        myEdtExecutor.addListener(futureChildren, () -> futureResult.set(null));
+      });
+      return futureResult;
+    }
+
+    @NotNull
+    private ListenableFuture<Void> downloadDirectoryChildren(@NotNull DeviceFileEntryNode treeNode,
+                                                             @NotNull Path localDirectoryPath,
+                                                             @NotNull FileTransferOperationTracker tracker,
+                                                             @NotNull Set<Path> transferredPaths) {
       SettableFuture<Void> futureResult = SettableFuture.create();
 
-      ListenableFuture<Void> futureLoadChildren = loadNodeChildren(treeNode);
+      // Load the nodes of the whole directory tree at once if possible, so that sub-directories are already loaded
+      ListenableFuture<Boolean> futureLoadDescendants =
+        treeNode.isLoaded() ? Futures.immediateFuture(false) : loadNodeDescendants(treeNode, false);
+      ListenableFuture<Void> futureLoadChildren =
+        myEdtExecutor.transformAsync(futureLoadDescendants, loaded -> loadNodeChildren(treeNode));
       myEdtExecutor.addCallback(futureLoadChildren, new FutureCallback<Void>() {
         @Override
         public void onSuccess(@Nullable Void result) {
-          ListenableFuture<Void> futureDownloadChildren = executeFuturesInSequence(treeNode.getChildEntryNodes().iterator(), node -> {
-            Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
-            return downloadSingleNode(node, nodePath, tracker);
-          });
+          ListenableFuture<Void> futureDownloadChildren =
+            executeTransfers(treeNode.getChildEntryNodes(), node -> node.getEntry().isDirectory(), node -> {
+              Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
+              return downloadSingleNode(node, nodePath, tracker, transferredPaths);
+            });
           myEdtExecutor.addConsumer(futureDownloadChildren, (aVoid, throwable) -> {
             if (throwable != null) {
               tracker.addProblem(throwable);
@@ -741,6 +840,59 @@ public class DeviceExplorerController {
       return futureResult;
     }
 
+    /**
+     * Reports the progress of a directory archive download to the tracker, and remembers what was extracted so far in
+     * case the download has to be resumed entry by entry.
+     */
+    private final class ArchiveDownloadProgress implements DirectoryTransferProgress {
+      @NotNull private final FileTransferOperationTracker myTracker;
+      @NotNull private final Set<Path> myTransferredPaths = new HashSet<>();
+      private long myPreviousBytes;
+      private long myTransferredFileBytes;
+
+      private ArchiveDownloadProgress(@NotNull FileTransferOperationTracker tracker) {
+        myTracker = tracker;
+      }
+
+      @NotNull
+      public Set<Path> getTransferredPaths() {
+        return myTransferredPaths;
+      }
+
+      /**
+       * Returns the number of bytes reported for the file being extracted, which are not part of any transferred file.
+       */
+      public long getPartialEntryBytes() {
+        return Math.max(0, myPreviousBytes - myTransferredFileBytes);
+      }
+
+      @Override
+      public void entryTransferred(@NotNull Path localPath, boolean isDirectory, long byteCount) {
+        myTransferredPaths.add(localPath);
+        if (isDirectory) {
+          myTracker.processDirectory();
+          myTracker.getSummary().addDirectoryCount(1);
+        }
+        else {
+          myTransferredFileBytes += byteCount;
+          myTracker.processFile();
+          myTracker.getSummary().addFileCount(1);
+          myTracker.getSummary().addByteCount(byteCount);
+        }
+      }
+
+      @Override
+      public void progress(long currentBytes, long totalBytes) {
+        myTracker.processFileBytes(currentBytes - myPreviousBytes);
+        myPreviousBytes = currentBytes;
+      }
+
+      @Override
+      public boolean isCancelled() {
+        return myTracker.isCancelled();
+      }
+    }
+
     @Override
     public void copyNodePathsInvoked(@NotNull List<DeviceFileEntryNode> treeNodes) {
       String text = treeNodes.stream().map(x -> x.getEntry().getFullPath()).collect(Collectors.joining("\n"));
@@ -1033,13 +1185,42 @@ public class DeviceExplorerController {
                                                       @NotNull FileTransferOperationTracker tracker) {
       // Upload each file
       ListenableFuture<Void> futureUploadFiles =
-        executeFuturesInSequence(files.iterator(), file -> uploadVirtualFile(parentNode, file, tracker));
+        executeTransfers(files, VirtualFile::isDirectory, file -> uploadVirtualFile(parentNode, file, tracker));
 
-      // Refresh children nodes
-      return myEdtExecutor.transformAsync(futureUploadFiles, aVoid -> {
+      // Refresh children nodes, then the nodes of the uploaded directory trees, with a single listing of each tree
+      // if possible
+      ListenableFuture<Void> futureLoadChildren = myEdtExecutor.transformAsync(futureUploadFiles, aVoid -> {
         parentNode.setLoaded(false);
         return loadNodeChildren(parentNode);
       });
+      return myEdtExecutor.transformAsync(futureLoadChildren, aVoid -> {
+        List<DeviceFileEntryNode> directoryNodes = files.stream()
+          .filter(VirtualFile::isDirectory)
+          .map(x -> parentNode.findChildEntry(x.getName()))
+          .filter(Objects::nonNull)
+          .collect(Collectors.toList());
+        return executeFuturesInSequence(directoryNodes.iterator(), this::reloadNodeDescendants);
+      });
+    }
+
+    @NotNull
+    private ListenableFuture<Void> reloadNodeDescendants(@NotNull DeviceFileEntryNode node) {
+      ListenableFuture<Boolean> futureLoadDescendants = loadNodeDescendants(node, true);
+      return myEdtExecutor.transformAsync(futureLoadDescendants, loaded -> loaded ? Futures.immediateFuture(null)
+                                                                                  : reloadLoadedNodes(node));
+    }
+
+    /**
+     * Reloads {@code node} and its descendants one directory at a time, skipping the nodes that were never loaded.
+     */
+    @NotNull
+    private ListenableFuture<Void> reloadLoadedNodes(@NotNull DeviceFileEntryNode node) {
+      if (!node.isLoaded()) {
+        return Futures.immediateFuture(null);
+      }
+      node.setLoaded(false);
+      return myEdtExecutor.transformAsync(loadNodeChildren(node), aVoid ->
+        executeFuturesInSequence(node.getChildEntryNodes().iterator(), this::reloadLoadedNodes));
     }
 
     @NotNull
@@ -1098,7 +1279,9 @@ public class DeviceExplorerController {
             List<VirtualFile> childFiles = Arrays.stream(file.getChildren())
               .filter(x -> !x.getName().startsWith("."))
               .collect(Collectors.toList());
-            ListenableFuture<Void> futureFileUploads = uploadVirtualFiles(childNode, childFiles, tracker);
+            // Note: The nodes of the directory are refreshed once the whole tree is uploaded
+            ListenableFuture<Void> futureFileUploads =
+              executeTransfers(childFiles, VirtualFile::isDirectory, x -> uploadVirtualFile(childNode, x, tracker));
             myEdtExecutor.addListener(futureFileUploads, () -> futureResult.set(null));
           }
 
@@ -1429,31 +1612,7 @@ public class DeviceExplorerController {
             return;
           }
 
-          // Save selection
-          TreePath[] oldSelections = treeSelectionModel.getSelectionPaths();
-
-          // Collect existing entries that have the "isLinkToDirectory" property set
-          Set<String> isLinkToDirectory = node.getChildEntryNodes().stream()
-            .filter(DeviceFileEntryNode::isSymbolicLinkToDirectory)
-            .map(x -> x.getEntry().getName())
-            .collect(Collectors.toSet());
-
-          // Sort new entries according to presentation sort order
-          Comparator<DeviceFileEntry> comparator = NodeSorting.getCustomComparator(
-            DeviceFileEntry::getName,
-            x -> x.isDirectory() || isLinkToDirectory.contains(x.getName()));
-          result.sort(comparator);
-
-          List<DeviceFileEntryNode> addedNodes = updateChildrenNodes(treeModel, node, result);
-
-          // Restore selection
-          restoreTreeSelection(treeSelectionModel, oldSelections, node);
-
-          List<DeviceFileEntryNode> symlinkNodes = addedNodes
-            .stream()
-            .filter(x -> x.getEntry().isSymbolicLink())
-            .collect(Collectors.toList());
-          querySymbolicLinks(symlinkNodes, treeModel);
+          setNodeChildren(treeModel, treeSelectionModel, node, result);
         }
 
         @Override
@@ -1476,6 +1635,102 @@ public class DeviceExplorerController {
       return myEdtExecutor.transform(futureEntries, entries -> null);
     }
 
+    /**
+     * Lists all the entries below {@code node} with a single operation on the device, if the file system supports it,
+     * and loads the nodes of all the sub-directories that are not loaded yet from that listing. This saves transfers
+     * of whole directories from listing each sub-directory separately. If {@code reload} is {@code true}, the nodes
+     * that are already loaded are updated with the listing too. The future value is {@code false} if the nodes could
+     * not be loaded that way, in which case they have to be loaded one directory at a time.
+     */
+    @NotNull
+    private ListenableFuture<Boolean> loadNodeDescendants(@NotNull DeviceFileEntryNode node, boolean reload) {
+      DefaultTreeModel treeModel = getTreeModel();
+      DefaultTreeSelectionModel treeSelectionModel = getTreeSelectionModel();
+      if (treeModel == null || treeSelectionModel == null || !node.getEntry().isDirectory()) {
+        return Futures.immediateFuture(false);
+      }
+
+      DeviceFileSystem fileSystem = myModel.getActiveDevice();
+      if (!Objects.equals(fileSystem, node.getEntry().getFileSystem())) {
+        return Futures.immediateFuture(false);
+      }
+
+      ListenableFuture<List<DeviceFileEntry>> futureAllEntries =
+        myEdtExecutor.catching(node.getEntry().getEntriesRecursive(), Exception.class, t -> null);
+      return myEdtExecutor.transform(futureAllEntries, allEntries -> {
+        if (allEntries == null || !Objects.equals(treeModel, getTreeModel())) {
+          return false;
+        }
+
+        // Group the entries by directory, including the directories that are empty
+        Map<String, List<DeviceFileEntry>> entriesByDirectory = new HashMap<>();
+        entriesByDirectory.put(node.getEntry().getFullPath(), new ArrayList<>());
+        for (DeviceFileEntry entry : allEntries) {
+          DeviceFileEntry parent = entry.getParent();
+          if (parent != null) {
+            entriesByDirectory.computeIfAbsent(parent.getFullPath(), key -> new ArrayList<>()).add(entry);
+          }
+          if (entry.isDirectory()) {
+            entriesByDirectory.computeIfAbsent(entry.getFullPath(), key -> new ArrayList<>());
+          }
+        }
+        loadNodeDescendants(treeModel, treeSelectionModel, node, entriesByDirectory, reload);
+        return true;
+      });
+    }
+
+    private void loadNodeDescendants(@NotNull DefaultTreeModel treeModel,
+                                     @NotNull DefaultTreeSelectionModel treeSelectionModel,
+                                     @NotNull DeviceFileEntryNode node,
+                                     @NotNull Map<String, List<DeviceFileEntry>> entriesByDirectory,
+                                     boolean reload) {
+      if (reload || !node.isLoaded()) {
+        List<DeviceFileEntry> entries = entriesByDirectory.get(node.getEntry().getFullPath());
+        if (entries == null) {
+          // Not part of the listing, e.g. a symbolic link to a directory
+          return;
+        }
+        node.setLoaded(true);
+        setNodeChildren(treeModel, treeSelectionModel, node, entries);
+      }
+      for (DeviceFileEntryNode childNode : node.getChildEntryNodes()) {
+        if (childNode.getEntry().isDirectory()) {
+          loadNodeDescendants(treeModel, treeSelectionModel, childNode, entriesByDirectory, reload);
+        }
+      }
+    }
+
+    private void setNodeChildren(@NotNull DefaultTreeModel treeModel,
+                                 @NotNull DefaultTreeSelectionModel treeSelectionModel,
+                                 @NotNull DeviceFileEntryNode node,
+                                 @NotNull List<DeviceFileEntry> entries) {
+      // Save selection
+      TreePath[] oldSelections = treeSelectionModel.getSelectionPaths();
+
+      // Collect existing entries that have the "isLinkToDirectory" property set
+      Set<String> isLinkToDirectory = node.getChildEntryNodes().stream()
+        .filter(DeviceFileEntryNode::isSymbolicLinkToDirectory)
+        .map(x -> x.getEntry().getName())
+        .collect(Collectors.toSet());
+
+      // Sort new entries according to presentation sort order
+      Comparator<DeviceFileEntry> comparator = NodeSorting.getCustomComparator(
+        DeviceFileEntry::getName,
+        x -> x.isDirectory() || isLinkToDirectory.contains(x.getName()));
+      entries.sort(comparator);
+
+      List<DeviceFileEntryNode> addedNodes = updateChildrenNodes(treeModel, node, entries);
+
+      // Restore selection
+      restoreTreeSelection(treeSelectionModel, oldSelections, node);
+
+      List<DeviceFileEntryNode> symlinkNodes = addedNodes
+        .stream()
+        .filter(x -> x.getEntry().isSymbolicLink())
+        .collect(Collectors.toList());
+      querySymbolicLinks(symlinkNodes, treeModel);
+    }
+
     @NotNull
     private List<DeviceFileEntryNode> updateChildrenNodes(@NotNull DefaultTreeModel treeModel,
                                                           @NotNull DeviceFileEntryNode parentNode,
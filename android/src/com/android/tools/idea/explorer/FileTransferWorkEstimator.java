@@ -109,16 +109,36 @@ public class FileTransferWorkEstimator {
     }
     reportProgress(estimate, progress);
 
-    if (entry.isDirectory() || isLinkToDirectory) {
-      ListenableFuture<List<DeviceFileEntry>> futureEntries = entry.getEntries();
-      return myEdtExecutor.transformAsync(futureEntries, entries -> {
-        assert entries != null;
+    if (entry.isDirectory()) {
+      // Try listing the whole directory tree at once, which is much faster than one round-trip per directory
+      ListenableFuture<List<DeviceFileEntry>> futureAllEntries =
+        myEdtExecutor.catching(entry.getEntriesRecursive(), Exception.class, t -> null);
+      return myEdtExecutor.transformAsync(futureAllEntries, allEntries -> {
+        if (allEntries == null) {
+          return estimateDirectoryWorkWorker(entry, estimate, progress);
+        }
         estimate.addDirectoryCount(1);
         estimate.addWorkUnits(getDirectoryWorkUnits());
-        return myEdtExecutor.executeFuturesInSequence(entries.iterator(),
-                                                      childEntry -> estimateDownloadWorkWorker(childEntry, false, estimate, progress));
+        for (DeviceFileEntry childEntry : allEntries) {
+          if (progress.isCancelled()) {
+            return Futures.immediateCancelledFuture();
+          }
+          if (childEntry.isDirectory()) {
+            estimate.addDirectoryCount(1);
+            estimate.addWorkUnits(getDirectoryWorkUnits());
+          }
+          else {
+            estimate.addFileCount(1);
+            estimate.addWorkUnits(getFileWorkUnits() + getFileContentsWorkUnits(childEntry.getSize()));
+          }
+        }
+        reportProgress(estimate, progress);
+        return Futures.immediateFuture(null);
       });
     }
+    else if (isLinkToDirectory) {
+      return estimateDirectoryWorkWorker(entry, estimate, progress);
+    }
     else {
       estimate.addFileCount(1);
       estimate.addWorkUnits(getFileWorkUnits() + getFileContentsWorkUnits(entry.getSize()));
@@ -126,6 +146,19 @@ public class FileTransferWorkEstimator {
     }
   }
 
+  private ListenableFuture<Void> estimateDirectoryWorkWorker(@NotNull DeviceFileEntry entry,
+                                                             @NotNull FileTransferWorkEstimate estimate,
+                                                             @NotNull FileTransferWorkEstimatorProgress progress) {
+    ListenableFuture<List<DeviceFileEntry>> futureEntries = entry.getEntries();
+    return myEdtExecutor.transformAsync(futureEntries, entries -> {
+      assert entries != null;
+      estimate.addDirectoryCount(1);
+      estimate.addWorkUnits(getDirectoryWorkUnits());
+      return myEdtExecutor.executeFuturesInSequence(entries.iterator(),
+                                                    childEntry -> estimateDownloadWorkWorker(childEntry, false, estimate, progress));
+    });
+  }
+
   public ListenableFuture<FileTransferWorkEstimate> estimateUploadWork(@NotNull Path path,
                                                                        @NotNull FileTransferWorkEstimatorProgress progress) {
     ListenableFuture<FileTransferWorkEstimate> futureEstimate = myTaskExecutor.executeAsync(() -> {
@@ -48,6 +48,9 @@ public class AdbDeviceCapabilities {
   @Nullable private Boolean mySupportsCpCommand;
   @Nullable private Boolean myEscapingLs;
   @Nullable private Boolean mySupportsMkTempCommand;
+  @Nullable private Boolean mySupportsRecursiveLs;
+  @Nullable private Boolean mySupportsFindCommand;
+  @Nullable private Boolean mySupportsTarCommand;
 
   public AdbDeviceCapabilities(@NotNull IDevice device) {
     myDevice = device;
@@ -121,6 +124,33 @@ public class AdbDeviceCapabilities {
     return mySupportsMkTempCommand;
   }
 
+  public synchronized boolean supportsRecursiveLs()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+
+    if (mySupportsRecursiveLs == null) {
+      mySupportsRecursiveLs = supportsRecursiveLsWorker();
+    }
+    return mySupportsRecursiveLs;
+  }
+
+  public synchronized boolean supportsFindCommand()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+
+    if (mySupportsFindCommand == null) {
+      mySupportsFindCommand = supportsFindCommandWorker();
+    }
+    return mySupportsFindCommand;
+  }
+
+  public synchronized boolean supportsTarCommand()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+
+    if (mySupportsTarCommand == null) {
+      mySupportsTarCommand = supportsTarCommandWorker();
+    }
+    return mySupportsTarCommand;
+  }
+
   @NotNull
   private static String getDeviceTraceInfo(@NotNull IDevice device) {
     return String.format("%s(%s)-%s", device.getName(), device.getSerialNumber(), device.getState());
@@ -356,6 +386,96 @@ public class AdbDeviceCapabilities {
     }
   }
 
+  private boolean supportsRecursiveLsWorker()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+
+    try (ScopedRemoteFile tempFile = new ScopedRemoteFile(AdbPathUtil.resolve(PROBE_FILES_TEMP_PATH, ".__temp_ls_r_test_file__.tmp"))) {
+      // Create the remote file used for testing capability
+      tempFile.create();
+
+      // "ls -l -R" should output a header line for the directory, followed by the entry of the test file
+      String command = new AdbShellCommandBuilder().withText("ls -l -R ").withEscapedPath(PROBE_FILES_TEMP_PATH).build();
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      try {
+        commandResult.throwIfError();
+        List<String> output = commandResult.getOutput();
+        boolean hasHeader = output.stream().anyMatch(line -> line.startsWith(PROBE_FILES_TEMP_PATH) && line.endsWith(":"));
+        boolean hasEntry = output.stream().anyMatch(line -> line.endsWith(AdbPathUtil.getFileName(tempFile.getRemotePath())));
+        if (!hasHeader || !hasEntry) {
+          throw new AdbShellCommandException("Unexpected output from ls -l -R");
+        }
+        return true;
+      }
+      catch (AdbShellCommandException e) {
+        LOGGER.info(String.format("Device \"%s\" does not seem to support the \"-R\" flag for ls: %s",
+                                  getDeviceTraceInfo(myDevice),
+                                  getCommandOutputExtract(commandResult)),
+                    e);
+        return false;
+      }
+    }
+  }
+
+  private boolean supportsFindCommandWorker()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+
+    try (ScopedRemoteFile tempFile = new ScopedRemoteFile(AdbPathUtil.resolve(PROBE_FILES_TEMP_PATH, ".__temp_find_test_file__.tmp"))) {
+      // Create the remote file used for testing capability
+      tempFile.create();
+
+      // "find" should output the "ls -l -d" line of the test file, which ends with its full path
+      String command = new AdbShellCommandBuilder()
+        .withText("find ")
+        .withEscapedPath(PROBE_FILES_TEMP_PATH)
+        .withText(" -exec ls -l -d {} \\;")
+        .build();
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      try {
+        commandResult.throwIfError();
+        if (commandResult.getOutput().stream().noneMatch(line -> line.endsWith(tempFile.getRemotePath()))) {
+          throw new AdbShellCommandException("Unexpected output from find");
+        }
+        return true;
+      }
+      catch (AdbShellCommandException e) {
+        LOGGER.info(String.format("Device \"%s\" does not seem to support the \"find\" command: %s",
+                                  getDeviceTraceInfo(myDevice),
+                                  getCommandOutputExtract(commandResult)),
+                    e);
+        return false;
+      }
+    }
+  }
+
+  private boolean supportsTarCommandWorker()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+
+    try (ScopedRemoteFile tempFile = new ScopedRemoteFile(AdbPathUtil.resolve(PROBE_FILES_TEMP_PATH, ".__temp_tar_test_file__.tmp"))) {
+      // Create the remote file used for testing capability
+      tempFile.create();
+
+      // "tar" should be able to archive the test file (to /dev/null) with a "-C" base directory
+      String command = new AdbShellCommandBuilder()
+        .withText("tar -cf /dev/null -C ")
+        .withEscapedPath(PROBE_FILES_TEMP_PATH)
+        .withText(" ")
+        .withEscapedPath(AdbPathUtil.getFileName(tempFile.getRemotePath()))
+        .build();
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      try {
+        commandResult.throwIfError();
+        return true;
+      }
+      catch (AdbShellCommandException e) {
+        LOGGER.info(String.format("Device \"%s\" does not seem to support the \"tar\" command: %s",
+                                  getDeviceTraceInfo(myDevice),
+                                  getCommandOutputExtract(commandResult)),
+                    e);
+        return false;
+      }
+    }
+  }
+
   /**
    * An {@link AutoCloseable} wrapper around a temporary file on a remote device.
    * The {@link #close()} method attempts to delete the file from the remote device
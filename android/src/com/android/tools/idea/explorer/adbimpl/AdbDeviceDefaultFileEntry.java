@@ -16,6 +16,7 @@
 package com.android.tools.idea.explorer.adbimpl;
 
 import com.android.tools.idea.explorer.fs.DeviceFileEntry;
+import com.android.tools.idea.explorer.fs.DirectoryTransferProgress;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.jetbrains.annotations.NotNull;
@@ -43,6 +44,13 @@ public class AdbDeviceDefaultFileEntry extends AdbDeviceFileEntry {
     return myDevice.getTaskExecutor().transformAsync(futureMountPoint, AdbDeviceFileEntry::getEntries);
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<List<DeviceFileEntry>> getEntriesRecursive() {
+    ListenableFuture<AdbDeviceFileEntry> futureMountPoint = myDevice.resolveMountPoint(this);
+    return myDevice.getTaskExecutor().transformAsync(futureMountPoint, AdbDeviceFileEntry::getEntriesRecursive);
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> delete() {
@@ -87,6 +95,16 @@ public class AdbDeviceDefaultFileEntry extends AdbDeviceFileEntry {
     });
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<Void> downloadDirectoryArchive(@NotNull Path localPath, @NotNull DirectoryTransferProgress progress) {
+    ListenableFuture<AdbDeviceFileEntry> futureMountPoint = myDevice.resolveMountPoint(this);
+    return myDevice.getTaskExecutor().transformAsync(futureMountPoint, x -> {
+      assert x != null;
+      return x.downloadDirectoryArchive(localPath, progress);
+    });
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath, @NotNull String fileName, @NotNull FileTransferProgress progress) {
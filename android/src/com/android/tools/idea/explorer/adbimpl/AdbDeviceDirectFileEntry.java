@@ -20,6 +20,7 @@ import com.android.ddmlib.ShellCommandUnresponsiveException;
 import com.android.ddmlib.SyncException;
 import com.android.ddmlib.TimeoutException;
 import com.android.tools.idea.explorer.fs.DeviceFileEntry;
+import com.android.tools.idea.explorer.fs.DirectoryTransferProgress;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -28,7 +29,10 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -60,6 +64,31 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
     });
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<List<DeviceFileEntry>> getEntriesRecursive() {
+    ListenableFuture<AdbFileListingTree> futureTree = myDevice.getAdbFileListing().getDescendantsRunAs(myEntry, myRunAs);
+    return myDevice.getTaskExecutor().transform(futureTree, tree -> {
+      if (tree == null) {
+        return null;
+      }
+
+      // Entries are listed in pre-order, so the parent of each entry has always been created already
+      Map<String, AdbDeviceFileEntry> directories = new HashMap<>();
+      directories.put(getFullPath(), this);
+      List<DeviceFileEntry> result = new ArrayList<>(tree.getDescendants().size());
+      for (AdbFileListingEntry listingEntry : tree.getDescendants()) {
+        AdbDeviceFileEntry parent = directories.get(AdbPathUtil.getParentPath(listingEntry.getFullPath()));
+        AdbDeviceFileEntry entry = new AdbDeviceDefaultFileEntry(myDevice, listingEntry, parent);
+        if (listingEntry.isDirectory()) {
+          directories.put(listingEntry.getFullPath(), entry);
+        }
+        result.add(entry);
+      }
+      return result;
+    });
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> delete() {
@@ -107,6 +136,15 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
     });
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<Void> downloadDirectoryArchive(@NotNull Path localPath, @NotNull DirectoryTransferProgress progress) {
+    if (!isDirectory()) {
+      return Futures.immediateFailedFuture(new IllegalStateException(String.format("\"%s\" is not a directory", getFullPath())));
+    }
+    return myDevice.getAdbFileTransfer().downloadDirectoryArchive(getFullPath(), localPath, progress, myRunAs);
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath,
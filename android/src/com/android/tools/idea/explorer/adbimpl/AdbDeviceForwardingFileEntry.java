@@ -16,6 +16,7 @@
 package com.android.tools.idea.explorer.adbimpl;
 
 import com.android.tools.idea.explorer.fs.DeviceFileEntry;
+import com.android.tools.idea.explorer.fs.DirectoryTransferProgress;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.jetbrains.annotations.NotNull;
@@ -79,6 +80,12 @@ public abstract class AdbDeviceForwardingFileEntry extends AdbDeviceFileEntry {
     return getForwardedFileEntry().downloadFile(localPath, progress);
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<Void> downloadDirectoryArchive(@NotNull Path localPath, @NotNull DirectoryTransferProgress progress) {
+    return getForwardedFileEntry().downloadDirectoryArchive(localPath, progress);
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath, @NotNull String fileName, @NotNull FileTransferProgress progress) {
@@ -17,6 +17,7 @@ package com.android.tools.idea.explorer.adbimpl;
 
 import com.android.ddmlib.AdbCommandRejectedException;
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.MultiLineReceiver;
 import com.android.ddmlib.ShellCommandUnresponsiveException;
 import com.android.ddmlib.TimeoutException;
 import com.android.tools.idea.concurrent.FutureCallbackExecutor;
@@ -40,7 +41,7 @@ import static com.android.ddmlib.FileListingService.LS_L_PATTERN;
 
 public class AdbFileListing {
   @NotNull public static final Logger LOGGER = Logger.getInstance(AdbFileListing.class);
-  @NotNull private static final Pattern BACKSLASH = Pattern.compile("\\", Pattern.LITERAL);
+  @NotNull private static final Pattern ESCAPED_CHARACTER = Pattern.compile("\\\\(.)");
 
   @NotNull private final IDevice myDevice;
   @NotNull private AdbDeviceCapabilities myDeviceCapabilities;
@@ -86,6 +87,49 @@ public class AdbFileListing {
     });
   }
 
+  /**
+   * Lists {@code parentEntry} and all its sub-directories with a single shell command,
+   * i.e. "{@code ls -l -R}" or, if not supported by the device, "{@code find}". The output
+   * of the command is parsed as it is received from the device.
+   *
+   * <p>The future value is {@code null} if the device supports neither command, in which case
+   * callers should fall back to calling {@link #getChildren(AdbFileListingEntry)} for each
+   * directory.
+   */
+  @NotNull
+  public ListenableFuture<AdbFileListingTree> getDescendants(@NotNull AdbFileListingEntry parentEntry) {
+    return getDescendantsRunAs(parentEntry, null);
+  }
+
+  @NotNull
+  public ListenableFuture<AdbFileListingTree> getDescendantsRunAs(@NotNull AdbFileListingEntry parentEntry,
+                                                                  @Nullable String runAs) {
+    return myExecutor.executeAsync(() -> {
+      boolean escaping = myDeviceCapabilities.hasEscapingLs();
+      RecursiveListingReceiver receiver;
+      String command;
+      if (myDeviceCapabilities.supportsRecursiveLs()) {
+        receiver = new RecursiveLsReceiver(parentEntry, escaping);
+        command = getCommand(runAs, "ls -l -R ").withDirectoryEscapedPath(parentEntry.getFullPath()).build(); //$NON-NLS-1$
+      }
+      else if (myDeviceCapabilities.supportsFindCommand()) {
+        receiver = new FindReceiver(parentEntry, escaping);
+        command = getCommand(runAs, "find ")
+          .withDirectoryEscapedPath(parentEntry.getFullPath())
+          .withText(" -exec ls -l -d {} \\;") //$NON-NLS-1$
+          .build();
+      }
+      else {
+        return null;
+      }
+
+      // Note: Errors (e.g. unreadable sub-directories) are ignored, since they do not prevent
+      //       listing the rest of the tree.
+      AdbShellCommandsUtil.executeRawCommand(myDevice, command, receiver);
+      return receiver.getTree();
+    });
+  }
+
   /**
    * Determine if a symlink entry points to a directory. This is a best effort process,
    * as the target of the symlink might not be accessible, in which case the future value
@@ -132,6 +176,11 @@ public class AdbFileListing {
 
   @Nullable
   private static AdbFileListingEntry processLsOutputLine(@NotNull String line, boolean escaping, @NotNull AdbFileListingEntry parentEntry) {
+    return processLsOutputLine(line, escaping, parentEntry.getFullPath());
+  }
+
+  @Nullable
+  private static AdbFileListingEntry processLsOutputLine(@NotNull String line, boolean escaping, @NotNull String parentPath) {
     // no need to handle empty lines.
     if (line.isEmpty()) {
       return null;
@@ -197,7 +246,7 @@ public class AdbFileListing {
       info = "-> " + info; //$NON-NLS-1$;
     }
 
-    String path = AdbPathUtil.resolve(parentEntry.getFullPath(), name);
+    String path = AdbPathUtil.resolve(parentPath, name);
 
     // Create entry and add it to result
     return new AdbFileListingEntry(path,
@@ -211,10 +260,120 @@ public class AdbFileListing {
                                    info);
   }
 
+  /**
+   * Normalizes a directory path printed by the device, e.g. "{@code /sdcard//DCIM/}" to "{@code /sdcard/DCIM}".
+   */
+  @NotNull
+  private static String normalizeDirectoryPath(@NotNull String path) {
+    String result = path.replaceAll("/{2,}", AdbPathUtil.FILE_SEPARATOR);
+    if (result.length() > 1 && result.endsWith(AdbPathUtil.FILE_SEPARATOR)) {
+      result = result.substring(0, result.length() - 1);
+    }
+    return result;
+  }
+
+  /**
+   * Base class of the {@link MultiLineReceiver} that build a {@link AdbFileListingTree}
+   * from the output of a recursive listing command, one line at a time.
+   */
+  abstract static class RecursiveListingReceiver extends MultiLineReceiver {
+    @NotNull protected final AdbFileListingTree.Builder myTreeBuilder;
+    protected final boolean myEscaping;
+
+    RecursiveListingReceiver(@NotNull AdbFileListingEntry root, boolean escaping) {
+      myTreeBuilder = new AdbFileListingTree.Builder(root);
+      myEscaping = escaping;
+    }
+
+    @Override
+    public void processNewLines(@NotNull String[] lines) {
+      for (String line : lines) {
+        processLine(line);
+      }
+    }
+
+    protected abstract void processLine(@NotNull String line);
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @NotNull
+    AdbFileListingTree getTree() {
+      return myTreeBuilder.build();
+    }
+  }
+
+  /**
+   * Parses the output of "{@code ls -l -R}", which is made of one section per directory:
+   * a "{@code path:}" header line followed by the "{@code ls -l}" output for that directory.
+   */
+  static class RecursiveLsReceiver extends RecursiveListingReceiver {
+    @NotNull private String myCurrentDirectory;
+
+    RecursiveLsReceiver(@NotNull AdbFileListingEntry root, boolean escaping) {
+      super(root, escaping);
+      myCurrentDirectory = root.getFullPath();
+    }
+
+    @Override
+    protected void processLine(@NotNull String line) {
+      if (line.isEmpty()) {
+        return;
+      }
+      AdbFileListingEntry entry = processLsOutputLine(line, myEscaping, myCurrentDirectory);
+      if (entry != null) {
+        myTreeBuilder.addEntry(myCurrentDirectory, entry);
+      }
+      else if (line.endsWith(":") && line.startsWith(AdbPathUtil.FILE_SEPARATOR)) {
+        String path = line.substring(0, line.length() - 1);
+        myCurrentDirectory = normalizeDirectoryPath(myEscaping ? unescape(path) : path);
+      }
+    }
+  }
+
+  /**
+   * Parses the output of "{@code find path -exec ls -l -d {} ;}", which is made of one
+   * "{@code ls -l}" line per entry, where the name of each entry is its full path.
+   */
+  static class FindReceiver extends RecursiveListingReceiver {
+    @NotNull private final String myRootPath;
+
+    FindReceiver(@NotNull AdbFileListingEntry root, boolean escaping) {
+      super(root, escaping);
+      myRootPath = root.getFullPath();
+    }
+
+    @Override
+    protected void processLine(@NotNull String line) {
+      AdbFileListingEntry entry = processLsOutputLine(line, myEscaping, myRootPath);
+      if (entry == null) {
+        return;
+      }
+      String path = normalizeDirectoryPath(entry.getFullPath());
+      if (path.equals(myRootPath)) {
+        return;
+      }
+      if (!path.equals(entry.getFullPath())) {
+        entry = new AdbFileListingEntryBuilder(entry).setPath(path).build();
+      }
+      myTreeBuilder.addEntry(AdbPathUtil.getParentPath(path), entry);
+    }
+  }
+
   @NotNull
   private static String getName(@NotNull MatchResult result, boolean escaping) {
     String name = result.group(7);
-    return escaping ? BACKSLASH.matcher(name).replaceAll("") : name;
+    return escaping ? unescape(name) : name;
+  }
+
+  /**
+   * Removes the backslash of each "\x" escape sequence of {@code ls} output, keeping escaped backslashes.
+   */
+  @NotNull
+  private static String unescape(@NotNull String text) {
+    return ESCAPED_CHARACTER.matcher(text).replaceAll("$1");
   }
 
   @NotNull
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Immutable snapshot of a directory of a device and all its descendants, as returned by
+ * {@link AdbFileListing#getDescendants(AdbFileListingEntry)}. Symbolic links contained in
+ * the tree are not followed.
+ */
+public class AdbFileListingTree {
+  @NotNull private final AdbFileListingEntry myRoot;
+  @NotNull private final Map<String, List<AdbFileListingEntry>> myChildren;
+  @NotNull private final List<AdbFileListingEntry> myDescendants;
+
+  private AdbFileListingTree(@NotNull AdbFileListingEntry root,
+                             @NotNull Map<String, List<AdbFileListingEntry>> children,
+                             @NotNull List<AdbFileListingEntry> descendants) {
+    myRoot = root;
+    myChildren = children;
+    myDescendants = descendants;
+  }
+
+  @NotNull
+  public AdbFileListingEntry getRoot() {
+    return myRoot;
+  }
+
+  /**
+   * Returns the entries contained in the given directory of the tree, or {@code null}
+   * if the directory is not part of the tree or could not be listed.
+   */
+  @Nullable
+  public List<AdbFileListingEntry> getChildren(@NotNull AdbFileListingEntry directory) {
+    return myChildren.get(directory.getFullPath());
+  }
+
+  /**
+   * Returns all the entries contained in the tree, excluding the root, in an order where
+   * each directory entry comes before the entries it contains.
+   */
+  @NotNull
+  public List<AdbFileListingEntry> getDescendants() {
+    return myDescendants;
+  }
+
+  /**
+   * Incrementally builds a {@link AdbFileListingTree} from entries listed in pre-order,
+   * i.e. each directory must be added before the entries it contains.
+   */
+  static class Builder {
+    @NotNull private final AdbFileListingEntry myRoot;
+    @NotNull private final Map<String, List<AdbFileListingEntry>> myChildren = new HashMap<>();
+    @NotNull private final List<AdbFileListingEntry> myDescendants = new ArrayList<>();
+
+    Builder(@NotNull AdbFileListingEntry root) {
+      myRoot = root;
+      myChildren.put(root.getFullPath(), new ArrayList<>());
+    }
+
+    /**
+     * Adds an entry contained in the directory {@code parentPath}. Entries outside of the
+     * tree (e.g. when the device lists the target of a symbolic link) are ignored.
+     */
+    void addEntry(@NotNull String parentPath, @NotNull AdbFileListingEntry entry) {
+      List<AdbFileListingEntry> siblings = myChildren.get(parentPath);
+      if (siblings == null) {
+        return;
+      }
+      siblings.add(entry);
+      myDescendants.add(entry);
+      if (entry.isDirectory()) {
+        myChildren.putIfAbsent(entry.getFullPath(), new ArrayList<>());
+      }
+    }
+
+    @NotNull
+    AdbFileListingTree build() {
+      Map<String, List<AdbFileListingEntry>> children = new HashMap<>();
+      myChildren.forEach((path, entries) -> children.put(path, Collections.unmodifiableList(entries)));
+      return new AdbFileListingTree(myRoot, children, Collections.unmodifiableList(myDescendants));
+    }
+  }
+}
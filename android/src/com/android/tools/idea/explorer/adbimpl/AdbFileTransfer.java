@@ -15,11 +15,15 @@
  */
 package com.android.tools.idea.explorer.adbimpl;
 
+import com.android.ddmlib.AdbHelper;
+import com.android.ddmlib.AndroidDebugBridge;
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
 import com.android.ddmlib.SyncException;
 import com.android.ddmlib.SyncService;
 import com.android.tools.idea.concurrent.EdtExecutor;
 import com.android.tools.idea.concurrent.FutureCallbackExecutor;
+import com.android.tools.idea.explorer.fs.DirectoryTransferProgress;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.android.tools.idea.explorer.fs.ThrottledProgress;
 import com.google.common.util.concurrent.Futures;
@@ -30,7 +34,9 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import static com.android.tools.idea.explorer.adbimpl.AdbPathUtil.DEVICE_TEMP_DIRECTORY;
 
@@ -38,15 +44,18 @@ public class AdbFileTransfer {
   @NotNull private static Logger LOGGER = Logger.getInstance(AdbFileTransfer.class);
 
   @NotNull private final IDevice myDevice;
+  @NotNull private final AdbDeviceCapabilities myDeviceCapabilities;
   @NotNull private final AdbFileOperations myFileOperations;
   @NotNull private final FutureCallbackExecutor myProgressExecutor;
   @NotNull private final FutureCallbackExecutor myTaskExecutor;
 
   public AdbFileTransfer(@NotNull IDevice device,
+                         @NotNull AdbDeviceCapabilities deviceCapabilities,
                          @NotNull AdbFileOperations fileOperations,
                          @NotNull Executor progressExecutor,
                          @NotNull Executor taskExecutor) {
     myDevice = device;
+    myDeviceCapabilities = deviceCapabilities;
     myFileOperations = fileOperations;
     myProgressExecutor = FutureCallbackExecutor.wrap(progressExecutor);
     myTaskExecutor = FutureCallbackExecutor.wrap(taskExecutor);
@@ -122,6 +131,50 @@ public class AdbFileTransfer {
     });
   }
 
+  /**
+   * Downloads the remote directory {@code remotePath} into the local directory {@code localPath} by
+   * streaming a "{@code tar}" archive of the directory through the ADB "{@code exec:}" service. The
+   * archive is extracted as it is received, and each extracted entry is reported to {@code progress}.
+   */
+  @NotNull
+  public ListenableFuture<Void> downloadDirectoryArchive(@NotNull String remotePath,
+                                                         @NotNull Path localPath,
+                                                         @NotNull DirectoryTransferProgress progress,
+                                                         @Nullable String runAs) {
+    ListenableFuture<Void> futureDownload = myTaskExecutor.executeAsync(() -> {
+      if (!myDeviceCapabilities.supportsTarCommand()) {
+        throw new UnsupportedOperationException("Device does not support the \"tar\" command");
+      }
+
+      AdbShellCommandBuilder builder = new AdbShellCommandBuilder();
+      if (runAs != null) {
+        builder.withRunAs(runAs);
+      }
+      String command = builder
+        .withText("tar -cf - -C ")
+        .withDirectoryEscapedPath(remotePath)
+        .withText(" . 2>/dev/null")
+        .build();
+
+      ArchiveOutputReceiver receiver = new ArchiveOutputReceiver(localPath, progress);
+      long startTime = System.nanoTime();
+      try {
+        AdbHelper.executeRemoteCommand(AndroidDebugBridge.getSocketAddress(), AdbHelper.AdbService.EXEC, command, myDevice, receiver,
+                                       0, TimeUnit.MILLISECONDS, null);
+      }
+      finally {
+        receiver.close();
+      }
+      receiver.throwIfError();
+      long endTime = System.nanoTime();
+      LOGGER.info(String.format("Pull directory archive took %,d ms to execute: \"%s\" -> \"%s\"",
+                                (endTime - startTime) / 1_000_000, remotePath, localPath));
+      return null;
+    });
+
+    return myTaskExecutor.catchingAsync(futureDownload, CancellationException.class, error -> Futures.immediateCancelledFuture());
+  }
+
   @NotNull
   private ListenableFuture<Void> downloadFileWorker(@NotNull String remotePath,
                                                     long remotePathSize,
@@ -205,6 +258,84 @@ public class AdbFileTransfer {
     });
   }
 
+  /**
+   * Receives the bytes of a "{@code tar}" archive, running on a pooled thread, and extracts them
+   * with a {@link TarStreamExtractor}, forwarding progress to a {@link DirectoryTransferProgress}
+   * using the provided {@link Executor}, typically the {@link EdtExecutor}.
+   */
+  private class ArchiveOutputReceiver implements IShellOutputReceiver, TarStreamExtractor.Listener {
+    private static final int PROGRESS_REPORT_INTERVAL_MILLIS = 50;
+    @NotNull private final Path myDestination;
+    @NotNull private final DirectoryTransferProgress myProgress;
+    @NotNull private final TarStreamExtractor myExtractor;
+    @NotNull private final ThrottledProgress myThrottledProgress;
+    @Nullable private IOException myError;
+    private long myCurrentBytes;
+
+    private ArchiveOutputReceiver(@NotNull Path destination, @NotNull DirectoryTransferProgress progress) {
+      myDestination = destination;
+      myProgress = progress;
+      myExtractor = new TarStreamExtractor(destination, this);
+      myThrottledProgress = new ThrottledProgress(PROGRESS_REPORT_INTERVAL_MILLIS);
+    }
+
+    @Override
+    public void addOutput(byte[] data, int offset, int length) {
+      if (myError != null) {
+        return;
+      }
+      try {
+        myExtractor.write(data, offset, length);
+      }
+      catch (IOException e) {
+        myError = e;
+      }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return myError != null || myProgress.isCancelled();
+    }
+
+    @Override
+    public void entryExtracted(@NotNull Path localPath, boolean isDirectory, long byteCount) {
+      if (localPath.equals(myDestination)) {
+        return;
+      }
+      myProgressExecutor.execute(() -> myProgress.entryTransferred(localPath, isDirectory, byteCount));
+    }
+
+    @Override
+    public void bytesExtracted(long byteCount) {
+      myCurrentBytes += byteCount;
+      if (myThrottledProgress.check()) {
+        // Capture value for lambda (since lambda may be executed after some delay)
+        final long currentBytes = myCurrentBytes;
+        myProgressExecutor.execute(() -> myProgress.progress(currentBytes, -1));
+      }
+    }
+
+    private void close() throws IOException {
+      myExtractor.close();
+    }
+
+    private void throwIfError() throws IOException {
+      if (myProgress.isCancelled()) {
+        throw new CancellationException();
+      }
+      if (myError != null) {
+        throw myError;
+      }
+      if (!myExtractor.isComplete()) {
+        throw new IOException("Archive stream ended unexpectedly");
+      }
+    }
+  }
+
   /**
    * Forward callbacks from a {@link SyncService.ISyncProgressMonitor}, running on a pooled thread,
    * to a {@link FileTransferProgress}, using the provided {@link Executor}, typically the
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import com.android.utils.FileUtils;
+import com.google.common.base.Charsets;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Extracts a "{@code tar}" archive into a local directory as its bytes are received, so that
+ * the archive never needs to be stored (or even fully received) before files are written.
+ *
+ * <p>Only the subset of the format produced by the "{@code tar}" command of Android devices is
+ * supported: regular files and directories, with POSIX (ustar) path prefixes and GNU long names.
+ * Other entry kinds (e.g. symbolic links) are skipped.
+ */
+public class TarStreamExtractor implements AutoCloseable {
+  private static final int BLOCK_SIZE = 512;
+
+  private static final byte TYPE_FILE = '0';
+  private static final byte TYPE_FILE_OLD = 0;
+  private static final byte TYPE_DIRECTORY = '5';
+  private static final byte TYPE_GNU_LONG_NAME = 'L';
+
+  public interface Listener {
+    /**
+     * Invoked when a directory or a file has been fully extracted to {@code localPath}.
+     */
+    void entryExtracted(@NotNull Path localPath, boolean isDirectory, long byteCount);
+
+    /**
+     * Invoked every time bytes of the content of a file have been written.
+     */
+    void bytesExtracted(long byteCount);
+  }
+
+  @NotNull private final Path myDestination;
+  @NotNull private final Listener myListener;
+  @NotNull private final byte[] myHeader = new byte[BLOCK_SIZE];
+  private int myHeaderLength;
+
+  // State of the entry being extracted
+  @Nullable private Path myEntryPath;
+  @Nullable private OutputStream myEntryStream;
+  /** The bytes of a GNU long name, which are only decoded once complete since chunks may split a UTF-8 sequence. */
+  @Nullable private ByteArrayOutputStream myLongName;
+  @Nullable private String myPendingLongName;
+  private long myEntrySize;
+  private long myEntryRemaining;
+  private long myPaddingRemaining;
+  private boolean myEndOfArchive;
+
+  public TarStreamExtractor(@NotNull Path destination, @NotNull Listener listener) {
+    myDestination = destination;
+    myListener = listener;
+  }
+
+  /**
+   * Returns {@code true} if the end-of-archive marker has been received.
+   */
+  public boolean isComplete() {
+    return myEndOfArchive;
+  }
+
+  public void write(@NotNull byte[] data, int offset, int length) throws IOException {
+    int end = offset + length;
+    while (offset < end && !myEndOfArchive) {
+      if (myEntryRemaining > 0) {
+        int count = (int)Math.min(myEntryRemaining, end - offset);
+        writeEntryContent(data, offset, count);
+        offset += count;
+        myEntryRemaining -= count;
+        if (myEntryRemaining == 0) {
+          finishEntry();
+        }
+      }
+      else if (myPaddingRemaining > 0) {
+        int count = (int)Math.min(myPaddingRemaining, end - offset);
+        offset += count;
+        myPaddingRemaining -= count;
+      }
+      else {
+        int count = Math.min(BLOCK_SIZE - myHeaderLength, end - offset);
+        System.arraycopy(data, offset, myHeader, myHeaderLength, count);
+        offset += count;
+        myHeaderLength += count;
+        if (myHeaderLength == BLOCK_SIZE) {
+          myHeaderLength = 0;
+          processHeader();
+        }
+      }
+    }
+  }
+
+  private void processHeader() throws IOException {
+    if (isZeroBlock(myHeader)) {
+      // Two zero blocks mark the end of the archive, but a single one is enough to know there are no more entries.
+      myEndOfArchive = true;
+      return;
+    }
+
+    byte type = myHeader[156];
+    long size = parseOctal(myHeader, 124, 12);
+    myEntrySize = size;
+    myEntryRemaining = size;
+    myPaddingRemaining = (BLOCK_SIZE - (size % BLOCK_SIZE)) % BLOCK_SIZE;
+
+    if (type == TYPE_GNU_LONG_NAME) {
+      myLongName = new ByteArrayOutputStream((int)Math.min(size, BLOCK_SIZE));
+      myEntryPath = null;
+      if (size == 0) {
+        finishEntry();
+      }
+      return;
+    }
+
+    String name = myPendingLongName != null ? myPendingLongName : getHeaderName();
+    myPendingLongName = null;
+    Path path = resolveEntryPath(name);
+
+    if (type == TYPE_DIRECTORY) {
+      FileUtils.mkdirs(path.toFile());
+      myListener.entryExtracted(path, true, 0);
+    }
+    else if (type == TYPE_FILE || type == TYPE_FILE_OLD) {
+      Path parent = path.getParent();
+      if (parent != null) {
+        FileUtils.mkdirs(parent.toFile());
+      }
+      myEntryPath = path;
+      myEntryStream = Files.newOutputStream(path);
+      if (size == 0) {
+        finishEntry();
+      }
+    }
+    else {
+      // Skip content of unsupported entries
+      myEntryPath = null;
+    }
+  }
+
+  private void writeEntryContent(@NotNull byte[] data, int offset, int length) throws IOException {
+    if (myLongName != null) {
+      myLongName.write(data, offset, length);
+    }
+    else if (myEntryStream != null) {
+      myEntryStream.write(data, offset, length);
+      myListener.bytesExtracted(length);
+    }
+  }
+
+  private void finishEntry() throws IOException {
+    if (myLongName != null) {
+      // The name is NUL terminated
+      String longName = new String(myLongName.toByteArray(), Charsets.UTF_8);
+      int index = longName.indexOf('\0');
+      myPendingLongName = index >= 0 ? longName.substring(0, index) : longName;
+      myLongName = null;
+    }
+    else if (myEntryStream != null) {
+      myEntryStream.close();
+      myEntryStream = null;
+      assert myEntryPath != null;
+      myListener.entryExtracted(myEntryPath, false, myEntrySize);
+    }
+    myEntryPath = null;
+  }
+
+  @NotNull
+  private Path resolveEntryPath(@NotNull String name) throws IOException {
+    Path path = myDestination.resolve(name).normalize();
+    // Guard against entries escaping the destination directory (e.g. "../foo")
+    if (!path.startsWith(myDestination.normalize())) {
+      throw new IOException(String.format("Invalid archive entry \"%s\"", name));
+    }
+    return path;
+  }
+
+  @NotNull
+  private String getHeaderName() {
+    String name = parseString(myHeader, 0, 100);
+    // POSIX (ustar) archives store long paths as a prefix + name
+    if (parseString(myHeader, 257, 5).equals("ustar")) {
+      String prefix = parseString(myHeader, 345, 155);
+      if (!prefix.isEmpty()) {
+        name = prefix + "/" + name;
+      }
+    }
+    return name;
+  }
+
+  @NotNull
+  private static String parseString(@NotNull byte[] header, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && header[end] != 0) {
+      end++;
+    }
+    return new String(header, offset, end - offset, Charsets.UTF_8);
+  }
+
+  private static long parseOctal(@NotNull byte[] header, int offset, int length) {
+    long result = 0;
+    for (int i = offset; i < offset + length; i++) {
+      byte b = header[i];
+      if (b == 0 || b == ' ') {
+        if (result != 0) {
+          break;
+        }
+        continue;
+      }
+      result = (result << 3) + (b - '0');
+    }
+    return result;
+  }
+
+  private static boolean isZeroBlock(@NotNull byte[] block) {
+    for (byte b : block) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Closes the file currently being extracted, if any. That file is incomplete, so it is deleted.
+   */
+  @Override
+  public void close() throws IOException {
+    if (myEntryStream != null) {
+      myEntryStream.close();
+      myEntryStream = null;
+      if (myEntryPath != null) {
+        Files.deleteIfExists(myEntryPath);
+      }
+    }
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.explorer.fs;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -56,6 +57,19 @@ public interface DeviceFileEntry {
   @NotNull
   ListenableFuture<List<DeviceFileEntry>> getEntries();
 
+  /**
+   * The list of all entries contained in this directory and, recursively, in its sub-directories,
+   * obtained with a single operation on the device. Each directory comes before the entries it
+   * contains, and symbolic links are not followed.
+   *
+   * <p>The future value is {@code null} if the file system does not support recursive listings,
+   * in which case callers should call {@link #getEntries()} on each sub-directory instead.
+   */
+  @NotNull
+  default ListenableFuture<List<DeviceFileEntry>> getEntriesRecursive() {
+    return Futures.immediateFuture(null);
+  }
+
   /**
    * Deletes the entry from the device file system.
    */
@@ -93,6 +107,22 @@ public interface DeviceFileEntry {
   ListenableFuture<Void> downloadFile(@NotNull Path localPath,
                                       @NotNull FileTransferProgress progress);
 
+  /**
+   * Downloads this directory and all its contents into the local directory {@code localPath}
+   * as a single archive stream, which is much faster than downloading each file separately
+   * when the directory contains many small files. Symbolic links are not downloaded.
+   *
+   * <p>If the transfer fails, entries already reported to {@link DirectoryTransferProgress#entryTransferred}
+   * are complete, so that callers can resume the transfer with {@link #downloadFile} for the remaining files.
+   * The future fails with an {@link UnsupportedOperationException} if the file system does not support
+   * archive transfers.
+   */
+  @NotNull
+  default ListenableFuture<Void> downloadDirectoryArchive(@NotNull Path localPath,
+                                                          @NotNull DirectoryTransferProgress progress) {
+    return Futures.immediateFailedFuture(new UnsupportedOperationException("Archive transfers are not supported"));
+  }
+
   /**
    * Uploads the contents of a local file to a remote {@link DeviceFileEntry} directory.
    */
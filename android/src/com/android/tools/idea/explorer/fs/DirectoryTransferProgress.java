@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.fs;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+
+/**
+ * A {@link FileTransferProgress} for operations transferring a whole directory tree
+ * at once, see {@link DeviceFileEntry#downloadDirectoryArchive}.
+ */
+public interface DirectoryTransferProgress extends FileTransferProgress {
+  /**
+   * Reports that a file or directory of the tree has been fully transferred to {@code localPath}.
+   * Entries reported here are complete even if the whole operation fails later on.
+   */
+  void entryTransferred(@NotNull Path localPath, boolean isDirectory, long byteCount);
+}
@@ -48,6 +48,13 @@ public interface GradleDslParser {
    */
   void parse();
 
+  /**
+   * Brings the {@link GradleDslFile} up to date with changes made to the file since the last call to {@link #parse()} or
+   * {@link #reparse()}, re-parsing only what has changed. Returns {@code false} if that isn't possible, in which case the
+   * {@link GradleDslFile} has to be cleared and parsed again. This method REQUIRES read access.
+   */
+  boolean reparse();
+
   /**
    * Converts a given {@link Object} to the language specific {@link PsiElement}, this method is used to convert newly set or parsed values.
    * This method does NOT REQUIRE read access.
@@ -79,6 +86,11 @@ public interface GradleDslParser {
     @Override
     public void parse() { }
 
+    @Override
+    public boolean reparse() {
+      return false;
+    }
+
     @Override
     @Nullable
     public PsiElement convertToPsiElement(@NotNull Object literal) {
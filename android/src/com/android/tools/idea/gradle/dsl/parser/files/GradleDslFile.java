@@ -17,6 +17,8 @@ package com.android.tools.idea.gradle.dsl.parser.files;
 
 import com.android.tools.idea.gradle.dsl.parser.GradleDslParser;
 import com.android.tools.idea.gradle.dsl.parser.GradleDslWriter;
+import com.android.tools.idea.gradle.dsl.parser.elements.GradleDslElement;
+import com.android.tools.idea.gradle.dsl.parser.elements.GradleDslExpression;
 import com.android.tools.idea.gradle.dsl.parser.elements.GradlePropertiesDslElement;
 import com.android.tools.idea.gradle.dsl.parser.groovy.GroovyDslParser;
 import com.android.tools.idea.gradle.dsl.parser.groovy.GroovyDslWriter;
@@ -34,6 +36,8 @@ import org.jetbrains.plugins.groovy.lang.psi.GroovyFile;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 
 import static com.intellij.openapi.vfs.VfsUtilCore.virtualToIoFile;
@@ -51,6 +55,9 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
   @Nullable private GradleDslFile myParentModuleDslFile;
   @Nullable private GradleDslFile mySiblingDslFile;
 
+  // The names of the properties of this file read or written since startRecordingProperties(), or null if not recording.
+  @Nullable private Set<String> myRecordedProperties;
+
   protected GradleDslFile(@NotNull VirtualFile file, @NotNull Project project, @NotNull String moduleName) {
     super(null, null, moduleName);
     myFile = file;
@@ -80,8 +87,14 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
   /**
    * Parses the gradle file again. This is a convenience method when an already parsed gradle file needs to be parsed again
    * (for example, after making changes to the PSI elements.)
+   *
+   * <p>Unless there are changes that have not been applied yet, only the parts of the file that changed since it was last parsed are
+   * parsed again, see {@link GradleDslParser#reparse()}.
    */
   public void reparse() {
+    if (!isModified() && myGradleDslParser.reparse()) {
+      return;
+    }
     clear();
     parse();
   }
@@ -90,6 +103,14 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
     myGradleDslParser.parse();
   }
 
+  /**
+   * Removes all the properties and variables of this file, so that the parser can add them again.
+   */
+  @Override
+  public void clear() {
+    super.clear();
+  }
+
   @NotNull
   public Project getProject() {
     return myProject;
@@ -148,4 +169,66 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
   public GradleDslParser getParser() {
     return myGradleDslParser;
   }
+
+  /**
+   * Starts recording the names of the properties of this file that are read or written, until {@link #stopRecordingProperties()} is
+   * called. This tells the parser which properties a statement contributes to.
+   */
+  public void startRecordingProperties() {
+    myRecordedProperties = new HashSet<>();
+  }
+
+  /**
+   * Stops recording and returns the names of the properties read or written since {@link #startRecordingProperties()}.
+   */
+  @NotNull
+  public Set<String> stopRecordingProperties() {
+    Set<String> properties = myRecordedProperties;
+    myRecordedProperties = null;
+    return properties != null ? properties : Collections.emptySet();
+  }
+
+  private void recordProperty(@NotNull String property) {
+    if (myRecordedProperties != null) {
+      myRecordedProperties.add(property);
+    }
+  }
+
+  @Override
+  @Nullable
+  public GradleDslElement getPropertyElement(@NotNull String property) {
+    recordProperty(property);
+    return super.getPropertyElement(property);
+  }
+
+  @Override
+  public void setParsedVariable(@NotNull String variable, @NotNull GradleDslElement element) {
+    recordProperty(variable);
+    super.setParsedVariable(variable, element);
+  }
+
+  @Override
+  public void setParsedElement(@NotNull String property, @NotNull GradleDslElement element) {
+    recordProperty(property);
+    super.setParsedElement(property, element);
+  }
+
+  @Override
+  public void addParsedElement(@NotNull String property, @NotNull GradleDslElement element) {
+    recordProperty(property);
+    super.addParsedElement(property, element);
+  }
+
+  @Override
+  protected void addParsedResettingElement(@NotNull String property, @NotNull GradleDslElement element, @NotNull String propertyToReset) {
+    recordProperty(property);
+    recordProperty(propertyToReset);
+    super.addParsedResettingElement(property, element, propertyToReset);
+  }
+
+  @Override
+  protected void addAsParsedDslExpressionList(@NotNull String property, GradleDslExpression dslLiteral) {
+    recordProperty(property);
+    super.addAsParsedDslExpressionList(property, dslLiteral);
+  }
 }
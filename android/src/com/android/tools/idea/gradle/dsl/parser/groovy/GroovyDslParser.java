@@ -125,6 +125,13 @@ public class GroovyDslParser implements GradleDslParser {
   @NotNull private final GroovyFile myPsiFile;
   @NotNull private final GradleDslFile myDslFile;
 
+  /**
+   * The top-level statements of the file as of the last parse, in file order, or {@code null} if the next {@link #reparse()} has to
+   * parse the whole file.
+   */
+  @Nullable private List<ParsedStatement> myParsedStatements;
+  private long myParsedModificationStamp = -1;
+
   public GroovyDslParser(@NotNull GroovyFile file, @NotNull GradleDslFile dslFile) {
     myPsiFile = file;
     myDslFile = dslFile;
@@ -134,33 +141,192 @@ public class GroovyDslParser implements GradleDslParser {
   public void parse() {
     ApplicationManager.getApplication().assertReadAccessAllowed();
 
+    // Statements of this file merge into the blocks inherited from the parent module, so what each statement contributes can only be
+    // told apart when starting from an empty file.
+    boolean canReparse = myDslFile.getPropertyElements().isEmpty();
+
+    List<ParsedStatement> statements = new ArrayList<>();
+    for (GroovyPsiElement statement : getTopLevelStatements()) {
+      statements.add(parseStatement(statement));
+    }
+    myParsedStatements = canReparse ? statements : null;
+    myParsedModificationStamp = myPsiFile.getModificationStamp();
+  }
+
+  /**
+   * Re-parses the top-level statements that changed since the last parse, together with the other statements contributing to the same
+   * properties of the file (e.g. all {@code android} blocks when one of them changed). The elements of the remaining properties are
+   * kept as they are.
+   */
+  @Override
+  public boolean reparse() {
+    ApplicationManager.getApplication().assertReadAccessAllowed();
+
+    List<ParsedStatement> parsedStatements = myParsedStatements;
+    if (parsedStatements == null || !myPsiFile.isValid()) {
+      return false;
+    }
+    if (myPsiFile.getModificationStamp() == myParsedModificationStamp) {
+      return true;
+    }
+
+    List<GroovyPsiElement> statements = getTopLevelStatements();
+    Set<GroovyPsiElement> currentStatements = new HashSet<>(statements);
+    Map<String, GradleDslElement> properties = myDslFile.getPropertyElements();
+
+    // Properties contributed to by statements that were changed or removed, or whose elements refer to PSI that has been replaced.
+    Set<String> dirtyProperties = new HashSet<>();
+    List<ParsedStatement> unchangedStatements = new ArrayList<>();
+    for (ParsedStatement parsed : parsedStatements) {
+      if (currentStatements.contains(parsed.myPsiElement) && parsed.isUpToDate()) {
+        unchangedStatements.add(parsed);
+      }
+      else {
+        dirtyProperties.addAll(parsed.myProperties);
+      }
+    }
+    for (Map.Entry<String, GradleDslElement> entry : properties.entrySet()) {
+      if (!hasValidPsi(entry.getValue())) {
+        dirtyProperties.add(entry.getKey());
+      }
+    }
+
+    // Unchanged statements contributing to a dirty property have to be parsed again as well, which makes their other properties dirty.
+    Map<GroovyPsiElement, ParsedStatement> cleanStatements = new HashMap<>();
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      cleanStatements.clear();
+      for (ParsedStatement parsed : unchangedStatements) {
+        if (Collections.disjoint(parsed.myProperties, dirtyProperties)) {
+          cleanStatements.put(parsed.myPsiElement, parsed);
+        }
+        else if (dirtyProperties.addAll(parsed.myProperties)) {
+          changed = true;
+        }
+      }
+    }
+
+    Set<String> cleanProperties = new HashSet<>();
+    Map<String, GradleDslElement> cleanVariables = new HashMap<>();
+    for (ParsedStatement parsed : cleanStatements.values()) {
+      for (String property : parsed.myProperties) {
+        if (cleanProperties.add(property) && !property.contains(".")) {
+          GradleDslElement variable = myDslFile.getVariableElement(property);
+          if (variable != null) {
+            cleanVariables.put(property, variable);
+          }
+        }
+      }
+    }
+
+    // Build the file up again in statement order, so that its properties end up in the same order as after a full parse.
+    myDslFile.clear();
+    Set<String> restoredProperties = new HashSet<>();
+    List<ParsedStatement> newStatements = new ArrayList<>(statements.size());
+    for (GroovyPsiElement statement : statements) {
+      ParsedStatement parsed = cleanStatements.get(statement);
+      if (parsed != null) {
+        for (String property : parsed.myProperties) {
+          if (restoredProperties.add(property)) {
+            GradleDslElement element = properties.get(property);
+            GradleDslElement variable = cleanVariables.get(property);
+            if (element != null) {
+              myDslFile.setParsedElement(property, element);
+            }
+            if (variable != null && variable != element) {
+              myDslFile.setParsedVariable(property, variable);
+            }
+          }
+        }
+      }
+      else {
+        parsed = parseStatement(statement);
+        if (!Collections.disjoint(parsed.myProperties, cleanProperties)) {
+          // A new statement adds to a property that was kept, its contributions would have to be merged in statement order.
+          myParsedStatements = null;
+          return false;
+        }
+      }
+      newStatements.add(parsed);
+    }
+    myParsedStatements = newStatements;
+    myParsedModificationStamp = myPsiFile.getModificationStamp();
+    return true;
+  }
+
+  @NotNull
+  private List<GroovyPsiElement> getTopLevelStatements() {
+    List<GroovyPsiElement> statements = new ArrayList<>();
     myPsiFile.acceptChildren(new GroovyPsiElementVisitor(new GroovyElementVisitor() {
       @Override
       public void visitMethodCallExpression(@NotNull GrMethodCallExpression e) {
-        process(e);
+        statements.add(e);
       }
 
       @Override
       public void visitAssignmentExpression(@NotNull GrAssignmentExpression e) {
-        process(e);
+        statements.add(e);
       }
 
       @Override
       public void visitApplicationStatement(@NotNull GrApplicationStatement e) {
-        process(e);
+        statements.add(e);
       }
 
       @Override
       public void visitVariableDeclaration(@NotNull GrVariableDeclaration e) {
-        process(e);
+        statements.add(e);
       }
+    }));
+    return statements;
+  }
 
-      void process(GroovyPsiElement e) {
-        if (!parse(e, myDslFile)) {
-          Logger.getInstance(this.getClass()).info("GroovyDslParser failed at parsing file: " + myPsiFile.getName());
-        }
+  @NotNull
+  private ParsedStatement parseStatement(@NotNull GroovyPsiElement statement) {
+    Set<String> properties;
+    myDslFile.startRecordingProperties();
+    try {
+      if (!parse(statement, myDslFile)) {
+        Logger.getInstance(this.getClass()).info("GroovyDslParser failed at parsing file: " + myPsiFile.getName());
       }
-    }));
+    }
+    finally {
+      properties = myDslFile.stopRecordingProperties();
+    }
+    return new ParsedStatement(statement, statement.getText(), properties);
+  }
+
+  private static boolean hasValidPsi(@NotNull GradleDslElement element) {
+    PsiElement psiElement = element.getPsiElement();
+    if (psiElement != null && !psiElement.isValid()) {
+      return false;
+    }
+    for (GradleDslElement child : element.getChildren()) {
+      if (!hasValidPsi(child)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A top-level statement of the file, with its text and the properties of the file it contributed to when it was parsed.
+   */
+  private static final class ParsedStatement {
+    @NotNull private final GroovyPsiElement myPsiElement;
+    @NotNull private final String myText;
+    @NotNull private final Set<String> myProperties;
+
+    private ParsedStatement(@NotNull GroovyPsiElement psiElement, @NotNull String text, @NotNull Set<String> properties) {
+      myPsiElement = psiElement;
+      myText = text;
+      myProperties = properties;
+    }
+
+    private boolean isUpToDate() {
+      return myPsiElement.isValid() && myText.equals(myPsiElement.getText());
+    }
   }
 
   @Override
@@ -20,6 +20,7 @@ import com.android.tools.idea.IdeInfo;
 import com.android.tools.idea.gradle.project.facet.gradle.GradleFacet;
 import com.android.tools.idea.gradle.project.model.GradleModuleModel;
 import com.android.tools.idea.gradle.project.model.NdkModuleModel;
+import com.android.tools.idea.gradle.project.sync.GradleFiles;
 import com.android.tools.idea.gradle.project.sync.GradleSyncState;
 import com.android.tools.idea.gradle.util.LocalProperties;
 import com.android.tools.idea.sdk.IdeSdks;
@@ -28,6 +29,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -61,6 +63,9 @@ public class ProjectBuildFileChecksums implements Serializable {
 
   private transient File myRootFolderPath;
 
+  // Used while creating the checksums to reuse the digests already computed by GradleFiles.
+  @Nullable private transient GradleFiles myGradleFiles;
+
   public static class Loader {
     @Nullable
     public ProjectBuildFileChecksums loadFromDisk(@NotNull Project project) {
@@ -156,6 +161,7 @@ public class ProjectBuildFileChecksums implements Serializable {
   @Nullable
   static ProjectBuildFileChecksums createFrom(@NotNull Project project) throws IOException {
     ProjectBuildFileChecksums buildFileChecksums = new ProjectBuildFileChecksums();
+    buildFileChecksums.myGradleFiles = project.isDefault() ? null : GradleFiles.getInstance(project);
     File rootFolderPath = getBaseDirPath(project);
 
     for (Module module : ModuleManager.getInstance(project).getModules()) {
@@ -213,7 +219,26 @@ public class ProjectBuildFileChecksums implements Serializable {
     else {
       key = file.getAbsolutePath();
     }
-    myFileChecksums.put(key, createChecksum(file));
+    myFileChecksums.put(key, createChecksumReusingDigests(file));
+  }
+
+  /**
+   * Returns the checksum of the given file, reusing the digest already computed by {@link GradleFiles} when the file has not changed
+   * since, and reading the file otherwise.
+   */
+  @NotNull
+  private byte[] createChecksumReusingDigests(@NotNull File file) throws IOException {
+    if (myGradleFiles != null) {
+      // Do not refresh the file system, it is expensive. If the file is not known to the VFS there is no digest for it anyway.
+      VirtualFile virtualFile = LocalFileSystem.getInstance().findFileByIoFile(file);
+      if (virtualFile != null) {
+        byte[] digest = myGradleFiles.getContentDigest(virtualFile);
+        if (digest != null) {
+          return digest;
+        }
+      }
+    }
+    return createChecksum(file);
   }
 
   /**
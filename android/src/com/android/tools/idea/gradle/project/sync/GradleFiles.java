@@ -20,10 +20,15 @@ import com.android.annotations.concurrency.GuardedBy;
 import com.android.tools.idea.gradle.project.model.NdkModuleModel;
 import com.android.tools.idea.gradle.util.GradleWrapper;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.intellij.concurrency.JobLauncher;
 import com.intellij.lang.properties.PropertiesFileType;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
 import com.intellij.openapi.fileEditor.FileEditorManagerListener;
 import com.intellij.openapi.module.Module;
@@ -31,8 +36,13 @@ import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupManager;
 import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
 import com.intellij.psi.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -40,7 +50,9 @@ import org.jetbrains.plugins.groovy.GroovyFileType;
 import org.jetbrains.plugins.groovy.lang.lexer.GroovyTokenTypes;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.android.SdkConstants.*;
 import static com.android.tools.idea.Projects.getBaseDirPath;
@@ -62,7 +74,15 @@ public class GradleFiles {
 
   @GuardedBy("myLock")
   @NotNull
-  private final Map<VirtualFile, Integer> myFileHashes = new HashMap<>();
+  private final Map<VirtualFile, byte[]> myFileHashes = new HashMap<>();
+
+  /**
+   * Content digests of the tracked files, keyed by file and valid only while the file (and its document, if it has unsaved changes) has
+   * the same modification stamp. Digests are computed from raw bytes, never from PSI.
+   */
+  @GuardedBy("myLock")
+  @NotNull
+  private final Map<VirtualFile, ContentDigest> myContentDigests = new HashMap<>();
 
   @GuardedBy("myLock")
   @NotNull
@@ -105,7 +125,8 @@ public class GradleFiles {
 
     // Add a listener to see when gradle files are being edited.
     myProject.getMessageBus().connect().subscribe(FileEditorManagerListener.FILE_EDITOR_MANAGER, myFileEditorListener);
-
+    // Add a listener to see when gradle files are changed on disk (saved from an editor, or modified by external tools.)
+    myProject.getMessageBus().connect().subscribe(VirtualFileManager.VFS_CHANGES, new BuildFileContentListener());
 
     GradleSyncState.subscribe(myProject, mySyncListener);
     // Populate build file hashes on creation.
@@ -152,14 +173,14 @@ public class GradleFiles {
     }
   }
 
-  private void putHashForFile(@NotNull Map<VirtualFile, Integer> map, @NotNull VirtualFile file) {
-    Integer hash = computeHash(file);
+  private void putHashForFile(@NotNull Map<VirtualFile, byte[]> map, @NotNull VirtualFile file) {
+    byte[] hash = computeHash(file);
     if (hash != null) {
       map.put(file, hash);
     }
   }
 
-  private void storeHashesForFiles(@NotNull Map<VirtualFile, Integer> files) {
+  private void storeHashesForFiles(@NotNull Map<VirtualFile, byte[]> files) {
     synchronized (myLock) {
       myFileHashes.clear();
       myFileHashes.putAll(files);
@@ -172,12 +193,18 @@ public class GradleFiles {
    * in hashValue should be ignored.
    */
   @Nullable
-  private Integer getStoredHashForFile(@NotNull VirtualFile file) {
+  private byte[] getStoredHashForFile(@NotNull VirtualFile file) {
     synchronized (myLock) {
       return myFileHashes.get(file);
     }
   }
 
+  private boolean isTrackedFile(@NotNull VirtualFile file) {
+    synchronized (myLock) {
+      return myFileHashes.containsKey(file) || myExternalBuildFiles.contains(file);
+    }
+  }
+
   private boolean containsChangedFile(@NotNull VirtualFile file) {
     synchronized (myLock) {
       return myChangedFiles.contains(file) || myChangedExternalFiles.contains(file);
@@ -197,24 +224,86 @@ public class GradleFiles {
   }
 
   /**
-   * Computes a hash for a given {@code VirtualFile} by using the string obtained from its {@code PsiFile},
-   * and stores it as the first element in hashValue. If this method returns false the hash was not computed
-   * and its value should not be used.
+   * Computes an MD5 digest of the contents of the given {@code VirtualFile}. If the file is open in an editor with unsaved changes the
+   * digest is computed over the bytes saving its document would write, i.e. with the line separators, BOM and charset of the file,
+   * otherwise over the raw bytes of the file. This way a document that only differs from the file in the way it represents the text
+   * has the same digest. PSI is never loaded. Digests are cached until the modification stamp of the file (or its document) changes,
+   * so repeated checks of unchanged files are free.
+   *
+   * @return the digest, or {@code null} if the contents of the file could not be read.
    */
   @Nullable
-  private Integer computeHash(@NotNull VirtualFile file) {
-    PsiFile psiFile = PsiManager.getInstance(myProject).findFile(file);
+  private byte[] computeHash(@NotNull VirtualFile file) {
+    if (!file.isValid()) {
+      return null;
+    }
+
+    Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+    boolean unsaved = document != null && FileDocumentManager.getInstance().isDocumentUnsaved(document);
+    long fileStamp = file.getModificationStamp();
+    long documentStamp = unsaved ? document.getModificationStamp() : -1L;
+
+    synchronized (myLock) {
+      ContentDigest cached = myContentDigests.get(file);
+      if (cached != null && cached.fileStamp == fileStamp && cached.documentStamp == documentStamp) {
+        return cached.digest;
+      }
+    }
+
+    byte[] digest;
+    if (unsaved) {
+      digest = hashDocument(file, document);
+    }
+    else {
+      try {
+        digest = Hashing.md5().hashBytes(file.contentsToByteArray()).asBytes();
+      }
+      catch (IOException e) {
+        Logger.getInstance(GradleFiles.class).info("Failed to read contents of " + file.getPath(), e);
+        return null;
+      }
+    }
 
-    if (psiFile != null && psiFile.isValid()) {
-      return psiFile.getText().hashCode();
+    synchronized (myLock) {
+      myContentDigests.put(file, new ContentDigest(fileStamp, documentStamp, digest));
     }
+    return digest;
+  }
 
+  @NotNull
+  private byte[] hashDocument(@NotNull VirtualFile file, @NotNull Document document) {
+    String text = document.getImmutableCharSequence().toString();
+    String lineSeparator = FileDocumentManager.getInstance().getLineSeparator(file, myProject);
+    if (!lineSeparator.equals("\n")) {
+      text = StringUtil.convertLineSeparators(text, lineSeparator);
+    }
+    Hasher hasher = Hashing.md5().newHasher();
+    byte[] bom = file.getBOM();
+    if (bom != null) {
+      hasher.putBytes(bom);
+    }
+    return hasher.putBytes(text.getBytes(file.getCharset())).hash().asBytes();
+  }
+
+  /**
+   * Returns the MD5 digest of the on-disk contents of the given file, if it was already computed by this service and the file has not
+   * changed since. The digest is the same one {@link com.android.tools.idea.gradle.project.ProjectBuildFileChecksums} stores, which
+   * allows it to avoid reading build files again after sync.
+   */
+  @Nullable
+  public byte[] getContentDigest(@NotNull VirtualFile file) {
+    synchronized (myLock) {
+      ContentDigest cached = myContentDigests.get(file);
+      if (cached != null && cached.documentStamp == -1L && cached.fileStamp == file.getModificationStamp()) {
+        return cached.digest;
+      }
+    }
     return null;
   }
 
   private boolean areHashesEqual(@NotNull VirtualFile file) {
-    Integer oldHash = getStoredHashForFile(file);
-    return oldHash != null && oldHash.equals(computeHash(file));
+    byte[] oldHash = getStoredHashForFile(file);
+    return oldHash != null && Arrays.equals(oldHash, computeHash(file));
   }
 
   /**
@@ -223,36 +312,36 @@ public class GradleFiles {
    * myChangedExternalFiles had the same hashes, false otherwise.
    */
   private boolean checkHashesOfChangedFiles() {
-    synchronized (myLock) {
-      return filterHashes(myChangedFiles) && filterHashes(myChangedExternalFiles);
-    }
+    return filterHashes(myChangedFiles) && filterHashes(myChangedExternalFiles);
   }
 
   /**
-   * Filters the files given removing any that have a hash matching the last one stored. Returns true if
-   * the filtered collection is empty, false otherwise.
+   * Filters the given set of changed files removing any that have a hash matching the last one stored. Returns true if
+   * the filtered set is empty, false otherwise. The files are read without holding myLock.
    */
-  private boolean filterHashes(@NotNull Collection<VirtualFile> files) {
-    boolean status = true;
-    Set<VirtualFile> toRemove = new HashSet<>();
-    for (VirtualFile file : files) {
-      if (!areHashesEqual(file)) {
-        status = false;
-      }
-      else {
-        toRemove.add(file);
+  private boolean filterHashes(@NotNull Set<VirtualFile> files) {
+    List<VirtualFile> filesToCheck;
+    synchronized (myLock) {
+      filesToCheck = new ArrayList<>(files);
+    }
+    Set<VirtualFile> unchangedFiles = new HashSet<>();
+    for (VirtualFile file : filesToCheck) {
+      if (areHashesEqual(file)) {
+        unchangedFiles.add(file);
       }
     }
-    files.removeAll(toRemove);
-    return status;
+    synchronized (myLock) {
+      files.removeAll(unchangedFiles);
+      return files.isEmpty();
+    }
   }
 
   /**
    * Updates the currently stored hashes for each of the gradle build files.
    */
   private void updateFileHashes() {
-    // Local map to minimize time holding myLock
-    Map<VirtualFile, Integer> fileHashes = new HashMap<>();
+    // Local map to minimize time holding myLock. Entries are added from several threads, see putHashForFile.
+    Map<VirtualFile, byte[]> fileHashes = new ConcurrentHashMap<>();
     GradleWrapper gradleWrapper = GradleWrapper.find(myProject);
     if (gradleWrapper != null) {
       File propertiesFilePath = gradleWrapper.getPropertiesFilePath();
@@ -266,7 +355,7 @@ public class GradleFiles {
 
     // Clean external build files before they are repopulated.
     removeExternalBuildFiles();
-    List<VirtualFile> externalBuildFiles = new ArrayList<>();
+    List<VirtualFile> externalBuildFiles = Collections.synchronizedList(new ArrayList<>());
 
     List<Module> modules = Lists.newArrayList(ModuleManager.getInstance(myProject).getModules());
     JobLauncher jobLauncher = JobLauncher.getInstance();
@@ -311,6 +400,14 @@ public class GradleFiles {
     }
 
     storeHashesForFiles(fileHashes);
+    removeStaleDigests();
+  }
+
+  private void removeStaleDigests() {
+    synchronized (myLock) {
+      myContentDigests.keySet()
+        .removeIf(file -> !file.isValid() || (!myFileHashes.containsKey(file) && !myExternalBuildFiles.contains(file)));
+    }
   }
 
   /**
@@ -331,11 +428,7 @@ public class GradleFiles {
   }
 
   public boolean areExternalBuildFilesModified() {
-    return ApplicationManager.getApplication().runReadAction((Computable<Boolean>)() -> {
-      synchronized (myLock) {
-        return !filterHashes(myChangedExternalFiles);
-      }
-    });
+    return ApplicationManager.getApplication().runReadAction((Computable<Boolean>)() -> !filterHashes(myChangedExternalFiles));
   }
 
   public boolean isGradleFile(@NotNull PsiFile psiFile) {
@@ -389,6 +482,52 @@ public class GradleFiles {
     }
   }
 
+  private static class ContentDigest {
+    private final long fileStamp;
+    private final long documentStamp;
+    @NotNull private final byte[] digest;
+
+    ContentDigest(long fileStamp, long documentStamp, @NotNull byte[] digest) {
+      this.fileStamp = fileStamp;
+      this.documentStamp = documentStamp;
+      this.digest = digest;
+    }
+  }
+
+  /**
+   * Listens for content changes of the tracked build files in the VFS. Changed files are recorded, and their new digests are computed
+   * on a pooled thread, so that checking whether a sync is needed only has to compare already computed digests.
+   */
+  private class BuildFileContentListener implements BulkFileListener {
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+      List<VirtualFile> changedFiles = new ArrayList<>();
+      for (VFileEvent event : events) {
+        if (event instanceof VFileContentChangeEvent) {
+          VirtualFile file = ((VFileContentChangeEvent)event).getFile();
+          if (isTrackedFile(file)) {
+            boolean isExternal;
+            synchronized (myLock) {
+              isExternal = myExternalBuildFiles.contains(file);
+            }
+            addChangedFile(file, isExternal);
+            changedFiles.add(file);
+          }
+        }
+      }
+      if (!changedFiles.isEmpty()) {
+        ApplicationManager.getApplication().executeOnPooledThread(() -> ApplicationManager.getApplication().runReadAction(() -> {
+          if (myProject.isDisposed()) {
+            return;
+          }
+          for (VirtualFile file : changedFiles) {
+            computeHash(file);
+          }
+        }));
+      }
+    }
+  }
+
   /**
    * Listens for changes to the PsiTree of gradle build files. If a tree changes in any
    * meaningful way then relevant file is recorded. A change is meaningful under the following
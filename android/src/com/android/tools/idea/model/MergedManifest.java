@@ -16,29 +16,32 @@
 package com.android.tools.idea.model;
 
 import com.android.annotations.VisibleForTesting;
-import com.android.ide.common.rendering.HardwareConfigHelper;
 import com.android.manifmerger.Actions;
 import com.android.manifmerger.MergingReport;
 import com.android.manifmerger.XmlNode;
 import com.android.resources.ScreenSize;
 import com.android.sdklib.AndroidVersion;
 import com.android.sdklib.IAndroidTarget;
-import com.android.sdklib.SdkVersionInfo;
 import com.android.sdklib.devices.Device;
-import com.android.tools.idea.rendering.multi.CompatibilityRenderTarget;
-import com.android.tools.idea.run.activity.ActivityLocatorUtils;
 import com.android.tools.lint.checks.PermissionHolder;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
-import com.intellij.openapi.application.ApplicationManager;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootModificationTracker;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.vfs.VirtualFile;
-import org.jetbrains.android.dom.manifest.Manifest;
+import com.intellij.psi.*;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -46,37 +49,44 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.android.SdkConstants.*;
-import static com.android.tools.lint.checks.PermissionRequirement.ATTR_PROTECTION_LEVEL;
-import static com.android.tools.lint.checks.PermissionRequirement.VALUE_DANGEROUS;
+import static com.android.tools.idea.projectsystem.ProjectSystemSyncUtil.PROJECT_SYSTEM_SYNC_TOPIC;
 import static com.android.xml.AndroidManifest.*;
 
 /**
  * To get a {@linkplain MergedManifest} use {@link MergedManifest#get(AndroidFacet)} or {@link MergedManifest#get(Module)}
+ *
+ * <p>The merged manifest information is kept in an immutable {@link MergedManifestSnapshot}, which is replaced
+ * whenever one of the files participating in the merge (or the project structure) changes. The accessors of
+ * this class return values from {@link #getAvailableSnapshot()}, so they only wait for the manifest merger until
+ * a first snapshot exists, and otherwise return the values of the last snapshot while a new one is computed in
+ * the background. Callers that need values reflecting the latest edits should use {@link #getSnapshot()}, which
+ * runs the merge on the calling thread if needed, or {@link #getSnapshotAsync()}.
  */
 public class MergedManifest {
+  private static final String NAVIGATION_FOLDER_PREFIX = "navigation";
+  private static final ExecutorService ourRefreshExecutor =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("MergedManifest refresh", 1);
 
   private final Module myModule;
-  private String myPackage;
-  private String myApplicationId;
-  private Integer myVersionCode;
-  private String myManifestTheme;
-  private Map<String, ActivityAttributes> myActivityAttributesMap;
-  private ManifestInfo.ManifestFile myManifestFile;
-  private long myLastChecked;
-  private AndroidVersion myMinSdk;
-  private AndroidVersion myTargetSdk;
-  private String myApplicationIcon;
-  private String myApplicationLabel;
-  private boolean myApplicationSupportsRtl;
-  private Boolean myApplicationDebuggable;
-  private @Nullable Map<String, XmlNode.NodeKey> myNodeKeys;
-  private Document myDocument;
-  private List<VirtualFile> myManifestFiles;
-  private ModulePermissions myPermissionHolder;
-  private boolean myApplicationHasCode = true;
+  private final boolean myIsFixed;
+
+  /** Incremented every time a change that may affect the merged manifest is observed */
+  private final AtomicLong myModificationCount = new AtomicLong();
+
+  /** Guards {@link #myManifestFile}, which is not thread safe, and serializes the computation of snapshots */
+  private final Object myRefreshLock = new Object();
+  @Nullable private ManifestInfo.ManifestFile myManifestFile;
+
+  @Nullable private volatile CachedSnapshot myCachedSnapshot;
+  @Nullable private ListenableFuture<MergedManifestSnapshot> myPendingRefresh;
 
   /**
    * Constructs a new MergedManifest
@@ -84,6 +94,19 @@ public class MergedManifest {
    */
   MergedManifest(@NotNull Module module) {
     myModule = module;
+    myIsFixed = false;
+
+    PsiManager.getInstance(module.getProject()).addPsiTreeChangeListener(new ManifestChangeListener(), module);
+    module.getMessageBus().connect(module).subscribe(PROJECT_SYSTEM_SYNC_TOPIC, result -> myModificationCount.incrementAndGet());
+  }
+
+  /**
+   * Constructs a MergedManifest that always returns the given {@code snapshot}
+   */
+  private MergedManifest(@NotNull Module module, @NotNull MergedManifestSnapshot snapshot) {
+    myModule = module;
+    myIsFixed = true;
+    myCachedSnapshot = new CachedSnapshot(snapshot, ModificationStamp.NONE);
   }
 
   /**
@@ -95,11 +118,7 @@ public class MergedManifest {
   @NotNull
   public static MergedManifest get(@NotNull Module module) {
     if (module.isDisposed()) {
-      return new MergedManifest(module) {
-        @Override
-        protected void syncWithReadPermission() {
-        }
-      };
+      return new MergedManifest(module, MergedManifestSnapshot.createEmpty(module));
     }
     MergedManifest manifest = module.getComponent(MergedManifest.class);
     assert manifest != null;
@@ -117,10 +136,175 @@ public class MergedManifest {
     return get(facet.getModule());
   }
 
+  /**
+   * Returns an up to date {@link MergedManifestSnapshot}. If the manifest files changed since the last
+   * snapshot was computed, the merge is run again on the calling thread, under a read action.
+   */
+  @NotNull
+  public MergedManifestSnapshot getSnapshot() {
+    CachedSnapshot cached = myCachedSnapshot;
+    if (cached != null && (myIsFixed || cached.myStamp.equals(getModificationStamp()))) {
+      return cached.mySnapshot;
+    }
+    return ReadAction.compute(this::refreshSnapshot);
+  }
+
+  /**
+   * Returns the most recently computed {@link MergedManifestSnapshot} without blocking, even if it is out of date,
+   * or {@code null} if no snapshot has been computed yet. If the snapshot is out of date, a new one is computed in
+   * the background.
+   */
+  @Nullable
+  public MergedManifestSnapshot getLatestSnapshot() {
+    CachedSnapshot cached = myCachedSnapshot;
+    if (cached == null || (!myIsFixed && !cached.myStamp.equals(getModificationStamp()))) {
+      getSnapshotAsync();
+    }
+    return cached == null ? null : cached.mySnapshot;
+  }
+
+  /**
+   * Like {@link #getLatestSnapshot()}, but computes the first snapshot of the module on the calling thread instead
+   * of returning {@code null}. Meant for callers such as rendering and theme lookups, which should not wait for the
+   * manifest merger on every change and can use the previous values until the background refresh completes.
+   */
+  @NotNull
+  public MergedManifestSnapshot getAvailableSnapshot() {
+    CachedSnapshot cached = myCachedSnapshot;
+    if (cached == null) {
+      return getSnapshot();
+    }
+    if (!myIsFixed && !cached.myStamp.equals(getModificationStamp())) {
+      getSnapshotAsync();
+    }
+    return cached.mySnapshot;
+  }
+
+  /**
+   * Returns a future of an up to date {@link MergedManifestSnapshot}, computed on a background thread if needed.
+   * Concurrent requests share the same computation.
+   */
+  @NotNull
+  public ListenableFuture<MergedManifestSnapshot> getSnapshotAsync() {
+    CachedSnapshot cached = myCachedSnapshot;
+    if (cached != null && (myIsFixed || cached.myStamp.equals(getModificationStamp()))) {
+      return Futures.immediateFuture(cached.mySnapshot);
+    }
+
+    synchronized (this) {
+      if (myPendingRefresh == null) {
+        SettableFuture<MergedManifestSnapshot> future = SettableFuture.create();
+        myPendingRefresh = future;
+        ourRefreshExecutor.execute(() -> {
+          try {
+            future.set(refreshSnapshotInBackground());
+          }
+          catch (Throwable t) {
+            future.setException(t);
+          }
+          finally {
+            synchronized (this) {
+              myPendingRefresh = null;
+            }
+          }
+        });
+      }
+      return myPendingRefresh;
+    }
+  }
+
+  @NotNull
+  private MergedManifestSnapshot refreshSnapshotInBackground() {
+    Ref<MergedManifestSnapshot> result = Ref.create();
+    // Yield to write actions (e.g. typing in the manifest editor), and try again once they are done
+    while (!myModule.isDisposed() &&
+           !ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(() -> result.set(refreshSnapshot()))) {
+      ProgressIndicatorUtils.yieldToPendingWriteActions();
+    }
+    return result.isNull() ? MergedManifestSnapshot.createEmpty(myModule) : result.get();
+  }
+
+  @NotNull
+  private MergedManifestSnapshot refreshSnapshot() {
+    synchronized (myRefreshLock) {
+      // Another thread may have refreshed the snapshot while this one was waiting for the lock
+      ModificationStamp stamp = getModificationStamp();
+      CachedSnapshot cached = myCachedSnapshot;
+      if (cached != null && (myIsFixed || cached.myStamp.equals(stamp))) {
+        return cached.mySnapshot;
+      }
+
+      MergedManifestSnapshot snapshot = computeSnapshot(cached == null ? null : cached.mySnapshot);
+      List<VirtualFile> previousFiles = cached == null ? null : cached.mySnapshot.getManifestFiles();
+      if (!Objects.equals(previousFiles, snapshot.getManifestFiles())) {
+        // The stamp taken above covers the files of the previous merge, which are not the ones to watch from now on
+        stamp = stamp.withFiles(snapshot.getManifestFiles());
+      }
+      myCachedSnapshot = new CachedSnapshot(snapshot, stamp);
+      return snapshot;
+    }
+  }
+
+  /**
+   * Returns the new snapshot of the merged manifest, or {@code previous} if the files participating in
+   * the merge did not actually change. Must be called with {@link #myRefreshLock} and read access.
+   */
+  @NotNull
+  private MergedManifestSnapshot computeSnapshot(@Nullable MergedManifestSnapshot previous) {
+    AndroidFacet facet = AndroidFacet.getInstance(myModule);
+    assert facet != null : "Attempt to obtain manifest info from a non Android module: " + myModule.getName();
+
+    if (myManifestFile == null) {
+      myManifestFile = ManifestInfo.ManifestFile.create(facet);
+    }
+
+    try {
+      // Check to see if our data is up to date
+      boolean refresh = myManifestFile.refresh();
+      if (!refresh && previous != null) {
+        // Already have up to date data
+        return previous;
+      }
+      return MergedManifestSnapshot.create(facet, myManifestFile);
+    }
+    catch (ProcessCanceledException e) {
+      myManifestFile = null; // clear the file, to make sure we reload everything on next call to this method
+      throw e;
+    }
+    catch (Exception e) {
+      Logger.getInstance(MergedManifest.class).warn("Could not read Manifest data", e);
+      return previous != null ? previous : MergedManifestSnapshot.createEmpty(myModule);
+    }
+  }
+
+  @NotNull
+  private ModificationStamp getModificationStamp() {
+    CachedSnapshot cached = myCachedSnapshot;
+    Project project = myModule.getProject();
+    return new ModificationStamp(myModificationCount.get(),
+                                 getFileStamps(cached == null ? null : cached.mySnapshot.getManifestFiles()),
+                                 ProjectRootModificationTracker.getInstance(project).getModificationCount());
+  }
+
+  /**
+   * Returns the modification stamps of the given files, which change when the files are modified outside of the IDE.
+   */
+  @NotNull
+  private static long[] getFileStamps(@Nullable List<VirtualFile> files) {
+    if (files == null) {
+      return ArrayUtil.EMPTY_LONG_ARRAY;
+    }
+    long[] stamps = new long[files.size()];
+    for (int i = 0; i < stamps.length; i++) {
+      VirtualFile file = files.get(i);
+      stamps[i] = file.isValid() ? file.getModificationStamp() : -1;
+    }
+    return stamps;
+  }
+
   @Nullable
   public Document getDocument() {
-    sync();
-    return myDocument;
+    return getAvailableSnapshot().getDocument();
   }
 
   /**
@@ -130,7 +314,7 @@ public class MergedManifest {
    */
   @Nullable
   public List<VirtualFile> getManifestFiles() {
-    return myManifestFiles;
+    return getAvailableSnapshot().getManifestFiles();
   }
 
   /**
@@ -139,7 +323,11 @@ public class MergedManifest {
    */
   @VisibleForTesting
   public void clear() {
-    myLastChecked = 0;
+    myModificationCount.incrementAndGet();
+    if (!myIsFixed) {
+      // Drop the snapshot, so that the accessors don't return it while a new one is computed
+      myCachedSnapshot = null;
+    }
   }
 
   /**
@@ -149,8 +337,7 @@ public class MergedManifest {
    */
   @Nullable
   public String getPackage() {
-    sync();
-    return myPackage;
+    return getAvailableSnapshot().getPackage();
   }
 
   /**
@@ -158,14 +345,12 @@ public class MergedManifest {
    */
   @Nullable
   public String getApplicationId() {
-    sync();
-    return myApplicationId;
+    return getAvailableSnapshot().getApplicationId();
   }
 
   @Nullable
   public Integer getVersionCode() {
-    sync();
-    return myVersionCode;
+    return getAvailableSnapshot().getVersionCode();
   }
 
   /**
@@ -175,11 +360,7 @@ public class MergedManifest {
    */
   @NotNull
   public Map<String, ActivityAttributes> getActivityAttributesMap() {
-    sync();
-    if (myActivityAttributesMap == null) {
-      return Collections.emptyMap();
-    }
-    return myActivityAttributesMap;
+    return getAvailableSnapshot().getActivityAttributesMap();
   }
 
   /**
@@ -187,11 +368,7 @@ public class MergedManifest {
    */
   @Nullable
   public ActivityAttributes getActivityAttributes(@NotNull String activity) {
-    int index = activity.indexOf('.');
-    if (index <= 0 && myApplicationId != null && !myApplicationId.isEmpty()) {
-      activity = myApplicationId + (index == -1 ? "." : "") + activity;
-    }
-    return getActivityAttributesMap().get(activity);
+    return getAvailableSnapshot().getActivityAttributes(activity);
   }
 
   /**
@@ -201,8 +378,7 @@ public class MergedManifest {
    */
   @Nullable
   public String getManifestTheme() {
-    sync();
-    return myManifestTheme;
+    return getAvailableSnapshot().getManifestTheme();
   }
 
   /**
@@ -216,52 +392,7 @@ public class MergedManifest {
    */
   @NotNull
   public String getDefaultTheme(@Nullable IAndroidTarget renderingTarget, @Nullable ScreenSize screenSize, @Nullable Device device) {
-    sync();
-
-    if (myManifestTheme != null) {
-      return myManifestTheme;
-    }
-
-    // For Android Wear and Android TV, the defaults differ
-    if (device != null) {
-      if (HardwareConfigHelper.isWear(device)) {
-        return "@android:style/Theme.DeviceDefault.Light";
-      } else if (HardwareConfigHelper.isTv(device)) {
-        //noinspection SpellCheckingInspection
-        return "@style/Theme.Leanback";
-      }
-    }
-
-    // From manifest theme documentation:
-    // "If that attribute is also not set, the default system theme is used."
-    int targetSdk;
-    AndroidFacet facet = AndroidFacet.getInstance(myModule);
-    if (facet == null) {
-      // Should not happen, but has been observed to happen in rare scenarios
-      // (such as 73332530), probably related to race condition between
-      // Gradle sync and layout rendering
-      return ANDROID_STYLE_RESOURCE_PREFIX + "Theme.Material.Light";
-    }
-
-    AndroidModuleInfo info = AndroidModuleInfo.getInstance(facet);
-    targetSdk = info.getTargetSdkVersion().getApiLevel();
-
-    int renderingTargetSdk = targetSdk;
-    if (renderingTarget instanceof CompatibilityRenderTarget) {
-      renderingTargetSdk = renderingTarget.getVersion().getApiLevel();
-      //targetSdk = SdkVersionInfo.HIGHEST_KNOWN_API
-    } else if (renderingTarget != null) {
-      renderingTargetSdk = renderingTarget.getVersion().getApiLevel();
-    }
-
-    int apiLevel = Math.min(targetSdk, renderingTargetSdk);
-    if (apiLevel >= 21) {
-      return ANDROID_STYLE_RESOURCE_PREFIX + "Theme.Material.Light"; //$NON-NLS-1$
-    } else if (apiLevel >= 14 || apiLevel >= 11 && screenSize == ScreenSize.XLARGE) {
-      return ANDROID_STYLE_RESOURCE_PREFIX + "Theme.Holo"; //$NON-NLS-1$
-    } else {
-      return ANDROID_STYLE_RESOURCE_PREFIX + "Theme"; //$NON-NLS-1$
-    }
+    return getAvailableSnapshot().getDefaultTheme(renderingTarget, screenSize, device);
   }
 
   /**
@@ -271,8 +402,7 @@ public class MergedManifest {
    */
   @Nullable
   public String getApplicationIcon() {
-    sync();
-    return myApplicationIcon;
+    return getAvailableSnapshot().getApplicationIcon();
   }
 
   /**
@@ -282,8 +412,7 @@ public class MergedManifest {
    */
   @Nullable
   public String getApplicationLabel() {
-    sync();
-    return myApplicationLabel;
+    return getAvailableSnapshot().getApplicationLabel();
   }
 
   /**
@@ -292,8 +421,7 @@ public class MergedManifest {
    * @return true if the application has RTL support.
    */
   public boolean isRtlSupported() {
-    sync();
-    return myApplicationSupportsRtl;
+    return getAvailableSnapshot().isRtlSupported();
   }
 
   /**
@@ -301,16 +429,14 @@ public class MergedManifest {
    */
   @Nullable
   public Boolean getApplicationDebuggable() {
-    sync();
-    return myApplicationDebuggable;
+    return getAvailableSnapshot().getApplicationDebuggable();
   }
 
   /**
    * Returns the value for the hasCode flag set in the manifest. Returns true if not set
    */
   public boolean getApplicationHasCode() {
-    sync();
-    return myApplicationHasCode;
+    return getAvailableSnapshot().getApplicationHasCode();
   }
 
   /**
@@ -320,8 +446,7 @@ public class MergedManifest {
    */
   @NotNull
   public AndroidVersion getTargetSdkVersion() {
-    sync();
-    return myTargetSdk != null ? myTargetSdk : getMinSdkVersion();
+    return getAvailableSnapshot().getTargetSdkVersion();
   }
 
   /**
@@ -331,8 +456,7 @@ public class MergedManifest {
    */
   @NotNull
   public AndroidVersion getMinSdkVersion() {
-    sync();
-    return myMinSdk != null ? myMinSdk : AndroidVersion.DEFAULT;
+    return getAvailableSnapshot().getMinSdkVersion();
   }
 
   /**
@@ -340,29 +464,7 @@ public class MergedManifest {
    */
   @NotNull
   public PermissionHolder getPermissionHolder() {
-    sync();
-    if (myPermissionHolder == null) {
-      return new ModulePermissions(Collections.emptySet(), Collections.emptySet());
-    }
-    return myPermissionHolder;
-  }
-
-  /**
-   * Ensure that the package, theme and activity maps are initialized and up to date
-   * with respect to the manifest file
-   */
-  private void sync() {
-    // Since each of the accessors call sync(), allow a bunch of immediate
-    // accessors to all bypass the file stat() below
-    long now = System.currentTimeMillis();
-    if (now - myLastChecked < 50 && myManifestFile != null) {
-      return;
-    }
-    myLastChecked = now;
-
-    // TODO remove this time based checking
-
-    ApplicationManager.getApplication().runReadAction(this::syncWithReadPermission);
+    return getAvailableSnapshot().getPermissionHolder();
   }
 
   static String getAttributeValue(@NotNull Element element,
@@ -371,169 +473,17 @@ public class MergedManifest {
     return Strings.emptyToNull(element.getAttributeNS(namespace, localName));
   }
 
-  /**
-   * This method is synchronized to ensure that two simultaneous sync requests from different threads don't interfere with each other.
-   */
-  protected synchronized void syncWithReadPermission() {
-    AndroidFacet facet = AndroidFacet.getInstance(myModule);
-    assert facet != null : "Attempt to obtain manifest info from a non Android module: " + myModule.getName();
-
-    if (myManifestFile == null) {
-      myManifestFile = ManifestInfo.ManifestFile.create(facet);
-    }
-
-    // Check to see if our data is up to date
-    boolean refresh = myManifestFile.refresh();
-    if (!refresh) {
-      // Already have up to date data
-      return;
-    }
-
-    myActivityAttributesMap = new HashMap<>();
-    myManifestTheme = null;
-    myTargetSdk = AndroidVersion.DEFAULT;
-    myMinSdk = AndroidVersion.DEFAULT;
-    myPackage = ""; //$NON-NLS-1$
-    myApplicationId = ""; //$NON-NLS-1$
-    myVersionCode = null;
-    myApplicationIcon = null;
-    myApplicationLabel = null;
-    myApplicationSupportsRtl = false;
-    myNodeKeys = null;
-    myActivities = Lists.newArrayList();
-    myActivityAliases = Lists.newArrayListWithExpectedSize(4);
-    myServices = Lists.newArrayListWithExpectedSize(4);
-    Set<String> permissions = Sets.newHashSetWithExpectedSize(30);
-    Set<String> revocable = Sets.newHashSetWithExpectedSize(2);
-
-    try {
-      Document document = myManifestFile.getXmlDocument();
-      if (document == null) {
-        return;
-      }
-      myDocument = document;
-      myManifestFiles = myManifestFile.getManifestFiles();
-
-      Element root = document.getDocumentElement();
-      if (root == null) {
-        return;
-      }
-
-      myApplicationId = getAttributeValue(root, null, ATTRIBUTE_PACKAGE);
-
-      // The package comes from the main manifest, NOT from the merged manifest.
-      Manifest manifest = facet.getManifest();
-      myPackage = manifest == null ? myApplicationId : manifest.getPackage().getValue();
-
-      String versionCode = getAttributeValue(root, ANDROID_URI, ATTR_VERSION_CODE);
-      try {
-        myVersionCode = Integer.valueOf(versionCode);
-      }
-      catch (NumberFormatException ignored) {}
-
-      Node node = root.getFirstChild();
-      while (node != null) {
-        if (node.getNodeType() == Node.ELEMENT_NODE) {
-          String nodeName = node.getNodeName();
-          if (NODE_APPLICATION.equals(nodeName)) {
-            Element application = (Element) node;
-            myApplicationIcon = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_ICON);
-            myApplicationLabel = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_LABEL);
-            myManifestTheme = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_THEME);
-            myApplicationSupportsRtl = VALUE_TRUE.equals(getAttributeValue(application, ANDROID_URI, ATTRIBUTE_SUPPORTS_RTL));
-
-            String debuggable = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_DEBUGGABLE);
-            myApplicationDebuggable = debuggable == null ? null : VALUE_TRUE.equals(debuggable);
-
-            String hasCode = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_HASCODE);
-            myApplicationHasCode = hasCode == null ? true : VALUE_TRUE.equals(hasCode);
-
-            Node child = node.getFirstChild();
-            while (child != null) {
-              if (child.getNodeType() == Node.ELEMENT_NODE) {
-                String childNodeName = child.getNodeName();
-                if (NODE_ACTIVITY.equals(childNodeName)) {
-                  Element element = (Element)child;
-                  ActivityAttributes attributes = new ActivityAttributes(element, myApplicationId);
-                  myActivityAttributesMap.put(attributes.getName(), attributes);
-                  myActivities.add(element);
-                } else if (NODE_ACTIVITY_ALIAS.equals(childNodeName)) {
-                  myActivityAliases.add((Element) child);
-                } else if (NODE_SERVICE.equals(childNodeName)) {
-                  myServices.add((Element) child);
-                }
-              }
-              child = child.getNextSibling();
-            }
-          } else if (NODE_USES_SDK.equals(nodeName)) {
-            // Look up target SDK
-            Element usesSdk = (Element) node;
-            myMinSdk = getApiVersion(usesSdk, ATTRIBUTE_MIN_SDK_VERSION, AndroidVersion.DEFAULT);
-            myTargetSdk = getApiVersion(usesSdk, ATTRIBUTE_TARGET_SDK_VERSION, myMinSdk);
-          } else if (TAG_USES_PERMISSION.equals(nodeName)
-                     || TAG_USES_PERMISSION_SDK_23.equals(nodeName)
-                     || TAG_USES_PERMISSION_SDK_M.equals(nodeName)) {
-            Element element = (Element) node;
-            String name = element.getAttributeNS(ANDROID_URI, ATTR_NAME);
-            if (!name.isEmpty()) {
-              permissions.add(name);
-            }
-          } else if (nodeName.equals(TAG_PERMISSION)) {
-            Element element = (Element) node;
-            String protectionLevel = element.getAttributeNS(ANDROID_URI,
-                                                            ATTR_PROTECTION_LEVEL);
-            if (VALUE_DANGEROUS.equals(protectionLevel)) {
-              String name = element.getAttributeNS(ANDROID_URI, ATTR_NAME);
-              if (!name.isEmpty()) {
-                revocable.add(name);
-              }
-            }
-          }
-        }
-
-        node = node.getNextSibling();
-      }
-      myPermissionHolder = new ModulePermissions(ImmutableSet.copyOf(permissions), ImmutableSet.copyOf(revocable));
-    }
-    catch (ProcessCanceledException e) {
-      myManifestFile = null; // clear the file, to make sure we reload everything on next call to this method
-      myDocument = null;
-      throw e;
-    }
-    catch (Exception e) {
-      Logger.getInstance(MergedManifest.class).warn("Could not read Manifest data", e);
-    }
-  }
-
-  private static AndroidVersion getApiVersion(Element usesSdk, String attribute, AndroidVersion defaultApiLevel) {
-    String valueString = getAttributeValue(usesSdk, ANDROID_URI, attribute);
-    if (valueString != null) {
-      // TODO: Pass in platforms if we have them
-      AndroidVersion version = SdkVersionInfo.getVersion(valueString, null);
-      if (version != null) {
-        return version;
-      }
-    }
-    return defaultApiLevel;
-  }
-
   @NotNull
   public List<Element> getActivities() {
-    sync();
-    return myActivities;
+    return getAvailableSnapshot().getActivities();
   }
 
-  private List<Element> myActivities = Collections.emptyList();
-  private List<Element> myActivityAliases = Collections.emptyList();
-  private List<Element> myServices = Collections.emptyList();
-
   /**
    * @return the list of activity aliases defined in the manifest.
    */
   @NotNull
   public List<Element> getActivityAliases() {
-    sync();
-    return myActivityAliases;
+    return getAvailableSnapshot().getActivityAliases();
   }
 
   /**
@@ -541,90 +491,171 @@ public class MergedManifest {
    */
   @NotNull
   public List<Element> getServices() {
-    return myServices;
+    return getAvailableSnapshot().getServices();
   }
 
   @Nullable
   public Element findUsedFeature(@NotNull String name) {
-    sync();
-    if (myDocument == null) {
-      return null;
-    }
-    Node node = myDocument.getDocumentElement().getFirstChild();
-    while (node != null) {
-      if (node.getNodeType() == Node.ELEMENT_NODE && NODE_USES_FEATURE.equals(node.getNodeName())) {
-        Element element = (Element)node;
-        if (name.equals(element.getAttributeNS(ANDROID_URI, ATTR_NAME))) {
-          return element;
-        }
-      }
-      node = node.getNextSibling();
-    }
-
-    return null;
+    return getAvailableSnapshot().findUsedFeature(name);
   }
 
   @NotNull
   public ImmutableList<MergingReport.Record> getLoggingRecords() {
-    sync();
-    return myManifestFile == null ? ImmutableList.of() : myManifestFile.getLoggingRecords();
+    return getAvailableSnapshot().getLoggingRecords();
   }
 
   @Nullable
   public Actions getActions() {
-    sync();
-    return myManifestFile == null ? null : myManifestFile.getActions();
+    return getAvailableSnapshot().getActions();
   }
 
   @Nullable
   public XmlNode.NodeKey getNodeKey(String name) {
-    sync();
-    if (myNodeKeys == null) {
-      HashMap<String, XmlNode.NodeKey> nodeKeys = new HashMap<>();
-      Actions actions = getActions();
-      if (actions != null) {
-        Set<XmlNode.NodeKey> keys = actions.getNodeKeys();
-        for (XmlNode.NodeKey key : keys) {
-          nodeKeys.put(key.toString(), key);
-        }
-      }
-      myNodeKeys = nodeKeys;
-    }
-    return myNodeKeys.get(name);
+    return getAvailableSnapshot().getNodeKey(name);
   }
 
   @Nullable
   public Element findActivity(@Nullable String qualifiedName) {
-    sync();
-    if (qualifiedName == null || myActivities == null) {
-      return null;
-    }
-    return getActivityOrAliasByName(qualifiedName, myActivities);
+    return getAvailableSnapshot().findActivity(qualifiedName);
   }
 
   @Nullable
   public Element findActivityAlias(@Nullable String qualifiedName) {
-    sync();
-    if (qualifiedName == null || myActivityAliases == null) {
-      return null;
+    return getAvailableSnapshot().findActivityAlias(qualifiedName);
+  }
+
+  @NotNull
+  public Module getModule() {
+    return myModule;
+  }
+
+  /**
+   * The counters whose changes invalidate a {@link MergedManifestSnapshot}: manifest and navigation files
+   * edited in memory (see {@link ManifestChangeListener}), project syncs, the files participating in the
+   * merge being modified on disk (e.g. outside of the IDE) and project structure changes. Changes to
+   * unrelated files do not invalidate the snapshot.
+   */
+  private static final class ModificationStamp {
+    private static final ModificationStamp NONE = new ModificationStamp(-1, ArrayUtil.EMPTY_LONG_ARRAY, -1);
+
+    private final long myManifestChanges;
+    @NotNull private final long[] myFileStamps;
+    private final long myRootChanges;
+
+    private ModificationStamp(long manifestChanges, @NotNull long[] fileStamps, long rootChanges) {
+      myManifestChanges = manifestChanges;
+      myFileStamps = fileStamps;
+      myRootChanges = rootChanges;
+    }
+
+    @NotNull
+    private ModificationStamp withFiles(@Nullable List<VirtualFile> files) {
+      return new ModificationStamp(myManifestChanges, getFileStamps(files), myRootChanges);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof ModificationStamp)) return false;
+      ModificationStamp stamp = (ModificationStamp)o;
+      return myManifestChanges == stamp.myManifestChanges &&
+             myRootChanges == stamp.myRootChanges &&
+             Arrays.equals(myFileStamps, stamp.myFileStamps);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myManifestChanges, Arrays.hashCode(myFileStamps), myRootChanges);
     }
-    return getActivityOrAliasByName(qualifiedName, myActivityAliases);
   }
 
-  @Nullable
-  private static Element getActivityOrAliasByName(@NotNull String qualifiedName, @NotNull List<Element> activityOrAliasElements) {
-    for (Element activity : activityOrAliasElements) {
-      if (qualifiedName.equals(ActivityLocatorUtils.getQualifiedName(activity))) {
-        return activity;
+  private static final class CachedSnapshot {
+    @NotNull private final MergedManifestSnapshot mySnapshot;
+    @NotNull private final ModificationStamp myStamp;
+
+    private CachedSnapshot(@NotNull MergedManifestSnapshot snapshot, @NotNull ModificationStamp stamp) {
+      mySnapshot = snapshot;
+      myStamp = stamp;
+    }
+  }
+
+  /**
+   * Invalidates the current snapshot when a PSI change, which also covers unsaved edits, happens in a manifest
+   * file, in a file participating in the current merge (e.g. navigation files) or at the directory level
+   * (e.g. files being added or removed).
+   */
+  private class ManifestChangeListener extends PsiTreeChangeAdapter {
+    @Override
+    public void childAdded(@NotNull PsiTreeChangeEvent event) {
+      onChange(event);
+    }
+
+    @Override
+    public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+      onChange(event);
+    }
+
+    @Override
+    public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+      onChange(event);
+    }
+
+    @Override
+    public void childMoved(@NotNull PsiTreeChangeEvent event) {
+      onChange(event);
+    }
+
+    @Override
+    public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+      onChange(event);
+    }
+
+    @Override
+    public void propertyChanged(@NotNull PsiTreeChangeEvent event) {
+      onChange(event);
+    }
+
+    private void onChange(@NotNull PsiTreeChangeEvent event) {
+      PsiFile file = event.getFile();
+      if (file != null ? isParticipatingFile(file) : isParticipatingFileSystemChange(event)) {
+        myModificationCount.incrementAndGet();
       }
     }
 
-    return null;
-  }
+    /**
+     * Events without a file happen at the directory level: files being added, removed, moved or renamed. Only
+     * the ones involving a participating file or a navigation folder can change the merged manifest.
+     */
+    private boolean isParticipatingFileSystemChange(@NotNull PsiTreeChangeEvent event) {
+      for (PsiElement element : new PsiElement[]{event.getChild(), event.getOldChild(), event.getNewChild(), event.getElement()}) {
+        if (element instanceof PsiFile && isParticipatingFile((PsiFile)element)) {
+          return true;
+        }
+        if (element instanceof PsiDirectory && isNavigationFolder((PsiDirectory)element)) {
+          return true;
+        }
+      }
+      return isNavigationFolder(event.getParent()) || isNavigationFolder(event.getOldParent()) || isNavigationFolder(event.getNewParent());
+    }
 
-  @NotNull
-  public Module getModule() {
-    return myModule;
+    private boolean isNavigationFolder(@Nullable PsiElement element) {
+      return element instanceof PsiDirectory && ((PsiDirectory)element).getName().startsWith(NAVIGATION_FOLDER_PREFIX);
+    }
+
+    private boolean isParticipatingFile(@NotNull PsiFile file) {
+      if (!(file instanceof XmlFile)) {
+        return false;
+      }
+      if (FN_ANDROID_MANIFEST_XML.equals(file.getName())) {
+        return true;
+      }
+      if (isNavigationFolder(file.getParent())) {
+        return true;
+      }
+      CachedSnapshot cached = myCachedSnapshot;
+      List<VirtualFile> manifestFiles = cached == null ? null : cached.mySnapshot.getManifestFiles();
+      return manifestFiles != null && manifestFiles.contains(file.getVirtualFile());
+    }
   }
 
   public static class ActivityAttributes {
@@ -752,41 +783,4 @@ public class MergedManifest {
       return myUiOptions;
     }
   }
-
-  private class ModulePermissions implements PermissionHolder {
-
-    @NotNull private final Set<String> myPermissions;
-    @NotNull private final Set<String> myRevocable;
-
-    private ModulePermissions(@NotNull Set<String> permissions, @NotNull Set<String> revocable) {
-      myPermissions = permissions;
-      myRevocable = revocable;
-    }
-
-    @Override
-    public boolean hasPermission(@NotNull String permission) {
-      return myPermissions.contains(permission);
-    }
-
-    @Override
-    public boolean isRevocable(@NotNull String permission) {
-      return myRevocable.contains(permission);
-    }
-
-    @NotNull
-    @Override
-    public AndroidVersion getMinSdkVersion() {
-      AndroidModuleInfo androidModuleInfo = AndroidModuleInfo.getInstance(myModule);
-      return androidModuleInfo != null ?
-             androidModuleInfo.getMinSdkVersion() : MergedManifest.this.getMinSdkVersion();
-    }
-
-    @NotNull
-    @Override
-    public AndroidVersion getTargetSdkVersion() {
-      AndroidModuleInfo androidModuleInfo = AndroidModuleInfo.getInstance(myModule);
-      return androidModuleInfo != null ?
-             androidModuleInfo.getTargetSdkVersion() : MergedManifest.this.getTargetSdkVersion();
-    }
-  }
 }
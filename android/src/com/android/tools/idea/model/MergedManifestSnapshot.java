@@ -0,0 +1,550 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.model;
+
+import com.android.ide.common.rendering.HardwareConfigHelper;
+import com.android.manifmerger.Actions;
+import com.android.manifmerger.MergingReport;
+import com.android.manifmerger.XmlNode;
+import com.android.resources.ScreenSize;
+import com.android.sdklib.AndroidVersion;
+import com.android.sdklib.IAndroidTarget;
+import com.android.sdklib.SdkVersionInfo;
+import com.android.sdklib.devices.Device;
+import com.android.tools.idea.model.MergedManifest.ActivityAttributes;
+import com.android.tools.idea.rendering.multi.CompatibilityRenderTarget;
+import com.android.tools.idea.run.activity.ActivityLocatorUtils;
+import com.android.tools.lint.checks.PermissionHolder;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.android.dom.manifest.Manifest;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.*;
+
+import static com.android.SdkConstants.*;
+import static com.android.tools.idea.model.MergedManifest.getAttributeValue;
+import static com.android.tools.lint.checks.PermissionRequirement.ATTR_PROTECTION_LEVEL;
+import static com.android.tools.lint.checks.PermissionRequirement.VALUE_DANGEROUS;
+import static com.android.xml.AndroidManifest.*;
+
+/**
+ * An immutable view of the merged manifest of a module at a given point in time, as computed by
+ * {@link MergedManifest}. All the values of a snapshot are consistent with each other, so callers
+ * needing several values should query a single snapshot instead of calling several accessors of
+ * {@link MergedManifest}.
+ *
+ * <p>The {@link #getDocument() document} and the elements returned by a snapshot are shared and
+ * must not be modified.
+ */
+public final class MergedManifestSnapshot {
+  @NotNull private final Module myModule;
+  @Nullable private final String myPackage;
+  @Nullable private final String myApplicationId;
+  @Nullable private final Integer myVersionCode;
+  @Nullable private final String myManifestTheme;
+  @NotNull private final Map<String, ActivityAttributes> myActivityAttributesMap;
+  @Nullable private final AndroidVersion myMinSdk;
+  @Nullable private final AndroidVersion myTargetSdk;
+  @Nullable private final String myApplicationIcon;
+  @Nullable private final String myApplicationLabel;
+  private final boolean myApplicationSupportsRtl;
+  @Nullable private final Boolean myApplicationDebuggable;
+  private final boolean myApplicationHasCode;
+  @Nullable private final Document myDocument;
+  @Nullable private final List<VirtualFile> myManifestFiles;
+  @NotNull private final PermissionHolder myPermissionHolder;
+  @NotNull private final List<Element> myActivities;
+  @NotNull private final List<Element> myActivityAliases;
+  @NotNull private final List<Element> myServices;
+  @NotNull private final ImmutableList<MergingReport.Record> myLoggingRecords;
+  @Nullable private final Actions myActions;
+  @NotNull private final Supplier<Map<String, XmlNode.NodeKey>> myNodeKeys;
+
+  private MergedManifestSnapshot(@NotNull Builder builder) {
+    myModule = builder.myModule;
+    myPackage = builder.myPackage;
+    myApplicationId = builder.myApplicationId;
+    myVersionCode = builder.myVersionCode;
+    myManifestTheme = builder.myManifestTheme;
+    myActivityAttributesMap = ImmutableMap.copyOf(builder.myActivityAttributesMap);
+    myMinSdk = builder.myMinSdk;
+    myTargetSdk = builder.myTargetSdk;
+    myApplicationIcon = builder.myApplicationIcon;
+    myApplicationLabel = builder.myApplicationLabel;
+    myApplicationSupportsRtl = builder.myApplicationSupportsRtl;
+    myApplicationDebuggable = builder.myApplicationDebuggable;
+    myApplicationHasCode = builder.myApplicationHasCode;
+    myDocument = builder.myDocument;
+    myManifestFiles = builder.myManifestFiles == null ? null : ImmutableList.copyOf(builder.myManifestFiles);
+    myPermissionHolder = new ModulePermissions(myModule, builder.myPermissions, builder.myRevocablePermissions,
+                                               getMinSdkVersion(), getTargetSdkVersion());
+    myActivities = ImmutableList.copyOf(builder.myActivities);
+    myActivityAliases = ImmutableList.copyOf(builder.myActivityAliases);
+    myServices = ImmutableList.copyOf(builder.myServices);
+    myLoggingRecords = builder.myLoggingRecords;
+    myActions = builder.myActions;
+    // The node keys are only needed by the manifest editor, so only compute them on demand
+    Actions actions = myActions;
+    myNodeKeys = Suppliers.memoize(() -> {
+      Map<String, XmlNode.NodeKey> nodeKeys = new HashMap<>();
+      if (actions != null) {
+        for (XmlNode.NodeKey key : actions.getNodeKeys()) {
+          nodeKeys.put(key.toString(), key);
+        }
+      }
+      return nodeKeys;
+    });
+  }
+
+  /**
+   * Returns a snapshot with default values, for modules without (or before the computation of) a merged manifest.
+   */
+  @NotNull
+  static MergedManifestSnapshot createEmpty(@NotNull Module module) {
+    return new Builder(module).build();
+  }
+
+  /**
+   * Creates a snapshot from the current state of a {@link ManifestInfo.ManifestFile}. Must be called with read access.
+   */
+  @NotNull
+  static MergedManifestSnapshot create(@NotNull AndroidFacet facet, @NotNull ManifestInfo.ManifestFile manifestFile) {
+    Builder builder = new Builder(facet.getModule());
+    builder.myLoggingRecords = manifestFile.getLoggingRecords();
+    builder.myActions = manifestFile.getActions();
+
+    Document document = manifestFile.getXmlDocument();
+    if (document == null) {
+      return builder.build();
+    }
+
+    builder.myPackage = "";
+    builder.myApplicationId = "";
+    builder.myMinSdk = AndroidVersion.DEFAULT;
+    builder.myTargetSdk = AndroidVersion.DEFAULT;
+    builder.myDocument = document;
+    builder.myManifestFiles = manifestFile.getManifestFiles();
+
+    Element root = document.getDocumentElement();
+    if (root == null) {
+      return builder.build();
+    }
+
+    String applicationId = getAttributeValue(root, null, ATTRIBUTE_PACKAGE);
+    builder.myApplicationId = applicationId;
+
+    // The package comes from the main manifest, NOT from the merged manifest.
+    Manifest manifest = facet.getManifest();
+    builder.myPackage = manifest == null ? applicationId : manifest.getPackage().getValue();
+
+    String versionCode = getAttributeValue(root, ANDROID_URI, ATTR_VERSION_CODE);
+    try {
+      builder.myVersionCode = Integer.valueOf(versionCode);
+    }
+    catch (NumberFormatException ignored) {}
+
+    Set<String> permissions = new HashSet<>();
+    Set<String> revocable = new HashSet<>();
+    Node node = root.getFirstChild();
+    while (node != null) {
+      if (node.getNodeType() == Node.ELEMENT_NODE) {
+        String nodeName = node.getNodeName();
+        if (NODE_APPLICATION.equals(nodeName)) {
+          Element application = (Element) node;
+          builder.myApplicationIcon = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_ICON);
+          builder.myApplicationLabel = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_LABEL);
+          builder.myManifestTheme = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_THEME);
+          builder.myApplicationSupportsRtl = VALUE_TRUE.equals(getAttributeValue(application, ANDROID_URI, ATTRIBUTE_SUPPORTS_RTL));
+
+          String debuggable = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_DEBUGGABLE);
+          builder.myApplicationDebuggable = debuggable == null ? null : VALUE_TRUE.equals(debuggable);
+
+          String hasCode = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_HASCODE);
+          builder.myApplicationHasCode = hasCode == null || VALUE_TRUE.equals(hasCode);
+
+          Node child = node.getFirstChild();
+          while (child != null) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+              String childNodeName = child.getNodeName();
+              if (NODE_ACTIVITY.equals(childNodeName)) {
+                Element element = (Element)child;
+                ActivityAttributes attributes = new ActivityAttributes(element, applicationId);
+                builder.myActivityAttributesMap.put(attributes.getName(), attributes);
+                builder.myActivities.add(element);
+              } else if (NODE_ACTIVITY_ALIAS.equals(childNodeName)) {
+                builder.myActivityAliases.add((Element) child);
+              } else if (NODE_SERVICE.equals(childNodeName)) {
+                builder.myServices.add((Element) child);
+              }
+            }
+            child = child.getNextSibling();
+          }
+        } else if (NODE_USES_SDK.equals(nodeName)) {
+          // Look up target SDK
+          Element usesSdk = (Element) node;
+          builder.myMinSdk = getApiVersion(usesSdk, ATTRIBUTE_MIN_SDK_VERSION, AndroidVersion.DEFAULT);
+          builder.myTargetSdk = getApiVersion(usesSdk, ATTRIBUTE_TARGET_SDK_VERSION, builder.myMinSdk);
+        } else if (TAG_USES_PERMISSION.equals(nodeName)
+                   || TAG_USES_PERMISSION_SDK_23.equals(nodeName)
+                   || TAG_USES_PERMISSION_SDK_M.equals(nodeName)) {
+          Element element = (Element) node;
+          String name = element.getAttributeNS(ANDROID_URI, ATTR_NAME);
+          if (!name.isEmpty()) {
+            permissions.add(name);
+          }
+        } else if (nodeName.equals(TAG_PERMISSION)) {
+          Element element = (Element) node;
+          String protectionLevel = element.getAttributeNS(ANDROID_URI,
+                                                          ATTR_PROTECTION_LEVEL);
+          if (VALUE_DANGEROUS.equals(protectionLevel)) {
+            String name = element.getAttributeNS(ANDROID_URI, ATTR_NAME);
+            if (!name.isEmpty()) {
+              revocable.add(name);
+            }
+          }
+        }
+      }
+
+      node = node.getNextSibling();
+    }
+    builder.myPermissions = ImmutableSet.copyOf(permissions);
+    builder.myRevocablePermissions = ImmutableSet.copyOf(revocable);
+    return builder.build();
+  }
+
+  private static AndroidVersion getApiVersion(Element usesSdk, String attribute, AndroidVersion defaultApiLevel) {
+    String valueString = getAttributeValue(usesSdk, ANDROID_URI, attribute);
+    if (valueString != null) {
+      // TODO: Pass in platforms if we have them
+      AndroidVersion version = SdkVersionInfo.getVersion(valueString, null);
+      if (version != null) {
+        return version;
+      }
+    }
+    return defaultApiLevel;
+  }
+
+  @NotNull
+  public Module getModule() {
+    return myModule;
+  }
+
+  @Nullable
+  public Document getDocument() {
+    return myDocument;
+  }
+
+  /**
+   * Returns the manifest files relevant to this merge
+   *
+   * @return the list of files that participated in the merge
+   */
+  @Nullable
+  public List<VirtualFile> getManifestFiles() {
+    return myManifestFiles;
+  }
+
+  @Nullable
+  public String getPackage() {
+    return myPackage;
+  }
+
+  @Nullable
+  public String getApplicationId() {
+    return myApplicationId;
+  }
+
+  @Nullable
+  public Integer getVersionCode() {
+    return myVersionCode;
+  }
+
+  @NotNull
+  public Map<String, ActivityAttributes> getActivityAttributesMap() {
+    return myActivityAttributesMap;
+  }
+
+  @Nullable
+  public ActivityAttributes getActivityAttributes(@NotNull String activity) {
+    int index = activity.indexOf('.');
+    if (index <= 0 && myApplicationId != null && !myApplicationId.isEmpty()) {
+      activity = myApplicationId + (index == -1 ? "." : "") + activity;
+    }
+    return myActivityAttributesMap.get(activity);
+  }
+
+  @Nullable
+  public String getManifestTheme() {
+    return myManifestTheme;
+  }
+
+  /**
+   * Returns the default theme for this project, see {@link MergedManifest#getDefaultTheme(IAndroidTarget, ScreenSize, Device)}.
+   */
+  @NotNull
+  public String getDefaultTheme(@Nullable IAndroidTarget renderingTarget, @Nullable ScreenSize screenSize, @Nullable Device device) {
+    if (myManifestTheme != null) {
+      return myManifestTheme;
+    }
+
+    // For Android Wear and Android TV, the defaults differ
+    if (device != null) {
+      if (HardwareConfigHelper.isWear(device)) {
+        return "@android:style/Theme.DeviceDefault.Light";
+      } else if (HardwareConfigHelper.isTv(device)) {
+        //noinspection SpellCheckingInspection
+        return "@style/Theme.Leanback";
+      }
+    }
+
+    // From manifest theme documentation:
+    // "If that attribute is also not set, the default system theme is used."
+    int targetSdk;
+    AndroidFacet facet = AndroidFacet.getInstance(myModule);
+    if (facet == null) {
+      // Should not happen, but has been observed to happen in rare scenarios
+      // (such as 73332530), probably related to race condition between
+      // Gradle sync and layout rendering
+      return ANDROID_STYLE_RESOURCE_PREFIX + "Theme.Material.Light";
+    }
+
+    AndroidModuleInfo info = AndroidModuleInfo.getInstance(facet);
+    targetSdk = info.getTargetSdkVersion().getApiLevel();
+
+    int renderingTargetSdk = targetSdk;
+    if (renderingTarget instanceof CompatibilityRenderTarget) {
+      renderingTargetSdk = renderingTarget.getVersion().getApiLevel();
+      //targetSdk = SdkVersionInfo.HIGHEST_KNOWN_API
+    } else if (renderingTarget != null) {
+      renderingTargetSdk = renderingTarget.getVersion().getApiLevel();
+    }
+
+    int apiLevel = Math.min(targetSdk, renderingTargetSdk);
+    if (apiLevel >= 21) {
+      return ANDROID_STYLE_RESOURCE_PREFIX + "Theme.Material.Light"; //$NON-NLS-1$
+    } else if (apiLevel >= 14 || apiLevel >= 11 && screenSize == ScreenSize.XLARGE) {
+      return ANDROID_STYLE_RESOURCE_PREFIX + "Theme.Holo"; //$NON-NLS-1$
+    } else {
+      return ANDROID_STYLE_RESOURCE_PREFIX + "Theme"; //$NON-NLS-1$
+    }
+  }
+
+  @Nullable
+  public String getApplicationIcon() {
+    return myApplicationIcon;
+  }
+
+  @Nullable
+  public String getApplicationLabel() {
+    return myApplicationLabel;
+  }
+
+  public boolean isRtlSupported() {
+    return myApplicationSupportsRtl;
+  }
+
+  @Nullable
+  public Boolean getApplicationDebuggable() {
+    return myApplicationDebuggable;
+  }
+
+  public boolean getApplicationHasCode() {
+    return myApplicationHasCode;
+  }
+
+  @NotNull
+  public AndroidVersion getTargetSdkVersion() {
+    return myTargetSdk != null ? myTargetSdk : getMinSdkVersion();
+  }
+
+  @NotNull
+  public AndroidVersion getMinSdkVersion() {
+    return myMinSdk != null ? myMinSdk : AndroidVersion.DEFAULT;
+  }
+
+  @NotNull
+  public PermissionHolder getPermissionHolder() {
+    return myPermissionHolder;
+  }
+
+  @NotNull
+  public List<Element> getActivities() {
+    return myActivities;
+  }
+
+  @NotNull
+  public List<Element> getActivityAliases() {
+    return myActivityAliases;
+  }
+
+  @NotNull
+  public List<Element> getServices() {
+    return myServices;
+  }
+
+  @Nullable
+  public Element findUsedFeature(@NotNull String name) {
+    if (myDocument == null) {
+      return null;
+    }
+    Node node = myDocument.getDocumentElement().getFirstChild();
+    while (node != null) {
+      if (node.getNodeType() == Node.ELEMENT_NODE && NODE_USES_FEATURE.equals(node.getNodeName())) {
+        Element element = (Element)node;
+        if (name.equals(element.getAttributeNS(ANDROID_URI, ATTR_NAME))) {
+          return element;
+        }
+      }
+      node = node.getNextSibling();
+    }
+
+    return null;
+  }
+
+  @NotNull
+  public ImmutableList<MergingReport.Record> getLoggingRecords() {
+    return myLoggingRecords;
+  }
+
+  @Nullable
+  public Actions getActions() {
+    return myActions;
+  }
+
+  @Nullable
+  public XmlNode.NodeKey getNodeKey(String name) {
+    return myNodeKeys.get().get(name);
+  }
+
+  @Nullable
+  public Element findActivity(@Nullable String qualifiedName) {
+    if (qualifiedName == null) {
+      return null;
+    }
+    return getActivityOrAliasByName(qualifiedName, myActivities);
+  }
+
+  @Nullable
+  public Element findActivityAlias(@Nullable String qualifiedName) {
+    if (qualifiedName == null) {
+      return null;
+    }
+    return getActivityOrAliasByName(qualifiedName, myActivityAliases);
+  }
+
+  @Nullable
+  private static Element getActivityOrAliasByName(@NotNull String qualifiedName, @NotNull List<Element> activityOrAliasElements) {
+    for (Element activity : activityOrAliasElements) {
+      if (qualifiedName.equals(ActivityLocatorUtils.getQualifiedName(activity))) {
+        return activity;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Mutable state used while walking the merged document, see {@link #create(AndroidFacet, ManifestInfo.ManifestFile)}.
+   */
+  private static class Builder {
+    @NotNull private final Module myModule;
+    @Nullable private String myPackage;
+    @Nullable private String myApplicationId;
+    @Nullable private Integer myVersionCode;
+    @Nullable private String myManifestTheme;
+    @NotNull private final Map<String, ActivityAttributes> myActivityAttributesMap = new HashMap<>();
+    @Nullable private AndroidVersion myMinSdk;
+    @Nullable private AndroidVersion myTargetSdk;
+    @Nullable private String myApplicationIcon;
+    @Nullable private String myApplicationLabel;
+    private boolean myApplicationSupportsRtl;
+    @Nullable private Boolean myApplicationDebuggable;
+    private boolean myApplicationHasCode = true;
+    @Nullable private Document myDocument;
+    @Nullable private List<VirtualFile> myManifestFiles;
+    @NotNull private Set<String> myPermissions = ImmutableSet.of();
+    @NotNull private Set<String> myRevocablePermissions = ImmutableSet.of();
+    @NotNull private final List<Element> myActivities = new ArrayList<>();
+    @NotNull private final List<Element> myActivityAliases = new ArrayList<>();
+    @NotNull private final List<Element> myServices = new ArrayList<>();
+    @NotNull private ImmutableList<MergingReport.Record> myLoggingRecords = ImmutableList.of();
+    @Nullable private Actions myActions;
+
+    private Builder(@NotNull Module module) {
+      myModule = module;
+    }
+
+    @NotNull
+    private MergedManifestSnapshot build() {
+      return new MergedManifestSnapshot(this);
+    }
+  }
+
+  private static class ModulePermissions implements PermissionHolder {
+    @NotNull private final Module myModule;
+    @NotNull private final Set<String> myPermissions;
+    @NotNull private final Set<String> myRevocable;
+    @NotNull private final AndroidVersion myManifestMinSdk;
+    @NotNull private final AndroidVersion myManifestTargetSdk;
+
+    private ModulePermissions(@NotNull Module module,
+                              @NotNull Set<String> permissions,
+                              @NotNull Set<String> revocable,
+                              @NotNull AndroidVersion manifestMinSdk,
+                              @NotNull AndroidVersion manifestTargetSdk) {
+      myModule = module;
+      myPermissions = permissions;
+      myRevocable = revocable;
+      myManifestMinSdk = manifestMinSdk;
+      myManifestTargetSdk = manifestTargetSdk;
+    }
+
+    @Override
+    public boolean hasPermission(@NotNull String permission) {
+      return myPermissions.contains(permission);
+    }
+
+    @Override
+    public boolean isRevocable(@NotNull String permission) {
+      return myRevocable.contains(permission);
+    }
+
+    @NotNull
+    @Override
+    public AndroidVersion getMinSdkVersion() {
+      AndroidModuleInfo androidModuleInfo = AndroidModuleInfo.getInstance(myModule);
+      return androidModuleInfo != null ? androidModuleInfo.getMinSdkVersion() : myManifestMinSdk;
+    }
+
+    @NotNull
+    @Override
+    public AndroidVersion getTargetSdkVersion() {
+      AndroidModuleInfo androidModuleInfo = AndroidModuleInfo.getInstance(myModule);
+      return androidModuleInfo != null ? androidModuleInfo.getTargetSdkVersion() : myManifestTargetSdk;
+    }
+  }
+}
@@ -17,11 +17,25 @@ package com.android.tools.idea.rendering;
 
 import com.android.annotations.VisibleForTesting;
 import com.android.ide.common.resources.ResourceResolver;
-import com.google.common.collect.Maps;
+import com.android.utils.XmlUtils;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.ex.EditorEx;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.ui.EmptyIcon;
 import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UIUtil;
 import icons.AndroidIcons;
@@ -30,8 +44,29 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 
-import java.util.Map;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.android.SdkConstants.DOT_XML;
+
+/**
+ * Process-wide cache of the thumbnails shown in the editor gutter for drawable resources.
+ * <p>
+ * Thumbnails are keyed by a hash of the content of the image resource, so identical images (e.g. the same drawable copied into several
+ * modules) are only rendered and stored once. For vector drawables the hash covers the content after resource and theme references have
+ * been replaced by their values, so byte-identical drawables resolved against different themes don't share a thumbnail. The cache is
+ * bounded by the number of bytes of pixel data it holds and evicts the least recently used thumbnails first. Thumbnails are rendered on
+ * a background thread; until a thumbnail is ready, the previous thumbnail for the same path (if any) or an empty placeholder is
+ * returned, and the editor gutters are repainted once it becomes available. The content is read once, and its references resolved, on
+ * the calling thread under a read action, so the background thread only renders.
+ */
 public class GutterIconCache {
   private static final Logger LOG = Logger.getInstance(GutterIconCache.class);
   private static final Icon NONE = AndroidIcons.Android; // placeholder
@@ -39,18 +74,48 @@ public class GutterIconCache {
   @VisibleForTesting static final int MAX_WIDTH = JBUI.scale(16);
   @VisibleForTesting static final int MAX_HEIGHT = JBUI.scale(16);
 
+  /** Maximum number of bytes of pixel data held by the thumbnail cache. */
+  @VisibleForTesting static final long MAX_THUMBNAIL_BYTES = 8 * 1024 * 1024;
+  /** Maximum number of image paths whose content hash is remembered. */
+  private static final int MAX_PATHS = 10000;
+
+  /** Returned while the thumbnail for a path is being rendered. */
+  private static final Icon LOADING = EmptyIcon.create(MAX_WIDTH, MAX_HEIGHT);
+
+  /** Thumbnail key of image resources that could not be read, so that they are not read again until they change. */
+  private static final HashCode NO_CONTENT = HashCode.fromInt(0);
+
+  private static final ExecutorService ourRenderExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("GutterIconCache", 2);
+
   private static final GutterIconCache ourInstance = new GutterIconCache();
 
-  private Map<String, Icon> myThumbnailCache = Maps.newHashMap();
+  /** Rendered thumbnails, keyed by the hash of the (resolved) content of the image resource. */
+  private final Cache<HashCode, Icon> myThumbnailCache = CacheBuilder.newBuilder()
+    .weigher((HashCode key, Icon icon) -> getPixelBytes(icon))
+    .maximumWeight(MAX_THUMBNAIL_BYTES)
+    .build();
 
   /**
-   * Stores timestamps for the last modification time of image files using the
-   * path as a key.
+   * Stores the modification stamp and thumbnail key of image files, using the path as a key.
    */
-  private Map<String, Long> myModificationStampCache = Maps.newHashMap();
-  private boolean myRetina;
+  private final Cache<String, ContentStamp> myContentStampCache = CacheBuilder.newBuilder()
+    .maximumSize(MAX_PATHS)
+    .build();
+
+  /** Paths for which a thumbnail is currently being rendered. */
+  private final Set<String> myPendingPaths = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean myRepaintScheduled = new AtomicBoolean();
+  /** Renders the thumbnails, or null to render them on a shared pool, and synchronously in unit tests. */
+  @Nullable private final Executor myRenderExecutor;
+  private volatile boolean myRetina;
 
   public GutterIconCache() {
+    this(null);
+  }
+
+  @VisibleForTesting
+  GutterIconCache(@Nullable Executor renderExecutor) {
+    myRenderExecutor = renderExecutor;
   }
 
   @NotNull
@@ -60,13 +125,16 @@ public class GutterIconCache {
 
   @VisibleForTesting
   boolean isIconUpToDate(@NotNull String path) {
-    if (myModificationStampCache.containsKey(path)) {
+    ContentStamp stamp = myContentStampCache.getIfPresent(path);
+    if (stamp != null) {
       // Entry is valid if image resource has not been modified since the entry was cached
       VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
       if (file != null) {
-        return myModificationStampCache.get(path) == file.getModificationStamp()
+        return stamp.modificationStamp == file.getModificationStamp()
                && !FileDocumentManager.getInstance().isFileModified(file);
       }
+      // Files that are not in the VFS are stamped with their time stamp on disk, which is 0 for missing files
+      return stamp.modificationStamp == new File(path).lastModified();
     }
 
     return false;
@@ -77,26 +145,191 @@ public class GutterIconCache {
     boolean isRetina = UIUtil.isRetina();
     if (myRetina != isRetina) {
       myRetina = isRetina;
-      myThumbnailCache.clear();
+      myThumbnailCache.invalidateAll();
     }
-    Icon myIcon = myThumbnailCache.get(path);
-    if (myIcon == null || !isIconUpToDate(path)) {
-      myIcon = GutterIconFactory.createIcon(path, resolver, MAX_WIDTH, MAX_HEIGHT);
 
-      if (myIcon == null) {
-        myIcon = NONE;
+    ContentStamp stamp = myContentStampCache.getIfPresent(path);
+    Icon icon = stamp != null ? myThumbnailCache.getIfPresent(stamp.thumbnailKey) : null;
+    if (icon == null || !isIconUpToDate(path)) {
+      if (myRenderExecutor == null && ApplicationManager.getApplication().isUnitTestMode()) {
+        icon = renderIcon(path, ReadAction.compute(() -> prepareRendering(path, resolver)));
+      }
+      else {
+        scheduleRendering(path, resolver);
+        if (icon == null) {
+          // Nothing to show until rendering completes; the previous thumbnail is shown if the file was just modified.
+          icon = LOADING;
+        }
       }
+    }
 
-      myThumbnailCache.put(path, myIcon);
+    return icon != NONE ? icon : null;
+  }
 
-      // Record timestamp of image resource at the time of caching
-      VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
-      if (file != null) {
-        myModificationStampCache.put(path, file.getModificationStamp());
+  private void scheduleRendering(@NotNull String path, @Nullable ResourceResolver resolver) {
+    if (!myPendingPaths.add(path)) {
+      return;
+    }
+    // The resolver may only be used under a read action on this thread, so resolve references before handing off the rendering
+    RenderRequest request;
+    try {
+      request = ReadAction.compute(() -> prepareRendering(path, resolver));
+    }
+    catch (RuntimeException e) {
+      myPendingPaths.remove(path);
+      throw e;
+    }
+    Executor executor = myRenderExecutor != null ? myRenderExecutor : ourRenderExecutor;
+    executor.execute(() -> {
+      try {
+        renderIcon(path, request);
+      }
+      finally {
+        myPendingPaths.remove(path);
+      }
+      scheduleRepaint();
+    });
+  }
+
+  /**
+   * Returns the thumbnail for the content of the image resource captured in {@code request}, rendering it only if no thumbnail for
+   * identical content is cached.
+   */
+  @NotNull
+  private Icon renderIcon(@NotNull String path, @NotNull RenderRequest request) {
+    Icon icon = myThumbnailCache.getIfPresent(request.stamp.thumbnailKey);
+    if (icon == null) {
+      if (request.vectorDocument != null) {
+        icon = GutterIconFactory.createVectorIcon(path, request.vectorDocument, MAX_WIDTH);
       }
+      else if (request.bitmapContent != null) {
+        icon = GutterIconFactory.createBitmapIcon(path, request.bitmapContent, MAX_WIDTH, MAX_HEIGHT);
+      }
+      if (icon == null) {
+        icon = NONE;
+      }
+      myThumbnailCache.put(request.stamp.thumbnailKey, icon);
     }
 
-    return myIcon != NONE ? myIcon : null;
+    // Record timestamp and thumbnail key of image resource at the time of caching
+    myContentStampCache.put(path, request.stamp);
+    return icon;
   }
 
+  /**
+   * Reads the content of the image resource at the given path, from its Document when possible (in case there are unsaved changes for
+   * a file open in an editor), resolves the references of vector drawables with {@code resolver} and computes the thumbnail key. Image
+   * resources that can't be read get the {@link #NO_CONTENT} key.
+   */
+  @NotNull
+  private static RenderRequest prepareRendering(@NotNull String path, @Nullable ResourceResolver resolver) {
+    long modificationStamp;
+    byte[] content;
+    VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+    try {
+      if (file == null) {
+        File ioFile = new File(path);
+        modificationStamp = ioFile.lastModified();
+        if (!ioFile.isFile()) {
+          return new RenderRequest(new ContentStamp(modificationStamp, NO_CONTENT), null, null);
+        }
+        content = Files.readAllBytes(ioFile.toPath());
+      }
+      else {
+        Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+        modificationStamp = file.getModificationStamp();
+        content = document != null && FileDocumentManager.getInstance().isDocumentUnsaved(document)
+                  ? document.getText().getBytes(Charsets.UTF_8)
+                  : file.contentsToByteArray();
+      }
+    }
+    catch (IOException e) {
+      LOG.warn(String.format("Could not read icon image %1$s", path), e);
+      long stamp = file != null ? file.getModificationStamp() : new File(path).lastModified();
+      return new RenderRequest(new ContentStamp(stamp, NO_CONTENT), null, null);
+    }
+
+    org.w3c.dom.Document vectorDocument = null;
+    if (path.endsWith(DOT_XML)) {
+      try {
+        vectorDocument = GutterIconFactory.parseVectorDrawable(new String(content, Charsets.UTF_8), resolver);
+      }
+      catch (ProcessCanceledException e) {
+        throw e;
+      }
+      catch (Throwable e) {
+        LOG.warn(String.format("Could not read icon image %1$s", path), e);
+      }
+    }
+    HashCode thumbnailKey = vectorDocument != null
+                            ? Hashing.md5().hashString(XmlUtils.toXml(vectorDocument), Charsets.UTF_8)
+                            : Hashing.md5().hashBytes(content);
+    // Other drawables can't be rendered yet, so only bitmaps keep their content
+    byte[] bitmapContent = path.endsWith(DOT_XML) ? null : content;
+    return new RenderRequest(new ContentStamp(modificationStamp, thumbnailKey), vectorDocument, bitmapContent);
+  }
+
+  /**
+   * Repaints the gutters of all editors, at most once for any number of thumbnails that became available in the meantime.
+   */
+  private void scheduleRepaint() {
+    if (!myRepaintScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    ApplicationManager.getApplication().invokeLater(() -> {
+      myRepaintScheduled.set(false);
+      for (Editor editor : EditorFactory.getInstance().getAllEditors()) {
+        if (editor instanceof EditorEx && !editor.isDisposed()) {
+          ((EditorEx)editor).getGutterComponentEx().repaint();
+        }
+      }
+    });
+  }
+
+  @VisibleForTesting
+  static int getPixelBytes(@NotNull Icon icon) {
+    if (icon == NONE) {
+      return 1;
+    }
+    if (icon instanceof ImageIcon) {
+      // Retina icons hold an image larger than the icon size.
+      Image image = ((ImageIcon)icon).getImage();
+      if (image != null && image.getWidth(null) > 0 && image.getHeight(null) > 0) {
+        return image.getWidth(null) * image.getHeight(null) * 4;
+      }
+    }
+    return Math.max(1, icon.getIconWidth() * icon.getIconHeight() * 4);
+  }
+
+  @VisibleForTesting
+  long getThumbnailCount() {
+    return myThumbnailCache.size();
+  }
+
+  private static class ContentStamp {
+    private final long modificationStamp;
+    @NotNull private final HashCode thumbnailKey;
+
+    private ContentStamp(long modificationStamp, @NotNull HashCode thumbnailKey) {
+      this.modificationStamp = modificationStamp;
+      this.thumbnailKey = thumbnailKey;
+    }
+  }
+
+  /**
+   * The content of an image resource to render, captured on the calling thread.
+   */
+  private static class RenderRequest {
+    @NotNull private final ContentStamp stamp;
+    /** The vector drawable with its references resolved, or null if the image resource is not a vector drawable. */
+    @Nullable private final org.w3c.dom.Document vectorDocument;
+    /** The content of the image resource if it is a bitmap, as read on the calling thread. */
+    @Nullable private final byte[] bitmapContent;
+
+    private RenderRequest(@NotNull ContentStamp stamp, @Nullable org.w3c.dom.Document vectorDocument, @Nullable byte[] bitmapContent) {
+      this.stamp = stamp;
+      this.vectorDocument = vectorDocument;
+      this.bitmapContent = bitmapContent;
+    }
+  }
 }
@@ -42,6 +42,7 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 
@@ -96,39 +97,64 @@ public class GutterIconFactory {
 
   @Nullable
   private static Icon createXmlIcon(@NotNull String path, @Nullable ResourceResolver resolver, int maxWidth) {
+    try {
+      Document document = parseVectorDrawable(getXmlContent(path), resolver);
+      return document != null ? createVectorIcon(path, document, maxWidth) : null;
+    }
+    catch (Throwable e) {
+      LOG.warn(String.format("Could not read/render icon image %1$s", path), e);
+    }
+
+    return null;
+  }
+
+  /**
+   * Parses the given drawable XML and, if {@code resolver} is not null, replaces its resource and theme references with their values.
+   * Returns null if the XML is not a vector drawable; we can't render other drawables yet.
+   */
+  @Nullable
+  static Document parseVectorDrawable(@NotNull String xml, @Nullable ResourceResolver resolver) {
+    // TODO: Consider resolving selectors to render for example the default image!
+    if (!xml.contains("<vector")) {
+      return null;
+    }
+    Document document = XmlUtils.parseDocumentSilently(xml, true);
+    if (document == null) {
+      return null;
+    }
+    Element root = document.getDocumentElement();
+    if (root == null) {
+      return null;
+    }
+    if (resolver != null) {
+      replaceResourceReferences(root, resolver);
+    }
+    return document;
+  }
+
+  /**
+   * Renders a vector drawable returned by {@link #parseVectorDrawable}, whose references are already resolved, so this can be done on
+   * any thread.
+   */
+  @Nullable
+  static Icon createVectorIcon(@NotNull String path, @NotNull Document document, int maxWidth) {
     try {
       VdPreview.TargetSize imageTargetSize =
         VdPreview.TargetSize.createSizeFromWidth(isRetinaEnabled() ? ImageUtils.RETINA_SCALE * maxWidth : maxWidth);
 
-      String xml = getXmlContent(path);
-      // See if this drawable is a vector; we can't render other drawables yet.
-      // TODO: Consider resolving selectors to render for example the default image!
-      if (xml.contains("<vector")) {
-        Document document = XmlUtils.parseDocumentSilently(xml, true);
-        if (document == null) {
-          return null;
-        }
-        Element root = document.getDocumentElement();
-        if (root == null) {
-          return null;
-        }
-        if (resolver != null) {
-          replaceResourceReferences(root, resolver);
-        }
-        StringBuilder builder = new StringBuilder(100);
-        BufferedImage image = VdPreview.getPreviewFromVectorDocument(imageTargetSize, document, builder);
-        if (builder.length() > 0) {
-          LOG.warn("Problems rendering " + path + ": " + builder);
-        }
-        if (image != null) {
-          if (isRetinaEnabled()) {
-            RetinaImageIcon retinaIcon = getRetinaIcon(image);
-            if (retinaIcon != null) {
-              return retinaIcon;
-            }
+      StringBuilder builder = new StringBuilder(100);
+      BufferedImage image = VdPreview.getPreviewFromVectorDocument(imageTargetSize, document, builder);
+      if (builder.length() > 0) {
+        LOG.warn("Problems rendering " + path + ": " + builder);
+      }
+      if (image != null) {
+        if (isRetinaEnabled()) {
+          RetinaImageIcon retinaIcon = getRetinaIcon(image);
+          if (retinaIcon != null) {
+            return retinaIcon;
           }
-          return new ImageIcon(image);
         }
+        return new ImageIcon(image);
       }
     }
     catch (Throwable e) {
@@ -198,6 +224,21 @@ public class GutterIconFactory {
     return null;
   }
 
+  /**
+   * Renders a bitmap from its content, already read by the caller, so this can be done on any thread.
+   */
+  @Nullable
+  static Icon createBitmapIcon(@NotNull String path, @NotNull byte[] content, int maxWidth, int maxHeight) {
+    try {
+      return createBitmapIcon(ImageIO.read(new ByteArrayInputStream(content)), maxWidth, maxHeight);
+    }
+    catch (Throwable e) {
+      LOG.warn(String.format("Could not read icon image %1$s", path), e);
+    }
+
+    return null;
+  }
+
   @Nullable
   private static Icon createBitmapIcon(BufferedImage image, int maxWidth, int maxHeight) {
     if (image != null) {
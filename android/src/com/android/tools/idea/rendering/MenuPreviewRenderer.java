@@ -22,6 +22,7 @@ import com.android.resources.ResourceType;
 import com.android.sdklib.IAndroidTarget;
 import com.android.tools.idea.configurations.Configuration;
 import com.android.tools.idea.model.MergedManifest;
+import com.android.tools.idea.model.MergedManifestSnapshot;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.intellij.openapi.module.Module;
@@ -165,7 +166,7 @@ public class MenuPreviewRenderer {
       setAndroidAttr(layout, ATTR_LAYOUT_HEIGHT, "48dp");
     }
 
-    MergedManifest manifestInfo = MergedManifest.get(myModule);
+    MergedManifestSnapshot manifestInfo = MergedManifest.get(myModule).getAvailableSnapshot();
     String applicationIcon = manifestInfo.getApplicationIcon();
     if (applicationIcon != null) {
       Element imageView = myDocument.createElement(IMAGE_VIEW);
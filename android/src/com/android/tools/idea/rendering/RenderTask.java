@@ -37,6 +37,7 @@ import com.android.tools.idea.layoutlib.RenderParamsFlags;
 import com.android.tools.idea.model.AndroidModuleInfo;
 import com.android.tools.idea.model.MergedManifest;
 import com.android.tools.idea.model.MergedManifest.ActivityAttributes;
+import com.android.tools.idea.model.MergedManifestSnapshot;
 import com.android.tools.idea.projectsystem.GoogleMavenArtifactId;
 import com.android.tools.idea.rendering.multi.CompatibilityRenderTarget;
 import com.android.tools.idea.res.AppResourceRepository;
@@ -474,7 +475,7 @@ public class RenderTask implements IImageFactory {
     // same session
     params.setExtendedViewInfoMode(true);
 
-    MergedManifest manifestInfo = MergedManifest.get(module);
+    MergedManifestSnapshot manifestInfo = MergedManifest.get(module).getAvailableSnapshot();
 
     LayoutDirectionQualifier qualifier = myConfiguration.getFullConfig().getLayoutDirectionQualifier();
     if (qualifier != null && qualifier.getValue() == LayoutDirection.RTL && !getLayoutLib().isRtl(myLocale.toLocaleId())) {
@@ -1057,7 +1058,7 @@ public class RenderTask implements IImageFactory {
     params.setLocale(myLocale.toLocaleId());
     params.setAssetRepository(myAssetRepository);
     params.setFlag(RenderParamsFlags.FLAG_KEY_RECYCLER_VIEW_SUPPORT, true);
-    MergedManifest manifestInfo = MergedManifest.get(module);
+    MergedManifestSnapshot manifestInfo = MergedManifest.get(module).getAvailableSnapshot();
     try {
       params.setRtlSupport(manifestInfo.isRtlSupported());
     } catch (Exception e) {
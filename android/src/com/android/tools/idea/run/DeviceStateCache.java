@@ -27,6 +27,7 @@ import org.jetbrains.annotations.Nullable;
 /**
  * {@link DeviceStateCache} is a simple cache of package and device specific data.
  * Entries corresponding to a device are automatically cleared if the device is disconnected.
+ * The cache can be used from several threads, e.g. when launching on several devices at once.
  */
 public class DeviceStateCache<T> implements AndroidDebugBridge.IDeviceChangeListener, Disposable {
   /** Maps from device serial -> package name -> cached data */
@@ -43,12 +44,12 @@ public class DeviceStateCache<T> implements AndroidDebugBridge.IDeviceChangeList
   }
 
   @Nullable
-  public T get(@NotNull IDevice device, @NotNull String pkgName) {
+  public synchronized T get(@NotNull IDevice device, @NotNull String pkgName) {
     return myCache.get(device.getSerialNumber(), pkgName);
   }
 
   @Nullable
-  public T put(@NotNull IDevice device, @NotNull String pkgName, @NotNull T data) {
+  public synchronized T put(@NotNull IDevice device, @NotNull String pkgName, @NotNull T data) {
     return myCache.put(device.getSerialNumber(), pkgName, data);
   }
 
@@ -57,7 +58,7 @@ public class DeviceStateCache<T> implements AndroidDebugBridge.IDeviceChangeList
   }
 
   @Override
-  public void deviceDisconnected(IDevice device) {
+  public synchronized void deviceDisconnected(IDevice device) {
     myCache.row(device.getSerialNumber()).clear();
   }
 
@@ -27,6 +27,10 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 public class FullApkInstaller {
@@ -35,6 +39,11 @@ public class FullApkInstaller {
   @NotNull private final InstalledApkCache myInstalledApkCache;
   @NotNull private final ConsolePrinter myPrinter;
 
+  /** The device checked by {@link #checkInstalledApks}, and which of the checked packages are up to date on it. */
+  @Nullable private IDevice myCheckedDevice;
+  @NotNull private Set<String> myCheckedPackages = Collections.emptySet();
+  @NotNull private Set<String> myInstalledPackages = Collections.emptySet();
+
   public FullApkInstaller(@NotNull Project project,
                           @NotNull LaunchOptions options,
                           @NotNull InstalledApkCache installedApkCache,
@@ -45,6 +54,27 @@ public class FullApkInstaller {
     myPrinter = printer;
   }
 
+  /**
+   * Checks which of the given apks are already installed on the device with a single query, so that installing
+   * several apks doesn't query the device for each of them in {@link #uploadAndInstallApk}.
+   *
+   * @param apks the apk to be installed for each package name
+   */
+  public void checkInstalledApks(@NotNull IDevice device, @NotNull Map<String, File> apks) {
+    if (!myLaunchOptions.isSkipNoopApkInstallations() || apks.size() < 2) {
+      return;
+    }
+
+    myCheckedDevice = device;
+    myCheckedPackages = new HashSet<>(apks.keySet());
+    try {
+      Integer userId = LaunchUtils.getUserIdFromFlags(myLaunchOptions.getPmInstallOptions());
+      myInstalledPackages = myInstalledApkCache.getInstalledPackages(device, apks, userId);
+    } catch (IOException e) {
+      myInstalledPackages = Collections.emptySet();
+    }
+  }
+
   /**
    * Installs the given apk on the device.
    * @return whether the installation was successful
@@ -103,13 +133,22 @@ public class FullApkInstaller {
       return true;
     }
 
-    try {
-      Integer userId = LaunchUtils.getUserIdFromFlags(myLaunchOptions.getPmInstallOptions());
-      if (!myInstalledApkCache.isInstalled(device, localFile, packageName, userId)) {
+    if (device == myCheckedDevice && myCheckedPackages.contains(packageName)) {
+      // only checked once, installing one apk may change the state of another (e.g. a test apk)
+      myCheckedPackages.remove(packageName);
+      if (!myInstalledPackages.contains(packageName)) {
+        return true;
+      }
+    }
+    else {
+      try {
+        Integer userId = LaunchUtils.getUserIdFromFlags(myLaunchOptions.getPmInstallOptions());
+        if (!myInstalledApkCache.isInstalled(device, localFile, packageName, userId)) {
+          return true;
+        }
+      } catch (IOException e) {
         return true;
       }
-    } catch (IOException e) {
-      return true;
     }
 
     myPrinter.stdout("No apk changes detected since last installation, skipping installation of " + localFile.getPath());
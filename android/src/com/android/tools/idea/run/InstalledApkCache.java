@@ -20,6 +20,7 @@ import com.android.ddmlib.*;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import com.intellij.openapi.Disposable;
@@ -30,13 +31,33 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Set;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 public class InstalledApkCache implements Disposable {
+  private static final long DUMPSYS_TIMEOUT_MS = 500;
+  private static final String DUMPSYS_SEPARATOR = "--- end of dumpsys package ---";
+
+  private static final int EOCD_SIGNATURE = 0x06054b50;
+  private static final int EOCD_SIZE = 22;
+  private static final int MAX_ZIP_COMMENT_SIZE = 0xffff;
+  private static final long APK_SIG_BLOCK_MAGIC_LO = 0x20676953204b5041L; // "APK Sig "
+  private static final long APK_SIG_BLOCK_MAGIC_HI = 0x3234206b636f6c42L; // "Block 42"
+
   private final DeviceStateCache<CacheData> myCache;
 
+  /**
+   * Fingerprints of APK files by path. An entry is only valid as long as the size and modification time of the file
+   * haven't changed, which spares hashing an unchanged APK again on every launch.
+   */
+  private final ConcurrentMap<File, Fingerprint> myFingerprints = new ConcurrentHashMap<>();
+
   /** Diagnostic output set by {@link #getLastUpdateTime(com.android.ddmlib.IDevice, String)} */
   private String myDiagnosticOutput;
 
@@ -46,6 +67,7 @@ public class InstalledApkCache implements Disposable {
 
   @Override
   public void dispose() {
+    myFingerprints.clear();
   }
 
   public boolean isInstalled(
@@ -83,9 +105,122 @@ public class InstalledApkCache implements Disposable {
     myCache.put(device, pkgName, new CacheData(installState, hash(apk)));
   }
 
+  /**
+   * Checks with a single shell command which of the given APKs are installed, see {@link #isInstalled}.
+   *
+   * @param apks the APK to check for each package name
+   * @return the package names whose APK is installed
+   */
+  @NotNull
+  public Set<String> getInstalledPackages(@NotNull IDevice device, @NotNull Map<String, File> apks, @Nullable Integer userId)
+    throws IOException {
+    List<String> cachedPackages = new ArrayList<>();
+    for (String pkgName : apks.keySet()) {
+      if (myCache.get(device, pkgName) != null) {
+        cachedPackages.add(pkgName);
+      }
+    }
+    if (cachedPackages.isEmpty()) {
+      return Collections.emptySet();
+    }
+
+    Map<String, InstallState> currentStates = getInstallStates(device, cachedPackages);
+    Set<String> installed = new HashSet<>();
+    for (String pkgName : cachedPackages) {
+      CacheData state = myCache.get(device, pkgName);
+      InstallState currentState = currentStates.get(pkgName);
+      if (state != null &&
+          currentState != null &&
+          state.installState.lastUpdateTime.equals(currentState.lastUpdateTime) &&
+          state.hash.equals(hash(apks.get(pkgName))) &&
+          (userId == null || currentState.users.contains(userId))) {
+        installed.add(pkgName);
+      }
+    }
+    return installed;
+  }
+
+  @NotNull
+  private HashCode hash(@NotNull File apk) throws IOException {
+    long length = apk.length();
+    long lastModified = apk.lastModified();
+    Fingerprint fingerprint = myFingerprints.get(apk);
+    if (fingerprint != null && fingerprint.length == length && fingerprint.lastModified == lastModified) {
+      return fingerprint.hash;
+    }
+
+    HashCode hash = hashZipDirectory(apk);
+    if (hash == null) {
+      hash = Files.hash(apk, Hashing.goodFastHash(32));
+    }
+    myFingerprints.put(apk, new Fingerprint(length, lastModified, hash));
+    return hash;
+  }
+
+  /**
+   * Hashes the tail of the APK, from the APK Signing Block (if present) to the end of the file. That covers the zip
+   * central directory, which has the name, CRC and sizes of every entry, so a change to any entry changes the hash
+   * without the entries themselves having to be read. Returns null if the file doesn't look like a zip file that can
+   * be handled this way (e.g. Zip64), in which case the whole file should be hashed.
+   */
+  @VisibleForTesting
+  @Nullable
+  static HashCode hashZipDirectory(@NotNull File apk) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(apk, "r")) {
+      long length = file.length();
+      if (length < EOCD_SIZE) {
+        return null;
+      }
+
+      int tailSize = (int)Math.min(length, EOCD_SIZE + MAX_ZIP_COMMENT_SIZE);
+      long tailOffset = length - tailSize;
+      ByteBuffer tail = readFully(file, tailOffset, tailSize);
+      for (int eocd = tailSize - EOCD_SIZE; eocd >= 0; eocd--) {
+        if (tail.getInt(eocd) != EOCD_SIGNATURE || (tail.getShort(eocd + 20) & 0xffff) != tailSize - EOCD_SIZE - eocd) {
+          continue;
+        }
+
+        long directorySize = tail.getInt(eocd + 12) & 0xffffffffL;
+        long directoryOffset = tail.getInt(eocd + 16) & 0xffffffffL;
+        if (directoryOffset + directorySize != tailOffset + eocd) {
+          return null;
+        }
+
+        long start = directoryOffset;
+        if (directoryOffset >= 24) {
+          ByteBuffer footer = readFully(file, directoryOffset - 24, 24);
+          if (footer.getLong(8) == APK_SIG_BLOCK_MAGIC_LO && footer.getLong(16) == APK_SIG_BLOCK_MAGIC_HI) {
+            long blockSize = footer.getLong(0);
+            if (blockSize < 24 || blockSize > directoryOffset - 8) {
+              return null;
+            }
+            start = directoryOffset - blockSize - 8;
+          }
+        }
+
+        Hasher hasher = Hashing.goodFastHash(32).newHasher();
+        byte[] buffer = new byte[64 * 1024];
+        file.seek(start);
+        for (long remaining = length - start; remaining > 0; ) {
+          int read = file.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+          if (read < 0) {
+            return null;
+          }
+          hasher.putBytes(buffer, 0, read);
+          remaining -= read;
+        }
+        return hasher.hash();
+      }
+      return null;
+    }
+  }
+
   @NotNull
-  private static HashCode hash(@NotNull File apk) throws IOException {
-    return Files.hash(apk, Hashing.goodFastHash(32));
+  private static ByteBuffer readFully(@NotNull RandomAccessFile file, long offset, int size) throws IOException {
+    byte[] bytes = new byte[size];
+    file.seek(offset);
+    file.readFully(bytes);
+    return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
   }
 
   @VisibleForTesting
@@ -99,18 +234,61 @@ public class InstalledApkCache implements Disposable {
    */
   @Nullable
   public InstallState getInstallState(@NotNull IDevice device, @NotNull String pkgName) {
-    boolean deviceHasPackage = false;
     myDiagnosticOutput = null;
 
     String output;
     try {
-      output = executeShellCommand(device, "dumpsys package " + pkgName, 500, TimeUnit.MILLISECONDS);
+      output = executeShellCommand(device, "dumpsys package " + pkgName, DUMPSYS_TIMEOUT_MS, TimeUnit.MILLISECONDS);
     }
     catch (Exception e) {
       myDiagnosticOutput = String.format("Error executing 'dumpsys package %1$s:\n%2$s'", pkgName, e.getMessage());
       return null;
     }
 
+    return parseInstallState(output, pkgName);
+  }
+
+  /**
+   * Like {@link #getInstallState}, for several packages with a single shell command. Packages that were not found are
+   * missing from the result.
+   */
+  @NotNull
+  public Map<String, InstallState> getInstallStates(@NotNull IDevice device, @NotNull List<String> pkgNames) {
+    if (pkgNames.size() == 1) {
+      InstallState state = getInstallState(device, pkgNames.get(0));
+      return state == null ? Collections.emptyMap() : Collections.singletonMap(pkgNames.get(0), state);
+    }
+
+    myDiagnosticOutput = null;
+    StringBuilder command = new StringBuilder();
+    for (String pkgName : pkgNames) {
+      command.append("dumpsys package ").append(pkgName).append("; echo '").append(DUMPSYS_SEPARATOR).append("'; ");
+    }
+
+    String output;
+    try {
+      output = executeShellCommand(device, command.toString(), DUMPSYS_TIMEOUT_MS * pkgNames.size(), TimeUnit.MILLISECONDS);
+    }
+    catch (Exception e) {
+      myDiagnosticOutput = String.format("Error executing '%1$s:\n%2$s'", command, e.getMessage());
+      return Collections.emptyMap();
+    }
+
+    Map<String, InstallState> states = new HashMap<>();
+    List<String> sections = Splitter.on(DUMPSYS_SEPARATOR).splitToList(output);
+    for (int i = 0; i < pkgNames.size() && i < sections.size(); i++) {
+      InstallState state = parseInstallState(sections.get(i), pkgNames.get(i));
+      if (state != null) {
+        states.put(pkgNames.get(i), state);
+      }
+    }
+    return states;
+  }
+
+  @Nullable
+  private InstallState parseInstallState(@NotNull String output, @NotNull String pkgName) {
+    boolean deviceHasPackage = false;
+
     // The follow code assumes that the output of "dumpsys package <pkgname>" has at least the following line:
     //       Package [pkgName]
     // Optionally, if it also has a line of form:
@@ -182,4 +360,16 @@ public class InstalledApkCache implements Disposable {
       this.hash = hash;
     }
   }
+
+  private static class Fingerprint {
+    private final long length;
+    private final long lastModified;
+    @NotNull private final HashCode hash;
+
+    private Fingerprint(long length, long lastModified, @NotNull HashCode hash) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+  }
 }
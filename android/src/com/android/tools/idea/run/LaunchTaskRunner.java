@@ -30,18 +30,25 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 public class LaunchTaskRunner extends Task.Backgroundable {
+  private static final int MAX_PARALLEL_DEVICE_LAUNCHES = 4;
+
   @NotNull private final String myConfigName;
   @NotNull private final LaunchInfo myLaunchInfo;
   @NotNull private final ProcessHandler myProcessHandler;
@@ -90,65 +97,98 @@ public class LaunchTaskRunner extends Task.Backgroundable {
     DateFormat dateFormat = new SimpleDateFormat("MM/dd HH:mm:ss");
     consolePrinter.stdout("\n" + dateFormat.format(new Date()) + ": Launching " + myConfigName);
 
-    for (ListenableFuture<IDevice> deviceFuture : listenableDeviceFutures) {
-      indicator.setText("Waiting for target device to come online");
-      IDevice device = waitForDevice(deviceFuture, indicator, launchStatus);
-      if (device == null) {
+    LaunchProgress progress = new LaunchProgress(indicator, listenableDeviceFutures.size());
+    List<DeviceLaunch> launches = new ArrayList<>(listenableDeviceFutures.size());
+    boolean parallel = debugSessionTask == null && listenableDeviceFutures.size() > 1;
+
+    for (int i = 0; i < listenableDeviceFutures.size(); i++) {
+      String serial = i < myDeviceFutures.getDevices().size() ? myDeviceFutures.getDevices().get(i).getSerial() : Integer.toString(i);
+      ConsolePrinter printer = parallel ? new PrefixedConsolePrinter(consolePrinter, "[" + serial + "] ") : consolePrinter;
+      launches.add(new DeviceLaunch(i, serial, listenableDeviceFutures.get(i), printer));
+    }
+
+    if (parallel) {
+      runInParallel(launches, launchStatus, progress);
+      reportParallelLaunch(launches, launchStatus, consolePrinter);
+      return;
+    }
+
+    for (DeviceLaunch launch : launches) {
+      launch.run(launchStatus, progress, debugSessionTask, false);
+      if (launch.myFailure != null) {
+        myError = launch.myError;
+        launchStatus.terminateLaunch(launch.myFailure);
         return;
       }
+      if (!launch.myCompleted) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Runs the launches on a bounded pool. A launch failing on one device doesn't stop the launches on the other
+   * devices; cancelling the launch stops all of them after their current task.
+   */
+  private void runInParallel(@NotNull List<DeviceLaunch> launches,
+                             @NotNull LaunchStatus launchStatus,
+                             @NotNull LaunchProgress progress) {
+    // Most of the time is spent waiting on adb and the devices, so a few concurrent launches are enough.
+    int maxThreads = Math.min(MAX_PARALLEL_DEVICE_LAUNCHES, launches.size());
+    ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("LaunchTaskRunner", maxThreads);
+    List<Future<?>> jobs = new ArrayList<>(launches.size());
+    for (DeviceLaunch launch : launches) {
+      jobs.add(executor.submit(() -> launch.run(launchStatus, progress, null, true)));
+    }
 
-      List<LaunchTask> launchTasks = null;
+    for (int i = 0; i < jobs.size(); i++) {
       try {
-        launchTasks = myLaunchTasksProvider.getTasks(device, launchStatus, consolePrinter);
+        jobs.get(i).get();
       }
-      catch (com.intellij.execution.ExecutionException e) {
-        launchStatus.terminateLaunch(e.getMessage());
-        return;
+      catch (ExecutionException e) {
+        DeviceLaunch launch = launches.get(i);
+        Logger.getInstance(LaunchTaskRunner.class).error(e.getCause());
+        launch.myFailure = "Error while launching on " + launch.mySerial + ": " + e.getCause().getMessage();
       }
-      catch (IllegalStateException e) {
-        launchStatus.terminateLaunch(e.getMessage());
-        Logger.getInstance(LaunchTaskRunner.class).error(e);
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        launchStatus.terminateLaunch("Interrupted while launching");
         return;
       }
+    }
+  }
 
-      int totalDuration = listenableDeviceFutures.size() * getTotalDuration(launchTasks, debugSessionTask);
-      int elapsed = 0;
-
-      for (LaunchTask task : launchTasks) {
-        // perform each task
-        indicator.setText(task.getDescription());
-        if (!task.perform(device, launchStatus, consolePrinter)) {
-          myError = "Error " + task.getDescription();
-          launchStatus.terminateLaunch("Error while " + task.getDescription());
-          return;
-        }
-
-        // update progress
-        elapsed += task.getDuration();
-        indicator.setFraction((double)elapsed / totalDuration);
-
-        // check for cancellation via progress bar
-        if (indicator.isCanceled()) {
-          launchStatus.terminateLaunch("User cancelled launch");
-          return;
-        }
-
-        // check for cancellation via stop button
-        if (launchStatus.isLaunchTerminated()) {
-          return;
-        }
-      }
+  /**
+   * Prints how long the launch took on every device and what went wrong where. The launch as a whole is only
+   * terminated if it didn't succeed on any device.
+   */
+  private void reportParallelLaunch(@NotNull List<DeviceLaunch> launches,
+                                    @NotNull LaunchStatus launchStatus,
+                                    @NotNull ConsolePrinter consolePrinter) {
+    if (launchStatus.isLaunchTerminated()) {
+      return;
+    }
 
-      if (debugSessionTask != null) {
-        debugSessionTask
-          .perform(myLaunchInfo, device, (ProcessHandlerLaunchStatus)launchStatus, (ProcessHandlerConsolePrinter)consolePrinter);
+    List<String> errors = new ArrayList<>();
+    boolean completedOnAnyDevice = false;
+    for (DeviceLaunch launch : launches) {
+      String summary = launch.mySerial + ": " + launch.getStatus() + " in " + launch.myElapsedMillis + " ms" +
+                       " (estimated duration " + launch.myEstimatedDuration + ")";
+      if (launch.myFailure != null) {
+        consolePrinter.stderr(summary);
+        errors.add(launch.myError != null ? launch.myError + " on " + launch.mySerial : launch.myFailure);
       }
-      else { // we only need to inform the process handler if certain scenarios
-        if (myLaunchTasksProvider.createsNewProcess() // we are not doing a hot swap (in which case we are creating a new process)
-            && myProcessHandler instanceof AndroidProcessHandler) { // we aren't debugging (in which case its a DebugProcessHandler)
-          ((AndroidProcessHandler)myProcessHandler).addTargetDevice(device);
-        }
+      else {
+        consolePrinter.stdout(summary);
       }
+      completedOnAnyDevice |= launch.myCompleted;
+    }
+
+    if (!errors.isEmpty()) {
+      myError = StringUtil.join(errors, "\n");
+    }
+    if (!completedOnAnyDevice) {
+      launchStatus.terminateLaunch(errors.isEmpty() ? "Launch did not complete on any device" : errors.get(0));
     }
   }
 
@@ -161,47 +201,203 @@ public class LaunchTaskRunner extends Task.Backgroundable {
     LaunchUtils.showNotification(myProject, myLaunchInfo.executor, myConfigName, myError, NotificationType.ERROR);
   }
 
-  @Nullable
-  private static IDevice waitForDevice(@NotNull ListenableFuture<IDevice> deviceFuture,
-                                       @NotNull ProgressIndicator indicator,
-                                       @NotNull LaunchStatus launchStatus) {
-    while (true) {
+  private static int getTotalDuration(@NotNull List<LaunchTask> launchTasks, @Nullable DebugConnectorTask debugSessionTask) {
+    int total = 0;
+
+    for (LaunchTask task : launchTasks) {
+      total += task.getDuration();
+    }
+
+    if (debugSessionTask != null) {
+      total += debugSessionTask.getDuration();
+    }
+
+    return total;
+  }
+
+  /**
+   * The launch on a single device: waits for the device to come online, then runs the launch tasks on it.
+   * Failures are recorded rather than terminating the launch, so that the caller can decide whether the other
+   * devices should continue.
+   */
+  private class DeviceLaunch {
+    private final int myIndex;
+    @NotNull private final String mySerial;
+    @NotNull private final ListenableFuture<IDevice> myDeviceFuture;
+    @NotNull private final ConsolePrinter myConsolePrinter;
+
+    /** The reason the launch failed on this device, or null if it didn't fail. */
+    @Nullable private volatile String myFailure;
+    /** The message to show in a notification for a failed task, if any. */
+    @Nullable private volatile String myError;
+    private volatile boolean myCompleted;
+    private volatile int myEstimatedDuration;
+    private volatile long myElapsedMillis;
+
+    DeviceLaunch(int index,
+                 @NotNull String serial,
+                 @NotNull ListenableFuture<IDevice> deviceFuture,
+                 @NotNull ConsolePrinter consolePrinter) {
+      myIndex = index;
+      mySerial = serial;
+      myDeviceFuture = deviceFuture;
+      myConsolePrinter = consolePrinter;
+    }
+
+    void run(@NotNull LaunchStatus launchStatus,
+             @NotNull LaunchProgress progress,
+             @Nullable DebugConnectorTask debugSessionTask,
+             boolean showSerial) {
+      long start = System.currentTimeMillis();
       try {
-        return deviceFuture.get(1, TimeUnit.SECONDS);
-      }
-      catch (TimeoutException ignored) {
+        progress.update(myIndex, 0, showSerial ? "Waiting for " + mySerial + " to come online"
+                                               : "Waiting for target device to come online");
+        IDevice device = waitForDevice(progress.getIndicator(), launchStatus);
+        if (device == null) {
+          return;
+        }
+
+        List<LaunchTask> launchTasks;
+        try {
+          launchTasks = getTasks(device, launchStatus);
+        }
+        catch (com.intellij.execution.ExecutionException e) {
+          myFailure = e.getMessage();
+          return;
+        }
+        catch (IllegalStateException e) {
+          myFailure = e.getMessage();
+          Logger.getInstance(LaunchTaskRunner.class).error(e);
+          return;
+        }
+
+        int totalDuration = Math.max(1, getTotalDuration(launchTasks, debugSessionTask));
+        myEstimatedDuration = totalDuration;
+        int elapsed = 0;
+
+        for (LaunchTask task : launchTasks) {
+          // perform each task
+          progress.update(myIndex, (double)elapsed / totalDuration,
+                          showSerial ? task.getDescription() + " on " + mySerial : task.getDescription());
+          long taskStart = System.currentTimeMillis();
+          if (!task.perform(device, launchStatus, myConsolePrinter)) {
+            myError = "Error " + task.getDescription();
+            myFailure = "Error while " + task.getDescription();
+            return;
+          }
+          Logger.getInstance(LaunchTaskRunner.class).info(
+            task.getDescription() + " on " + mySerial + " took " + (System.currentTimeMillis() - taskStart) + " ms");
+
+          // update progress
+          elapsed += task.getDuration();
+          progress.update(myIndex, (double)elapsed / totalDuration, null);
+
+          // check for cancellation via progress bar
+          if (progress.getIndicator().isCanceled()) {
+            launchStatus.terminateLaunch("User cancelled launch");
+            return;
+          }
+
+          // check for cancellation via stop button
+          if (launchStatus.isLaunchTerminated()) {
+            return;
+          }
+        }
+
+        if (debugSessionTask != null) {
+          debugSessionTask
+            .perform(myLaunchInfo, device, (ProcessHandlerLaunchStatus)launchStatus, (ProcessHandlerConsolePrinter)myConsolePrinter);
+        }
+        else { // we only need to inform the process handler if certain scenarios
+          if (myLaunchTasksProvider.createsNewProcess() // we are not doing a hot swap (in which case we are creating a new process)
+              && myProcessHandler instanceof AndroidProcessHandler) { // we aren't debugging (in which case its a DebugProcessHandler)
+            // the process handler isn't thread safe, and devices may finish their launch at the same time
+            synchronized (myProcessHandler) {
+              ((AndroidProcessHandler)myProcessHandler).addTargetDevice(device);
+            }
+          }
+        }
+        myCompleted = true;
       }
-      catch (InterruptedException e) {
-        launchStatus.terminateLaunch("Interrupted while waiting for device");
-        return null;
+      finally {
+        myElapsedMillis = System.currentTimeMillis() - start;
+        progress.update(myIndex, 1, null);
       }
-      catch (ExecutionException e) {
-        launchStatus.terminateLaunch("Error while waiting for device: " + e.getCause().getMessage());
-        return null;
+    }
+
+    @NotNull
+    private List<LaunchTask> getTasks(@NotNull IDevice device, @NotNull LaunchStatus launchStatus)
+      throws com.intellij.execution.ExecutionException {
+      // Creating the tasks is quick, but the providers aren't written to be used from several threads.
+      synchronized (myLaunchTasksProvider) {
+        return myLaunchTasksProvider.getTasks(device, launchStatus, myConsolePrinter);
       }
+    }
 
-      if (indicator.isCanceled()) {
-        launchStatus.terminateLaunch("User cancelled launch");
-        return null;
+    @Nullable
+    private IDevice waitForDevice(@NotNull ProgressIndicator indicator, @NotNull LaunchStatus launchStatus) {
+      while (true) {
+        try {
+          return myDeviceFuture.get(1, TimeUnit.SECONDS);
+        }
+        catch (TimeoutException ignored) {
+        }
+        catch (InterruptedException e) {
+          launchStatus.terminateLaunch("Interrupted while waiting for device");
+          return null;
+        }
+        catch (ExecutionException e) {
+          myFailure = "Error while waiting for device: " + e.getCause().getMessage();
+          return null;
+        }
+
+        if (indicator.isCanceled()) {
+          launchStatus.terminateLaunch("User cancelled launch");
+          return null;
+        }
+
+        if (launchStatus.isLaunchTerminated()) {
+          return null;
+        }
       }
+    }
 
-      if (launchStatus.isLaunchTerminated()) {
-        return null;
+    @NotNull
+    String getStatus() {
+      if (myFailure != null) {
+        return "failed (" + myFailure + ")";
       }
+      return myCompleted ? "launched" : "stopped";
     }
   }
 
-  private static int getTotalDuration(@NotNull List<LaunchTask> launchTasks, @Nullable DebugConnectorTask debugSessionTask) {
-    int total = 0;
+  /**
+   * Combines the progress of the launches on all devices, each of which gets an equal slice of the progress bar.
+   */
+  private static class LaunchProgress {
+    @NotNull private final ProgressIndicator myIndicator;
+    @NotNull private final double[] myFractions;
 
-    for (LaunchTask task : launchTasks) {
-      total += task.getDuration();
+    LaunchProgress(@NotNull ProgressIndicator indicator, int deviceCount) {
+      myIndicator = indicator;
+      myFractions = new double[Math.max(1, deviceCount)];
     }
 
-    if (debugSessionTask != null) {
-      total += debugSessionTask.getDuration();
+    @NotNull
+    ProgressIndicator getIndicator() {
+      return myIndicator;
     }
 
-    return total;
+    synchronized void update(int index, double fraction, @Nullable String text) {
+      myFractions[index] = Math.min(1, fraction);
+      double total = 0;
+      for (double f : myFractions) {
+        total += f;
+      }
+      myIndicator.setFraction(total / myFractions.length);
+      if (text != null) {
+        myIndicator.setText(text);
+      }
+    }
   }
 }
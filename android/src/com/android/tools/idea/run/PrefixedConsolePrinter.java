@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.run;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link ConsolePrinter} that prefixes every line with a fixed string, e.g. the serial of the device the output
+ * belongs to when launching on several devices at once.
+ */
+public class PrefixedConsolePrinter implements ConsolePrinter {
+  @NotNull private final ConsolePrinter myDelegate;
+  @NotNull private final String myPrefix;
+
+  public PrefixedConsolePrinter(@NotNull ConsolePrinter delegate, @NotNull String prefix) {
+    myDelegate = delegate;
+    myPrefix = prefix;
+  }
+
+  @Override
+  public void stdout(@NotNull String message) {
+    myDelegate.stdout(prefix(message));
+  }
+
+  @Override
+  public void stderr(@NotNull String message) {
+    myDelegate.stderr(prefix(message));
+  }
+
+  @NotNull
+  private String prefix(@NotNull String message) {
+    return myPrefix + message.replace("\n", "\n" + myPrefix);
+  }
+}
@@ -29,7 +29,10 @@ import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 public class DeployApkTask implements LaunchTask {
   private static final Logger LOG = Logger.getInstance(DeployApkTask.class);
@@ -66,6 +69,14 @@ public class DeployApkTask implements LaunchTask {
   public boolean perform(@NotNull IDevice device, @NotNull LaunchStatus launchStatus, @NotNull ConsolePrinter printer) {
     FullApkInstaller
       installer = new FullApkInstaller(myProject, myLaunchOptions, ServiceManager.getService(InstalledApkCache.class), printer);
+    Map<String, File> apkFiles = new HashMap<>();
+    for (ApkInfo apk : myApks) {
+      apkFiles.put(apk.getApplicationId(), apk.getFile());
+    }
+    if (apkFiles.size() == myApks.size()) {
+      installer.checkInstalledApks(device, apkFiles);
+    }
+
     for (ApkInfo apk : myApks) {
       if (!apk.getFile().exists()) {
         String message = "The APK file " + apk.getFile().getPath() + " does not exist on disk.";
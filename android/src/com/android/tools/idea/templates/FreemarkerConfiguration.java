@@ -19,12 +19,35 @@ import com.android.tools.idea.templates.propertyAdapters.PropertyObjectWrapper;
 import com.google.common.base.Charsets;
 import freemarker.template.Configuration;
 import freemarker.template.TemplateExceptionHandler;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A Freemarker {@link Configuration} initialized with sensible built-in values for instantiating
  * Android project templates.
  */
 public final class FreemarkerConfiguration extends Configuration {
+  private static final Map<File, FreemarkerConfiguration> ourSharedConfigurations = new ConcurrentHashMap<>();
+
+  /**
+   * Returns a configuration that loads templates with a stateless {@link StudioTemplateLoader} for the template root folder of
+   * {@code templateFolder}, shared by all the templates under that root and safe to use from several threads. The configuration
+   * caches the templates it parsed, so instantiating a template again only parses the files that changed on disk since. Whether
+   * a file changed is checked every time it is used, so that edits to a template are picked up right away.
+   */
+  @NotNull
+  public static Configuration getShared(@NotNull File templateFolder) {
+    return ourSharedConfigurations.computeIfAbsent(StudioTemplateLoader.findTemplateRootFolder(templateFolder), root -> {
+      FreemarkerConfiguration configuration = new FreemarkerConfiguration();
+      configuration.setTemplateLoader(StudioTemplateLoader.createSharedLoader(root));
+      configuration.setTemplateUpdateDelay(0);
+      return configuration;
+    });
+  }
+
   public FreemarkerConfiguration() {
     setDefaultEncoding(Charsets.UTF_8.name());
     setLocalizedLookup(false);
@@ -17,6 +17,12 @@ package com.android.tools.idea.templates;
 
 import com.android.tools.idea.templates.recipe.RenderingContext;
 import com.google.common.collect.LinkedHashMultimap;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import freemarker.template.Configuration;
 import freemarker.template.TemplateException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -25,14 +31,19 @@ import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Various utility methods to help classes interact with and initialize freemarker with Android
  * specific extensions.
  */
 public final class FreemarkerUtils {
+  private static final Logger LOG = Logger.getInstance(FreemarkerUtils.class);
+
+  private static final long CANCEL_CHECK_INTERVAL_MS = 50;
+  private static final ExecutorService ourParseExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+    "FreemarkerUtils", Math.min(4, Runtime.getRuntime().availableProcessors()));
 
   /**
    * Create a parameter map that represents a data model which should be passed into
@@ -115,6 +126,63 @@ public final class FreemarkerUtils {
     }
   }
 
+  /**
+   * Parses the given templates in parallel, so that processing them afterwards finds them in the template cache of the freemarker
+   * configuration of {@code context}. Templates that fail to load are skipped here; the error is reported when they are processed.
+   * The templates are only parsed, not processed: processing them needs the parameter map of {@code context}, which isn't thread safe.
+   * <p>
+   * If the calling thread has a progress indicator, canceling it stops the parsing with a {@link ProcessCanceledException}.
+   *
+   * @param names template names as returned by {@link StudioTemplateLoader#findTemplate(File)}
+   */
+  public static void parseTemplates(@NotNull RenderingContext context, @NotNull Collection<String> names) {
+    Set<String> uniqueNames = new LinkedHashSet<>(names);
+    if (uniqueNames.size() < 2) {
+      return;
+    }
+    Configuration configuration = context.getFreemarkerConfiguration();
+    ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    List<Future<?>> futures = new ArrayList<>(uniqueNames.size());
+    for (String name : uniqueNames) {
+      futures.add(ourParseExecutor.submit(() -> {
+        try {
+          configuration.getTemplate(name);
+        }
+        catch (IOException | RuntimeException e) {
+          LOG.debug("Could not parse template " + name, e);
+        }
+      }));
+    }
+    try {
+      for (Future<?> future : futures) {
+        while (true) {
+          if (indicator != null) {
+            indicator.checkCanceled();
+          }
+          try {
+            future.get(CANCEL_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            break;
+          }
+          catch (TimeoutException ignore) {
+          }
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessCanceledException(e);
+    }
+    catch (ExecutionException e) {
+      // The tasks catch the exceptions of getTemplate
+      LOG.error(e.getCause());
+    }
+    finally {
+      for (Future<?> future : futures) {
+        future.cancel(false);
+      }
+    }
+  }
+
   /**
    * Callback for processing the content of a template file.
    * Use this if the content may contain file paths relative to the template file.
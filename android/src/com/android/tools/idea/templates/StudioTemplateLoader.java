@@ -34,7 +34,8 @@ public final class StudioTemplateLoader implements TemplateLoader {
   private final File myTemplateRootFolder;
   // The top element holds the folder of the previous loaded template file.
   // Initially this is set to the folder of the main template.
-  private final Stack<File> myLastTemplateFolders;
+  // Null for shared loaders, which only resolve names relative to the root folder.
+  @Nullable private final Stack<File> myLastTemplateFolders;
   // Specify the root folder as a prefix
   private final static String ROOT = "root://";
   // The construct: new File(String) strip 1 forward slashes in "root://", and depending on the OS we may end up with root:/ or root:\
@@ -50,6 +51,21 @@ public final class StudioTemplateLoader implements TemplateLoader {
     myLastTemplateFolders.push(templateFolder);
   }
 
+  private StudioTemplateLoader(@NotNull File templateRootFolder, @Nullable Stack<File> lastTemplateFolders) {
+    myTemplateRootFolder = templateRootFolder;
+    myLastTemplateFolders = lastTemplateFolders;
+  }
+
+  /**
+   * Returns a loader without template folders to push and pop, which resolves names relative to the template root folder of
+   * {@code templateFolder}. As it has no mutable state, a single instance can serve concurrent freemarker lookups, which
+   * refer to templates by the names returned by {@link #findTemplate}.
+   */
+  @NotNull
+  static StudioTemplateLoader createSharedLoader(@NotNull File templateFolder) {
+    return new StudioTemplateLoader(findTemplateRootFolder(templateFolder), null);
+  }
+
   /**
    * Push the folder of the last template loaded as a temporary relative reference.
    * This can be useful if we need to resolve other references that are (or could be) relative
@@ -114,7 +130,9 @@ public final class StudioTemplateLoader implements TemplateLoader {
   public Object findTemplateSource(@NotNull String name) throws IOException {
     File file = resolveName(name);
     TemplateSource templateSource = TemplateSource.open(file);
-    pushTemplateFolder(file.getParentFile());
+    if (myLastTemplateFolders != null) {
+      pushTemplateFolder(file.getParentFile());
+    }
     return templateSource;
   }
 
@@ -149,7 +167,9 @@ public final class StudioTemplateLoader implements TemplateLoader {
   @Override
   public void closeTemplateSource(Object source) throws IOException {
     TemplateSource templateSource = (TemplateSource) source;
-    popTemplateFolder();
+    if (myLastTemplateFolders != null) {
+      popTemplateFolder();
+    }
     templateSource.close();
   }
 
@@ -177,7 +197,7 @@ public final class StudioTemplateLoader implements TemplateLoader {
   }
 
   @NotNull
-  private static File findTemplateRootFolder(@NotNull File templateFolder) {
+  static File findTemplateRootFolder(@NotNull File templateFolder) {
     File folder = templateFolder;
     while (folder != null && !folder.getName().equals("templates")) {
       folder = folder.getParentFile();
@@ -20,6 +20,7 @@ import com.android.sdklib.SdkVersionInfo;
 import com.android.tools.analytics.UsageTracker;
 import com.android.tools.idea.templates.FreemarkerUtils.TemplateProcessingException;
 import com.android.tools.idea.templates.FreemarkerUtils.TemplateUserVisibleException;
+import com.android.tools.idea.templates.recipe.DefaultRecipeExecutor;
 import com.android.tools.idea.templates.recipe.Recipe;
 import com.android.tools.idea.templates.recipe.RecipeExecutor;
 import com.android.tools.idea.templates.recipe.RenderingContext;
@@ -39,6 +40,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupManager;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.ThrowableComputable;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.impl.source.PostprocessReformattingAspect;
@@ -55,9 +57,11 @@ import javax.xml.parsers.SAXParserFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import static com.android.SdkConstants.DOT_FTL;
 import static com.android.SdkConstants.DOT_XML;
 import static com.android.tools.idea.templates.FreemarkerUtils.processFreemarkerTemplate;
 import static com.android.tools.idea.templates.Parameter.Constraint;
@@ -362,6 +366,7 @@ public class Template {
     assert metadata != null;
 
     enforceParameterTypes(metadata, context.getParamMap());
+    parseTemplates(context);
 
     try {
       runWriteCommandAction(context.getProject(), context.getCommandName(), () -> {
@@ -585,6 +590,36 @@ public class Template {
     });
   }
 
+  /**
+   * Parses the freemarker files of this template in parallel, before the write command that renders it, so that rendering finds them
+   * in the template cache instead of parsing them one after the other under the write lock. Canceling the progress indicator during
+   * this phase aborts the rendering before any file is changed. Files outside of the template folder (e.g. shared includes) are parsed
+   * when first used.
+   * <p>
+   * Only the parsing is parallel: the globals, the recipes and the files they instantiate are still processed sequentially inside the
+   * write command, since each step may depend on the parameters, dependencies and files produced by the previous ones.
+   */
+  private void parseTemplates(@NotNull RenderingContext context) {
+    if (!(context.getRecipeExecutor() instanceof DefaultRecipeExecutor)) {
+      // Dry runs don't process the template files
+      return;
+    }
+    StudioTemplateLoader loader = context.getLoader();
+    List<String> names = new ArrayList<>();
+    FileUtil.processFilesRecursively(myTemplateRoot, file -> {
+      if (file.isFile() && hasExtension(file, DOT_FTL)) {
+        try {
+          names.add(loader.findTemplate(file));
+        }
+        catch (IOException ignore) {
+          // Reported if the file is actually used
+        }
+      }
+      return true;
+    });
+    FreemarkerUtils.parseTemplates(context, names);
+  }
+
   @NotNull
   private File getTemplateFile(@NotNull File relativeFile) {
     return new File(myTemplateRoot, relativeFile.getPath());
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.templates;
+
+import com.android.repository.io.FileOpUtils;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static com.android.tools.idea.templates.Template.TEMPLATE_XML_NAME;
+
+/**
+ * Persistent index of the template folders known to {@link TemplateManager}, so that building the template menus and galleries
+ * doesn't have to list every template root and parse every template.xml again.
+ * <p>
+ * The catalog remembers the children of each folder it was asked to list, keyed by the folder's timestamp, and a summary of the
+ * metadata of each template, keyed by the timestamp and size of its template.xml. Only templates whose template.xml changed are
+ * parsed again, in parallel. The catalog is stored in a single file with a version number; a file with a different version is
+ * ignored.
+ * <p>
+ * This class is not thread safe, callers are expected to synchronize access to it.
+ */
+class TemplateCatalog {
+  private static final Logger LOG = Logger.getInstance(TemplateCatalog.class);
+
+  static final int VERSION = 1;
+
+  @NotNull private final File myFile;
+  @NotNull private final Executor myExecutor;
+  private final Map<String, FolderListing> myFolders = new HashMap<>();
+  private final Map<String, Entry> myEntries = new HashMap<>();
+  private boolean myLoaded;
+  private boolean myDirty;
+
+  TemplateCatalog(@NotNull File file, @NotNull Executor executor) {
+    myFile = file;
+    myExecutor = executor;
+  }
+
+  /**
+   * Returns the children of {@code folder}, or an empty array if it is null or not a folder. The children are listed again only
+   * if the timestamp of the folder changed.
+   */
+  @NotNull
+  File[] listFiles(@Nullable File folder) {
+    if (folder == null) {
+      return new File[0];
+    }
+    load();
+    String path = folder.getPath();
+    long lastModified = folder.lastModified();
+    FolderListing listing = myFolders.get(path);
+    if (listing == null || listing.myLastModified != lastModified || lastModified == 0) {
+      File[] files = FileOpUtils.create().listFiles(folder);
+      String[] names = new String[files.length];
+      for (int i = 0; i < files.length; i++) {
+        names[i] = files[i].getName();
+      }
+      listing = new FolderListing(lastModified, names);
+      myFolders.put(path, listing);
+      myDirty = true;
+    }
+    File[] files = new File[listing.myNames.length];
+    for (int i = 0; i < files.length; i++) {
+      files[i] = new File(folder, listing.myNames[i]);
+    }
+    return files;
+  }
+
+  /**
+   * Returns the catalog entries of the given template folders. The templates whose template.xml changed since the last update are
+   * parsed with {@code parser}, in parallel.
+   */
+  @NotNull
+  Map<File, Entry> update(@NotNull Collection<File> templates, @NotNull Function<File, TemplateMetadata> parser) {
+    load();
+    Map<File, Entry> result = new HashMap<>();
+    List<File> changed = new ArrayList<>();
+    for (File template : templates) {
+      if (result.containsKey(template)) {
+        continue;
+      }
+      File templateXml = new File(template, TEMPLATE_XML_NAME);
+      long lastModified = templateXml.lastModified();
+      long length = templateXml.length();
+      Entry entry = myEntries.get(template.getPath());
+      if (entry != null && entry.myLastModified == lastModified && entry.myLength == length && lastModified != 0) {
+        result.put(template, entry);
+      }
+      else if (lastModified == 0) {
+        // No template.xml, so not a template. Not worth remembering.
+        result.put(template, Entry.NONE);
+      }
+      else {
+        result.put(template, null);
+        changed.add(template);
+      }
+    }
+
+    List<CompletableFuture<Entry>> futures = new ArrayList<>(changed.size());
+    for (File template : changed) {
+      if (changed.size() == 1) {
+        futures.add(CompletableFuture.completedFuture(parse(template, parser)));
+      }
+      else {
+        futures.add(CompletableFuture.supplyAsync(() -> parse(template, parser), myExecutor));
+      }
+    }
+    for (int i = 0; i < changed.size(); i++) {
+      Entry entry = futures.get(i).join();
+      result.put(changed.get(i), entry);
+      myEntries.put(changed.get(i).getPath(), entry);
+      myDirty = true;
+    }
+    return result;
+  }
+
+  @NotNull
+  private static Entry parse(@NotNull File template, @NotNull Function<File, TemplateMetadata> parser) {
+    // Take the stamp before parsing, so that a template.xml modified while it is being parsed is parsed again next time
+    File templateXml = new File(template, TEMPLATE_XML_NAME);
+    long lastModified = templateXml.lastModified();
+    long length = templateXml.length();
+    TemplateMetadata metadata = null;
+    try {
+      metadata = parser.apply(template);
+    }
+    catch (RuntimeException e) {
+      LOG.warn(e);
+    }
+    if (metadata == null) {
+      return new Entry(lastModified, length, false, null, null, 0, 0);
+    }
+    return new Entry(lastModified, length, true, metadata.getTitle(), metadata.getCategory(), metadata.getRevision(),
+                     metadata.getMinSdk());
+  }
+
+  /**
+   * Writes the catalog to disk if it changed since it was loaded. Folders and templates that no longer exist are dropped.
+   */
+  void save() {
+    if (!myDirty) {
+      return;
+    }
+    myFolders.keySet().removeIf(path -> !new File(path).isDirectory());
+    myEntries.keySet().removeIf(path -> !new File(path, TEMPLATE_XML_NAME).isFile());
+
+    File tmp = new File(myFile.getPath() + ".tmp");
+    try {
+      FileUtil.ensureExists(myFile.getParentFile());
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        out.writeInt(VERSION);
+        out.writeInt(myFolders.size());
+        for (Map.Entry<String, FolderListing> folder : myFolders.entrySet()) {
+          out.writeUTF(folder.getKey());
+          out.writeLong(folder.getValue().myLastModified);
+          out.writeInt(folder.getValue().myNames.length);
+          for (String name : folder.getValue().myNames) {
+            out.writeUTF(name);
+          }
+        }
+        out.writeInt(myEntries.size());
+        for (Map.Entry<String, Entry> entry : myEntries.entrySet()) {
+          out.writeUTF(entry.getKey());
+          entry.getValue().write(out);
+        }
+      }
+      FileUtil.rename(tmp, myFile);
+      myDirty = false;
+    }
+    catch (IOException e) {
+      LOG.warn("Could not write template catalog " + myFile, e);
+      FileUtil.delete(tmp);
+    }
+  }
+
+  private void load() {
+    if (myLoaded) {
+      return;
+    }
+    myLoaded = true;
+    if (!myFile.isFile()) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)))) {
+      if (in.readInt() != VERSION) {
+        return;
+      }
+      int folders = in.readInt();
+      for (int i = 0; i < folders; i++) {
+        String path = in.readUTF();
+        long lastModified = in.readLong();
+        String[] names = new String[in.readInt()];
+        for (int j = 0; j < names.length; j++) {
+          names[j] = in.readUTF();
+        }
+        myFolders.put(path, new FolderListing(lastModified, names));
+      }
+      int entries = in.readInt();
+      for (int i = 0; i < entries; i++) {
+        String path = in.readUTF();
+        myEntries.put(path, Entry.read(in));
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Could not read template catalog " + myFile, e);
+      myFolders.clear();
+      myEntries.clear();
+    }
+  }
+
+  private static class FolderListing {
+    final long myLastModified;
+    @NotNull final String[] myNames;
+
+    FolderListing(long lastModified, @NotNull String[] names) {
+      myLastModified = lastModified;
+      myNames = names;
+    }
+  }
+
+  /**
+   * The parts of the {@link TemplateMetadata} of a template that are needed to build the template menus
+   */
+  static class Entry {
+    static final Entry NONE = new Entry(0, 0, false, null, null, 0, 0);
+
+    private final long myLastModified;
+    private final long myLength;
+    private final boolean myValid;
+    @Nullable private final String myTitle;
+    @Nullable private final String myCategory;
+    private final int myRevision;
+    private final int myMinSdk;
+
+    Entry(long lastModified, long length, boolean valid, @Nullable String title, @Nullable String category, int revision, int minSdk) {
+      myLastModified = lastModified;
+      myLength = length;
+      myValid = valid;
+      myTitle = title;
+      myCategory = category;
+      myRevision = revision;
+      myMinSdk = minSdk;
+    }
+
+    /**
+     * @return whether the template.xml could be parsed
+     */
+    boolean isValid() {
+      return myValid;
+    }
+
+    @Nullable
+    String getTitle() {
+      return myTitle;
+    }
+
+    @Nullable
+    String getCategory() {
+      return myCategory;
+    }
+
+    int getRevision() {
+      return myRevision;
+    }
+
+    int getMinSdk() {
+      return myMinSdk;
+    }
+
+    private void write(@NotNull DataOutputStream out) throws IOException {
+      out.writeLong(myLastModified);
+      out.writeLong(myLength);
+      out.writeBoolean(myValid);
+      writeNullable(out, myTitle);
+      writeNullable(out, myCategory);
+      out.writeInt(myRevision);
+      out.writeInt(myMinSdk);
+    }
+
+    @NotNull
+    private static Entry read(@NotNull DataInputStream in) throws IOException {
+      return new Entry(in.readLong(), in.readLong(), in.readBoolean(), readNullable(in), readNullable(in), in.readInt(), in.readInt());
+    }
+
+    private static void writeNullable(@NotNull DataOutputStream out, @Nullable String s) throws IOException {
+      out.writeBoolean(s != null);
+      if (s != null) {
+        out.writeUTF(s);
+      }
+    }
+
+    @Nullable
+    private static String readNullable(@NotNull DataInputStream in) throws IOException {
+      return in.readBoolean() ? in.readUTF() : null;
+    }
+  }
+}
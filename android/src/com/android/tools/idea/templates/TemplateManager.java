@@ -48,6 +48,7 @@ import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.platform.templates.github.ZipUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import icons.AndroidIcons;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.android.sdk.AndroidSdkData;
@@ -59,6 +60,7 @@ import org.w3c.dom.Document;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.android.SdkConstants.*;
 import static com.android.tools.idea.templates.Template.TEMPLATE_XML_NAME;
@@ -84,11 +86,18 @@ public class TemplateManager {
   private static final Set<String> EXCLUDED_CATEGORIES = ImmutableSet.of("Application", "Applications");
   public static final Set<String> EXCLUDED_TEMPLATES = ImmutableSet.of();
   private static final String TEMPLATE_ZIP_NAME = "templates.zip";
+  private static final String TEMPLATE_CATALOG_PATH = "templates/catalog.dat";
+  /**
+   * Cache location for templates pulled from exploded-aars, relative to the system folder. Kept across sessions so that the
+   * templates don't have to be unzipped again and their catalog entries stay valid.
+   */
+  private static final String AAR_CACHE_PATH = "templates/aar_cache";
+  private static final String AAR_CACHE_STAMP_SUFFIX = ".stamp";
 
   /**
    * Cache for {@link #getTemplateMetadata(File)}
    */
-  private Map<File, TemplateMetadata> myTemplateMap;
+  private final Map<File, CachedMetadata> myTemplateMap = new ConcurrentHashMap<>();
 
   /** Lock protecting access to {@link #myCategoryTable} */
   private final Object CATEGORY_TABLE_LOCK = new Object();
@@ -96,10 +105,12 @@ public class TemplateManager {
   /** Table mapping (Category, Template Name) -> Template File */
   private Table<String, String, File> myCategoryTable;
 
-  /**
-   * Cache location for templates pulled from exploded-aars
-   */
-  private File myAarCache;
+  /** Catalog entries of the templates in {@link #myCategoryTable} */
+  @GuardedBy("CATEGORY_TABLE_LOCK")
+  private Map<File, TemplateCatalog.Entry> myCategoryEntries;
+
+  @GuardedBy("CATEGORY_TABLE_LOCK")
+  private TemplateCatalog myCatalog;
 
   private static TemplateManager ourInstance = new TemplateManager();
   private DefaultActionGroup myTopGroup;
@@ -336,18 +347,6 @@ public class TemplateManager {
   public List<File> getTemplateDirectoriesFromAars(@Nullable Project project) {
     List<File> templateDirectories = Lists.newArrayList();
     if (project != null && project.getBaseDir() != null) {
-      if (myAarCache == null) {
-        String prefix = project.getName();
-        String suffix = "aar_cache";
-        try {
-          myAarCache = FileUtil.createTempDirectory(prefix, suffix);
-        }
-        catch (IOException e) {
-          LOG.error(String.format("Problem trying to create temp directory with prefix: '%1$s' suffix: '%2$s' path: '%3$s'",
-                                  prefix, suffix, FileUtil.getTempDirectory()), e);
-          return templateDirectories;
-        }
-      }
       File aarRoot = new File(project.getBasePath(), FileUtil.toSystemDependentName(EXPLODED_AAR_PATH));
       if (aarRoot.isDirectory()) {
         for (File artifactPackage : listFiles(aarRoot)) {
@@ -387,27 +386,48 @@ public class TemplateManager {
       }
     }
     if (highestVersionDir != null) {
-      String name = artifactNameRoot.getName() + "-" + highestVersionNumber.toString();
-      File inflated = new File(myAarCache, name);
-      if (!inflated.isDirectory()) {
-        // Only unzip once
-        File zipFile = new File(highestVersionDir, TEMPLATE_ZIP_NAME);
-        if (zipFile.isFile()) {
-          try {
-            ZipUtil.unzip(null, inflated, zipFile, null, null, true);
-          }
-          catch (IOException e) {
-            LOG.error(e);
-          }
+      File zipFile = new File(highestVersionDir, TEMPLATE_ZIP_NAME);
+      if (zipFile.isFile()) {
+        String name = artifactNameRoot.getName() + "-" + highestVersionNumber.toString();
+        File inflated = unzipToAarCache(zipFile, name);
+        if (inflated != null) {
+          templateDirectories.add(inflated);
         }
       }
-      if (inflated.isDirectory()) {
-        templateDirectories.add(inflated);
-      }
     }
     return templateDirectories;
   }
 
+  /**
+   * Unzips the templates.zip of an AAR into the AAR cache, unless the cache already has the contents of this very zip file.
+   *
+   * @return the folder the templates were unzipped into, or null if they could not be unzipped
+   */
+  @Nullable
+  private static File unzipToAarCache(@NotNull File zipFile, @NotNull String name) {
+    File aarCache = new File(PathManager.getSystemPath(), AAR_CACHE_PATH);
+    File inflated = new File(aarCache, name);
+    File stampFile = new File(aarCache, name + AAR_CACHE_STAMP_SUFFIX);
+    String stamp = zipFile.getPath() + ":" + zipFile.lastModified() + ":" + zipFile.length();
+    try {
+      if (inflated.isDirectory() && stampFile.isFile() && stamp.equals(FileUtil.loadFile(stampFile))) {
+        return inflated;
+      }
+      // Unzip next to the final location and move it in place, so that an interrupted unzip doesn't leave a partial copy behind
+      FileUtil.delete(stampFile);
+      FileUtil.delete(inflated);
+      File tmp = FileUtil.createTempDirectory(aarCache, name, null);
+      ZipUtil.unzip(null, tmp, zipFile, null, null, true);
+      FileUtil.rename(tmp, inflated);
+      FileUtil.writeToFile(stampFile, stamp);
+      return inflated;
+    }
+    catch (IOException e) {
+      LOG.error(e);
+      return null;
+    }
+  }
+
   /**
    * @return a list of template files that declare the given category.
    */
@@ -523,8 +543,8 @@ public class TemplateManager {
       if (EXCLUDED_TEMPLATES.contains(templateName)) {
         continue;
       }
-      TemplateMetadata metadata = getTemplateMetadata(myCategoryTable.get(category, templateName));
-      int minSdkVersion = metadata == null ? 0 : metadata.getMinSdk();
+      TemplateCatalog.Entry entry = myCategoryEntries.get(myCategoryTable.get(category, templateName));
+      int minSdkVersion = entry == null ? 0 : entry.getMinSdk();
       NewAndroidComponentAction templateAction = new NewAndroidComponentAction(category, templateName, minSdkVersion);
       String actionId = ACTION_ID_PREFIX + category + templateName;
       am.unregisterAction(actionId);
@@ -548,57 +568,70 @@ public class TemplateManager {
   @GuardedBy("CATEGORY_TABLE_LOCK")
   private Table<String, String, File> getCategoryTable(boolean forceReload, @Nullable Project project) {
     if (myCategoryTable == null || forceReload) {
-      if (myTemplateMap != null) {
-        myTemplateMap.clear();
-      }
-      myCategoryTable = TreeBasedTable.create();
-      for (File categoryDirectory : listFiles(getTemplateRootFolder())) {
-        for (File newTemplate : listFiles(categoryDirectory)) {
-          addTemplateToTable(newTemplate, false);
-        }
+      TemplateCatalog catalog = getCatalog();
+      List<File> templates = new ArrayList<>();
+      Set<File> userDefinedTemplates = new HashSet<>();
+      for (File categoryDirectory : catalog.listFiles(getTemplateRootFolder())) {
+        Collections.addAll(templates, catalog.listFiles(categoryDirectory));
       }
 
       for (File rootDirectory : getUserDefinedTemplateRootFolders()) {
-        for (File categoryDirectory : listFiles(rootDirectory)) {
-          for (File newTemplate : listFiles(categoryDirectory)) {
-            addTemplateToTable(newTemplate, true);
+        for (File categoryDirectory : catalog.listFiles(rootDirectory)) {
+          for (File newTemplate : catalog.listFiles(categoryDirectory)) {
+            templates.add(newTemplate);
+            userDefinedTemplates.add(newTemplate);
           }
         }
       }
 
       for (File rootDirectory : getAuxTemplateRootFolders()) {
-        for (File categoryDirectory : listFiles(rootDirectory)) {
-          for (File newTemplate : listFiles(categoryDirectory)) {
-            addTemplateToTable(newTemplate, false);
-          }
+        for (File categoryDirectory : catalog.listFiles(rootDirectory)) {
+          Collections.addAll(templates, catalog.listFiles(categoryDirectory));
         }
       }
 
       for (File aarDirectory : getTemplateDirectoriesFromAars(project)) {
-        for (File newTemplate : listFiles(aarDirectory)) {
-          addTemplateToTable(newTemplate, false);
-        }
+        Collections.addAll(templates, catalog.listFiles(aarDirectory));
+      }
+
+      myCategoryEntries = catalog.update(templates, template -> getTemplateMetadata(template, userDefinedTemplates.contains(template)));
+      myCategoryTable = TreeBasedTable.create();
+      for (File template : templates) {
+        addTemplateToTable(template, myCategoryEntries.get(template));
       }
+      catalog.save();
     }
 
     return myCategoryTable;
   }
 
   @GuardedBy("CATEGORY_TABLE_LOCK")
-  private void addTemplateToTable(@NotNull File newTemplate, boolean userDefinedTemplate) {
-    TemplateMetadata newMetadata = getTemplateMetadata(newTemplate, userDefinedTemplate);
-    if (newMetadata != null) {
-      String title = newMetadata.getTitle();
-      if (title == null || (newMetadata.getCategory() == null &&
+  @NotNull
+  private TemplateCatalog getCatalog() {
+    if (myCatalog == null) {
+      myCatalog = new TemplateCatalog(new File(PathManager.getSystemPath(), TEMPLATE_CATALOG_PATH),
+                                      AppExecutorUtil.createBoundedApplicationPoolExecutor(
+                                        "TemplateCatalog", Math.min(4, Runtime.getRuntime().availableProcessors())));
+    }
+    return myCatalog;
+  }
+
+  @GuardedBy("CATEGORY_TABLE_LOCK")
+  private void addTemplateToTable(@NotNull File newTemplate, @Nullable TemplateCatalog.Entry newEntry) {
+    if (newEntry != null && newEntry.isValid()) {
+      String title = newEntry.getTitle();
+      if (title == null || (newEntry.getCategory() == null &&
                             myCategoryTable.columnKeySet().contains(title) &&
                             myCategoryTable.get(CATEGORY_OTHER, title) == null)) {
         // If this template is uncategorized, and we already have a template of this name that has a category,
         // that is NOT "Other," then ignore this new template since it's undoubtedly older.
         return;
       }
-      String category = newMetadata.getCategory() != null ? newMetadata.getCategory() : CATEGORY_OTHER;
+      String category = newEntry.getCategory() != null ? newEntry.getCategory() : CATEGORY_OTHER;
       File existingTemplate = myCategoryTable.get(category, title);
-      if (existingTemplate == null || compareTemplates(existingTemplate, newTemplate) > 0) {
+      if (existingTemplate == null ||
+          compareTemplates(existingTemplate, myCategoryEntries.get(existingTemplate).getRevision(),
+                           newTemplate, newEntry.getRevision()) > 0) {
         myCategoryTable.put(category, title, newTemplate);
       }
     }
@@ -619,14 +652,18 @@ public class TemplateManager {
       return -1;
     }
     else {
-      int delta = template2.getRevision() - template1.getRevision();
-      if (delta == 0) {
-        delta = (int)(file2.lastModified() - file1.lastModified());
-      }
-      return delta;
+      return compareTemplates(file1, template1.getRevision(), file2, template2.getRevision());
     }
   }
 
+  private static int compareTemplates(@NotNull File file1, int revision1, @NotNull File file2, int revision2) {
+    int delta = revision2 - revision1;
+    if (delta == 0) {
+      delta = (int)(file2.lastModified() - file1.lastModified());
+    }
+    return delta;
+  }
+
   private List<TemplateHandle> getTemplateList(@NotNull FormFactor formFactor, @NotNull Set<String> categories, @NotNull Set<String> excluded) {
     ArrayList<TemplateHandle> templates = Lists.newArrayList();
     for (String category : categories) {
@@ -707,18 +744,15 @@ public class TemplateManager {
 
   @Nullable
   private TemplateMetadata getTemplateMetadata(@NotNull File templateRoot, boolean userDefinedTemplate) {
-    if (myTemplateMap != null) {
-      TemplateMetadata metadata = myTemplateMap.get(templateRoot);
-      if (metadata != null) {
-        return metadata;
-      }
-    }
-    else {
-      myTemplateMap = Maps.newHashMap();
+    File templateFile = new File(templateRoot, TEMPLATE_XML_NAME);
+    long lastModified = templateFile.lastModified();
+    long length = templateFile.length();
+    CachedMetadata cached = myTemplateMap.get(templateRoot);
+    if (cached != null && cached.myLastModified == lastModified && cached.myLength == length) {
+      return cached.myMetadata;
     }
 
     try {
-      File templateFile = new File(templateRoot, TEMPLATE_XML_NAME);
       if (templateFile.isFile()) {
         String xml = Files.toString(templateFile, Charsets.UTF_8);
         Document doc;
@@ -730,7 +764,7 @@ public class TemplateManager {
         }
         if (doc != null && doc.getDocumentElement() != null) {
           TemplateMetadata metadata = new TemplateMetadata(doc);
-          myTemplateMap.put(templateRoot, metadata);
+          myTemplateMap.put(templateRoot, new CachedMetadata(lastModified, length, metadata));
           return metadata;
         }
       }
@@ -772,4 +806,19 @@ public class TemplateManager {
   private static File[] listFiles(@NotNull File root) {
     return FileOpUtils.create().listFiles(root);
   }
+
+  /**
+   * Parsed template metadata along with the timestamp and size of the template.xml it was parsed from
+   */
+  private static class CachedMetadata {
+    final long myLastModified;
+    final long myLength;
+    @NotNull final TemplateMetadata myMetadata;
+
+    CachedMetadata(long lastModified, long length, @NotNull TemplateMetadata metadata) {
+      myLastModified = lastModified;
+      myLength = length;
+      myMetadata = metadata;
+    }
+  }
 }
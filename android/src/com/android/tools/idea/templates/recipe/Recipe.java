@@ -67,6 +67,8 @@ public class Recipe implements RecipeInstruction {
   @SuppressWarnings("unused")
   private String myFolder;
 
+  private static JAXBContext ourJaxbContext;
+
   /**
    * Handles parsing a recipe.xml file. A recipe file specifies a bunch of file-related actions
    * to take after a template is processed, such as copying files over, merging them, or opening them
@@ -79,8 +81,19 @@ public class Recipe implements RecipeInstruction {
     return recipe;
   }
 
+  /**
+   * Creating the context introspects all the instruction classes, so it is only done once. Unlike unmarshallers, it is thread safe.
+   */
+  @NotNull
+  private static synchronized JAXBContext getJaxbContext() throws JAXBException {
+    if (ourJaxbContext == null) {
+      ourJaxbContext = JAXBContext.newInstance(Recipe.class);
+    }
+    return ourJaxbContext;
+  }
+
   private static Recipe unmarshal(@NotNull Reader xmlReader) throws JAXBException {
-    Unmarshaller unmarshaller = JAXBContext.newInstance(Recipe.class).createUnmarshaller();
+    Unmarshaller unmarshaller = getJaxbContext().createUnmarshaller();
     unmarshaller.setEventHandler(new ValidationEventHandler() {
       @Override
       public boolean handleEvent(ValidationEvent event) {
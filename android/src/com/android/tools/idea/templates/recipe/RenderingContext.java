@@ -94,8 +94,7 @@ public class RenderingContext {
     myDryRun = dryRun;
     myShowErrors = showErrors;
     myLoader = new StudioTemplateLoader(initialTemplatePath);
-    myFreemarker = new FreemarkerConfiguration();
-    myFreemarker.setTemplateLoader(myLoader);
+    myFreemarker = FreemarkerConfiguration.getShared(initialTemplatePath);
     mySourceFiles = outSourceFiles != null ? outSourceFiles : Lists.newArrayList();
     myTargetFiles = outTargetFiles != null ? outTargetFiles : Lists.newArrayList();
     myFilesToOpen = outOpenFiles != null ? outOpenFiles : Lists.newArrayList();
@@ -19,6 +19,7 @@ import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.android.AndroidTestCase;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
@@ -37,4 +38,23 @@ public class LayoutFileDataTest extends AndroidTestCase {
     assertNotNull(fileData.getNode());
     assertEquals(3, fileData.getNode().getChildCount());
   }
+
+  public void testLoadPreview() throws IOException {
+    File testData = Paths.get(getTestDataPath(), "editors/layoutInspector/LayoutCapture.li").toFile();
+    VirtualFile layoutFile = LocalFileSystem.getInstance().findFileByIoFile(testData);
+    LayoutFileData fileData = new LayoutFileData(layoutFile);
+
+    BufferedImage reduced = fileData.loadPreview(1024);
+    assertNotNull(reduced);
+    assertEquals(960, reduced.getHeight());
+    assertEquals(540, reduced.getWidth());
+
+    BufferedImage full = fileData.getBufferedImage();
+    assertNotNull(full);
+    assertEquals(1920, full.getHeight());
+
+    // Once decoded, the full resolution image is returned for any preview size
+    assertSame(full, fileData.loadPreview(1024));
+    assertSame(full, fileData.loadPreview(4096));
+  }
 }
@@ -23,6 +23,8 @@ import com.android.tools.idea.res.LocalResourceRepository;
 import com.android.tools.idea.res.ModuleResourceRepository;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
@@ -40,6 +42,7 @@ import java.util.stream.Collectors;
 
 public class StringResourceDataTest extends AndroidTestCase {
   private VirtualFile resourceDirectory;
+  private StringResourceRepository repository;
   private StringResourceData data;
 
   @Override
@@ -66,7 +69,8 @@ public class StringResourceDataTest extends AndroidTestCase {
     LocalResourceRepository parent =
       ModuleResourceRepository.createForTest(myFacet, Collections.singletonList(resourceDirectory), null, dynamicResourceValueRepository);
 
-    data = StringResourceRepository.create(parent).getData(myFacet);
+    repository = StringResourceRepository.create(parent);
+    data = repository.getData(myFacet);
   }
 
   public void testSummarizeLocales() {
@@ -255,6 +259,90 @@ public class StringResourceDataTest extends AndroidTestCase {
     assertEquals("Hello", tag.getValue().getText());
   }
 
+  public void testAddKey() {
+    StringResourceKey key = newStringResourceKey("key11");
+    assertFalse(data.containsKey(key));
+    assertFalse(data.addKey(key));
+
+    XmlFile file = StringPsiUtils.getDefaultStringResourceFile(myFacet.getModule().getProject(), key);
+    assertNotNull(file);
+    WriteCommandAction.runWriteCommandAction(myFacet.getModule().getProject(), () -> StringPsiUtils.addString(file, key, "Key 11"));
+
+    int keyCount = data.getKeys().size();
+    assertTrue(data.addKey(key));
+
+    assertEquals(keyCount + 1, data.getKeys().size());
+    assertEquals(key, data.getKeys().get(keyCount));
+    assertEquals("Key 11", data.getStringResource(key).getDefaultValueAsString());
+  }
+
+  public void testUpdateKeysRemovesDeletedKeys() {
+    StringResourceKey key = newStringResourceKey("key2");
+    int index = data.getKeys().indexOf(key);
+    StringResourceKey nextKey = data.getKeys().get(index + 1);
+    Project project = myFacet.getModule().getProject();
+
+    List<XmlTag> tags = repository.getItems(key).stream()
+      .map(item -> LocalResourceRepository.getItemTag(project, item))
+      .collect(Collectors.toList());
+    WriteCommandAction.runWriteCommandAction(project, () -> tags.forEach(XmlTag::delete));
+
+    int keyCount = data.getKeys().size();
+    data.updateKeys(Collections.singletonList(key));
+
+    assertFalse(data.containsKey(key));
+    assertEquals(keyCount - 1, data.getKeys().size());
+    assertEquals(nextKey, data.getKeys().get(index));
+  }
+
+  public void testUpdateKeysAddsNewLocales() {
+    StringResourceKey key = newStringResourceKey("key1");
+    Locale locale = Locale.create("de");
+    assertFalse(data.getLocaleSet().contains(locale));
+
+    Project project = myFacet.getModule().getProject();
+    XmlFile file = StringPsiUtils.getStringResourceFile(project, key, locale);
+    assertNotNull(file);
+    WriteCommandAction.runWriteCommandAction(project, () -> StringPsiUtils.addString(file, key, "Key 1 de"));
+
+    data.updateKeys(Collections.singletonList(key));
+
+    assertTrue(data.getLocaleSet().contains(locale));
+    assertEquals("Key 1 de", data.getStringResource(key).getTranslationAsString(locale));
+  }
+
+  public void testRemoveLocale() {
+    Locale locale = Locale.create("hi");
+    StringResourceKey key = newStringResourceKey("key2");
+    assertEquals("Key 2 hi", data.getStringResource(key).getTranslationAsString(locale));
+
+    StringsWriteUtils.removeLocale(locale, myFacet, this);
+    data.removeLocale(locale);
+
+    assertFalse(data.getLocaleSet().contains(locale));
+    assertEquals("", data.getStringResource(key).getTranslationAsString(locale));
+  }
+
+  public void testKeyRenamed() {
+    StringResourceKey key = newStringResourceKey("key3");
+    int index = data.getKeys().indexOf(key);
+    Project project = myFacet.getModule().getProject();
+
+    assertNull(data.keyRenamed(key, "key3_renamed"));
+
+    List<XmlTag> tags = repository.getItems(key).stream()
+      .map(item -> LocalResourceRepository.getItemTag(project, item))
+      .collect(Collectors.toList());
+    WriteCommandAction.runWriteCommandAction(project, () -> tags.forEach(tag -> tag.setAttribute(SdkConstants.ATTR_NAME, "key3_renamed")));
+
+    StringResourceKey newKey = data.keyRenamed(key, "key3_renamed");
+
+    assertEquals(newStringResourceKey("key3_renamed"), newKey);
+    assertFalse(data.containsKey(key));
+    assertEquals(newKey, data.getKeys().get(index));
+    assertEquals("Key 3 hi", data.getStringResource(newKey).getTranslationAsString(Locale.create("hi")));
+  }
+
   @NotNull
   private StringResourceKey newStringResourceKey(@NotNull String name) {
     return new StringResourceKey(name, resourceDirectory);
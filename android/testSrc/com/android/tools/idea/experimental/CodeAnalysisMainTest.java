@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.experimental;
+
+import com.android.tools.idea.experimental.codeanalysis.PsiCFGScene;
+import com.android.tools.idea.experimental.codeanalysis.callgraph.Callgraph;
+import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGClass;
+import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGMethod;
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for building the control flow graphs and the call graph of the files in scope in {@link CodeAnalysisMain}.
+ */
+public class CodeAnalysisMainTest extends AndroidTestCase {
+  private static final String OUTER =
+    "package p;\n" +
+    "public class Outer {\n" +
+    "  static class Inner {\n" +
+    "    void work() { helper(); }\n" +
+    "    static void helper() {}\n" +
+    "  }\n" +
+    "  interface Callback { void onDone(); }\n" +
+    "  void start() {\n" +
+    "    new Inner().work();\n" +
+    "    Callback callback = new Callback() {\n" +
+    "      public void onDone() { log(); }\n" +
+    "    };\n" +
+    "    Runnable runnable = () -> log();\n" +
+    "  }\n" +
+    "  static void log() {}\n" +
+    "}\n";
+
+  public void testCallGraphOfNestedAnonymousAndLambdaClasses() {
+    PsiFile file = myFixture.addFileToProject("src/p/Outer.java", OUTER);
+
+    CodeAnalysisMain.getInstance(getProject()).analyze(new AnalysisScope(file));
+
+    PsiCFGScene scene = PsiCFGScene.getInstance(getProject());
+    // The anonymous class and the lambda are only found while building the graph of start()
+    assertEquals(1, scene.getAllLambdaClass().length);
+    int anonymousClasses = 0;
+    for (PsiCFGClass clazz : scene.getAllApplicationClasses()) {
+      if (clazz.isAnonymous()) {
+        anonymousClasses++;
+      }
+    }
+    assertEquals(1, anonymousClasses);
+
+    assertThat(getCallEdges(scene.getCallGraph())).containsAllOf("Outer.start -> Inner.work",
+                                                                  "Inner.work -> Inner.helper",
+                                                                  "anonymous.onDone -> Outer.log",
+                                                                  "lambda.run -> Outer.log");
+  }
+
+  public void testSceneIsRebuiltWhenFilesOutOfScopeChange() {
+    PsiFile file = myFixture.addFileToProject("src/p/Outer.java", OUTER);
+    AnalysisScope scope = new AnalysisScope(file);
+    CodeAnalysisMain analysis = CodeAnalysisMain.getInstance(getProject());
+
+    analysis.analyze(scope);
+    PsiCFGScene scene = PsiCFGScene.getInstance(getProject());
+    analysis.analyze(scope);
+    assertSame(scene, PsiCFGScene.getInstance(getProject()));
+
+    // Outer doesn't use the new class, but other classes in the scene may
+    myFixture.addFileToProject("src/p/Other.java", "package p;\npublic class Other {}\n");
+    analysis.analyze(scope);
+    assertNotSame(scene, PsiCFGScene.getInstance(getProject()));
+  }
+
+  /**
+   * Describes the edges between methods as "Class.method -> Class.method", naming the classes of anonymous classes
+   * and lambdas "anonymous" and "lambda".
+   */
+  @NotNull
+  private static Set<String> getCallEdges(@NotNull Callgraph callgraph) {
+    Set<String> edges = new HashSet<>();
+    for (Map.Entry<PsiCFGMethod, PsiCFGMethod> entry : callgraph.callerMethodToCalleeMethodMap.entries()) {
+      edges.add(describe(entry.getKey()) + " -> " + describe(entry.getValue()));
+    }
+    return edges;
+  }
+
+  @NotNull
+  private static String describe(@NotNull PsiCFGMethod method) {
+    PsiCFGClass clazz = method.getDeclaringClass();
+    String className;
+    if (method.isLambda()) {
+      className = "lambda";
+    }
+    else if (clazz.isAnonymous()) {
+      className = "anonymous";
+    }
+    else {
+      className = clazz.getPsiClass().getName();
+    }
+    return className + "." + method.getName();
+  }
+}
@@ -23,6 +23,7 @@ import com.android.tools.idea.explorer.fs.DeviceFileSystem;
 import com.android.tools.idea.explorer.fs.DeviceFileSystemRenderer;
 import com.android.tools.idea.explorer.fs.DeviceFileSystemService;
 import com.android.tools.idea.explorer.mocks.*;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.util.FutureUtils;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -872,6 +873,114 @@ public class DeviceExplorerControllerTest extends AndroidTestCase {
     assertTrue(createdFiles.stream().anyMatch(x -> Objects.equals(x.getName(), myFooDir.getName())));
   }
 
+  public void testFileSystemTree_ContextMenu_SaveDirectoryAs_TransfersFilesInParallel() throws Exception {
+    // Prepare
+    StudioFlags.DEVICE_EXPLORER_TRANSFER_CHANNELS.override(2);
+    StudioFlags.DEVICE_EXPLORER_ARCHIVE_DOWNLOAD_ENABLED.override(false);
+    try {
+      myFooFile1.setSize(10_000);
+      myFooFile2.setSize(10_000);
+      myFooLink1.setSize(10_000);
+      File tempDirectory = FileUtil.createTempDirectory("saveAsDir", "");
+
+      // Act
+      String summaryMessage = saveDirectoryAs(myFoo, tempDirectory);
+
+      // Assert
+      assertTrue(summaryMessage.contains("Successfully downloaded"));
+      // The 3 files of the directory are downloaded 2 at a time
+      assertEquals(2, myDevice1.getMaxActiveDownloadCount());
+      assertEquals(10_000, new File(tempDirectory, myFooFile1.getName()).length());
+      assertEquals(10_000, new File(tempDirectory, myFooFile2.getName()).length());
+      assertEquals(10_000, new File(tempDirectory, myFooLink1.getName()).length());
+    }
+    finally {
+      StudioFlags.DEVICE_EXPLORER_TRANSFER_CHANNELS.clearOverride();
+      StudioFlags.DEVICE_EXPLORER_ARCHIVE_DOWNLOAD_ENABLED.clearOverride();
+    }
+  }
+
+  public void testFileSystemTree_ContextMenu_SaveDirectoryAs_ResumesFailedArchiveDownload() throws Exception {
+    // Prepare
+    StudioFlags.DEVICE_EXPLORER_ARCHIVE_DOWNLOAD_ENABLED.override(true);
+    try {
+      myFooFile1.setSize(10_000);
+      myFooFile2.setSize(20_000);
+      for (MockDeviceFileEntry entry : myFooDir.getMockEntries()) {
+        entry.setSize(5_000);
+      }
+      // The archive stream fails halfway through "fooFile2.txt"
+      myDevice1.setArchiveDownloadFileCount(1);
+      File tempDirectory = FileUtil.createTempDirectory("saveAsDir", "");
+
+      // Act
+      String summaryMessage = saveDirectoryAs(myFoo, tempDirectory);
+
+      // Assert
+      // Files extracted from the archive are not downloaded again, and the part of "fooFile2.txt"
+      // received from the archive doesn't count towards the progress of the whole transfer.
+      assertTrue(summaryMessage, summaryMessage.contains("Successfully downloaded 5 files and 2 directories"));
+      assertTrue(myMockView.getMaxProgressValue() <= 1.0);
+      assertEquals(10_000, new File(tempDirectory, myFooFile1.getName()).length());
+      assertEquals(20_000, new File(tempDirectory, myFooFile2.getName()).length());
+      assertTrue(new File(tempDirectory, myFooLink1.getName()).exists());
+      File[] dirFiles = new File(tempDirectory, myFooDir.getName()).listFiles();
+      assertNotNull(dirFiles);
+      assertEquals(2, dirFiles.length);
+    }
+    finally {
+      StudioFlags.DEVICE_EXPLORER_ARCHIVE_DOWNLOAD_ENABLED.clearOverride();
+    }
+  }
+
+  /**
+   * Invokes the "Save As..." action on {@code directory}, saving it into {@code tempDirectory}, and
+   * returns the summary message reported when the transfer completes successfully.
+   */
+  @NotNull
+  private String saveDirectoryAs(@NotNull MockDeviceFileEntry directory, @NotNull File tempDirectory) throws Exception {
+    DeviceExplorerController controller = createController();
+    controller.setup();
+    pumpEventsAndWaitForFuture(myMockView.getStartRefreshTracker().consume());
+    checkMockViewInitialState(controller, myDevice1);
+
+    myMockView.getTree().setSelectionPath(getFileEntryPath(directory));
+    ActionGroup actionGroup = myMockView.getFileTreeActionGroup();
+    AnAction action = getActionByText(actionGroup, "Save As...");
+    assertNotNull(action);
+    AnActionEvent e = createContentMenuItemEvent();
+    action.update(e);
+
+    myDevice1.setDownloadFileChunkSize(1_000); // download chunks of 1000 bytes at a time
+    myDevice1.setDownloadFileChunkIntervalMillis(10); // wait 10 millis between each 1000 bytes chunk
+
+    // The "Choose file" dialog does not work in headless mode, so we register a custom
+    // component that simply returns the tempDirectory.
+    replaceApplicationComponent(FileChooserFactory.class, new FileChooserFactoryImpl() {
+      @NotNull
+      @Override
+      public PathChooserDialog createPathChooser(@NotNull FileChooserDescriptor descriptor,
+                                                 @Nullable Project project,
+                                                 @Nullable Component parent) {
+        return (toSelect, callback) -> {
+          List<VirtualFile> list = Collections.singletonList(new VirtualFileWrapper(tempDirectory).getVirtualFile());
+          callback.consume(list);
+        };
+      }
+    });
+
+    myMockView.getStartTreeBusyIndicatorTacker().clear();
+    myMockView.getStopTreeBusyIndicatorTacker().clear();
+    myMockView.getReportMessageRelatedToNodeTracker().clear();
+    action.actionPerformed(e);
+
+    pumpEventsAndWaitForFuture(myMockView.getStartTreeBusyIndicatorTacker().consume());
+    pumpEventsAndWaitForFuture(myMockView.getStopTreeBusyIndicatorTacker().consume());
+    String summaryMessage = pumpEventsAndWaitForFuture(myMockView.getReportMessageRelatedToNodeTracker().consume());
+    assertNotNull(summaryMessage);
+    return summaryMessage;
+  }
+
   public void testFileSystemTree_ContextMenu_New_IsHiddenForFiles() throws Exception {
     // Prepare
     DeviceExplorerController controller = createController();
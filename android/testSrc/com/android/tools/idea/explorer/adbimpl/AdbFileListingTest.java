@@ -354,6 +354,88 @@ public class AdbFileListingTest {
     assertDirectoryLink(fileListing, rootEntries, "vendor", true);
   }
 
+  @Test
+  public void testRecursiveLsOutputParsing() throws Exception {
+    // Prepare
+    AdbFileListingEntry root = new AdbFileListingEntryBuilder().setPath("/sdcard/DCIM").setKind(EntryKind.DIRECTORY).build();
+    AdbFileListing.RecursiveLsReceiver receiver = new AdbFileListing.RecursiveLsReceiver(root, false);
+
+    // Act
+    receiver.processNewLines(new String[]{
+      "/sdcard/DCIM/:",
+      "total 16",
+      "drwxrwx--x 3 root sdcard_rw 4096 2017-03-02 10:11 Camera",
+      "-rw-rw---- 1 root sdcard_rw 1234 2017-03-02 10:11 notes.txt",
+      "",
+      "/sdcard/DCIM//Camera:",
+      "total 8",
+      "-rw-rw---- 1 root sdcard_rw 5678 2017-03-02 10:12 IMG 0001.jpg",
+      "ls: /sdcard/DCIM/Private: Permission denied",
+    });
+    receiver.flush();
+    AdbFileListingTree tree = receiver.getTree();
+
+    // Assert
+    assertThat(tree.getDescendants().stream().map(AdbFileListingEntry::getFullPath).toArray())
+      .asList()
+      .containsExactly("/sdcard/DCIM/Camera", "/sdcard/DCIM/notes.txt", "/sdcard/DCIM/Camera/IMG 0001.jpg")
+      .inOrder();
+    List<AdbFileListingEntry> cameraEntries = tree.getChildren(tree.getDescendants().get(0));
+    assertThat(cameraEntries).isNotNull();
+    assertThat(cameraEntries).hasSize(1);
+    assertThat(cameraEntries.get(0).getSize()).isEqualTo(5678);
+  }
+
+  @Test
+  public void testRecursiveLsOutputParsingWithEscaping() throws Exception {
+    // Prepare
+    AdbFileListingEntry root = new AdbFileListingEntryBuilder().setPath("/sdcard").setKind(EntryKind.DIRECTORY).build();
+    AdbFileListing.RecursiveLsReceiver receiver = new AdbFileListing.RecursiveLsReceiver(root, true);
+
+    // Act
+    receiver.processNewLines(new String[]{
+      "/sdcard/:",
+      "total 8",
+      "drwxrwx--x 2 root sdcard_rw 4096 2017-03-02 10:11 a\\\\b\\ c",
+      "",
+      "/sdcard//a\\\\b\\ c:",
+      "total 8",
+      "-rw-rw---- 1 root sdcard_rw 5678 2017-03-02 10:12 d\\&e.txt",
+    });
+    receiver.flush();
+    AdbFileListingTree tree = receiver.getTree();
+
+    // Assert
+    assertThat(tree.getDescendants().stream().map(AdbFileListingEntry::getFullPath).toArray())
+      .asList()
+      .containsExactly("/sdcard/a\\b c", "/sdcard/a\\b c/d&e.txt")
+      .inOrder();
+  }
+
+  @Test
+  public void testFindOutputParsing() throws Exception {
+    // Prepare
+    AdbFileListingEntry root = new AdbFileListingEntryBuilder().setPath("/sdcard/DCIM").setKind(EntryKind.DIRECTORY).build();
+    AdbFileListing.FindReceiver receiver = new AdbFileListing.FindReceiver(root, false);
+
+    // Act
+    receiver.processNewLines(new String[]{
+      "drwxrwx--x 4 root sdcard_rw 4096 2017-03-02 10:11 /sdcard/DCIM/",
+      "drwxrwx--x 3 root sdcard_rw 4096 2017-03-02 10:11 /sdcard/DCIM/Camera",
+      "-rw-rw---- 1 root sdcard_rw 5678 2017-03-02 10:12 /sdcard/DCIM/Camera/IMG_0001.jpg",
+      "lrwxrwxrwx 1 root root 10 2017-03-02 10:12 /sdcard/DCIM/link -> /sdcard",
+    });
+    receiver.flush();
+    AdbFileListingTree tree = receiver.getTree();
+
+    // Assert
+    assertThat(tree.getDescendants().stream().map(AdbFileListingEntry::getFullPath).toArray())
+      .asList()
+      .containsExactly("/sdcard/DCIM/Camera", "/sdcard/DCIM/Camera/IMG_0001.jpg", "/sdcard/DCIM/link")
+      .inOrder();
+    assertThat(tree.getDescendants().get(2).isSymbolicLink()).isTrue();
+  }
+
   private static void assertDirectoryLink(@NotNull AdbFileListing fileListing,
                                           @NotNull List<AdbFileListingEntry> entries,
                                           @NotNull String name,
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class TarStreamExtractorTest {
+  @Rule
+  public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testExtractFilesAndDirectories() throws Exception {
+    // Prepare
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "./", '5', new byte[0]);
+    addEntry(archive, "./foo/", '5', new byte[0]);
+    addEntry(archive, "./foo/bar.txt", '0', "Hello world".getBytes(Charsets.UTF_8));
+    addEntry(archive, "./empty.txt", '0', new byte[0]);
+    addEntry(archive, "./link", '2', new byte[0]);
+    addEndOfArchive(archive);
+    Path destination = myTemporaryFolder.newFolder().toPath();
+    RecordingListener listener = new RecordingListener();
+
+    // Act
+    TarStreamExtractor extractor = new TarStreamExtractor(destination, listener);
+    writeInChunks(extractor, archive.toByteArray(), 100);
+    extractor.close();
+
+    // Assert
+    assertThat(extractor.isComplete()).isTrue();
+    assertThat(Files.isDirectory(destination.resolve("foo"))).isTrue();
+    assertThat(new String(Files.readAllBytes(destination.resolve("foo").resolve("bar.txt")), Charsets.UTF_8)).isEqualTo("Hello world");
+    assertThat(Files.size(destination.resolve("empty.txt"))).isEqualTo(0);
+    assertThat(Files.exists(destination.resolve("link"))).isFalse();
+    assertThat(listener.myEntries).containsExactly(destination,
+                                                   destination.resolve("foo"),
+                                                   destination.resolve("foo").resolve("bar.txt"),
+                                                   destination.resolve("empty.txt")).inOrder();
+    assertThat(listener.myByteCount).isEqualTo(11);
+  }
+
+  @Test
+  public void testExtractLongName() throws Exception {
+    // Prepare
+    String longName = "./" + Strings.repeat("a", 150) + ".txt";
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "././@LongLink", 'L', (longName + "\0").getBytes(Charsets.UTF_8));
+    addEntry(archive, longName.substring(0, 99), '0', "content".getBytes(Charsets.UTF_8));
+    addEndOfArchive(archive);
+    Path destination = myTemporaryFolder.newFolder().toPath();
+    RecordingListener listener = new RecordingListener();
+
+    // Act
+    TarStreamExtractor extractor = new TarStreamExtractor(destination, listener);
+    writeInChunks(extractor, archive.toByteArray(), 7);
+    extractor.close();
+
+    // Assert
+    assertThat(extractor.isComplete()).isTrue();
+    assertThat(listener.myEntries).containsExactly(destination.resolve(longName).normalize());
+  }
+
+  @Test
+  public void testExtractLongNameWithMultiByteCharacters() throws Exception {
+    // Prepare
+    String longName = "./" + Strings.repeat("\u00e9", 80) + ".txt";
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "././@LongLink", 'L', (longName + "\0").getBytes(Charsets.UTF_8));
+    addEntry(archive, "./truncated.txt", '0', "content".getBytes(Charsets.UTF_8));
+    addEndOfArchive(archive);
+    Path destination = myTemporaryFolder.newFolder().toPath();
+    RecordingListener listener = new RecordingListener();
+
+    // Act
+    // Chunks of 7 bytes split some of the 2-byte UTF-8 sequences of the name
+    TarStreamExtractor extractor = new TarStreamExtractor(destination, listener);
+    writeInChunks(extractor, archive.toByteArray(), 7);
+    extractor.close();
+
+    // Assert
+    assertThat(extractor.isComplete()).isTrue();
+    assertThat(listener.myEntries).containsExactly(destination.resolve(longName).normalize());
+  }
+
+  @Test
+  public void testIncompleteArchiveDeletesPartialFile() throws Exception {
+    // Prepare
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "./foo.txt", '0', new byte[2000]);
+    byte[] bytes = archive.toByteArray();
+    Path destination = myTemporaryFolder.newFolder().toPath();
+
+    // Act
+    TarStreamExtractor extractor = new TarStreamExtractor(destination, new RecordingListener());
+    extractor.write(bytes, 0, 1024);
+    extractor.close();
+
+    // Assert
+    assertThat(extractor.isComplete()).isFalse();
+    assertThat(Files.exists(destination.resolve("foo.txt"))).isFalse();
+  }
+
+  @Test
+  public void testEntryOutsideOfDestinationIsRejected() throws Exception {
+    // Prepare
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "../foo.txt", '0', new byte[10]);
+    byte[] bytes = archive.toByteArray();
+    Path destination = myTemporaryFolder.newFolder().toPath();
+
+    // Act
+    TarStreamExtractor extractor = new TarStreamExtractor(destination, new RecordingListener());
+    try {
+      extractor.write(bytes, 0, bytes.length);
+      fail("Entry should have been rejected");
+    }
+    catch (IOException expected) {
+      // Assert
+      assertThat(expected.getMessage()).contains("../foo.txt");
+    }
+    finally {
+      extractor.close();
+    }
+  }
+
+  private static void writeInChunks(@NotNull TarStreamExtractor extractor, @NotNull byte[] bytes, int chunkSize) throws IOException {
+    for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+      extractor.write(bytes, offset, Math.min(chunkSize, bytes.length - offset));
+    }
+  }
+
+  private static void addEntry(@NotNull ByteArrayOutputStream archive, @NotNull String name, char type, @NotNull byte[] content) {
+    byte[] header = new byte[512];
+    putString(header, 0, name);
+    putString(header, 100, "0000644");
+    putString(header, 124, String.format("%011o", content.length));
+    header[156] = (byte)type;
+    putString(header, 257, "ustar");
+    archive.write(header, 0, header.length);
+    archive.write(content, 0, content.length);
+    int padding = (512 - content.length % 512) % 512;
+    archive.write(new byte[padding], 0, padding);
+  }
+
+  private static void addEndOfArchive(@NotNull ByteArrayOutputStream archive) {
+    archive.write(new byte[1024], 0, 1024);
+  }
+
+  private static void putString(@NotNull byte[] header, int offset, @NotNull String value) {
+    byte[] bytes = value.getBytes(Charsets.UTF_8);
+    System.arraycopy(bytes, 0, header, offset, bytes.length);
+  }
+
+  private static class RecordingListener implements TarStreamExtractor.Listener {
+    @NotNull private final List<Path> myEntries = new ArrayList<>();
+    private long myByteCount;
+
+    @Override
+    public void entryExtracted(@NotNull Path localPath, boolean isDirectory, long byteCount) {
+      myEntries.add(localPath);
+    }
+
+    @Override
+    public void bytesExtracted(long byteCount) {
+      myByteCount += byteCount;
+    }
+  }
+}
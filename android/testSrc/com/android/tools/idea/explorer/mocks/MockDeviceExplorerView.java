@@ -69,6 +69,7 @@ public class MockDeviceExplorerView implements DeviceExplorerView {
   @NotNull private final FutureValuesTracker<Void> myStartTreeBusyIndicatorTacker = new FutureValuesTracker<>();
   @NotNull private final FutureValuesTracker<Void> myStopTreeBusyIndicatorTacker = new FutureValuesTracker<>();
   private int myBusyIndicatorCount;
+  private double myMaxProgressValue;
 
   public MockDeviceExplorerView(@NotNull Project project,
                                 @NotNull ToolWindow toolWindow,
@@ -220,6 +221,7 @@ public class MockDeviceExplorerView implements DeviceExplorerView {
 
   @Override
   public void setProgressValue(double fraction) {
+    myMaxProgressValue = Math.max(myMaxProgressValue, fraction);
     myViewImpl.setProgressValue(fraction);
   }
 
@@ -248,6 +250,13 @@ public class MockDeviceExplorerView implements DeviceExplorerView {
     myViewImpl.stopProgress();
   }
 
+  /**
+   * Returns the highest progress value reported by any operation so far.
+   */
+  public double getMaxProgressValue() {
+    return myMaxProgressValue;
+  }
+
   public FutureValuesTracker<DeviceFileSystem> getDeviceAddedTracker() {
     return myDeviceAddedTracker;
   }
@@ -20,6 +20,7 @@ import com.android.tools.idea.explorer.adbimpl.AdbPathUtil;
 import com.android.tools.idea.explorer.adbimpl.AdbShellCommandException;
 import com.android.tools.idea.explorer.fs.DeviceFileEntry;
 import com.android.tools.idea.explorer.fs.DeviceFileSystem;
+import com.android.tools.idea.explorer.fs.DirectoryTransferProgress;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.jetbrains.annotations.NotNull;
@@ -185,6 +186,12 @@ public class MockDeviceFileEntry implements DeviceFileEntry {
     return myFileSystem.downloadFile(this, localPath, progress);
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<Void> downloadDirectoryArchive(@NotNull Path localPath, @NotNull DirectoryTransferProgress progress) {
+    return myFileSystem.downloadDirectoryArchive(this, localPath, progress);
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath, @NotNull String fileName, @NotNull FileTransferProgress progress) {
@@ -20,7 +20,9 @@ import com.android.tools.idea.explorer.adbimpl.AdbShellCommandException;
 import com.android.tools.idea.explorer.fs.DeviceFileEntry;
 import com.android.tools.idea.explorer.fs.DeviceFileSystem;
 import com.android.tools.idea.explorer.fs.DeviceState;
+import com.android.tools.idea.explorer.fs.DirectoryTransferProgress;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import com.intellij.openapi.Disposable;
@@ -34,6 +36,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings("SameParameterValue")
 public class MockDeviceFileSystem implements DeviceFileSystem {
@@ -47,6 +50,9 @@ public class MockDeviceFileSystem implements DeviceFileSystem {
   private Throwable myDownloadError;
   private Throwable myRootDirectoryError;
   private Throwable myUploadError;
+  private int myArchiveDownloadFileCount = -1;
+  @NotNull private final AtomicInteger myActiveDownloadCount = new AtomicInteger();
+  @NotNull private final AtomicInteger myMaxActiveDownloadCount = new AtomicInteger();
 
   public MockDeviceFileSystem(@NotNull MockDeviceFileSystemService service, @NotNull String name) {
     myService = service;
@@ -101,6 +107,75 @@ public class MockDeviceFileSystem implements DeviceFileSystem {
     return new DownloadWorker((MockDeviceFileEntry)entry, localPath, progress).myFutureResult;
   }
 
+  /**
+   * Extracts the files of {@code directory} into {@code localPath}, as if streamed from an archive, until
+   * {@link #setArchiveDownloadFileCount} files have been extracted. The archive stream then fails halfway
+   * through the next file, if any.
+   */
+  @NotNull
+  public ListenableFuture<Void> downloadDirectoryArchive(@NotNull MockDeviceFileEntry directory,
+                                                         @NotNull Path localPath,
+                                                         @NotNull DirectoryTransferProgress progress) {
+    if (myArchiveDownloadFileCount < 0) {
+      return Futures.immediateFailedFuture(new UnsupportedOperationException("Archive transfers are not supported"));
+    }
+
+    SettableFuture<Void> futureResult = SettableFuture.create();
+    myService.getEdtExecutor().execute(() -> {
+      try {
+        long totalBytes = getArchiveSize(directory);
+        extractArchiveEntries(directory, localPath, progress, new long[]{0, myArchiveDownloadFileCount}, totalBytes);
+        futureResult.set(null);
+      }
+      catch (IOException e) {
+        futureResult.setException(e);
+      }
+    });
+    return futureResult;
+  }
+
+  private static long getArchiveSize(@NotNull MockDeviceFileEntry directory) {
+    long size = 0;
+    for (MockDeviceFileEntry entry : directory.getMockEntries()) {
+      if (entry.isDirectory()) {
+        size += getArchiveSize(entry);
+      }
+      else if (!entry.isSymbolicLink()) {
+        size += entry.getSize();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @param state The number of bytes extracted so far, and the number of files that can still be extracted
+   */
+  private static void extractArchiveEntries(@NotNull MockDeviceFileEntry directory,
+                                            @NotNull Path localPath,
+                                            @NotNull DirectoryTransferProgress progress,
+                                            @NotNull long[] state,
+                                            long totalBytes) throws IOException {
+    for (MockDeviceFileEntry entry : directory.getMockEntries()) {
+      Path entryPath = localPath.resolve(entry.getName());
+      if (entry.isDirectory()) {
+        Files.createDirectories(entryPath);
+        progress.entryTransferred(entryPath, true, 0);
+        extractArchiveEntries(entry, entryPath, progress, state, totalBytes);
+      }
+      else if (!entry.isSymbolicLink()) {
+        if (state[1] == 0) {
+          progress.progress(state[0] + entry.getSize() / 2, totalBytes);
+          throw new IOException("[test] Archive stream interrupted");
+        }
+        Files.write(entryPath, createFileBytes(entry.getSize()));
+        state[0] += entry.getSize();
+        state[1]--;
+        progress.progress(state[0], totalBytes);
+        progress.entryTransferred(entryPath, false, entry.getSize());
+      }
+    }
+  }
+
   @NotNull
   public ListenableFuture<Void> uploadFile(@NotNull Path localFilePath,
                                            @NotNull DeviceFileEntry remoteDirectory,
@@ -141,6 +216,32 @@ public class MockDeviceFileSystem implements DeviceFileSystem {
     myUploadError = t;
   }
 
+  /**
+   * Enables archive downloads of directories, which fail after {@code count} files have been extracted if the
+   * directory contains more files. A negative {@code count} (the default) disables archive downloads.
+   */
+  public void setArchiveDownloadFileCount(int count) {
+    myArchiveDownloadFileCount = count;
+  }
+
+  /**
+   * Returns the maximum number of file downloads that were in progress at the same time.
+   */
+  public int getMaxActiveDownloadCount() {
+    return myMaxActiveDownloadCount.get();
+  }
+
+  @NotNull
+  private static byte[] createFileBytes(long count) {
+    byte[] bytes = new byte[(int)count];
+    // Write ascii characters to that the file is easily auto-detected as a text file
+    // in unit tests.
+    for (int i = 0; i < count; i++) {
+      bytes[i] = (byte)((i % 80 == 0) ? '\n' : ('0' + (i % 10)));
+    }
+    return bytes;
+  }
+
   public class DownloadWorker implements Disposable {
     @NotNull private final MockDeviceFileEntry myEntry;
     @NotNull private final Path myPath;
@@ -157,6 +258,7 @@ public class MockDeviceFileSystem implements DeviceFileSystem {
       myFutureResult = SettableFuture.create();
       myAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
       Disposer.register(ApplicationManager.getApplication(), this);
+      myMaxActiveDownloadCount.accumulateAndGet(myActiveDownloadCount.incrementAndGet(), Math::max);
       addRequest();
     }
 
@@ -222,19 +324,14 @@ public class MockDeviceFileSystem implements DeviceFileSystem {
         myOutputStream = new FileOutputStream(myPath.toFile());
       }
       if (count > 0) {
-        byte[] bytes = new byte[(int)count];
-        // Write ascii characters to that the file is easily auto-detected as a text file
-        // in unit tests.
-        for (int i = 0; i < count; i++) {
-          bytes[i] = (byte)((i % 80 == 0) ? '\n' : ('0' + (i % 10)));
-        }
-        myOutputStream.write(bytes);
+        myOutputStream.write(createFileBytes(count));
       }
     }
 
     @Override
     public void dispose() {
       myAlarm.cancelAllRequests();
+      myActiveDownloadCount.decrementAndGet();
       if (myOutputStream != null) {
         try {
           myOutputStream.close();
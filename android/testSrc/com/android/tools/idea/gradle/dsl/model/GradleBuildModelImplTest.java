@@ -18,11 +18,18 @@ package com.android.tools.idea.gradle.dsl.model;
 import com.android.tools.idea.gradle.dsl.api.BuildScriptModel;
 import com.android.tools.idea.gradle.dsl.api.GradleBuildModel;
 import com.android.tools.idea.gradle.dsl.api.repositories.RepositoryModel;
+import com.android.tools.idea.gradle.dsl.parser.files.GradleDslFile;
+import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
+import static com.android.SdkConstants.FN_BUILD_GRADLE;
+import static com.android.tools.idea.testing.TestProjectPaths.*;
 import static com.google.common.truth.Truth.assertThat;
+import static com.intellij.openapi.util.io.FileUtil.loadFile;
+import static org.jetbrains.android.AndroidTestBase.getTestDataPath;
 
 /**
  * Tests for {@link GradleBuildModelImpl}.
@@ -102,4 +109,82 @@ public class GradleBuildModelImplTest extends GradleFileModelTestCase {
     repositories = buildModel.repositories().repositories();
     assertThat(repositories).hasSize(0);
   }
+
+  public void testReparseKeepsUnchangedBlocks() throws IOException {
+    String text = "android {\n" +
+                  "  compileSdkVersion 23\n" +
+                  "}\n" +
+                  "dependencies {\n" +
+                  "  compile 'com.android.support:appcompat-v7:22.1.1'\n" +
+                  "}";
+    writeToBuildFile(text);
+    GradleBuildModel buildModel = getGradleBuildModel();
+    GradleDslFile dslFile = ((GradleBuildModelImpl)buildModel).myGradleDslFile;
+    Object android = dslFile.getPropertyElement("android");
+    Object dependencies = dslFile.getPropertyElement("dependencies");
+
+    // Nothing changed, so nothing is parsed again.
+    buildModel.reparse();
+    assertSame(android, dslFile.getPropertyElement("android"));
+    assertSame(dependencies, dslFile.getPropertyElement("dependencies"));
+
+    buildModel.dependencies().addArtifact("compile", "com.google.guava:guava:18.0");
+    applyChangesAndReparse(buildModel);
+    assertSame(android, dslFile.getPropertyElement("android"));
+    assertNotSame(dependencies, dslFile.getPropertyElement("dependencies"));
+    assertThat(dslFile.getProperties()).containsExactly("android", "dependencies").inOrder();
+    assertThat(buildModel.dependencies().artifacts()).hasSize(2);
+    assertEquals("compileSdkVersion", "23", buildModel.android().compileSdkVersion());
+  }
+
+  public void testReparseOfBlockSpreadOverStatements() throws IOException {
+    String text = "android {\n" +
+                  "  compileSdkVersion 23\n" +
+                  "}\n" +
+                  "dependencies {\n" +
+                  "  compile 'com.android.support:appcompat-v7:22.1.1'\n" +
+                  "}\n" +
+                  "android.buildToolsVersion = '23.0.0'";
+    writeToBuildFile(text);
+    GradleBuildModel buildModel = getGradleBuildModel();
+    GradleDslFile dslFile = ((GradleBuildModelImpl)buildModel).myGradleDslFile;
+    Object dependencies = dslFile.getPropertyElement("dependencies");
+
+    buildModel.android().setCompileSdkVersion(25);
+    applyChangesAndReparse(buildModel);
+    assertSame(dependencies, dslFile.getPropertyElement("dependencies"));
+    assertThat(dslFile.getProperties()).containsExactly("android", "dependencies").inOrder();
+    assertEquals("compileSdkVersion", "25", buildModel.android().compileSdkVersion());
+    assertEquals("buildToolsVersion", "23.0.0", buildModel.android().buildToolsVersion());
+  }
+
+  /**
+   * Checks that re-parsing only the changed parts of the build files of the test projects gives the same result as parsing them again.
+   */
+  public void testReparseOfTestProjectBuildFiles() throws IOException {
+    String[] buildFiles = {BASIC + "/" + FN_BUILD_GRADLE,
+                           PSD_SAMPLE + "/app/" + FN_BUILD_GRADLE,
+                           HELLO_JNI + "/app/" + FN_BUILD_GRADLE};
+    for (String buildFile : buildFiles) {
+      writeToBuildFile(loadFile(new File(getTestDataPath(), buildFile)));
+      GradleBuildModel buildModel = getGradleBuildModel();
+      buildModel.dependencies().addArtifact("compile", "com.google.guava:guava:18.0");
+      buildModel.android().setCompileSdkVersion(25);
+      applyChangesAndReparse(buildModel);
+
+      GradleBuildModel parsedModel = getGradleBuildModel();
+      assertEqualProperties(buildFile, ((GradleBuildModelImpl)parsedModel).myGradleDslFile, ((GradleBuildModelImpl)buildModel).myGradleDslFile);
+      assertEquals(buildFile, parsedModel.dependencies().artifacts().size(), buildModel.dependencies().artifacts().size());
+      assertEquals(buildFile, parsedModel.android().compileSdkVersion().value(), buildModel.android().compileSdkVersion().value());
+    }
+  }
+
+  private static void assertEqualProperties(@NotNull String message, @NotNull GradleDslFile expected, @NotNull GradleDslFile actual) {
+    assertThat(actual.getProperties()).named(message).containsExactlyElementsIn(expected.getProperties()).inOrder();
+    for (String property : expected.getProperties()) {
+      assertEquals(message + ": " + property,
+                   expected.getPropertyElement(property).getClass(),
+                   actual.getPropertyElement(property).getClass());
+    }
+  }
 }
@@ -17,12 +17,15 @@ package com.android.tools.idea.gradle.project.sync;
 
 import com.android.tools.idea.gradle.util.GradleWrapper;
 import com.android.tools.idea.testing.AndroidGradleTestCase;
+import com.google.common.hash.Hashing;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.CommandProcessor;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
@@ -230,6 +233,67 @@ public class GradleFilesTest extends AndroidGradleTestCase {
     myGradleFiles.getSyncListener().syncSucceeded(getProject());
   }
 
+  public void testModifiedWhenChangedOnDisk() throws Exception {
+    loadSimpleApplication();
+    VirtualFile buildFile = getAppBuildFile();
+    assertFalse(myGradleFiles.areGradleFilesModified());
+
+    String text = VfsUtilCore.loadText(buildFile);
+    ApplicationManager.getApplication().runWriteAction(() -> {
+      try {
+        VfsUtil.saveText(buildFile, text + "\next.coolexpression = 'nice!'\n");
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    assertTrue(myGradleFiles.areGradleFilesModified());
+
+    ApplicationManager.getApplication().runWriteAction(() -> {
+      try {
+        VfsUtil.saveText(buildFile, text);
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    assertFalse(myGradleFiles.areGradleFilesModified());
+  }
+
+  public void testNotModifiedWhenFileWithWindowsLineSeparatorsIsChangedBack() throws Exception {
+    loadSimpleApplication();
+    VirtualFile buildFile = getAppBuildFile();
+    String text = StringUtil.convertLineSeparators(VfsUtilCore.loadText(buildFile), "\r\n");
+    ApplicationManager.getApplication().runWriteAction(() -> {
+      try {
+        VfsUtil.saveText(buildFile, text);
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    myGradleFiles.getSyncListener().syncStarted(getProject(), false, false);
+    myGradleFiles.getSyncListener().syncSucceeded(getProject());
+
+    // The document has "\n" line separators and unsaved changes, but would be saved with the same bytes as the file
+    runFakeModificationTest(((factory, file) -> {
+      assertThat(file.getChildren().length).isGreaterThan(0);
+      file.getChildren()[0].replace(factory.createStatementFromText("apply plugin: 'com.bandroid.application'"));
+    }), true);
+    runFakeModificationTest(((factory, file) -> {
+      assertThat(file.getChildren().length).isGreaterThan(0);
+      file.getChildren()[0].replace(factory.createStatementFromText("apply plugin: 'com.android.application'"));
+    }), false, false, buildFile);
+  }
+
+  public void testContentDigestMatchesBuildFileChecksum() throws Exception {
+    loadSimpleApplication();
+    VirtualFile buildFile = getAppBuildFile();
+    byte[] digest = myGradleFiles.getContentDigest(buildFile);
+    assertNotNull(digest);
+    assertThat(digest).isEqualTo(Hashing.md5().hashBytes(buildFile.contentsToByteArray()).asBytes());
+  }
+
   public void testIsGradleFileWithBuildDotGradleFile() {
     PsiFile psiFile = findOrCreatePsiFileInProjectRootFolder(FN_BUILD_GRADLE);
     assertTrue(myGradleFiles.isGradleFile(psiFile));
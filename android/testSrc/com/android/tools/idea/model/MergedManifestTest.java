@@ -23,8 +23,12 @@ import com.android.tools.idea.model.MergedManifest.ActivityAttributes;
 import com.android.tools.idea.res.ResourceHelper;
 import com.android.tools.lint.checks.PermissionHolder;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
 import org.jetbrains.android.AndroidTestCase;
 import org.jetbrains.annotations.NotNull;
 
@@ -207,6 +211,92 @@ public class MergedManifestTest extends AndroidTestCase {
     assertNull(info.getApplicationLabel());
   }
 
+  public void testSnapshotIsReusedUntilManifestChanges() throws Exception {
+    MergedManifest info = getMergedManifest("<manifest xmlns:android='http://schemas.android.com/apk/res/android'\n" +
+                                            "    package='com.android.unittest'>\n" +
+                                            "    <application android:label='@string/app_name'/>\n" +
+                                            "</manifest>\n");
+    MergedManifestSnapshot snapshot = info.getSnapshot();
+    assertEquals("@string/app_name", snapshot.getApplicationLabel());
+    assertSame(snapshot, info.getSnapshot());
+    assertSame(snapshot, info.getLatestSnapshot());
+    assertSame(snapshot, info.getSnapshotAsync().get());
+
+    VirtualFile manifest = myFixture.findFileInTempDir("AndroidManifest.xml");
+    PsiDocumentManager documentManager = PsiDocumentManager.getInstance(getProject());
+    Document document = FileDocumentManager.getInstance().getDocument(manifest);
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      document.setText(document.getText().replace("@string/app_name", "@string/new_name"));
+      documentManager.commitDocument(document);
+    });
+
+    // The previous snapshot is unchanged, while a new snapshot reflects the edit
+    assertEquals("@string/app_name", snapshot.getApplicationLabel());
+    assertEquals("@string/new_name", info.getSnapshotAsync().get().getApplicationLabel());
+    assertEquals("@string/new_name", info.getApplicationLabel());
+  }
+
+  public void testSnapshotIsNotInvalidatedByUnrelatedFiles() throws Exception {
+    MergedManifest info = getMergedManifest("<manifest xmlns:android='http://schemas.android.com/apk/res/android'\n" +
+                                            "    package='com.android.unittest'>\n" +
+                                            "    <application android:label='@string/app_name'/>\n" +
+                                            "</manifest>\n");
+    MergedManifestSnapshot snapshot = info.getSnapshot();
+
+    myFixture.addFileToProject("res/layout/layout.xml", "<FrameLayout/>");
+    myFixture.addFileToProject("src/p1/Unrelated.java", "package p1; class Unrelated {}");
+
+    assertSame(snapshot, info.getSnapshot());
+  }
+
+  public void testAvailableSnapshotDoesNotWaitForRefresh() throws Exception {
+    MergedManifest info = getMergedManifest("<manifest xmlns:android='http://schemas.android.com/apk/res/android'\n" +
+                                            "    package='com.android.unittest'>\n" +
+                                            "    <application android:label='@string/app_name'/>\n" +
+                                            "</manifest>\n");
+    MergedManifestSnapshot snapshot = info.getAvailableSnapshot();
+    assertEquals("@string/app_name", snapshot.getApplicationLabel());
+
+    VirtualFile manifest = myFixture.findFileInTempDir("AndroidManifest.xml");
+    Document document = FileDocumentManager.getInstance().getDocument(manifest);
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      document.setText(document.getText().replace("@string/app_name", "@string/new_name"));
+      PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+    });
+
+    // The stale snapshot is returned right away, while the new one is computed in the background
+    assertSame(snapshot, info.getAvailableSnapshot());
+    assertEquals("@string/new_name", info.getSnapshotAsync().get().getApplicationLabel());
+    assertEquals("@string/new_name", info.getAvailableSnapshot().getApplicationLabel());
+  }
+
+  public void testAccessorsDoNotWaitForRefresh() throws Exception {
+    MergedManifest info = getMergedManifest("<manifest xmlns:android='http://schemas.android.com/apk/res/android'\n" +
+                                            "    package='com.android.unittest'>\n" +
+                                            "    <application android:label='@string/app_name'/>\n" +
+                                            "</manifest>\n");
+    assertEquals("@string/app_name", info.getApplicationLabel());
+
+    VirtualFile manifest = myFixture.findFileInTempDir("AndroidManifest.xml");
+    Document document = FileDocumentManager.getInstance().getDocument(manifest);
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      document.setText(document.getText().replace("@string/app_name", "@string/new_name"));
+      PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+    });
+
+    // The accessors return the values of the last snapshot and schedule a refresh
+    assertEquals("@string/app_name", info.getApplicationLabel());
+    info.getSnapshotAsync().get();
+    assertEquals("@string/new_name", info.getApplicationLabel());
+
+    // Cleared information is computed again right away
+    info.clear();
+    assertEquals("@string/new_name", info.getApplicationLabel());
+  }
+
   private MergedManifest getMergedManifest(String manifestContents) throws Exception {
     String path = "AndroidManifest.xml";
 
@@ -15,19 +15,32 @@
  */
 package com.android.tools.idea.rendering;
 
+import com.android.ide.common.rendering.api.ResourceValue;
+import com.android.ide.common.resources.ResourceResolver;
 import com.android.tools.idea.io.TestFileUtils;
+import com.google.common.base.Charsets;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.vfs.*;
 import org.jetbrains.android.AndroidTestCase;
 
+import javax.imageio.ImageIO;
+import javax.swing.*;
+
+import java.awt.image.BufferedImage;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class GutterIconCacheTest extends AndroidTestCase {
   private Path mySampleSvgPath;
@@ -99,4 +112,98 @@ public class GutterIconCacheTest extends AndroidTestCase {
     // Modifying the image should have invalidated the cache entry.
     assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgPath.toString())).isFalse();
   }
+
+  public void testIdenticalImagesShareThumbnail() throws Exception {
+    Path copyPath = mySampleSvgPath.resolveSibling("GutterIconCacheTest_copy.xml");
+    TestFileUtils.writeFileAndRefreshVfs(copyPath, new String(mySampleSvgFile.contentsToByteArray(), Charsets.UTF_8));
+
+    // Use constructor instead of statically-loaded instance to ensure fresh cache
+    GutterIconCache cache = new GutterIconCache();
+    Icon icon = cache.getIcon(mySampleSvgPath.toString(), null);
+    Icon copyIcon = cache.getIcon(copyPath.toString(), null);
+
+    // Both paths have the same content, so the thumbnail should only have been rendered and stored once.
+    assertThat(copyIcon).isSameAs(icon);
+    assertThat(cache.getThumbnailCount()).isEqualTo(1);
+    assertThat(cache.isIconUpToDate(copyPath.toString())).isTrue();
+  }
+
+  public void testIdenticalVectorsResolvedDifferentlyDoNotShareThumbnail() throws Exception {
+    String contents = "<vector xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                      "    android:width=\"24dp\" android:height=\"24dp\"\n" +
+                      "    android:viewportWidth=\"24\" android:viewportHeight=\"24\">\n" +
+                      "  <path android:fillColor=\"@color/accent\" android:pathData=\"M0,0h24v24h-24z\"/>\n" +
+                      "</vector>";
+    Path vectorPath = mySampleSvgPath.resolveSibling("GutterIconCacheTest_vector.xml");
+    Path copyPath = mySampleSvgPath.resolveSibling("GutterIconCacheTest_vector_copy.xml");
+    TestFileUtils.writeFileAndRefreshVfs(vectorPath, contents);
+    TestFileUtils.writeFileAndRefreshVfs(copyPath, contents);
+
+    GutterIconCache cache = new GutterIconCache();
+    Icon red = cache.getIcon(vectorPath.toString(), createResolver("#FF0000"));
+    Icon blue = cache.getIcon(copyPath.toString(), createResolver("#0000FF"));
+
+    // The files are byte-identical, but @color/accent resolves to different colors.
+    assertThat(red).isNotNull();
+    assertThat(blue).isNotNull();
+    assertThat(blue).isNotSameAs(red);
+    assertThat(cache.getThumbnailCount()).isEqualTo(2);
+
+    // Resolving to the same color shares the thumbnail again.
+    cache = new GutterIconCache();
+    red = cache.getIcon(vectorPath.toString(), createResolver("#FF0000"));
+    assertThat(cache.getIcon(copyPath.toString(), createResolver("#FF0000"))).isSameAs(red);
+    assertThat(cache.getThumbnailCount()).isEqualTo(1);
+  }
+
+  public void testRenderingInBackground() throws Exception {
+    Path bitmapPath = mySampleSvgPath.resolveSibling("GutterIconCacheTest_bitmap.png");
+    //noinspection UndesirableClassUsage
+    ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB), "png", bitmapPath.toFile());
+    assertThat(LocalFileSystem.getInstance().refreshAndFindFileByIoFile(bitmapPath.toFile())).isNotNull();
+    String path = bitmapPath.toString();
+
+    List<Runnable> tasks = new ArrayList<>();
+    GutterIconCache cache = new GutterIconCache(tasks::add);
+    Icon placeholder = cache.getIcon(path, null);
+
+    // A placeholder is returned until the thumbnail is rendered, and asking again doesn't render it twice
+    assertThat(placeholder).isNotNull();
+    assertThat(cache.getIcon(path, null)).isSameAs(placeholder);
+    assertThat(cache.isIconUpToDate(path)).isFalse();
+    assertThat(tasks).hasSize(1);
+
+    tasks.get(0).run();
+    Icon icon = cache.getIcon(path, null);
+    assertThat(icon).isNotNull();
+    assertThat(icon).isNotSameAs(placeholder);
+    assertThat(cache.isIconUpToDate(path)).isTrue();
+    assertThat(tasks).hasSize(1);
+  }
+
+  public void testMissingFileIsNotReadAgain() {
+    String path = mySampleSvgPath.resolveSibling("GutterIconCacheTest_missing.png").toString();
+    List<Runnable> tasks = new ArrayList<>();
+    GutterIconCache cache = new GutterIconCache(tasks::add);
+    cache.getIcon(path, null);
+    assertThat(tasks).hasSize(1);
+    tasks.get(0).run();
+
+    // The file isn't in the VFS, and is not read or rendered again until it appears on disk
+    assertThat(cache.getIcon(path, null)).isNull();
+    assertThat(cache.isIconUpToDate(path)).isTrue();
+    assertThat(tasks).hasSize(1);
+  }
+
+  /**
+   * Returns a resolver that resolves any reference to the given value.
+   */
+  private static ResourceResolver createResolver(String value) {
+    ResourceValue resourceValue = mock(ResourceValue.class);
+    when(resourceValue.getValue()).thenReturn(value);
+    ResourceResolver resolver = mock(ResourceResolver.class);
+    when(resolver.findResValue(anyString(), anyBoolean())).thenReturn(resourceValue);
+    when(resolver.resolveResValue(resourceValue)).thenReturn(resourceValue);
+    return resolver;
+  }
 }
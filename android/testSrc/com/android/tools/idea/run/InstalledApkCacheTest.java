@@ -19,16 +19,29 @@ import com.android.ddmlib.AdbCommandRejectedException;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.ShellCommandUnresponsiveException;
 import com.android.ddmlib.TimeoutException;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
 import junit.framework.TestCase;
 import org.easymock.EasyMock;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.google.common.truth.Truth.assertThat;
 
 @SuppressWarnings("StaticMethodReferencedViaSubclass")
 public class InstalledApkCacheTest extends TestCase {
@@ -144,6 +157,74 @@ public class InstalledApkCacheTest extends TestCase {
     assertNull(getLastUpdateTime(myDevice1, "xyz"));
   }
 
+  public void testBatchedInstallStates() throws Exception {
+    File otherFile = FileUtil.createTempFile("test-other", ".apk");
+    FileUtil.writeToFile(otherFile, "other");
+    String otherPkgName = "com.foo.bar.test";
+    List<String> commands = new ArrayList<>();
+    InstalledApkCache service = new InstalledApkCache() {
+      @Override
+      protected String executeShellCommand(@NotNull IDevice device, @NotNull String cmd, long timeout, @NotNull TimeUnit timeUnit) {
+        commands.add(cmd);
+        StringBuilder output = new StringBuilder();
+        for (String command : Splitter.on(';').trimResults().omitEmptyStrings().split(cmd)) {
+          if (command.startsWith("dumpsys package ")) {
+            output.append("Package [").append(command.substring("dumpsys package ".length())).append("]\n");
+            output.append("    lastUpdateTime=2014-09-29 11:58:19\n");
+          }
+          else {
+            output.append(StringUtil.unquoteString(command.substring("echo ".length()), '\'')).append('\n');
+          }
+        }
+        return output.toString();
+      }
+    };
+    try {
+      Map<String, File> apks = ImmutableMap.of(myPkgName, myFile, otherPkgName, otherFile);
+      assertThat(service.getInstalledPackages(myDevice1, apks, null)).isEmpty();
+      assertThat(commands).isEmpty();
+
+      service.setInstalled(myDevice1, myFile, myPkgName);
+      service.setInstalled(myDevice1, otherFile, otherPkgName);
+      commands.clear();
+      assertThat(service.getInstalledPackages(myDevice1, apks, null)).containsExactly(myPkgName, otherPkgName);
+      assertThat(commands).hasSize(1);
+
+      FileUtil.writeToFile(otherFile, "changed other");
+      assertThat(service.getInstalledPackages(myDevice1, apks, null)).containsExactly(myPkgName);
+    }
+    finally {
+      Disposer.dispose(service);
+    }
+  }
+
+  public void testZipDirectoryHash() throws Exception {
+    File apk = FileUtil.createTempFile("test-zip", ".apk");
+    writeZip(apk, "classes.dex", "dex 1");
+    HashCode hash = InstalledApkCache.hashZipDirectory(apk);
+    assertNotNull(hash);
+
+    writeZip(apk, "classes.dex", "dex 1");
+    assertEquals(hash, InstalledApkCache.hashZipDirectory(apk));
+
+    writeZip(apk, "classes.dex", "dex 2");
+    assertFalse(hash.equals(InstalledApkCache.hashZipDirectory(apk)));
+
+    FileUtil.writeToFile(apk, "not a zip file");
+    assertNull(InstalledApkCache.hashZipDirectory(apk));
+  }
+
+  private static void writeZip(@NotNull File file, @NotNull String entryName, @NotNull String content) throws IOException {
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+      ZipEntry entry = new ZipEntry(entryName);
+      // The central directory includes the time of the entry, which would otherwise depend on when the zip is written
+      entry.setTime(0);
+      zip.putNextEntry(entry);
+      zip.write(content.getBytes(StandardCharsets.UTF_8));
+      zip.closeEntry();
+    }
+  }
+
   @Nullable
   private String getLastUpdateTime(IDevice device, String pkgName) {
     InstalledApkCache.InstallState state = myService.getInstallState(device, pkgName);
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.run;
+
+import com.android.ddmlib.IDevice;
+import com.android.tools.idea.run.tasks.LaunchTask;
+import com.android.tools.idea.run.tasks.LaunchTasksProvider;
+import com.android.tools.idea.run.util.LaunchStatus;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.intellij.execution.Executor;
+import com.intellij.execution.process.NopProcessHandler;
+import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.execution.process.ProcessEvent;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.execution.runners.ExecutionEnvironment;
+import com.intellij.execution.runners.ProgramRunner;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for launching on several devices in parallel in {@link LaunchTaskRunner}.
+ */
+public class LaunchTaskRunnerTest extends AndroidTestCase {
+  private ProcessHandler myProcessHandler;
+  private StringBuffer myStdout;
+  private StringBuffer myStderr;
+  private ProgressIndicatorBase myIndicator;
+  private List<String> myPerformedTasks;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myStdout = new StringBuffer();
+    myStderr = new StringBuffer();
+    myProcessHandler = new NopProcessHandler();
+    myProcessHandler.addProcessListener(new ProcessAdapter() {
+      @Override
+      public void onTextAvailable(@NotNull ProcessEvent event, @NotNull Key outputType) {
+        (outputType == ProcessOutputTypes.STDERR ? myStderr : myStdout).append(event.getText());
+      }
+    });
+    myProcessHandler.startNotify();
+    myIndicator = new ProgressIndicatorBase();
+    myPerformedTasks = Collections.synchronizedList(new ArrayList<>());
+  }
+
+  public void testFailureOnOneDeviceDoesNotStopTheOthers() throws Exception {
+    LaunchTaskRunner runner = createRunner(ImmutableList.of("device1", "device2", "device3"),
+                                           task -> !task.equals("Installing on device2"));
+
+    runner.run(myIndicator);
+
+    assertThat(myPerformedTasks).containsExactly("Installing on device1", "Launching on device1",
+                                                 "Installing on device2",
+                                                 "Installing on device3", "Launching on device3");
+    assertFalse(myProcessHandler.isProcessTerminated());
+    assertEquals(1.0, myIndicator.getFraction(), 0);
+
+    // Summary of the launch on each device
+    assertThat(myStdout.toString()).contains("device1: launched in ");
+    assertThat(myStdout.toString()).contains("device3: launched in ");
+    assertThat(myStderr.toString()).contains("device2: failed (Error while Installing) in ");
+    assertThat(myStdout.toString()).doesNotContain("device2: ");
+  }
+
+  public void testLaunchIsTerminatedIfItFailsOnAllDevices() throws Exception {
+    LaunchTaskRunner runner = createRunner(ImmutableList.of("device1", "device2"), task -> !task.startsWith("Launching"));
+
+    runner.run(myIndicator);
+
+    assertThat(myPerformedTasks).containsExactly("Installing on device1", "Launching on device1",
+                                                 "Installing on device2", "Launching on device2");
+    assertTrue(myProcessHandler.isProcessTerminated());
+    assertThat(myStderr.toString()).contains("device1: failed (Error while Launching) in ");
+    assertThat(myStderr.toString()).contains("device2: failed (Error while Launching) in ");
+    // The launch is terminated with the error on the first device
+    assertThat(myStderr.toString()).contains("Error Launching on device1\n");
+  }
+
+  public void testCancellationStopsAllDevices() throws Exception {
+    LaunchTaskRunner runner = createRunner(ImmutableList.of("device1", "device2"), task -> {
+      myIndicator.cancel();
+      return true;
+    });
+
+    runner.run(myIndicator);
+
+    // Devices stop after their current task, so no device gets to its second task
+    for (String task : myPerformedTasks) {
+      assertThat(task).startsWith("Installing");
+    }
+    assertTrue(myProcessHandler.isProcessTerminated());
+    assertThat(myStderr.toString()).contains("User cancelled launch");
+    // The summary is only printed for launches that weren't terminated
+    assertThat(myStdout.toString()).doesNotContain("launched in");
+  }
+
+  /**
+   * Creates a runner that performs an "Installing" and a "Launching" task on each of the given devices. A task
+   * succeeds if {@code succeeds} accepts its name, e.g. "Installing on device1".
+   */
+  @NotNull
+  private LaunchTaskRunner createRunner(@NotNull List<String> serials, @NotNull Predicate<String> succeeds) throws Exception {
+    List<AndroidDevice> devices = new ArrayList<>();
+    for (String serial : serials) {
+      IDevice device = mock(IDevice.class);
+      when(device.getSerialNumber()).thenReturn(serial);
+      AndroidDevice androidDevice = mock(AndroidDevice.class);
+      when(androidDevice.getSerial()).thenReturn(serial);
+      when(androidDevice.getLaunchedDevice()).thenReturn(Futures.immediateFuture(device));
+      devices.add(androidDevice);
+    }
+
+    LaunchTasksProvider tasksProvider = mock(LaunchTasksProvider.class);
+    when(tasksProvider.getTasks(any(), any(), any())).thenAnswer(invocation -> {
+      String serial = ((IDevice)invocation.getArgument(0)).getSerialNumber();
+      return ImmutableList.of(new TestLaunchTask("Installing", serial, succeeds), new TestLaunchTask("Launching", serial, succeeds));
+    });
+
+    LaunchInfo launchInfo = new LaunchInfo(mock(Executor.class), mock(ProgramRunner.class), mock(ExecutionEnvironment.class),
+                                           mock(ConsoleProvider.class));
+    return new LaunchTaskRunner(getProject(), "app", launchInfo, myProcessHandler, new DeviceFutures(devices), tasksProvider);
+  }
+
+  private class TestLaunchTask implements LaunchTask {
+    @NotNull private final String myDescription;
+    @NotNull private final String mySerial;
+    @NotNull private final Predicate<String> mySucceeds;
+
+    private TestLaunchTask(@NotNull String description, @NotNull String serial, @NotNull Predicate<String> succeeds) {
+      myDescription = description;
+      mySerial = serial;
+      mySucceeds = succeeds;
+    }
+
+    @NotNull
+    @Override
+    public String getDescription() {
+      return myDescription;
+    }
+
+    @Override
+    public int getDuration() {
+      return 1;
+    }
+
+    @Override
+    public boolean perform(@NotNull IDevice device, @NotNull LaunchStatus launchStatus, @NotNull ConsolePrinter printer) {
+      String name = myDescription + " on " + mySerial;
+      myPerformedTasks.add(name);
+      return mySucceeds.test(name);
+    }
+  }
+}
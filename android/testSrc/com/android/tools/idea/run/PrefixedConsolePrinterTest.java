@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.run;
+
+import junit.framework.TestCase;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link PrefixedConsolePrinter}.
+ */
+public class PrefixedConsolePrinterTest extends TestCase {
+
+  public void testStdout() {
+    ConsolePrinter delegate = mock(ConsolePrinter.class);
+    new PrefixedConsolePrinter(delegate, "[emulator-5554] ").stdout("text");
+    verify(delegate).stdout("[emulator-5554] text");
+  }
+
+  public void testStderr() {
+    ConsolePrinter delegate = mock(ConsolePrinter.class);
+    new PrefixedConsolePrinter(delegate, "[emulator-5554] ").stderr("text");
+    verify(delegate).stderr("[emulator-5554] text");
+  }
+
+  public void testEveryLineIsPrefixed() {
+    ConsolePrinter delegate = mock(ConsolePrinter.class);
+    new PrefixedConsolePrinter(delegate, "> ").stdout("line 1\nline 2");
+    verify(delegate).stdout("> line 1\n> line 2");
+  }
+}
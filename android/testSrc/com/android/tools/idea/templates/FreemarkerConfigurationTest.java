@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.templates;
+
+import com.google.common.collect.ImmutableMap;
+import com.intellij.openapi.util.io.FileUtil;
+import freemarker.template.Configuration;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class FreemarkerConfigurationTest extends TestCase {
+  private File myTemplatesFolder;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myTemplatesFolder = new File(FileUtil.createTempDirectory("freemarker", null), "templates");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myTemplatesFolder.getParentFile());
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testConfigurationIsSharedPerTemplateRoot() throws Exception {
+    File activity = new File(myTemplatesFolder, "activities/EmptyActivity");
+    File otherActivity = new File(myTemplatesFolder, "activities/BasicActivity");
+    File otherRoot = new File(FileUtil.createTempDirectory("other", null), "templates");
+
+    assertSame(FreemarkerConfiguration.getShared(activity), FreemarkerConfiguration.getShared(otherActivity));
+    assertNotSame(FreemarkerConfiguration.getShared(activity), FreemarkerConfiguration.getShared(otherRoot));
+    FileUtil.delete(otherRoot.getParentFile());
+  }
+
+  public void testChangedTemplateIsReloadedRightAway() throws Exception {
+    File file = new File(myTemplatesFolder, "activities/EmptyActivity/root/Main.java.ftl");
+    FileUtil.writeToFile(file, "Hello ${name}");
+    assertEquals("Hello World", process(file));
+
+    FileUtil.writeToFile(file, "Bye ${name}");
+    assertTrue(file.setLastModified(file.lastModified() + 2000));
+    assertEquals("Bye World", process(file));
+  }
+
+  public void testConcurrentLookups() throws Exception {
+    File folder = new File(myTemplatesFolder, "activities/EmptyActivity/root");
+    FileUtil.writeToFile(new File(folder, "common.ftl"), "common");
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      File file = new File(folder, "File" + i + ".java.ftl");
+      // Relative includes are resolved against the name of the including template, not the folder of the last template loaded
+      FileUtil.writeToFile(file, i + " <#include \"common.ftl\"> ${name}");
+      files.add(file);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (File file : files) {
+        results.add(executor.submit(() -> process(file)));
+      }
+      for (int i = 0; i < files.size(); i++) {
+        assertEquals(i + " common World", results.get(i).get());
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private String process(File file) throws Exception {
+    Configuration configuration = FreemarkerConfiguration.getShared(file.getParentFile());
+    String name = new StudioTemplateLoader(file.getParentFile()).findTemplate(file);
+    StringWriter out = new StringWriter();
+    configuration.getTemplate(name).process(ImmutableMap.of("name", "World"), out);
+    return out.toString();
+  }
+}
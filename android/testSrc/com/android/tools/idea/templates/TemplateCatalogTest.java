@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.templates;
+
+import com.android.utils.XmlUtils;
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Document;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static com.android.tools.idea.templates.Template.TEMPLATE_XML_NAME;
+
+public class TemplateCatalogTest extends TestCase {
+  private File myDir;
+  private File myCatalogFile;
+  private ExecutorService myExecutor;
+  private final AtomicInteger myParseCount = new AtomicInteger();
+  private final Function<File, TemplateMetadata> myParser = template -> {
+    myParseCount.incrementAndGet();
+    try {
+      Document doc = XmlUtils.parseDocumentSilently(FileUtil.loadFile(new File(template, TEMPLATE_XML_NAME)), true);
+      return doc != null ? new TemplateMetadata(doc) : null;
+    }
+    catch (IOException e) {
+      return null;
+    }
+  };
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("templates", null);
+    myCatalogFile = new File(myDir, "catalog.dat");
+    myExecutor = Executors.newFixedThreadPool(2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myExecutor.shutdownNow();
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testOnlyChangedTemplatesAreParsed() throws Exception {
+    File category = new File(myDir, "activities");
+    File first = writeTemplate(category, "First", "Activity", 1000);
+    File second = writeTemplate(category, "Second", null, 1000);
+    File broken = new File(category, "Broken");
+    FileUtil.writeToFile(new File(broken, TEMPLATE_XML_NAME), "<template");
+    File notATemplate = new File(category, "Empty");
+    assertTrue(notATemplate.mkdirs());
+
+    TemplateCatalog catalog = new TemplateCatalog(myCatalogFile, myExecutor);
+    List<File> templates = Arrays.asList(catalog.listFiles(category));
+    assertEquals(4, templates.size());
+    Map<File, TemplateCatalog.Entry> entries = catalog.update(templates, myParser);
+    assertEquals(3, myParseCount.get());
+    assertEquals("First", entries.get(first).getTitle());
+    assertEquals("Activity", entries.get(first).getCategory());
+    assertEquals("Second", entries.get(second).getTitle());
+    assertNull(entries.get(second).getCategory());
+    assertFalse(entries.get(broken).isValid());
+    assertFalse(entries.get(notATemplate).isValid());
+    catalog.save();
+
+    // A new session reads the catalog instead of parsing the templates again
+    myParseCount.set(0);
+    catalog = new TemplateCatalog(myCatalogFile, myExecutor);
+    entries = catalog.update(Arrays.asList(catalog.listFiles(category)), myParser);
+    assertEquals(0, myParseCount.get());
+    assertEquals("First", entries.get(first).getTitle());
+    assertEquals(3, entries.get(first).getRevision());
+    assertEquals(7, entries.get(first).getMinSdk());
+    assertFalse(entries.get(broken).isValid());
+
+    writeTemplate(category, "Second", "Other", 2000);
+    entries = catalog.update(Arrays.asList(catalog.listFiles(category)), myParser);
+    assertEquals(1, myParseCount.get());
+    assertEquals("Other", entries.get(second).getCategory());
+  }
+
+  public void testFolderListingFollowsTimestamp() throws Exception {
+    File category = new File(myDir, "activities");
+    writeTemplate(category, "First", null, 1000);
+    assertTrue(category.setLastModified(1000));
+
+    TemplateCatalog catalog = new TemplateCatalog(myCatalogFile, myExecutor);
+    assertEquals(1, catalog.listFiles(category).length);
+
+    writeTemplate(category, "Second", null, 1000);
+    assertTrue(category.setLastModified(1000));
+    assertEquals(1, catalog.listFiles(category).length);
+
+    assertTrue(category.setLastModified(2000));
+    assertEquals(2, catalog.listFiles(category).length);
+    assertEquals(0, catalog.listFiles(null).length);
+  }
+
+  public void testCatalogWithOtherVersionIsIgnored() throws Exception {
+    File category = new File(myDir, "activities");
+    File first = writeTemplate(category, "First", null, 1000);
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(myCatalogFile))) {
+      out.writeInt(TemplateCatalog.VERSION + 1);
+    }
+
+    TemplateCatalog catalog = new TemplateCatalog(myCatalogFile, myExecutor);
+    Map<File, TemplateCatalog.Entry> entries = catalog.update(Arrays.asList(catalog.listFiles(category)), myParser);
+    assertEquals(1, myParseCount.get());
+    assertEquals("First", entries.get(first).getTitle());
+  }
+
+  @NotNull
+  private static File writeTemplate(@NotNull File category, @NotNull String name, String templateCategory, long lastModified)
+    throws IOException {
+    File template = new File(category, name);
+    File templateXml = new File(template, TEMPLATE_XML_NAME);
+    FileUtil.writeToFile(templateXml,
+                         "<template format=\"5\" revision=\"3\" name=\"" + name + "\" minApi=\"7\">" +
+                         (templateCategory != null ? "<category value=\"" + templateCategory + "\"/>" : "") +
+                         "</template>");
+    assertTrue(templateXml.setLastModified(lastModified));
+    return template;
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import com.android.annotations.NonNull;
+import com.android.tools.apk.analyzer.ApkSizeCalculator;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Application wide cache of the results of expensive APK analyses, shared between the APK viewer
+ * and the APK diff panels.
+ *
+ * <p>Results are keyed by the SHA-256 hash of the APK contents (and not by its path), since the APK
+ * viewer works on temporary copies of the APK, and since opening the same APK in several editors
+ * (or comparing it with another APK) should not repeat the same work.
+ *
+ * <p>Size computations (see {@link #wrap(ApkSizeCalculator)}) are also keyed by the calculator that
+ * computed them, and persisted in the IDE system directory, so that they survive IDE restarts. Diff
+ * trees are only cached in memory.
+ */
+public class ApkAnalysisCache {
+  @NotNull private static final String CACHE_DIRECTORY = "apk-analyzer";
+  @NotNull private static final String CACHE_FILE_VERSION = "1";
+  /**
+   * Version of the size computations, to increase whenever they change (e.g. with a new compression
+   * setting), so that the sizes persisted by previous versions are computed again.
+   */
+  private static final int CALCULATOR_VERSION = 1;
+  private static final int MAX_CACHE_FILES = 200;
+  private static final int MAX_MEMORY_ENTRIES = 32;
+
+  @NotNull private final Path myRootDir;
+  @NotNull private final Map<Path, ContentHash> myContentHashes = new ConcurrentHashMap<>();
+  @NotNull private final Cache<String, Object> mySizes = CacheBuilder.newBuilder()
+    .maximumSize(MAX_MEMORY_ENTRIES)
+    .build();
+  @NotNull private final Cache<String, ListenableFuture<?>> myDiffTrees = CacheBuilder.newBuilder()
+    .maximumSize(MAX_MEMORY_ENTRIES)
+    .softValues()
+    .build();
+
+  @NotNull
+  public static ApkAnalysisCache getInstance() {
+    return ServiceManager.getService(ApkAnalysisCache.class);
+  }
+
+  public ApkAnalysisCache() {
+    this(Paths.get(PathManager.getSystemPath(), CACHE_DIRECTORY));
+  }
+
+  @VisibleForTesting
+  ApkAnalysisCache(@NotNull Path rootDir) {
+    myRootDir = rootDir;
+  }
+
+  private static Logger getLogger() {
+    return Logger.getInstance(ApkAnalysisCache.class);
+  }
+
+  /**
+   * Returns an {@link ApkSizeCalculator} that returns the results of {@code calculator} from this cache,
+   * only delegating to {@code calculator} for APK contents that have never been analyzed before.
+   */
+  @NotNull
+  public ApkSizeCalculator wrap(@NotNull ApkSizeCalculator calculator) {
+    if (calculator instanceof CachingSizeCalculator && ((CachingSizeCalculator)calculator).getCache() == this) {
+      return calculator;
+    }
+    return new CachingSizeCalculator(calculator);
+  }
+
+  /**
+   * Returns the (shared) future result of a diff computation between {@code oldApk} and {@code newApk},
+   * invoking {@code computation} only if no diff of the same kind between the same APK contents is
+   * already cached or running.
+   */
+  @SuppressWarnings("unchecked")
+  @NotNull
+  public <T> ListenableFuture<T> getDiffTree(@NotNull String kind,
+                                             @NotNull Path oldApk,
+                                             @NotNull Path newApk,
+                                             @NotNull Supplier<ListenableFuture<T>> computation) throws IOException {
+    String key = kind + ":" + getContentHash(oldApk) + ":" + getContentHash(newApk);
+    try {
+      ListenableFuture<?> future = myDiffTrees.get(key, computation::get);
+      // Don't keep failed or cancelled computations around, so that they can be retried
+      future.addListener(() -> {
+        if (future.isCancelled() || !isSuccessful(future)) {
+          myDiffTrees.asMap().remove(key, future);
+        }
+      }, Runnable::run);
+      return (ListenableFuture<T>)future;
+    }
+    catch (ExecutionException | UncheckedExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Returns the hash of the contents of {@code file}, which is only computed again when its size or
+   * modification time changes.
+   */
+  @NotNull
+  public HashCode getContentHash(@NotNull Path file) throws IOException {
+    Path key = file.toAbsolutePath().normalize();
+    long size = Files.size(key);
+    FileTime lastModified = Files.getLastModifiedTime(key);
+    ContentHash contentHash = myContentHashes.get(key);
+    if (contentHash == null || contentHash.mySize != size || !contentHash.myLastModified.equals(lastModified)) {
+      HashCode hash = com.google.common.io.Files.asByteSource(key.toFile()).hash(Hashing.sha256());
+      contentHash = new ContentHash(size, lastModified, hash);
+      myContentHashes.put(key, contentHash);
+    }
+    return contentHash.myHash;
+  }
+
+  private static boolean isSuccessful(@NotNull ListenableFuture<?> future) {
+    try {
+      future.get();
+      return true;
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @NotNull
+  private <T> T getSize(@NotNull Path apk,
+                        @NotNull String calculatorId,
+                        @NotNull SizeKind<T> kind,
+                        @NotNull Callable<T> computation) {
+    try {
+      String key = getContentHash(apk) + "-" + calculatorId + "-" + kind.myName;
+      // Concurrent requests for the same key wait for a single computation
+      return (T)mySizes.get(key, () -> {
+        T value = readCacheFile(key, kind);
+        if (value == null) {
+          value = computation.call();
+          writeCacheFile(key, kind, value);
+        }
+        return value;
+      });
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException)e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  @Nullable
+  private <T> T readCacheFile(@NotNull String key, @NotNull SizeKind<T> kind) {
+    Path file = myRootDir.resolve(key);
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file, Charsets.UTF_8)) {
+      if (!CACHE_FILE_VERSION.equals(reader.readLine())) {
+        return null;
+      }
+      Map<String, Long> values = new HashMap<>();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int index = line.lastIndexOf('\t');
+        if (index < 0) {
+          return null;
+        }
+        values.put(line.substring(0, index), Long.parseLong(line.substring(index + 1)));
+      }
+      // Mark file as recently used, see #pruneCacheFiles
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return kind.myReader.apply(values);
+    }
+    catch (IOException | RuntimeException e) {
+      getLogger().warn(String.format("Error reading APK analyzer cache file \"%s\"", file), e);
+      return null;
+    }
+  }
+
+  private <T> void writeCacheFile(@NotNull String key, @NotNull SizeKind<T> kind, @NotNull T value) {
+    Path file = myRootDir.resolve(key);
+    try {
+      Files.createDirectories(myRootDir);
+      Path tempFile = Files.createTempFile(myRootDir, key, ".tmp");
+      try (BufferedWriter writer = Files.newBufferedWriter(tempFile, Charsets.UTF_8)) {
+        writer.write(CACHE_FILE_VERSION);
+        writer.newLine();
+        for (Map.Entry<String, Long> entry : kind.myWriter.apply(value).entrySet()) {
+          writer.write(entry.getKey());
+          writer.write('\t');
+          writer.write(Long.toString(entry.getValue()));
+          writer.newLine();
+        }
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      pruneCacheFiles();
+    }
+    catch (IOException e) {
+      getLogger().warn(String.format("Error writing APK analyzer cache file \"%s\"", file), e);
+    }
+  }
+
+  /**
+   * Deletes the least recently used cache files when there are more than {@link #MAX_CACHE_FILES}.
+   */
+  private void pruneCacheFiles() throws IOException {
+    List<Path> files;
+    try (Stream<Path> stream = Files.list(myRootDir)) {
+      files = stream.collect(Collectors.toList());
+    }
+    if (files.size() <= MAX_CACHE_FILES) {
+      return;
+    }
+    Map<Path, Long> lastModified = new HashMap<>();
+    for (Path file : files) {
+      lastModified.put(file, file.toFile().lastModified());
+    }
+    files.sort(Comparator.comparing(lastModified::get));
+    for (Path file : files.subList(0, files.size() - MAX_CACHE_FILES)) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static class ContentHash {
+    private final long mySize;
+    @NotNull private final FileTime myLastModified;
+    @NotNull private final HashCode myHash;
+
+    private ContentHash(long size, @NotNull FileTime lastModified, @NotNull HashCode hash) {
+      mySize = size;
+      myLastModified = lastModified;
+      myHash = hash;
+    }
+  }
+
+  /**
+   * A kind of size computation, and how its result is stored in a cache file, i.e. as a map of names to sizes.
+   */
+  private static class SizeKind<T> {
+    private static final String TOTAL = "";
+
+    private static final SizeKind<Long> FULL_DOWNLOAD =
+      new SizeKind<>("full-download", SizeKind::readLong, SizeKind::writeLong);
+    private static final SizeKind<Long> FULL_RAW =
+      new SizeKind<>("full-raw", SizeKind::readLong, SizeKind::writeLong);
+    private static final SizeKind<Map<String, Long>> DOWNLOAD_PER_FILE =
+      new SizeKind<>("download-per-file", Collections::unmodifiableMap, Function.identity());
+    private static final SizeKind<Map<String, Long>> RAW_PER_FILE =
+      new SizeKind<>("raw-per-file", Collections::unmodifiableMap, Function.identity());
+
+    @NotNull private final String myName;
+    @NotNull private final Function<Map<String, Long>, T> myReader;
+    @NotNull private final Function<T, Map<String, Long>> myWriter;
+
+    private SizeKind(@NotNull String name,
+                     @NotNull Function<Map<String, Long>, T> reader,
+                     @NotNull Function<T, Map<String, Long>> writer) {
+      myName = name;
+      myReader = reader;
+      myWriter = writer;
+    }
+
+    @Nullable
+    private static Long readLong(@NotNull Map<String, Long> values) {
+      return values.get(TOTAL);
+    }
+
+    @NotNull
+    private static Map<String, Long> writeLong(@NotNull Long value) {
+      return Collections.singletonMap(TOTAL, value);
+    }
+  }
+
+  private class CachingSizeCalculator implements ApkSizeCalculator {
+    @NotNull private final ApkSizeCalculator myDelegate;
+    /**
+     * Identifies the results of {@link #myDelegate} in cache keys, since other calculators may compute
+     * different sizes for the same APK. The class name is hashed as it may not be a valid file name.
+     */
+    @NotNull private final String myId;
+
+    private CachingSizeCalculator(@NotNull ApkSizeCalculator delegate) {
+      myDelegate = delegate;
+      myId = Hashing.murmur3_32().hashString(delegate.getClass().getName(), Charsets.UTF_8) + "-v" + CALCULATOR_VERSION;
+    }
+
+    @NotNull
+    private ApkAnalysisCache getCache() {
+      return ApkAnalysisCache.this;
+    }
+
+    @Override
+    public long getFullApkDownloadSize(@NonNull Path apk) {
+      return getSize(apk, myId, SizeKind.FULL_DOWNLOAD, () -> myDelegate.getFullApkDownloadSize(apk));
+    }
+
+    @Override
+    public long getFullApkRawSize(@NonNull Path apk) {
+      return getSize(apk, myId, SizeKind.FULL_RAW, () -> myDelegate.getFullApkRawSize(apk));
+    }
+
+    @NonNull
+    @Override
+    public Map<String, Long> getDownloadSizePerFile(@NonNull Path apk) {
+      return getSize(apk, myId, SizeKind.DOWNLOAD_PER_FILE,
+                     () -> Collections.unmodifiableMap(new HashMap<>(myDelegate.getDownloadSizePerFile(apk))));
+    }
+
+    @NonNull
+    @Override
+    public Map<String, Long> getRawSizePerFile(@NonNull Path apk) {
+      return getSize(apk, myId, SizeKind.RAW_PER_FILE,
+                     () -> Collections.unmodifiableMap(new HashMap<>(myDelegate.getRawSizePerFile(apk))));
+    }
+  }
+}
@@ -33,6 +33,7 @@ import org.jetbrains.ide.PooledThreadExecutor;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 
 public class ApkParser {
   private static final ListeningExecutorService ourExecutorService = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
@@ -46,8 +47,16 @@ public class ApkParser {
   @Nullable private ListenableFuture<Long> myCompressedFullApkSize;
 
   public ApkParser(@NotNull Archive archive, @NotNull ApkSizeCalculator sizeCalculator) {
+    this(archive, sizeCalculator, ApkAnalysisCache.getInstance());
+  }
+
+  /**
+   * Creates a parser whose size computations are shared (through {@code cache}) with any other
+   * parser or diff of an APK with the same contents.
+   */
+  public ApkParser(@NotNull Archive archive, @NotNull ApkSizeCalculator sizeCalculator, @NotNull ApkAnalysisCache cache) {
     myArchive = archive;
-    myApkSizeCalculator = sizeCalculator;
+    myApkSizeCalculator = cache.wrap(sizeCalculator);
   }
 
   public Archive getArchive() {
@@ -80,10 +89,16 @@ public class ApkParser {
   @NotNull
   public synchronized ListenableFuture<ArchiveNode> updateTreeWithDownloadSizes() {
     if (myTreeStructureWithDownloadSizes == null) {
-      myTreeStructureWithDownloadSizes = Futures.transform(constructTreeStructure(), (Function<ArchiveNode, ArchiveNode>)input -> {
-        assert input != null;
-        ArchiveTreeStructure.updateDownloadFileSizes(input, myApkSizeCalculator);
-        return input;
+      // Compute the download sizes concurrently with the tree structure: once both are available,
+      // updating the tree only needs the (cached) result of the size calculator.
+      ListenableFuture<Map<String, Long>> downloadSizes =
+        ourExecutorService.submit(() -> myApkSizeCalculator.getDownloadSizePerFile(myArchive.getPath()));
+      ListenableFuture<ArchiveNode> treeStructure = constructTreeStructure();
+      myTreeStructureWithDownloadSizes = Futures.transform(Futures.<Object>allAsList(treeStructure, downloadSizes),
+                                                           (Function<List<Object>, ArchiveNode>)input -> {
+        ArchiveNode node = Futures.getUnchecked(treeStructure);
+        ArchiveTreeStructure.updateDownloadFileSizes(node, myApkSizeCalculator);
+        return node;
       }, PooledThreadExecutor.INSTANCE);
     }
     return myTreeStructureWithDownloadSizes;
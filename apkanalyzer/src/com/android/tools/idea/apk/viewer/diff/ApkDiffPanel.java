@@ -23,6 +23,7 @@ import com.android.tools.apk.analyzer.internal.ApkDiffEntry;
 import com.android.tools.apk.analyzer.internal.ApkDiffParser;
 import com.android.tools.apk.analyzer.internal.ApkEntry;
 import com.android.tools.apk.analyzer.internal.ApkFileByFileDiffParser;
+import com.android.tools.idea.apk.viewer.ApkAnalysisCache;
 import com.android.tools.idea.apk.viewer.ApkViewPanel.FutureCallBackAdapter;
 import com.android.tools.idea.concurrent.EdtExecutor;
 import com.google.common.util.concurrent.Futures;
@@ -47,6 +48,7 @@ import javax.swing.tree.TreePath;
 
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.util.function.Supplier;
 
 import static com.android.tools.idea.apk.viewer.ApkViewPanel.getHumanizedSize;
 
@@ -87,12 +89,12 @@ public class ApkDiffPanel {
 
   private void constructFbfTree(){
     if (myFbfTreeStructureFuture == null) {
-      myFbfTreeStructureFuture = ourExecutorService.submit(() -> {
+      myFbfTreeStructureFuture = getCachedDiffTree("file-by-file", () -> ourExecutorService.submit(() -> {
         try (Archive archive1 = Archives.open(VfsUtilCore.virtualToIoFile(myOldApk).toPath());
              Archive archive2 = Archives.open(VfsUtilCore.virtualToIoFile(myNewApk).toPath())) {
           return ApkFileByFileDiffParser.createTreeNode(archive1, archive2);
         }
-      });
+      }));
     }
 
     FutureCallBackAdapter<DefaultMutableTreeNode> setRootNode = new FutureCallBackAdapter<DefaultMutableTreeNode>() {
@@ -107,12 +109,12 @@ public class ApkDiffPanel {
 
   private void constructDiffTree(){
     // construct the main tree
-    ListenableFuture<DefaultMutableTreeNode> treeStructureFuture = ourExecutorService.submit(() -> {
+    ListenableFuture<DefaultMutableTreeNode> treeStructureFuture = getCachedDiffTree("diff", () -> ourExecutorService.submit(() -> {
       try (Archive archive1 = Archives.open(VfsUtilCore.virtualToIoFile(myOldApk).toPath());
            Archive archive2 = Archives.open(VfsUtilCore.virtualToIoFile(myNewApk).toPath())) {
         return ApkDiffParser.createTreeNode(archive1, archive2);
       }
-    });
+    }));
     FutureCallBackAdapter<DefaultMutableTreeNode> setRootNode = new FutureCallBackAdapter<DefaultMutableTreeNode>() {
       @Override
       public void onSuccess(DefaultMutableTreeNode result) {
@@ -123,6 +125,20 @@ public class ApkDiffPanel {
     Futures.addCallback(treeStructureFuture, setRootNode, EdtExecutor.INSTANCE);
   }
 
+  /**
+   * Returns the diff tree of the given {@code kind} from the {@link ApkAnalysisCache}, so that diffs between
+   * the same APK contents (e.g. when toggling the file-by-file option, or when comparing the same APKs
+   * again) are only computed once.
+   */
+  @NotNull
+  private ListenableFuture<DefaultMutableTreeNode> getCachedDiffTree(
+    @NotNull String kind,
+    @NotNull Supplier<ListenableFuture<DefaultMutableTreeNode>> computation) {
+    // Hash the APK contents on a background thread, since APKs can be large
+    return Futures.dereference(ourExecutorService.submit(() -> ApkAnalysisCache.getInstance().getDiffTree(
+      kind, VfsUtilCore.virtualToIoFile(myOldApk).toPath(), VfsUtilCore.virtualToIoFile(myNewApk).toPath(), computation)));
+  }
+
   private void createUIComponents() {
     myTreeModel = new DefaultTreeModel(new LoadingNode());
     myTree = new Tree(myTreeModel);
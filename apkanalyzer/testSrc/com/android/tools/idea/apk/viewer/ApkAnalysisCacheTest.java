@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import com.android.annotations.NonNull;
+import com.android.tools.apk.analyzer.ApkSizeCalculator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ApkAnalysisCacheTest {
+  @Rule
+  public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testSizesAreSharedBetweenCopiesOfTheSameApk() throws Exception {
+    Path cacheDir = myTemporaryFolder.newFolder().toPath();
+    Path apk1 = createFile("first.apk", "apk contents");
+    Path apk2 = createFile("second.apk", "apk contents");
+    CountingSizeCalculator calculator = new CountingSizeCalculator();
+
+    ApkSizeCalculator cachingCalculator = new ApkAnalysisCache(cacheDir).wrap(calculator);
+    assertEquals(ImmutableMap.of("/classes.dex", 10L), cachingCalculator.getDownloadSizePerFile(apk1));
+    assertEquals(ImmutableMap.of("/classes.dex", 10L), cachingCalculator.getDownloadSizePerFile(apk2));
+    assertEquals(100L, cachingCalculator.getFullApkDownloadSize(apk2));
+    assertEquals(1, calculator.myDownloadSizePerFileCount.get());
+    assertEquals(1, calculator.myFullApkDownloadSizeCount.get());
+  }
+
+  @Test
+  public void testSizesArePersisted() throws Exception {
+    Path cacheDir = myTemporaryFolder.newFolder().toPath();
+    Path apk = createFile("app.apk", "apk contents");
+    CountingSizeCalculator calculator = new CountingSizeCalculator();
+
+    new ApkAnalysisCache(cacheDir).wrap(calculator).getDownloadSizePerFile(apk);
+    new ApkAnalysisCache(cacheDir).wrap(calculator).getFullApkRawSize(apk);
+    ApkSizeCalculator otherSession = new ApkAnalysisCache(cacheDir).wrap(calculator);
+
+    assertEquals(ImmutableMap.of("/classes.dex", 10L), otherSession.getDownloadSizePerFile(apk));
+    assertEquals(200L, otherSession.getFullApkRawSize(apk));
+    assertEquals(1, calculator.myDownloadSizePerFileCount.get());
+    assertEquals(1, calculator.myFullApkRawSizeCount.get());
+  }
+
+  @Test
+  public void testSizesAreComputedAgainWhenContentsChange() throws Exception {
+    Path cacheDir = myTemporaryFolder.newFolder().toPath();
+    Path apk = createFile("app.apk", "apk contents");
+    CountingSizeCalculator calculator = new CountingSizeCalculator();
+    ApkSizeCalculator cachingCalculator = new ApkAnalysisCache(cacheDir).wrap(calculator);
+
+    cachingCalculator.getRawSizePerFile(apk);
+    Files.write(apk, "new apk contents".getBytes());
+    cachingCalculator.getRawSizePerFile(apk);
+
+    assertEquals(2, calculator.myRawSizePerFileCount.get());
+  }
+
+  @Test
+  public void testSizesAreNotSharedBetweenCalculators() throws Exception {
+    Path cacheDir = myTemporaryFolder.newFolder().toPath();
+    Path apk = createFile("app.apk", "apk contents");
+    CountingSizeCalculator calculator = new CountingSizeCalculator();
+    CountingSizeCalculator otherCalculator = new CountingSizeCalculator() {
+      @Override
+      public long getFullApkDownloadSize(@NonNull Path apk) {
+        super.getFullApkDownloadSize(apk);
+        return 50;
+      }
+    };
+
+    ApkAnalysisCache cache = new ApkAnalysisCache(cacheDir);
+    assertEquals(100L, cache.wrap(calculator).getFullApkDownloadSize(apk));
+    assertEquals(50L, cache.wrap(otherCalculator).getFullApkDownloadSize(apk));
+    assertEquals(50L, new ApkAnalysisCache(cacheDir).wrap(otherCalculator).getFullApkDownloadSize(apk));
+    assertEquals(1, calculator.myFullApkDownloadSizeCount.get());
+    assertEquals(1, otherCalculator.myFullApkDownloadSizeCount.get());
+  }
+
+  @Test
+  public void testDiffTreesAreShared() throws Exception {
+    ApkAnalysisCache cache = new ApkAnalysisCache(myTemporaryFolder.newFolder().toPath());
+    Path oldApk = createFile("old.apk", "old contents");
+    Path newApk = createFile("new.apk", "new contents");
+    AtomicInteger computeCount = new AtomicInteger();
+
+    ListenableFuture<String> first = cache.getDiffTree("diff", oldApk, newApk, () -> {
+      computeCount.incrementAndGet();
+      return Futures.immediateFuture("tree");
+    });
+    ListenableFuture<String> second = cache.getDiffTree("diff", oldApk, newApk, () -> {
+      computeCount.incrementAndGet();
+      return Futures.immediateFuture("other tree");
+    });
+
+    assertSame(first, second);
+    assertEquals("tree", second.get());
+    assertEquals(1, computeCount.get());
+  }
+
+  @NonNull
+  private Path createFile(@NonNull String name, @NonNull String contents) throws Exception {
+    Path path = myTemporaryFolder.getRoot().toPath().resolve(name);
+    Files.write(path, contents.getBytes());
+    return path;
+  }
+
+  private static class CountingSizeCalculator implements ApkSizeCalculator {
+    private final AtomicInteger myFullApkDownloadSizeCount = new AtomicInteger();
+    private final AtomicInteger myFullApkRawSizeCount = new AtomicInteger();
+    private final AtomicInteger myDownloadSizePerFileCount = new AtomicInteger();
+    private final AtomicInteger myRawSizePerFileCount = new AtomicInteger();
+
+    @Override
+    public long getFullApkDownloadSize(@NonNull Path apk) {
+      myFullApkDownloadSizeCount.incrementAndGet();
+      return 100;
+    }
+
+    @Override
+    public long getFullApkRawSize(@NonNull Path apk) {
+      myFullApkRawSizeCount.incrementAndGet();
+      return 200;
+    }
+
+    @NonNull
+    @Override
+    public Map<String, Long> getDownloadSizePerFile(@NonNull Path apk) {
+      myDownloadSizePerFileCount.incrementAndGet();
+      return ImmutableMap.of("/classes.dex", 10L);
+    }
+
+    @NonNull
+    @Override
+    public Map<String, Long> getRawSizePerFile(@NonNull Path apk) {
+      myRawSizePerFileCount.incrementAndGet();
+      return ImmutableMap.of("/classes.dex", 20L);
+    }
+  }
+}
@@ -27,6 +27,10 @@ public class AndroidBuildTestingManager {
     ourTestingManager = new AndroidBuildTestingManager(commandExecutor);
   }
 
+  public static void stopBuildTesting() {
+    ourTestingManager = null;
+  }
+
   @NotNull
   public static String arrayToString(@NotNull String[] array) {
     final StringBuilder builder = new StringBuilder("[");
@@ -165,31 +165,15 @@ public class AndroidCommonUtils {
                                                 @NotNull String outputFilePath,
                                                 @NotNull final Map<AndroidCompilerMessageKind, List<String>> messages, boolean multiDex) {
     final BaseOSProcessHandler handler = new BaseOSProcessHandler(process, commandLine, null);
+    final DexOutputParser parser = new DexOutputParser(messages);
     handler.addProcessListener(new ProcessAdapter() {
-      private AndroidCompilerMessageKind myCategory = null;
-
       @Override
       public void onTextAvailable(@NotNull ProcessEvent event, @NotNull Key outputType) {
-        String[] msgs = event.getText().split("\\n");
-        for (String msg : msgs) {
-          msg = msg.trim();
-          String msglc = msg.toLowerCase();
-          if (outputType == ProcessOutputTypes.STDERR) {
-            if (WARNING_PATTERN.matcher(msglc).matches()) {
-              myCategory = AndroidCompilerMessageKind.WARNING;
-            }
-            if (ERROR_PATTERN.matcher(msglc).matches() || EXCEPTION_PATTERN.matcher(msglc).matches() || myCategory == null) {
-              myCategory = AndroidCompilerMessageKind.ERROR;
-            }
-            messages.get(myCategory).add(msg);
-          }
-          else if (outputType == ProcessOutputTypes.STDOUT) {
-            if (!msglc.startsWith("processing")) {
-              messages.get(AndroidCompilerMessageKind.INFORMATION).add(msg);
-            }
-          }
-
-          LOG.debug(msg);
+        if (outputType == ProcessOutputTypes.STDERR) {
+          parser.parseStderr(event.getText());
+        }
+        else if (outputType == ProcessOutputTypes.STDOUT) {
+          parser.parseStdout(event.getText());
         }
       }
     });
@@ -197,6 +181,29 @@ public class AndroidCommonUtils {
     handler.startNotify();
     handler.waitFor();
 
+    checkDexCompilationResult(outputFilePath, messages, multiDex);
+  }
+
+  /**
+   * Same as {@link #handleDexCompilationResult(Process, String, String, Map, boolean)}, for dx invocations whose
+   * output has already been collected, e.g. by a dx daemon.
+   */
+  public static void handleDexCompilationResult(@NotNull String stdout,
+                                                @NotNull String stderr,
+                                                @NotNull String outputFilePath,
+                                                @NotNull Map<AndroidCompilerMessageKind, List<String>> messages, boolean multiDex) {
+    final DexOutputParser parser = new DexOutputParser(messages);
+    if (!stdout.isEmpty()) {
+      parser.parseStdout(stdout);
+    }
+    if (!stderr.isEmpty()) {
+      parser.parseStderr(stderr);
+    }
+    checkDexCompilationResult(outputFilePath, messages, multiDex);
+  }
+
+  private static void checkDexCompilationResult(@NotNull String outputFilePath,
+                                                @NotNull Map<AndroidCompilerMessageKind, List<String>> messages, boolean multiDex) {
     final List<String> errors = messages.get(AndroidCompilerMessageKind.ERROR);
 
     if (new File(outputFilePath).isFile()) {
@@ -209,6 +216,40 @@ public class AndroidCommonUtils {
     }
   }
 
+  private static class DexOutputParser {
+    private final Map<AndroidCompilerMessageKind, List<String>> myMessages;
+    private AndroidCompilerMessageKind myCategory = null;
+
+    DexOutputParser(@NotNull Map<AndroidCompilerMessageKind, List<String>> messages) {
+      myMessages = messages;
+    }
+
+    void parseStderr(@NotNull String text) {
+      for (String msg : text.split("\\n")) {
+        msg = msg.trim();
+        String msglc = msg.toLowerCase();
+        if (WARNING_PATTERN.matcher(msglc).matches()) {
+          myCategory = AndroidCompilerMessageKind.WARNING;
+        }
+        if (ERROR_PATTERN.matcher(msglc).matches() || EXCEPTION_PATTERN.matcher(msglc).matches() || myCategory == null) {
+          myCategory = AndroidCompilerMessageKind.ERROR;
+        }
+        myMessages.get(myCategory).add(msg);
+        LOG.debug(msg);
+      }
+    }
+
+    void parseStdout(@NotNull String text) {
+      for (String msg : text.split("\\n")) {
+        msg = msg.trim();
+        if (!msg.toLowerCase().startsWith("processing")) {
+          myMessages.get(AndroidCompilerMessageKind.INFORMATION).add(msg);
+        }
+        LOG.debug(msg);
+      }
+    }
+  }
+
   @NotNull
   public static List<String> packClassFilesIntoJar(@NotNull String[] firstPackageDirPaths,
                                                  @NotNull String[] libFirstPackageDirPaths,
@@ -48,7 +48,7 @@ public class Display {
     if (needsRebuild) {
       needsRebuild = scene.layout(mTime, sceneContext);
       myDisplayList.clear();
-      scene.buildDisplayList(myDisplayList, mTime, sceneContext);
+      scene.buildRetainedDisplayList(myDisplayList, mTime, sceneContext);
       myDisplayListVersion = scene.getDisplayListVersion();
       if (needsRebuild) {
         scene.needsRebuildList();
@@ -89,6 +89,18 @@ public class Scene implements SelectionListener, Disposable {
   public static final int IMMEDIATE_LAYOUT = 1;
   public static final int ANIMATED_LAYOUT = 2;
   private long myDisplayListVersion = 1;
+  /**
+   * The retained display lists of the {@link SceneComponent}s built for each context, see
+   * {@link #buildRetainedDisplayList}. Components keep one list per context, so painting the scene in several views (e.g.
+   * design and blueprint) doesn't rebuild them on every paint. Lists built for another version than the one of their
+   * context are rebuilt even if their component hasn't been invalidated.
+   */
+  private final Map<SceneContext, RetainedDisplayListState> myRetainedDisplayListStates = new WeakHashMap<>();
+  private long myLastRetainedDisplayListVersion;
+  /**
+   * Version of the retained display lists of the context being painted, or 0 if no retained display list is being built.
+   */
+  private long myRetainedDisplayListVersion;
   private Target myOverTarget;
   private Target mySnapTarget;
   private SceneComponent myCurrentComponent;
@@ -383,11 +395,45 @@ public class Scene implements SelectionListener, Disposable {
   }
 
   /**
-   * Paint the current scene into the given display list
+   * Paint the current scene into the given display list, reusing the commands of the components that didn't
+   * change since the previous call. Components are rebuilt once they have been invalidated, see
+   * {@link #needsRebuildList(SceneComponent)}, and all of them after {@link #needsRebuildList()} or when the scale or
+   * origin of {@code sceneContext} changed since it was last painted.
    *
    * @param displayList
    * @param time
    */
+  void buildRetainedDisplayList(@NotNull DisplayList displayList, long time, @NotNull SceneContext sceneContext) {
+    List<Object> key = getRetainedDisplayListKey(sceneContext);
+    RetainedDisplayListState state = myRetainedDisplayListStates.get(sceneContext);
+    if (state == null || !key.equals(state.myKey)) {
+      state = new RetainedDisplayListState(key, ++myLastRetainedDisplayListVersion);
+      myRetainedDisplayListStates.put(sceneContext, state);
+    }
+    myRetainedDisplayListVersion = state.myVersion;
+    try {
+      buildDisplayList(displayList, time, sceneContext);
+    }
+    finally {
+      myRetainedDisplayListVersion = 0;
+    }
+  }
+
+  @NotNull
+  private static List<Object> getRetainedDisplayListKey(@NotNull SceneContext sceneContext) {
+    // ColorSet is compared by identity
+    return Arrays.asList(sceneContext.getScale(), sceneContext.showOnlySelection(), sceneContext.getSwingXDip(0),
+                         sceneContext.getSwingYDip(0), sceneContext.getColorSet());
+  }
+
+  boolean isBuildingRetainedDisplayList() {
+    return myRetainedDisplayListVersion != 0;
+  }
+
+  long getRetainedDisplayListVersion() {
+    return myRetainedDisplayListVersion;
+  }
+
   public void buildDisplayList(@NotNull DisplayList displayList, long time, SceneContext sceneContext) {
     if (myRoot != null) {
       myRoot.buildDisplayList(time, displayList, sceneContext);
@@ -546,14 +592,14 @@ public class Scene implements SelectionListener, Disposable {
     if (myOverTarget != closestTarget) {
       if (myOverTarget != null) {
         myOverTarget.setMouseHovered(false);
+        needsRebuildList(myOverTarget.getComponent());
         myOverTarget = null;
-        needsRebuildList();
       }
       if (closestTarget != null) {
         closestTarget.setMouseHovered(true);
         transform.setToolTip(closestTarget.getToolTipText());
         myOverTarget = closestTarget;
-        needsRebuildList();
+        needsRebuildList(closestTarget.getComponent());
       }
     }
     if (closestTarget != null) {
@@ -561,14 +607,14 @@ public class Scene implements SelectionListener, Disposable {
       if (snapTarget != mySnapTarget) {
         if (mySnapTarget != null) {
           mySnapTarget.setMouseHovered(false);
+          needsRebuildList(mySnapTarget.getComponent());
           mySnapTarget = null;
-          needsRebuildList();
         }
         if (snapTarget != null) {
           snapTarget.setMouseHovered(true);
           transform.setToolTip(closestTarget.getToolTipText());
           mySnapTarget = closestTarget;
-          needsRebuildList();
+          needsRebuildList(closestTarget.getComponent());
         }
       }
     }
@@ -576,13 +622,14 @@ public class Scene implements SelectionListener, Disposable {
     if (myCurrentComponent != closestComponent) {
       if (myCurrentComponent != null) {
         myCurrentComponent.setDrawState(SceneComponent.DrawState.NORMAL);
+        needsRebuildList(myCurrentComponent);
         myCurrentComponent = null;
       }
       if (closestComponent != null) {
         closestComponent.setDrawState(SceneComponent.DrawState.HOVER);
+        needsRebuildList(closestComponent);
         myCurrentComponent = closestComponent;
       }
-      needsRebuildList();
     }
 
     setCursor(transform, x, y);
@@ -878,6 +925,20 @@ public class Scene implements SelectionListener, Disposable {
   // requiring it to be done explicitly by the code that's modifying them.
   public void needsRebuildList() {
     myDisplayListVersion++;
+    myRetainedDisplayListStates.clear();
+  }
+
+  /**
+   * Like {@link #needsRebuildList()}, for a change that only affects how {@code component} is drawn: the retained
+   * display lists of the other components, except its ancestors, are reused by the next repaint.
+   */
+  public void needsRebuildList(@Nullable SceneComponent component) {
+    if (component == null) {
+      needsRebuildList();
+      return;
+    }
+    component.invalidateDisplayList();
+    myDisplayListVersion++;
   }
 
   //endregion
@@ -984,4 +1045,15 @@ public class Scene implements SelectionListener, Disposable {
     return new Dimension(Coordinates.pxToDp(getDesignSurface(), viewInfo.getRight() - viewInfo.getLeft()),
                          Coordinates.pxToDp(getDesignSurface(), viewInfo.getBottom() - viewInfo.getTop()));
   }
+
+  private static class RetainedDisplayListState {
+    /** What the retained display lists were built for, see {@link #getRetainedDisplayListKey(SceneContext)}. */
+    @NotNull private final List<Object> myKey;
+    private final long myVersion;
+
+    private RetainedDisplayListState(@NotNull List<Object> key, long version) {
+      myKey = key;
+      myVersion = version;
+    }
+  }
 }
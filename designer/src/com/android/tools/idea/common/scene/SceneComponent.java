@@ -38,6 +38,8 @@ import java.awt.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Stream;
 
@@ -93,6 +95,12 @@ public class SceneComponent {
 
   private Notch.Provider myNotchProvider;
 
+  /**
+   * Commands last produced for this component and its children by {@link #buildDisplayList} while the scene was
+   * building a retained display list, for each context, see {@link Scene#buildRetainedDisplayList}.
+   */
+  private final Map<SceneContext, RetainedDisplayList> myRetainedDisplayLists = new WeakHashMap<>();
+
   @AndroidDpCoordinate
   public int getCenterX() {
     return myCurrentLeft + (myCurrentRight - myCurrentLeft) / 2;
@@ -503,6 +511,9 @@ public class SceneComponent {
   }
 
   public void setToolLocked(boolean locked) {
+    if (myIsToolLocked != locked) {
+      invalidateDisplayList();
+    }
     myIsToolLocked = locked;
   }
 
@@ -525,6 +536,7 @@ public class SceneComponent {
     }
     if (oldState != myDrawState) {
       DecoratorUtilities.setTimeChange(myNlComponent, DecoratorUtilities.VIEW, DecoratorUtilities.mapState(drawState));
+      invalidateDisplayList();
     }
   }
 
@@ -537,6 +549,10 @@ public class SceneComponent {
     if (!selected || !myIsSelected) {
       myShowBaseline = false;
     }
+    if (myIsSelected != selected) {
+      // The parent decides whether to draw the connections of selected children
+      invalidateDisplayList();
+    }
     myIsSelected = selected;
     if (myIsSelected) {
       setDrawState(DrawState.SELECTED);
@@ -687,12 +703,14 @@ public class SceneComponent {
       myCachedTargetList = null;
       myTargets.add(target);
     }
+    invalidateDisplayList();
   }
 
   public void addChild(@NotNull SceneComponent child) {
     child.removeFromParent();
     child.setParent(this);
     myChildren.add(child);
+    invalidateDisplayList();
   }
 
   public void removeFromParent() {
@@ -705,6 +723,7 @@ public class SceneComponent {
   private void remove(@NotNull SceneComponent component) {
     if (myChildren.remove(component)) {
       component.myParent = null;
+      invalidateDisplayList();
     }
   }
 
@@ -744,6 +763,9 @@ public class SceneComponent {
       Target target = targets.get(i);
       needsRebuildDisplayList |= target.layout(sceneTransform, myCurrentLeft, myCurrentTop, myCurrentRight, myCurrentBottom);
     }
+    if (needsRebuildDisplayList) {
+      invalidateDisplayList();
+    }
     int childCount = myChildren.size();
     for (int i = 0; i < childCount; i++) {
       SceneComponent child = myChildren.get(i);
@@ -789,7 +811,39 @@ public class SceneComponent {
   }
 
   public void buildDisplayList(long time, @NotNull DisplayList list, SceneContext sceneContext) {
-    myDecorator.buildList(list, time, sceneContext, this);
+    if (!myScene.isBuildingRetainedDisplayList()) {
+      myDecorator.buildList(list, time, sceneContext, this);
+      return;
+    }
+    long version = myScene.getRetainedDisplayListVersion();
+    RetainedDisplayList retained = myRetainedDisplayLists.computeIfAbsent(sceneContext, context -> new RetainedDisplayList());
+    if (retained.myDirty || retained.myVersion != version) {
+      retained.myCommands.clear();
+      retained.myDirty = false;
+      myDecorator.buildList(retained.myCommands, time, sceneContext, this);
+      retained.myVersion = version;
+    }
+    list.addAll(retained.myCommands);
+  }
+
+  /**
+   * Marks the retained display list of this component, and of all its ancestors since their lists include it, as
+   * out of date. This doesn't by itself cause the scene to be repainted, see {@link Scene#needsRebuildList(SceneComponent)}.
+   */
+  public void invalidateDisplayList() {
+    // Don't stop at an ancestor that is already dirty: a build can skip some children and leave them dirty
+    // while their parent is clean again.
+    for (SceneComponent component = this; component != null; component = component.myParent) {
+      for (RetainedDisplayList retained : component.myRetainedDisplayLists.values()) {
+        retained.myDirty = true;
+      }
+    }
+  }
+
+  private static class RetainedDisplayList {
+    private final DisplayList myCommands = new DisplayList();
+    private long myVersion;
+    private boolean myDirty = true;
   }
 
   //endregion
@@ -855,6 +909,7 @@ public class SceneComponent {
       myCachedTargetList = null;
       myTargets.clear();
     }
+    invalidateDisplayList();
 
     // update the Targets created by parent's TargetProvider
     SceneComponent parent = myParent;
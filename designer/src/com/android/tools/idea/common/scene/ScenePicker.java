@@ -16,14 +16,25 @@
 package com.android.tools.idea.common.scene;
 
 import java.util.Arrays;
+import java.util.function.IntConsumer;
 
 /**
  * This class provides efficient detection of many objects
+ * <p>
+ * Once there are enough objects, {@link #find(int, int)} only checks the objects registered in the cell of a uniform grid
+ * containing the location, plus the few objects too big to be registered per cell. The grid is built by the first find after
+ * objects were added, and kept when the same objects are added again after a {@link #reset()}, which is what happens on
+ * every mouse event as long as the scene doesn't change.
  */
 public class ScenePicker {
   private final static int MAX_DATA_SIZE = 10;
   private final static int INITAL_OBJECT_STORE = 30;
   private final static double EPSILON = 0.00001;
+  private final static int MIN_INDEXED_OBJECTS = 64;
+  private final static int GRID_CELL_SIZE = 64;
+  private final static int MAX_GRID_CELLS = 64 * 1024;
+  private final static int MAX_CELLS_PER_OBJECT = 64;
+  private final static int CURVE_SEGMENTS = 32;
   private double[] mObjectData = new double[100];
   private int mObjectDataUsed = 0;
   private int[] mObjectOffset = new int[INITAL_OBJECT_STORE];
@@ -45,6 +56,26 @@ public class ScenePicker {
   CircleSelectionEngine mCircle = new CircleSelectionEngine();
   SelectionEngine[] myEngines = new SelectionEngine[OBJECT_CIRCLE + 1];
 
+  // Grid index, valid for the objects copied into the mIndexed* arrays
+  private boolean mIndexValid;
+  private int mIndexedCount = -1;
+  private int mIndexedDataUsed;
+  private int[] mIndexedTypes = new int[0];
+  private int[] mIndexedRect = new int[0];
+  private double[] mIndexedData = new double[0];
+  private Object[] mIndexedObjects = new Object[0];
+  private int mGridX;
+  private int mGridY;
+  private int mGridCellSize;
+  private int mGridColumns;
+  private int mGridRows;
+  private int[] mCellStart = new int[1];
+  private int[] mCellObjects = new int[0];
+  private int[] mLargeObjects = new int[0];
+  private int mLargeObjectCount;
+  // Points along each curve, computed the first time the curve is checked
+  private double[][] mCurvePoints = new double[INITAL_OBJECT_STORE][];
+
   {
     myEngines[OBJECT_LINE] = mLine;
     myEngines[OBJECT_POINT] = mPoint;
@@ -60,17 +91,157 @@ public class ScenePicker {
    * @param y location y
    */
   public void find(int x, int y) {
+    if (!mIndexValid) {
+      updateIndex();
+    }
+    if (mObjectCount < MIN_INDEXED_OBJECTS) {
+      for (int i = 0; i < mObjectCount; i++) {
+        find(i, x, y);
+      }
+      return;
+    }
+
+    int start = 0;
+    int end = 0;
+    int column = Math.floorDiv(x - mGridX, mGridCellSize);
+    int row = Math.floorDiv(y - mGridY, mGridCellSize);
+    if (column >= 0 && column < mGridColumns && row >= 0 && row < mGridRows) {
+      int cell = row * mGridColumns + column;
+      start = mCellStart[cell];
+      end = mCellStart[cell + 1];
+    }
+    // Both lists are sorted, merge them to report the objects in the order they were added
+    int large = 0;
+    while (start < end || large < mLargeObjectCount) {
+      if (large == mLargeObjectCount || (start < end && mCellObjects[start] < mLargeObjects[large])) {
+        find(mCellObjects[start++], x, y);
+      }
+      else {
+        find(mLargeObjects[large++], x, y);
+      }
+    }
+  }
+
+  private void find(int i, int x, int y) {
+    int p = i * 4;
+    int x1 = mRect[p++];
+    int y1 = mRect[p++];
+    int x2 = mRect[p++];
+    int y2 = mRect[p];
+    if (inRect(x, y, x1, y1, x2, y2)) {
+      SelectionEngine selector = myEngines[mTypes[i]];
+      if (selector.inRange(i, x, y)) {
+        mHitElementListener.over(mObjects[i], selector.distance());
+      }
+    }
+  }
+
+  /**
+   * Makes the grid index and the cached curve points match the current objects, recomputing them only if the objects
+   * differ from the ones they were computed for.
+   */
+  private void updateIndex() {
+    mIndexValid = true;
+    if (isIndexed()) {
+      return;
+    }
+
+    mIndexedCount = mObjectCount;
+    mIndexedDataUsed = mObjectDataUsed;
+    mIndexedTypes = Arrays.copyOf(mTypes, mObjectCount);
+    mIndexedRect = Arrays.copyOf(mRect, mObjectCount * 4);
+    mIndexedData = Arrays.copyOf(mObjectData, mObjectDataUsed);
+    mIndexedObjects = Arrays.copyOf(mObjects, mObjectCount);
+    Arrays.fill(mCurvePoints, null);
+    if (mObjectCount < MIN_INDEXED_OBJECTS) {
+      return;
+    }
+
+    int minX = Integer.MAX_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
     for (int i = 0; i < mObjectCount; i++) {
       int p = i * 4;
-      int x1 = mRect[p++];
-      int y1 = mRect[p++];
-      int x2 = mRect[p++];
-      int y2 = mRect[p];
-      if (inRect(x, y, x1, y1, x2, y2)) {
-        SelectionEngine selector = myEngines[mTypes[i]];
-        if (selector.inRange(i, x, y)) {
-          mHitElementListener.over(mObjects[i], selector.distance());
-        }
+      minX = Math.min(minX, mRect[p]);
+      minY = Math.min(minY, mRect[p + 1]);
+      maxX = Math.max(maxX, mRect[p + 2]);
+      maxY = Math.max(maxY, mRect[p + 3]);
+    }
+    mGridX = minX;
+    mGridY = minY;
+    mGridCellSize = GRID_CELL_SIZE;
+    long width = (long)maxX - minX + 1;
+    long height = (long)maxY - minY + 1;
+    while ((width / mGridCellSize + 1) * (height / mGridCellSize + 1) > MAX_GRID_CELLS) {
+      mGridCellSize *= 2;
+    }
+    mGridColumns = (int)(width / mGridCellSize + 1);
+    mGridRows = (int)(height / mGridCellSize + 1);
+
+    // Count the objects per cell, then store them in cell order (objects in a cell stay sorted by index)
+    int cellCount = mGridColumns * mGridRows;
+    mCellStart = new int[cellCount + 1];
+    mLargeObjects = new int[mObjectCount];
+    mLargeObjectCount = 0;
+    for (int i = 0; i < mObjectCount; i++) {
+      if (isLargeObject(i)) {
+        mLargeObjects[mLargeObjectCount++] = i;
+        continue;
+      }
+      forEachCell(i, cell -> mCellStart[cell + 1]++);
+    }
+    for (int cell = 0; cell < cellCount; cell++) {
+      mCellStart[cell + 1] += mCellStart[cell];
+    }
+    mCellObjects = new int[mCellStart[cellCount]];
+    int[] next = Arrays.copyOf(mCellStart, cellCount);
+    for (int i = 0; i < mObjectCount; i++) {
+      if (!isLargeObject(i)) {
+        int object = i;
+        forEachCell(i, cell -> mCellObjects[next[cell]++] = object);
+      }
+    }
+  }
+
+  private boolean isIndexed() {
+    if (mIndexedCount != mObjectCount || mIndexedDataUsed != mObjectDataUsed) {
+      return false;
+    }
+    for (int i = 0; i < mObjectCount; i++) {
+      if (mIndexedTypes[i] != mTypes[i] || mIndexedObjects[i] != mObjects[i]) {
+        return false;
+      }
+    }
+    for (int i = 0; i < mObjectCount * 4; i++) {
+      if (mIndexedRect[i] != mRect[i]) {
+        return false;
+      }
+    }
+    for (int i = 0; i < mObjectDataUsed; i++) {
+      if (mIndexedData[i] != mObjectData[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isLargeObject(int i) {
+    int p = i * 4;
+    long columns = Math.floorDiv(mRect[p + 2] - mGridX, mGridCellSize) - Math.floorDiv(mRect[p] - mGridX, mGridCellSize) + 1;
+    long rows = Math.floorDiv(mRect[p + 3] - mGridY, mGridCellSize) - Math.floorDiv(mRect[p + 1] - mGridY, mGridCellSize) + 1;
+    return columns * rows > MAX_CELLS_PER_OBJECT;
+  }
+
+  private void forEachCell(int i, IntConsumer consumer) {
+    int p = i * 4;
+    int column1 = Math.floorDiv(mRect[p] - mGridX, mGridCellSize);
+    int row1 = Math.floorDiv(mRect[p + 1] - mGridY, mGridCellSize);
+    int column2 = Math.floorDiv(mRect[p + 2] - mGridX, mGridCellSize);
+    int row2 = Math.floorDiv(mRect[p + 3] - mGridY, mGridCellSize);
+    for (int row = row1; row <= row2; row++) {
+      for (int column = column1; column <= column2; column++) {
+        consumer.accept(row * mGridColumns + column);
       }
     }
   }
@@ -112,6 +283,7 @@ public class ScenePicker {
    * Resets the tables to allow reuse of class
    */
   public void reset() {
+    mIndexValid = false;
     mObjectCount = 0;
     mObjectDataUsed = 0;
     Arrays.fill(mObjects, null);// delete references
@@ -121,6 +293,7 @@ public class ScenePicker {
    * resize tables as the number of objects grow
    */
   private void resizeTables() {
+    mIndexValid = false;
     if (mObjectDataUsed > mObjectData.length - MAX_DATA_SIZE) {
       mObjectData = Arrays.copyOf(mObjectData, mObjectData.length * 2);
     }
@@ -131,6 +304,7 @@ public class ScenePicker {
     mTypes = Arrays.copyOf(mTypes, mTypes.length * 2);
     mObjects = Arrays.copyOf(mObjects, mObjects.length * 2);
     mRect = Arrays.copyOf(mRect, mRect.length * 2);
+    mCurvePoints = Arrays.copyOf(mCurvePoints, mCurvePoints.length * 2);
   }
 
   /**
@@ -528,6 +702,34 @@ public class ScenePicker {
     @Override
     protected boolean inRange() {
       double range = mObjectData[mDataOffset];
+      double[] points = mCurvePoints[mObject];
+      if (points == null) {
+        points = computePoints();
+        mCurvePoints[mObject] = points;
+      }
+      //TODO currently returns first distance in range not minimum distance
+      for (int i = 0; i + 3 < points.length; i += 2) {
+        double x1 = points[i];
+        double y1 = points[i + 1];
+        double x2 = points[i + 2];
+        double y2 = points[i + 3];
+        if (mMouseX < Math.min(x1, x2) - range || mMouseX > Math.max(x1, x2) + range ||
+            mMouseY < Math.min(y1, y2) - range || mMouseY > Math.max(y1, y2) + range) {
+          continue;
+        }
+        double distance = distanceToSegment(x1, y1, x2, y2);
+        if (distance < range) {
+          mDistance = distance;
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Approximates the curve by {@link #CURVE_SEGMENTS} line segments, returned as the x and y of their end points.
+     */
+    private double[] computePoints() {
       cx0 = mObjectData[mDataOffset + 1];
       cx1 = mObjectData[mDataOffset + 2];
       cx2 = mObjectData[mDataOffset + 3];
@@ -536,22 +738,23 @@ public class ScenePicker {
       cy1 = mObjectData[mDataOffset + 6];
       cy2 = mObjectData[mDataOffset + 7];
       cy3 = mObjectData[mDataOffset + 8];
-      double rangeSqr = range * range;
-      //TODO currently returns first distance in range not minimum distance
-      for (double t = 0; t < 1; t += .03) {
-        double t2 = t * t;
-        double t3 = t * t2;
-        double x = cx0 + cx1 * t + cx2 * t2 + cx3 * t3;
-        double y = cy0 + cy1 * t + cy2 * t2 + cy3 * t3;
-        double dx = x - mMouseX;
-        double dy = y - mMouseY;
-        double distanceSq = dx * dx + dy * dy;
-        if (rangeSqr > distanceSq) {
-          mDistance = Math.sqrt(distanceSq);
-          return true;
-        }
+      double[] points = new double[(CURVE_SEGMENTS + 1) * 2];
+      for (int i = 0; i <= CURVE_SEGMENTS; i++) {
+        double t = (double)i / CURVE_SEGMENTS;
+        points[i * 2] = evalX(t);
+        points[i * 2 + 1] = evalY(t);
       }
-      return false;
+      return points;
+    }
+
+    private double distanceToSegment(double x1, double y1, double x2, double y2) {
+      double lengthSq = (x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1);
+      if (lengthSq < EPSILON) {
+        return Math.hypot(x1 - mMouseX, y1 - mMouseY);
+      }
+      double t = ((mMouseX - x1) * (x2 - x1) + (mMouseY - y1) * (y2 - y1)) / lengthSq;
+      t = Math.max(0, Math.min(1, t));
+      return Math.hypot(x1 + t * (x2 - x1) - mMouseX, y1 + t * (y2 - y1) - mMouseY);
     }
 
     public final double evalX(double t) {
@@ -44,9 +44,15 @@ import java.util.function.Function;
 public class DisplayList {
   private final static boolean DEBUG = false;
   private ArrayList<DrawCommand> myCommands = new ArrayList<>();
+  /**
+   * The sorted commands painted by {@link #paint}, kept until the list changes so that repainting an unchanged
+   * list doesn't rebuild and sort the command tree every time.
+   */
+  @Nullable private CommandSet mySortedCommands;
 
   public void clear() {
     myCommands.clear();
+    mySortedCommands = null;
   }
 
   public ArrayList<DrawCommand> getCommands() {
@@ -312,6 +318,15 @@ public class DisplayList {
 
   public void add(DrawCommand cmd) {
     myCommands.add(cmd);
+    mySortedCommands = null;
+  }
+
+  /**
+   * Appends all the commands of {@code list}, in order. The commands themselves are shared, not copied.
+   */
+  public void addAll(DisplayList list) {
+    myCommands.addAll(list.myCommands);
+    mySortedCommands = null;
   }
 
   public UNClip addClip(SceneContext context, @AndroidDpCoordinate Rectangle r) {
@@ -320,7 +335,7 @@ public class DisplayList {
     int w = context.getSwingDimensionDip(r.width);
     int h = context.getSwingDimensionDip(r.height);
     Clip c = new Clip(l, t, w, h);
-    myCommands.add(c);
+    add(c);
     return new UNClip(c);
   }
 
@@ -329,7 +344,7 @@ public class DisplayList {
     int t = context.getSwingYDip(r.y);
     int w = context.getSwingDimensionDip(r.width);
     int h = context.getSwingDimensionDip(r.height);
-    myCommands.add(new Rect(l, t, w, h, color));
+    add(new Rect(l, t, w, h, color));
   }
 
   public void addRect(SceneContext context,
@@ -509,9 +524,13 @@ public class DisplayList {
       System.out.println("<");
     }
     Graphics2D g = (Graphics2D)g2.create();
-    DrawCommand[] array = myCommands.toArray(new DrawCommand[myCommands.size()]);
-    CommandSet set = new CommandSet(array, 0, array.length - 1);
-    set.sort();
+    CommandSet set = mySortedCommands;
+    if (set == null) {
+      DrawCommand[] array = myCommands.toArray(new DrawCommand[myCommands.size()]);
+      set = new CommandSet(array, 0, array.length - 1);
+      set.sort();
+      mySortedCommands = set;
+    }
     if (DEBUG) {
       set.print(">");
       System.out.println("-end-");
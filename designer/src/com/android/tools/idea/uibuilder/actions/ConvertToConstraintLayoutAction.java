@@ -40,7 +40,10 @@ import com.intellij.openapi.application.Result;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
@@ -169,9 +172,36 @@ public class ConvertToConstraintLayoutAction extends AnAction {
     converter.execute();
   }
 
-  private static void inferConstraints(@NotNull NlComponent target) {
+  /**
+   * Infers the constraints of the converted layout in a background task, which the user can cancel, and then sets
+   * them on the components in a write command.
+   */
+  private static void inferConstraints(@NotNull NlComponent target, @NotNull Scout.Inference inference) {
+    new Task.Backgroundable(target.getModel().getProject(), "Inferring Constraints", true) {
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        inference.compute();
+      }
+
+      @Override
+      public void onSuccess() {
+        // The layout may have been edited or removed in the meantime
+        if (!target.getTag().isValid()) {
+          return;
+        }
+        NlWriteCommandAction.run(target, "Infer Constraints", () -> applyInferredConstraints(target, inference));
+      }
+
+      @Override
+      public void onThrowable(@NotNull Throwable error) {
+        Logger.getInstance(ConvertToConstraintLayoutAction.class).warn(error);
+      }
+    }.queue();
+  }
+
+  private static void applyInferredConstraints(@NotNull NlComponent target, @NotNull Scout.Inference inference) {
     try {
-      Scout.inferConstraintsFromConvert(target);
+      inference.apply();
       ArrayList<NlComponent> list = new ArrayList<>(target.getChildren());
       list.add(0, target);
       for (NlComponent component : list) {
@@ -279,6 +309,7 @@ public class ConvertToConstraintLayoutAction extends AnAction {
           public void onRenderCompleted() {
             assert id != null;
             NlComponent layout = myScreenView.getModel().find(id);
+            Ref<Scout.Inference> inference = Ref.create();
 
             Runnable action = new NlWriteCommandAction(Collections.singletonList(layout), "Infer Constraints", () -> {
               if (layout != null) {
@@ -291,12 +322,22 @@ public class ConvertToConstraintLayoutAction extends AnAction {
                   component.setAttribute(TOOLS_URI, ATTR_LAYOUT_CONVERSION_WRAP_HEIGHT, Integer.toString(d.height));
                 }
 
-                inferConstraints(layout);
                 manager.removeRenderListener(this);
+                try {
+                  inference.set(Scout.prepareInferenceFromConvert(layout));
+                }
+                catch (Throwable t) {
+                  Logger.getInstance(ConvertToConstraintLayoutAction.class).warn(t);
+                }
               }
             });
 
-            ApplicationManager.getApplication().invokeLater(action);
+            ApplicationManager.getApplication().invokeLater(() -> {
+              action.run();
+              if (layout != null && !inference.isNull()) {
+                inferConstraints(layout, inference.get());
+              }
+            });
           }
         });
 
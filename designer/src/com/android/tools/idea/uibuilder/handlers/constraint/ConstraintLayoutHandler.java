@@ -50,6 +50,8 @@ import com.google.wireless.android.sdk.stats.LayoutEditorEvent;
 import com.intellij.icons.AllIcons;
 import com.intellij.ide.util.PropertiesComponent;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.ui.popup.JBPopupFactory;
 import com.intellij.ui.JBColor;
 import com.intellij.ui.awt.RelativePoint;
@@ -590,14 +592,41 @@ public class ConstraintLayoutHandler extends ViewGroupHandler implements Compone
                         @InputEventMask int modifiers) {
       NlUsageTrackerManager.getInstance(editor.getScene().getDesignSurface())
         .logAction(LayoutEditorEvent.LayoutEditorEventType.INFER_CONSTRAINS);
+      Scout.Inference inference;
       try {
-        Scout.inferConstraintsAndCommit(component);
-        ensureLayersAreShown(editor, 1000);
+        inference = Scout.prepareInference(component);
       }
       catch (Exception e) {
         // TODO show dialog the inference failed
         Logger.getInstance(ConstraintLayoutHandler.class).warn("Error in inferring constraints", e);
+        return;
       }
+      // Computing the inference takes a while for large layouts, so let the user cancel it
+      new Task.Backgroundable(component.getModel().getProject(), "Inferring Constraints", true) {
+        @Override
+        public void run(@NotNull ProgressIndicator indicator) {
+          inference.compute();
+        }
+
+        @Override
+        public void onSuccess() {
+          if (!component.getTag().isValid()) {
+            return;
+          }
+          try {
+            Scout.applyInferenceAndCommit(component, inference);
+            ensureLayersAreShown(editor, 1000);
+          }
+          catch (Exception e) {
+            Logger.getInstance(ConstraintLayoutHandler.class).warn("Error in inferring constraints", e);
+          }
+        }
+
+        @Override
+        public void onThrowable(@NotNull Throwable error) {
+          Logger.getInstance(ConstraintLayoutHandler.class).warn("Error in inferring constraints", error);
+        }
+      }.queue();
     }
 
     @Override
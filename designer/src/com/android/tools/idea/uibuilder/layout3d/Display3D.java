@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.uibuilder.layout3d;
 
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.util.ui.UIUtil;
 
 import javax.imageio.ImageIO;
@@ -32,6 +33,11 @@ import java.util.Vector;
  * Display the 3D rendering of of the mTriData
  */
 public class Display3D extends JPanel {
+  private static final Logger LOG = Logger.getInstance(Display3D.class);
+  /**
+   * Frames taking longer than this to render are logged, as they make rotating the view feel sluggish
+   */
+  private static final long SLOW_FRAME_MS = 40;
   private boolean myRetinaDisplay = false;
   BufferedImage myImage;
   float[] myZBuffer = new float[1];
@@ -42,6 +48,8 @@ public class Display3D extends JPanel {
   boolean isImageInvalid = true;
   static final boolean mPerspective = false;
 
+  long myLastFrameTimeNanos;
+
   Vector<ActionListener> myViewChangeListener = new Vector<>();
 
   public String getOrientationString(Rectangle rect) {
@@ -148,22 +156,37 @@ public class Display3D extends JPanel {
         mTriData.transform (myInvMatrix, myTransFormCache);
       }
 
-      Arrays.fill(myZBuffer, Float.MAX_VALUE);
-      Arrays.fill(rgbData, 0xFF000000);
-
-      if (mTriData.myTexture != null) {
-        Rasterize.toZBuff(myZBuffer, rgbData, w, h, myTransFormCache,
-                          mTriData.myTexture, mTriData.myTextureWidth, mTriData.myTextureHeight, myViewMatrix.m);
-      }
-      else { // run a simple render if no myTexture
-        Rasterize.simple(myZBuffer, rgbData, w, h, myTransFormCache);
-      }
-
+      render(rgbData, w, h);
       isImageInvalid = false;
     }
     return myImage;
   }
 
+  private void render(int[] rgbData, int w, int h) {
+    long start = System.nanoTime();
+    Arrays.fill(myZBuffer, Float.MAX_VALUE);
+    Arrays.fill(rgbData, 0xFF000000);
+
+    if (mTriData.myTexture != null) {
+      Rasterize.toZBuff(myZBuffer, rgbData, w, h, myTransFormCache, mTriData.getBlockedTexture(), myViewMatrix.m);
+    }
+    else { // run a simple render if no myTexture
+      Rasterize.simple(myZBuffer, rgbData, w, h, myTransFormCache);
+    }
+    myLastFrameTimeNanos = System.nanoTime() - start;
+    long ms = myLastFrameTimeNanos / 1000000;
+    if (ms > SLOW_FRAME_MS && LOG.isDebugEnabled()) {
+      LOG.debug("Rendering " + w + "x" + h + " took " + ms + "ms");
+    }
+  }
+
+  /**
+   * @return the time it took to render the last frame in nanoseconds
+   */
+  public long getLastFrameTimeNanos() {
+    return myLastFrameTimeNanos;
+  }
+
   public void setTriData(TriData data) {
     mTriData = data;
     setup();
@@ -212,17 +235,7 @@ public class Display3D extends JPanel {
         mTriData.transform (myInvMatrix, myTransFormCache);
       }
 
-      Arrays.fill(myZBuffer, Float.MAX_VALUE);
-      Arrays.fill(rgbData, 0xFF000000);
-
-      if (mTriData.myTexture != null) {
-        Rasterize.toZBuff(myZBuffer, rgbData, w, h, myTransFormCache,
-                          mTriData.myTexture, mTriData.myTextureWidth, mTriData.myTextureHeight, myViewMatrix.m);
-      }
-      else { // run a simple render if no myTexture
-        Rasterize.simple(myZBuffer, rgbData, w, h, myTransFormCache);
-      }
-
+      render(rgbData, w, h);
       isImageInvalid = false;
     }
     g.drawImage(myImage, 0, 0, getWidth(), getHeight(), null);
@@ -16,6 +16,8 @@
 package com.android.tools.idea.uibuilder.layout3d;
 
 import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * This is a collection of code to rasterize code
@@ -270,6 +272,27 @@ public class Rasterize {
                                               int[] texture, int tWidth, int tHeight, double[] matrix)
 
   {
+    render_perspectiveAffine(zbuff, rgb, w, h, fx1, fy1, fz1, fx2, fy2, fz2, fx3, fy3, fz3, tx1, ty1, tx2, ty2, tx3, ty3,
+                             new BlockedTexture(texture, tWidth, tHeight), matrix, 0, 0, w, h);
+  }
+
+  /**
+   * Render a myTexture including use of zbuffer, only drawing the pixels inside the clip rectangle
+   * (clipX0, clipY0 inclusive, clipX1, clipY1 exclusive)
+   */
+  public static void render_perspectiveAffine(float[] zbuff, int[] rgb, int w, int h,
+                                              float fx1, float fy1, float fz1,
+                                              float fx2, float fy2, float fz2,
+                                              float fx3, float fy3, float fz3,
+                                              float tx1, float ty1,
+                                              float tx2, float ty2,
+                                              float tx3, float ty3,
+                                              BlockedTexture texture, double[] matrix,
+                                              int clipX0, int clipY0, int clipX1, int clipY1)
+
+  {
+    int tWidth = texture.getWidth();
+    int tHeight = texture.getHeight();
     if (((fx1 - fx2) * (fy3 - fy2) - (fy1 - fy2) * (fx3 - fx2)) < 0) {
       float tmpx = fx1;
       float tmpy = fy1;
@@ -376,17 +399,20 @@ public class Rasterize {
     int miny = (min(Y1, Y2, Y3) + 0xF) >> 4;
     int maxy = (max(Y1, Y2, Y3) + 0xF) >> 4;
 
-    if (miny < 0) {
-      miny = 0;
+    if (miny < clipY0) {
+      miny = clipY0;
     }
-    if (minx < 0) {
-      minx = 0;
+    if (minx < clipX0) {
+      minx = clipX0;
     }
-    if (maxx > w) {
-      maxx = w;
+    if (maxx > clipX1) {
+      maxx = clipX1;
     }
-    if (maxy > h) {
-      maxy = h;
+    if (maxy > clipY1) {
+      maxy = clipY1;
+    }
+    if (minx >= maxx || miny >= maxy) {
+      return;
     }
     int off = miny * w;
 
@@ -426,7 +452,7 @@ public class Rasterize {
             int ty = clamp((int)(ty_yoff + dty_dsx * x), tHeight - 1);
             try {
               //							rgb[point] =   0x10101*clamp(255/(1+Math.abs(ty)),255);
-              rgb[point] = shade(texture[tx + ty * tWidth], diffuse);
+              rgb[point] = shade(texture.get(tx, ty), diffuse);
             }
             catch (Exception e) {
               System.err.println(" " + tx + ", " + ty);
@@ -830,6 +856,21 @@ public class Rasterize {
                           float fx3, float fy3, float fz3,
                           int color)
 
+  {
+    flat(zbuff, rgb, w, h, fx1, fy1, fz1, fx2, fy2, fz2, fx3, fy3, fz3, color, 0, 0, w, h);
+  }
+
+  /**
+   * Render a flat shaded triangle including use of zbuffer, only drawing the pixels inside the clip rectangle
+   * (clipX0, clipY0 inclusive, clipX1, clipY1 exclusive)
+   */
+  public static void flat(float[] zbuff, int[] rgb, int w, int h,
+                          float fx1, float fy1, float fz1,
+                          float fx2, float fy2, float fz2,
+                          float fx3, float fy3, float fz3,
+                          int color,
+                          int clipX0, int clipY0, int clipX1, int clipY1)
+
   {
     if (((fx1 - fx2) * (fy3 - fy2) - (fy1 - fy2) * (fx3 - fx2)) < 0) {
       float tmpx = fx1;
@@ -908,17 +949,20 @@ public class Rasterize {
     int miny = (min(Y1, Y2, Y3) + 0xF) >> 4;
     int maxy = (max(Y1, Y2, Y3) + 0xF) >> 4;
 
-    if (miny < 0) {
-      miny = 0;
+    if (miny < clipY0) {
+      miny = clipY0;
     }
-    if (minx < 0) {
-      minx = 0;
+    if (minx < clipX0) {
+      minx = clipX0;
     }
-    if (maxx > w) {
-      maxx = w;
+    if (maxx > clipX1) {
+      maxx = clipX1;
     }
-    if (maxy > h) {
-      maxy = h;
+    if (maxy > clipY1) {
+      maxy = clipY1;
+    }
+    if (minx >= maxx || miny >= maxy) {
+      return;
     }
     int off = miny * w;
 
@@ -1272,32 +1316,54 @@ public class Rasterize {
    */
   public static void toZBuff(float[] zbuff, int[] rgb, int w, int h, TriData tri, int[] texture,
                              int tWidth, int tHeight, double[] matrix) {
-    for (int i = 0; i < tri.myIndex.length; i += 3) {
-      int p1 = tri.myIndex[i];
-      int p2 = tri.myIndex[i + 1];
-      int p3 = tri.myIndex[i + 2];
-      int type = tri.mySurfaceType[i / 3];
-      if (type == 1) {
-        render_perspectiveAffine(zbuff, rgb, w, h,
-                                 tri.myVert[p1], tri.myVert[p1 + 1], tri.myVert[p1 + 2],
-                                 tri.myVert[p2], tri.myVert[p2 + 1], tri.myVert[p2 + 2],
-                                 tri.myVert[p3], tri.myVert[p3 + 1], tri.myVert[p3 + 2],
-                                 tri.myTexture_uv[p1], tri.myTexture_uv[p1 + 1],
-                                 tri.myTexture_uv[p2], tri.myTexture_uv[p2 + 1],
-                                 tri.myTexture_uv[p3], tri.myTexture_uv[p3 + 1],
-                                 texture, tWidth, tHeight, matrix
-        );
-      }
-      else {
-        flat(zbuff, rgb, w, h,
-             tri.myVert[p1], tri.myVert[p1 + 1], tri.myVert[p1 + 2],
-             tri.myVert[p2], tri.myVert[p2 + 1], tri.myVert[p2 + 2],
-             tri.myVert[p3], tri.myVert[p3 + 1], tri.myVert[p3 + 2],
+    toZBuff(zbuff, rgb, w, h, tri, new BlockedTexture(texture, tWidth, tHeight), matrix);
+  }
 
-             (type == 0) ? BLUE : GRAY
-        );
+  /**
+   * CheckLayout3d entery point to convert tri data to an image.
+   * The image is split in tiles of {@link #TILE_SIZE} pixels which are rendered in parallel.
+   * Within a tile the triangles are drawn in the order of the tri data so the result is the
+   * same as drawing them one after the other on the whole image.
+   *
+   * @param zbuff   used to provide the z-buffer
+   * @param rgb     the image is output here
+   * @param w       the width of the image
+   * @param h       the height of the image
+   * @param tri     the data set it contains triangles indexes etc
+   * @param texture the myTexture use to render the triangles with
+   * @param matrix  the matrix that define the transform (Helps simplify the myTexture mapping.
+   */
+  public static void toZBuff(float[] zbuff, int[] rgb, int w, int h, TriData tri, BlockedTexture texture, double[] matrix) {
+    TileBins bins = new TileBins(w, h, tri);
+    bins.forEachTile((tile, x0, y0, x1, y1) -> {
+      for (int k = bins.myStart[tile]; k < bins.myStart[tile + 1]; k++) {
+        int i = bins.myTriangles[k];
+        int p1 = tri.myIndex[i];
+        int p2 = tri.myIndex[i + 1];
+        int p3 = tri.myIndex[i + 2];
+        int type = tri.mySurfaceType[i / 3];
+        if (type == 1) {
+          render_perspectiveAffine(zbuff, rgb, w, h,
+                                   tri.myVert[p1], tri.myVert[p1 + 1], tri.myVert[p1 + 2],
+                                   tri.myVert[p2], tri.myVert[p2 + 1], tri.myVert[p2 + 2],
+                                   tri.myVert[p3], tri.myVert[p3 + 1], tri.myVert[p3 + 2],
+                                   tri.myTexture_uv[p1], tri.myTexture_uv[p1 + 1],
+                                   tri.myTexture_uv[p2], tri.myTexture_uv[p2 + 1],
+                                   tri.myTexture_uv[p3], tri.myTexture_uv[p3 + 1],
+                                   texture, matrix, x0, y0, x1, y1
+          );
+        }
+        else {
+          flat(zbuff, rgb, w, h,
+               tri.myVert[p1], tri.myVert[p1 + 1], tri.myVert[p1 + 2],
+               tri.myVert[p2], tri.myVert[p2 + 1], tri.myVert[p2 + 2],
+               tri.myVert[p3], tri.myVert[p3 + 1], tri.myVert[p3 + 2],
+
+               (type == 0) ? BLUE : GRAY, x0, y0, x1, y1
+          );
+        }
       }
-    }
+    });
   }
 
   /**
@@ -1310,19 +1376,160 @@ public class Rasterize {
    * @param tri   the data set it contains triangles indexes etc
    */
   public static void simple(float[] zbuff, int[] rgb, int w, int h, TriData tri) {
+    TileBins bins = new TileBins(w, h, tri);
+    bins.forEachTile((tile, x0, y0, x1, y1) -> {
+      for (int k = bins.myStart[tile]; k < bins.myStart[tile + 1]; k++) {
+        int i = bins.myTriangles[k];
+        int p1 = tri.myIndex[i];
+        int p2 = tri.myIndex[i + 1];
+        int p3 = tri.myIndex[i + 2];
+        int type = (tri.mySurfaceType != null) ? tri.mySurfaceType[i / 3] : 0;
+        flat(zbuff, rgb, w, h,
+             tri.myVert[p1], tri.myVert[p1 + 1], tri.myVert[p1 + 2],
+             tri.myVert[p2], tri.myVert[p2 + 1], tri.myVert[p2 + 2],
+             tri.myVert[p3], tri.myVert[p3 + 1], tri.myVert[p3 + 2],
 
-    for (int i = 0; i < tri.myIndex.length; i += 3) {
-      int p1 = tri.myIndex[i];
-      int p2 = tri.myIndex[i + 1];
-      int p3 = tri.myIndex[i + 2];
-      int type = (tri.mySurfaceType != null) ? tri.mySurfaceType[i / 3] : 0;
-      flat(zbuff, rgb, w, h,
-           tri.myVert[p1], tri.myVert[p1 + 1], tri.myVert[p1 + 2],
-           tri.myVert[p2], tri.myVert[p2 + 1], tri.myVert[p2 + 2],
-           tri.myVert[p3], tri.myVert[p3 + 1], tri.myVert[p3 + 2],
-
-           (type == 0) ? BLUE : GRAY
-      );
+             (type == 0) ? BLUE : GRAY, x0, y0, x1, y1
+        );
+      }
+    });
+  }
+
+  /**
+   * Size in pixels of the square tiles the image is split into when rendering
+   */
+  static final int TILE_SIZE = 64;
+
+  private interface TileRenderer {
+    void render(int tile, int x0, int y0, int x1, int y1);
+  }
+
+  /**
+   * The triangles of a {@link TriData} sorted into the tiles their bounding box overlaps.
+   * The triangles (offsets into myIndex) of tile t are myTriangles[myStart[t]] to myTriangles[myStart[t + 1] - 1]
+   * in the order they appear in the tri data.
+   */
+  private static class TileBins {
+    final int myWidth;
+    final int myHeight;
+    final int myTilesX;
+    final int myTilesY;
+    final int[] myStart;
+    final int[] myTriangles;
+
+    TileBins(int w, int h, TriData tri) {
+      myWidth = w;
+      myHeight = h;
+      myTilesX = (w + TILE_SIZE - 1) / TILE_SIZE;
+      myTilesY = (h + TILE_SIZE - 1) / TILE_SIZE;
+      int triangles = tri.myIndex.length / 3;
+      // tile range of each triangle as tx0, ty0, tx1, ty1 (inclusive), tx0 > tx1 if it is not on screen
+      int[] range = new int[triangles * 4];
+      myStart = new int[myTilesX * myTilesY + 1];
+      for (int t = 0; t < triangles; t++) {
+        int p1 = tri.myIndex[t * 3];
+        int p2 = tri.myIndex[t * 3 + 1];
+        int p3 = tri.myIndex[t * 3 + 2];
+        // same pixel bounds as the rasterizers
+        int X1 = (int)(16.0f * tri.myVert[p1] + .5f);
+        int X2 = (int)(16.0f * tri.myVert[p2] + .5f);
+        int X3 = (int)(16.0f * tri.myVert[p3] + .5f);
+        int Y1 = (int)(16.0f * tri.myVert[p1 + 1] + .5f);
+        int Y2 = (int)(16.0f * tri.myVert[p2 + 1] + .5f);
+        int Y3 = (int)(16.0f * tri.myVert[p3 + 1] + .5f);
+        int minx = Math.max((min(X1, X2, X3) + 0xF) >> 4, 0);
+        int maxx = Math.min((max(X1, X2, X3) + 0xF) >> 4, w);
+        int miny = Math.max((min(Y1, Y2, Y3) + 0xF) >> 4, 0);
+        int maxy = Math.min((max(Y1, Y2, Y3) + 0xF) >> 4, h);
+        int r = t * 4;
+        if (minx >= maxx || miny >= maxy) {
+          range[r] = 1;
+          continue;
+        }
+        range[r] = minx / TILE_SIZE;
+        range[r + 1] = miny / TILE_SIZE;
+        range[r + 2] = (maxx - 1) / TILE_SIZE;
+        range[r + 3] = (maxy - 1) / TILE_SIZE;
+        for (int ty = range[r + 1]; ty <= range[r + 3]; ty++) {
+          for (int tx = range[r]; tx <= range[r + 2]; tx++) {
+            myStart[ty * myTilesX + tx + 1]++;
+          }
+        }
+      }
+      for (int i = 1; i < myStart.length; i++) {
+        myStart[i] += myStart[i - 1];
+      }
+      myTriangles = new int[myStart[myStart.length - 1]];
+      int[] fill = Arrays.copyOf(myStart, myStart.length - 1);
+      for (int t = 0; t < triangles; t++) {
+        int r = t * 4;
+        for (int ty = range[r + 1]; ty <= range[r + 3]; ty++) {
+          for (int tx = range[r]; tx <= range[r + 2]; tx++) {
+            myTriangles[fill[ty * myTilesX + tx]++] = t * 3;
+          }
+        }
+      }
+    }
+
+    /**
+     * Calls the renderer for every tile that has triangles, in parallel on the common fork join pool
+     */
+    void forEachTile(TileRenderer renderer) {
+      IntStream.range(0, myTilesX * myTilesY).parallel().forEach(tile -> {
+        if (myStart[tile] == myStart[tile + 1]) {
+          return;
+        }
+        int x0 = (tile % myTilesX) * TILE_SIZE;
+        int y0 = (tile / myTilesX) * TILE_SIZE;
+        renderer.render(tile, x0, y0, Math.min(x0 + TILE_SIZE, myWidth), Math.min(y0 + TILE_SIZE, myHeight));
+      });
+    }
+  }
+
+  /**
+   * A texture stored in 8x8 texel blocks, so that the texels a triangle covers on a few
+   * neighbouring rows of pixels are close together in memory.
+   */
+  public static final class BlockedTexture {
+    private static final int BLOCK_SHIFT = 3;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+
+    private final int myWidth;
+    private final int myHeight;
+    private final int myBlocksPerRow;
+    private final int[] myTexels;
+
+    public BlockedTexture(int[] texture, int width, int height) {
+      myWidth = width;
+      myHeight = height;
+      myBlocksPerRow = (width + BLOCK_MASK) >> BLOCK_SHIFT;
+      int blockRows = (height + BLOCK_MASK) >> BLOCK_SHIFT;
+      myTexels = new int[(myBlocksPerRow * blockRows) << (2 * BLOCK_SHIFT)];
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          myTexels[index(x, y)] = texture[x + y * width];
+        }
+      }
+    }
+
+    public int getWidth() {
+      return myWidth;
+    }
+
+    public int getHeight() {
+      return myHeight;
+    }
+
+    /**
+     * @return the texel at (x, y), 0 <= x < width, 0 <= y < height
+     */
+    public int get(int x, int y) {
+      return myTexels[index(x, y)];
+    }
+
+    private int index(int x, int y) {
+      return (((y >> BLOCK_SHIFT) * myBlocksPerRow + (x >> BLOCK_SHIFT)) << (2 * BLOCK_SHIFT))
+             | ((y & BLOCK_MASK) << BLOCK_SHIFT) | (x & BLOCK_MASK);
     }
   }
 
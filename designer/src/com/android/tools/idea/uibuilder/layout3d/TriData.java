@@ -35,6 +35,8 @@ public class TriData {
   int[] myTexture;
   int myTextureWidth;
   int myTextureHeight;
+  private Rasterize.BlockedTexture myBlockedTexture;
+  private int[] myBlockedTextureSource;
 
   /**
    * It is ok to create and then initialize
@@ -80,6 +82,17 @@ public class TriData {
     }
   }
 
+  /**
+   * @return myTexture in the layout used by the rasterizer, rebuilt when myTexture is replaced
+   */
+  Rasterize.BlockedTexture getBlockedTexture() {
+    if (myBlockedTexture == null || myBlockedTextureSource != myTexture) {
+      myBlockedTexture = new Rasterize.BlockedTexture(myTexture, myTextureWidth, myTextureHeight);
+      myBlockedTextureSource = myTexture;
+    }
+    return myBlockedTexture;
+  }
+
   public TriData(TriData clone) {
     if (clone.myTexture_uv != null) {
       myTexture_uv = Arrays.copyOf(clone.myTexture_uv, clone.myTexture_uv.length);
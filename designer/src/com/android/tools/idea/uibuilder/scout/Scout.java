@@ -184,6 +184,20 @@ public class Scout {
     inferConstraints(root, true, false);
   }
 
+  /**
+   * Prepares the inference of the constraints of {@code root} after a conversion to a constraint layout. The
+   * expensive part of the inference, {@link Inference#compute()}, can then run in a background task, and the
+   * constraints be set on the components afterwards with {@link Inference#apply()}.
+   *
+   * @param root the root element to infer from
+   */
+  @NotNull
+  public static Inference prepareInferenceFromConvert(NlComponent root) {
+    Inference inference = new Inference();
+    prepareInference(root, true, true, inference);
+    return inference;
+  }
+
   /**
    * Infer constraints will only set the attributes via a transaction; a separate
    * commit need to be done to save them.
@@ -192,6 +206,17 @@ public class Scout {
    * @param rejectOverlaps if true will not infer if views overlap
    */
   private static void inferConstraints(NlComponent root, boolean rejectOverlaps, boolean fromConvert) {
+    Inference inference = new Inference();
+    prepareInference(root, rejectOverlaps, fromConvert, inference);
+    inference.compute();
+    inference.apply();
+  }
+
+  /**
+   * Adds the layouts to infer constraints for to {@code inference}, the constraint layouts nested in {@code root}
+   * coming first.
+   */
+  private static void prepareInference(NlComponent root, boolean rejectOverlaps, boolean fromConvert, @NotNull Inference inference) {
     if (root == null) {
       return;
     }
@@ -208,7 +233,7 @@ public class Scout {
     for (NlComponent constraintWidget : root.getChildren()) {
       if (ConstraintComponentUtilities.isConstraintLayout(constraintWidget)) {
         if (!constraintWidget.getChildren().isEmpty()) {
-          inferConstraints(constraintWidget);
+          prepareInference(constraintWidget, true, false, inference);
         }
       }
     }
@@ -221,10 +246,8 @@ public class Scout {
 
     NlComponent[] widgets = list.toArray(new NlComponent[list.size()]);
     ScoutWidget []scoutWidgets =  ScoutWidget.create(widgets, fromConvert);
-    ScoutWidget.computeConstraints(scoutWidgets);
-    if (fromConvert) {
-      postInferCleanupFromConvert(scoutWidgets);
-    }
+    inference.myLayouts.add(scoutWidgets);
+    inference.myFromConvert.add(fromConvert);
   }
 
   private static void postInferCleanupFromConvert(ScoutWidget[] widgets) {
@@ -270,6 +293,30 @@ public class Scout {
     commit(list, "Infering constraints");
   }
 
+  /**
+   * Prepares the inference of the constraints of {@code component} done by {@link #inferConstraintsAndCommit(NlComponent)}.
+   * The expensive part of the inference, {@link Inference#compute()}, can then run in a background task, before
+   * {@link #applyInferenceAndCommit(NlComponent, Inference)} is called.
+   *
+   * @param component the root element to infer from
+   */
+  @NotNull
+  public static Inference prepareInference(NlComponent component) {
+    Inference inference = new Inference();
+    prepareInference(component, false, false, inference);
+    return inference;
+  }
+
+  /**
+   * Sets the constraints of a computed {@code inference} of {@code component} and does a write commit of the attributes
+   */
+  public static void applyInferenceAndCommit(NlComponent component, @NotNull Inference inference) {
+    inference.apply();
+    ArrayList<NlComponent> list = new ArrayList<>(component.getChildren());
+    list.add(0, component);
+    commit(list, "Infering constraints");
+  }
+
   private static void commit(@NotNull List<NlComponent> list, String label) {
     if (list.isEmpty()) {
       return;
@@ -277,4 +324,43 @@ public class Scout {
 
     NlWriteCommandAction.run(list, label, () -> list.forEach(component -> component.startAttributeTransaction().commit()));
   }
-}
\ No newline at end of file
+
+  /**
+   * Constraints inferred for a constraint layout and the constraint layouts nested in it.
+   */
+  public static final class Inference {
+    private final List<ScoutWidget[]> myLayouts = new ArrayList<>();
+    private final List<Boolean> myFromConvert = new ArrayList<>();
+    private final List<ScoutProbabilities> myTables = new ArrayList<>();
+
+    private Inference() {
+    }
+
+    /**
+     * Computes the probability tables of the layouts, without changing the components. Can run off the UI thread,
+     * and can be cancelled through the progress indicator of the calling thread.
+     */
+    public void compute() {
+      myTables.clear();
+      for (ScoutWidget[] widgets : myLayouts) {
+        ScoutProbabilities table = new ScoutProbabilities();
+        table.computeConstraints(widgets);
+        myTables.add(table);
+      }
+    }
+
+    /**
+     * Sets the constraints picked from the computed tables on the components, via attribute transactions; a separate
+     * commit needs to be done to save them.
+     */
+    public void apply() {
+      for (int i = 0; i < myTables.size(); i++) {
+        ScoutWidget[] widgets = myLayouts.get(i);
+        myTables.get(i).applyConstraints(widgets);
+        if (myFromConvert.get(i)) {
+          postInferCleanupFromConvert(widgets);
+        }
+      }
+    }
+  }
+}
@@ -16,8 +16,19 @@
 
 package com.android.tools.idea.uibuilder.scout;
 
+import com.android.annotations.VisibleForTesting;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Inference Probability tables
@@ -41,19 +52,36 @@ public class ScoutProbabilities {
     private static final int ROOT_MARGIN_DISCOUNT = 16;
     private static final int MAX_ROOT_OVERHANG = 10;
     private static final boolean SKIP_SPARSE_COLUMNS = true;
+    private static final double MIN_CENTER_PROBABILITY = .9; // centered connections at or below are never picked
+    private static final float CANDIDATE_SEARCH_SLACK = 1; // widens searches so rounding can't drop a candidate
+    @VisibleForTesting static final int MIN_PARALLEL_WIDGETS = 32;
+    private static final ExecutorService ourExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+            "ScoutProbabilities", Math.min(4, Runtime.getRuntime().availableProcessors()));
 
     float[][][] mProbability; // probability of a connection
     float[][][] mMargin; // margin needed for that connection
-    float[][][][] mBinaryBias; // Ratio needed for binary connections (should be .5 for now)
-    float[][][][] mBinaryProbability; // probability of a left_right/up_down
+    CenterCandidates[][] mCenterCandidates; // centered connections that can be picked, per widget and orientation
     int len;
 
     /**
      * This calculates a constraint tables
+     * <p>
+     * The rows of the widgets are computed in parallel for large layouts. If the calling thread has a progress
+     * indicator, it is used to report progress and can cancel the computation.
      *
      * @param list ordered list of widgets root must be list[0]
      */
     public void computeConstraints(ScoutWidget[] list) {
+        computeConstraints(list, list.length >= MIN_PARALLEL_WIDGETS);
+    }
+
+    /**
+     * This calculates a constraint tables, computing the rows of the widgets in parallel if {@code parallel} is true
+     *
+     * @param list ordered list of widgets root must be list[0]
+     */
+    @VisibleForTesting
+    void computeConstraints(ScoutWidget[] list, boolean parallel) {
         if (list.length < 2) {
             throw new IllegalArgumentException("list must contain more than 1 widget");
         }
@@ -73,76 +101,206 @@ public class ScoutProbabilities {
 
         mProbability = new float[len][][];
         mMargin = new float[len][][];
+        mCenterCandidates = new CenterCandidates[len][];
+
+        // The estimators only look at these and the widget bounds, so they can run off the calling thread. Reading
+        // them from the components needs read access, as this may run in a background task.
+        WidgetProperties properties = ReadAction.compute(() -> new WidgetProperties(list));
+        ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+
+        if (!parallel) {
+            for (int i = 1; i < len; i++) {
+                if (indicator != null) {
+                    indicator.checkCanceled();
+                    indicator.setFraction((double)(i - 1) / (len - 1));
+                }
+                computeWidget(list, properties, i);
+            }
+        } else {
+            computeWidgetsInParallel(list, properties, indicator);
+        }
+        if (DEBUG) {
+            printTable(list);
+        }
+    }
 
-        // calculate probability for normal connections
+    private void computeWidgetsInParallel(ScoutWidget[] list, WidgetProperties properties,
+            ProgressIndicator indicator) {
+        List<Future<?>> futures = new ArrayList<>(len - 1);
+        for (int i = 1; i < len; i++) {
+            int widget = i;
+            futures.add(ourExecutor.submit(() -> {
+                if (indicator != null) {
+                    indicator.checkCanceled();
+                }
+                computeWidget(list, properties, widget);
+            }));
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                futures.get(i).get();
+                if (indicator != null) {
+                    indicator.setFraction((double)(i + 1) / futures.size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Fills the rows of widget {@code i} in the tables. Only writes to those rows, so different widgets can be
+     * computed at the same time.
+     */
+    private void computeWidget(ScoutWidget[] list, WidgetProperties properties, int i) {
         float[] result = new float[2]; // estimation function return 2 values probability & margin
 
-        for (int i = 1; i < len; i++) { // for all non root widgets
+        // calculate probability for normal connections
+        if (!properties.isGuideline(i)) { // for all non root widgets
             Direction[] all = Direction.getAllDirections();
-            if (list[i].isGuideline()) {
-                continue;
-            }
-            mProbability[i] = new float[all.length][];
-            mMargin[i] = new float[all.length][];
+            float[][] probability = new float[all.length][];
+            float[][] margin = new float[all.length][];
             for (int dir = 0; dir < all.length; dir++) { // for all possible connections
                 Direction direction = Direction.get(dir);
                 int connectTypes = direction.connectTypes();
 
                 // create the multidimensional array on the fly
                 // to account for the variying size of the probability space
-                mProbability[i][dir] = new float[len * connectTypes];
-                mMargin[i][dir] = new float[len * connectTypes];
+                probability[dir] = new float[len * connectTypes];
+                margin[dir] = new float[len * connectTypes];
 
                 // fill in all candidate connections
-                for (int candidate = 0; candidate < mMargin[i][dir].length; candidate++) {
+                for (int candidate = 0; candidate < margin[dir].length; candidate++) {
                     int widgetNumber = candidate / connectTypes;
                     int opposite = candidate % connectTypes;
                     Direction connectTo = (opposite == 0) ? direction : direction.getOpposite();
 
-                    estimateProbability(list[i], direction, list[widgetNumber],
-                            connectTo, list, result);
-                    mProbability[i][dir][candidate] = result[RESULT_PROBABILITY];
-                    mMargin[i][dir][candidate] = result[RESULT_MARGIN];
+                    estimateProbability(list, properties, i, direction, widgetNumber,
+                            connectTo, result);
+                    probability[dir][candidate] = result[RESULT_PROBABILITY];
+                    margin[dir][candidate] = result[RESULT_MARGIN];
                 }
             }
+            mProbability[i] = probability;
+            mMargin[i] = margin;
         }
 
         // calculate probability for "centered" connections
-        mBinaryProbability = new float[len][2][len * 2][len * 2];
-        mBinaryBias = new float[len][2][len * 2][len * 2];
-        Direction[][] directions =
-                { { Direction.TOP, Direction.BOTTOM}, { Direction.LEFT, Direction.RIGHT} };
-        for (int i = 1; i < len; i++) {
-            for (int horizontal = 0; horizontal < 2; horizontal++) { // vert=0 or horizantal=1
-                Direction[] sides = directions[horizontal];
-                for (int candidate1 = 0; candidate1 < len * 2; candidate1++) {
-                    for (int candidate2 = 0; candidate2 < len * 2; candidate2++) {
+        CenterCandidates[] centerCandidates = new CenterCandidates[2];
+        for (int horizontal = 0; horizontal < 2; horizontal++) { // vert=0 or horizantal=1
+            centerCandidates[horizontal] = findCenterCandidates(list, properties, i, horizontal, result);
+        }
+        mCenterCandidates[i] = centerCandidates;
+    }
 
-                        // candidates are 2 per widget (left/right or above/below)
-                        int widget1Number = candidate1 / 2;
-                        int widget2Number = candidate2 / 2;
+    /**
+     * Finds the centered connections of widget {@code i} in the given orientation that are likely enough to be
+     * picked by {@link #pickCenteredConnections}.
+     * <p>
+     * Candidates are 2 per widget (left/right or above/below). Unless one of the two widgets is the root, a
+     * centered connection is only likely enough if the widget lies between the two sides and about as far from
+     * both, so the second side is looked up in the candidates sorted by location instead of trying all of them.
+     */
+    private CenterCandidates findCenterCandidates(ScoutWidget[] list, WidgetProperties properties, int i,
+            int horizontal, float[] result) {
+        CenterCandidates candidates = new CenterCandidates();
+        if (properties.isGuideline(i) ||
+                (horizontal == Direction.ORIENTATION_VERTICAL && properties.hasBaseline(i) &&
+                 properties.hasBaselineConnection(i))) {
+            return candidates; // estimateBinaryProbability is 0 for all candidates
+        }
+        Direction[] sides = Direction.getDirections(horizontal);
+        int count = len * 2;
+        float[] locations = new float[count];
+        Integer[] order = new Integer[count];
+        for (int candidate = 0; candidate < count; candidate++) {
+            locations[candidate] = list[candidate / 2].getLocation(sides[candidate & 0x1]);
+            order[candidate] = candidate;
+        }
+        Arrays.sort(order, (c1, c2) -> Float.compare(locations[c1], locations[c2]));
+        float[] sortedLocations = new float[count];
+        for (int k = 0; k < count; k++) {
+            sortedLocations[k] = locations[order[k]];
+        }
 
-                        // pick the sides to connect
-                        Direction widget1Side = sides[candidate1 & 0x1];
-                        Direction widget2Side = sides[candidate2 & 0x1];
-
-                        estimateBinaryProbability(list[i], horizontal,
-                                list[widget1Number], widget1Side,
-                                list[widget2Number], widget2Side,
-                                list, result);
-                        mBinaryProbability[i][horizontal][candidate1][candidate2] =
-                                result[RESULT_PROBABILITY];
-                        mBinaryBias[i][horizontal][candidate1][candidate2] =
-                                result[RESULT_MARGIN];
-                    }
+        float location1 = list[i].getLocation(sides[0]);
+        float location2 = list[i].getLocation(sides[1]);
+        int[] matches = new int[count];
+        for (int candidate1 = 0; candidate1 < count; candidate1++) {
+            int widget1Number = candidate1 / 2;
+            if (widget1Number == i) {
+                continue;
+            }
+            if (widget1Number == 0) { // the root can overhang, try everything
+                for (int candidate2 = 0; candidate2 < count; candidate2++) {
+                    addCenterCandidate(list, properties, i, horizontal, candidate1, candidate2, candidates, result);
                 }
+                continue;
+            }
+            addCenterCandidate(list, properties, i, horizontal, candidate1, 0, candidates, result);
+            addCenterCandidate(list, properties, i, horizontal, candidate1, 1, candidates, result);
+            float toLocation1 = locations[candidate1];
+            if (toLocation1 > location1 + CANDIDATE_SEARCH_SLACK) {
+                continue; // not on the near side of the widget
+            }
+            // the far side has to be about as far from the widget as this one
+            float expected = location2 + (location1 - toLocation1);
+            float low = Math.max(location2, expected - SLOPE_CENTER_CONNECTION) - CANDIDATE_SEARCH_SLACK;
+            float high = expected + SLOPE_CENTER_CONNECTION + CANDIDATE_SEARCH_SLACK;
+            int matchCount = 0;
+            for (int k = lowerBound(sortedLocations, low); k < count && sortedLocations[k] <= high; k++) {
+                if (order[k] >= 2) { // root candidates were tried above
+                    matches[matchCount++] = order[k];
+                }
+            }
+            Arrays.sort(matches, 0, matchCount); // keep the order of the full table
+            for (int k = 0; k < matchCount; k++) {
+                addCenterCandidate(list, properties, i, horizontal, candidate1, matches[k], candidates, result);
             }
         }
-        if (DEBUG) {
-            printTable(list);
+        return candidates;
+    }
+
+    private static void addCenterCandidate(ScoutWidget[] list, WidgetProperties properties, int i, int horizontal,
+            int candidate1, int candidate2, CenterCandidates candidates, float[] result) {
+        Direction[] sides = Direction.getDirections(horizontal);
+        estimateBinaryProbability(list, properties, i, horizontal,
+                candidate1 / 2, sides[candidate1 & 0x1],
+                candidate2 / 2, sides[candidate2 & 0x1],
+                result);
+        if (result[RESULT_PROBABILITY] > MIN_CENTER_PROBABILITY) {
+            candidates.add(candidate1, candidate2, result[RESULT_PROBABILITY], result[RESULT_MARGIN]);
         }
     }
 
+    private static int lowerBound(float[] sorted, float value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     /**
      * This applies a constraint set suggested by the Inference tables
      *
@@ -251,7 +409,7 @@ public class ScoutProbabilities {
             }
 
             if (list[i].setConstraint(baseline, list[maxIndex], baseline, 0)) {
-                Utils.zero(mBinaryProbability[i][Direction.ORIENTATION_VERTICAL]);
+                mCenterCandidates[i][Direction.ORIENTATION_VERTICAL].clear();
                 Arrays.fill(widgetProbability[baseline], 0.0f);
                 widgetProbability[north] = null;
                 Arrays.fill(widgetProbability[south], 0.0f);
@@ -272,32 +430,28 @@ public class ScoutProbabilities {
     private void pickCenteredConnections(ScoutWidget[] list, boolean checkResizeable) {
         Direction[][] side =
                 { { Direction.TOP, Direction.BOTTOM}, { Direction.LEFT, Direction.RIGHT} };
-        int[] dualIndex = new int[2];
         for (int i = 1; i < len; i++) {
-            float[][][] widgetBinaryProbability = mBinaryProbability[i];
-            float[][][] widgetBinaryBias = mBinaryBias[i];
+            CenterCandidates[] widgetCenterCandidates = mCenterCandidates[i];
 
-            for (int horizontal = 0; horizontal < widgetBinaryProbability.length;
+            for (int horizontal = 0; horizontal < widgetCenterCandidates.length;
                     horizontal++) { // vert=0 or horizontals=1
-                float[][] pmatrix = widgetBinaryProbability[horizontal];
-                float[][] bias = widgetBinaryBias[horizontal];
-                if (pmatrix == null) {
+                CenterCandidates candidates = widgetCenterCandidates[horizontal];
+                if (candidates == null) {
                     continue;
                 }
                 boolean worked = false;
                 while (!worked) {
-                    Utils.max(pmatrix, dualIndex);
-                    int max1 = dualIndex[0];
-                    int max2 = dualIndex[1];
-                    int wNo1 = max1 / 2;
-                    int wNo2 = max2 / 2;
-                    Direction widget1Side = side[horizontal][max1 & 0x1];
-                    Direction widget2Side = side[horizontal][max2 & 0x1];
-
-                    // pick the sides to connect
-                    float centerProbability = pmatrix[max1][max2];
+                    int max = candidates.max();
                     worked = true;
-                    if (centerProbability > .9) {
+                    if (max != -1) {
+                        int max1 = candidates.getCandidate1(max);
+                        int max2 = candidates.getCandidate2(max);
+                        int wNo1 = max1 / 2;
+                        int wNo2 = max2 / 2;
+
+                        // pick the sides to connect
+                        Direction widget1Side = side[horizontal][max1 & 0x1];
+                        Direction widget2Side = side[horizontal][max2 & 0x1];
                         if (checkResizeable && !list[i].isCandidateResizable(horizontal)) {
                             continue;
                         }
@@ -305,12 +459,12 @@ public class ScoutProbabilities {
                         worked = list[i].setCentered(horizontal * 2, list[wNo1], list[wNo2],
                                 widget1Side,
                                 widget2Side,
-                                bias[max1][max2]);
+                                candidates.getBias(max));
                         if (worked) {
                             mProbability[i][horizontal * 2] = null;
                             mProbability[i][horizontal * 2 + 1] = null;
                         } else {
-                            pmatrix[max1][max2] = 0;
+                            candidates.remove(max);
                         }
                     }
                 }
@@ -398,7 +552,7 @@ public class ScoutProbabilities {
                             found = false;
                         }
                     } else {
-                        mBinaryProbability[i][horizontal] = null;
+                        mCenterCandidates[i][horizontal] = null;
                         if (DEBUG) {
                             System.out.println("connect " + s);
                         }
@@ -544,46 +698,48 @@ public class ScoutProbabilities {
     /**
      * This defines the "probability" of a constraint between two widgets.
      *
-     * @param from    source widget
-     * @param fromDir direction on that widget
-     * @param to      destination widget
-     * @param toDir   destination side to connect
-     * @param result  populates results with probability and offset
+     * @param fromNumber source widget
+     * @param fromDir    direction on that widget
+     * @param toNumber   destination widget
+     * @param toDir      destination side to connect
+     * @param result     populates results with probability and offset
      */
-    private static void estimateProbability(ScoutWidget from, Direction fromDir,
-            ScoutWidget to, Direction toDir,
-            ScoutWidget[] list,
+    private static void estimateProbability(ScoutWidget[] list, WidgetProperties properties,
+            int fromNumber, Direction fromDir,
+            int toNumber, Direction toDir,
             float[] result) {
         result[RESULT_PROBABILITY] = 0;
         result[RESULT_MARGIN] = 0;
 
-        if (from == to) { // 0 probability of connecting to yourself
+        if (fromNumber == toNumber) { // 0 probability of connecting to yourself
             return;
         }
-        if (from.isGuideline()) {
+        if (properties.isGuideline(fromNumber)) {
             return;
         }
+        ScoutWidget from = list[fromNumber];
+        ScoutWidget to = list[toNumber];
 
-        if (to.isGuideline()) {
+        if (properties.isGuideline(toNumber)) {
             if ((toDir == Direction.TOP || toDir == Direction.BOTTOM) &&
-                to.isVerticalGuideline()) {
+                properties.isVerticalGuideline(toNumber)) {
                 return;
             }
             if ((toDir == Direction.RIGHT || toDir == Direction.LEFT) &&
-                to.isHorizontalGuideline()) {
+                properties.isHorizontalGuideline(toNumber)) {
                 return;
             }
         }
 
         // if it already has a baseline do not connect to it
-        if ((toDir == Direction.TOP || toDir == Direction.BOTTOM) & from.hasBaseline()) {
-            if (from.hasConnection(Direction.BASELINE)) {
+        if ((toDir == Direction.TOP || toDir == Direction.BOTTOM) & properties.hasBaseline(fromNumber)) {
+            if (properties.hasBaselineConnection(fromNumber)) {
                 return;
             }
         }
 
         if (fromDir == Direction.BASELINE) { // if baseline 0  probability of connecting to non baseline
-            if (!from.hasBaseline() || !to.hasBaseline()) { // no base line
+            if (!properties.hasBaseline(fromNumber) || !properties.hasBaseline(toNumber)) { // no base line
                 return;
             }
         }
@@ -592,7 +748,7 @@ public class ScoutProbabilities {
         float toLocation = to.getLocation(toDir);
         float positionDiff =
                 (fromDir.reverse()) ? fromLocation - toLocation : toLocation - fromLocation;
-        float distance = 2 * ScoutWidget.distance(from, to);
+        float distance = 2 * properties.distance(fromNumber, toNumber);
         if (to.isRoot()) {
             distance = Math.abs(distance - ROOT_MARGIN_DISCOUNT);
         }
@@ -615,35 +771,37 @@ public class ScoutProbabilities {
      * This defines the constraint between a widget and two widgets to the left and right of it.
      * Currently only encourages probability between widget and root for center purposes.
      *
-     * @param from        source widget
+     * @param fromNumber  source widget
      * @param orientation horizontal or vertical connections (1 is horizontal)
-     * @param to1         connect to on one side
+     * @param to1Number   connect to on one side
      * @param toDir1      direction on that widget
-     * @param to2         connect to on other side
+     * @param to2Number   connect to on other side
      * @param toDir2      direction on that widget
      * @param result      populates results with probability and offset
      */
-    private static void estimateBinaryProbability(
-            ScoutWidget from, int orientation, // 0 = north/south 1 = east/west
-            ScoutWidget to1, Direction toDir1,
-            ScoutWidget to2, Direction toDir2,
-            ScoutWidget[] list,
+    private static void estimateBinaryProbability(ScoutWidget[] list, WidgetProperties properties,
+            int fromNumber, int orientation, // 0 = north/south 1 = east/west
+            int to1Number, Direction toDir1,
+            int to2Number, Direction toDir2,
             float[] result) {
 
         result[RESULT_PROBABILITY] = 0;
         result[RESULT_MARGIN] = 0;
-        if (from == to1 || from == to2) { // cannot center on yourself
+        if (fromNumber == to1Number || fromNumber == to2Number) { // cannot center on yourself
             return;
         }
-        if (from.isGuideline()) {
+        if (properties.isGuideline(fromNumber)) {
             return;
         }
         // if it already has a baseline do not connect to it
-        if ((orientation == Direction.ORIENTATION_VERTICAL) & from.hasBaseline()) {
-            if (from.hasConnection(Direction.BASELINE)) {
+        if ((orientation == Direction.ORIENTATION_VERTICAL) & properties.hasBaseline(fromNumber)) {
+            if (properties.hasBaselineConnection(fromNumber)) {
                 return;
             }
         }
+        ScoutWidget from = list[fromNumber];
+        ScoutWidget to1 = list[to1Number];
+        ScoutWidget to2 = list[to2Number];
         // distance normalizing scale factor
         float scale = 0.5f *
                 ((orientation == Direction.ORIENTATION_VERTICAL) ? from.getParent().getHeight() :
@@ -674,8 +832,8 @@ public class ScoutProbabilities {
             }
         }
 
-        float distance1 = ScoutWidget.distance(from, to1) / scale;
-        float distance2 = ScoutWidget.distance(from, to2) / scale;
+        float distance1 = properties.distance(fromNumber, to1Number) / scale;
+        float distance2 = properties.distance(fromNumber, to2Number) / scale;
         float diff = Math.abs(positionDiff1 - positionDiff2);
         float probability = ((diff < SLOPE_CENTER_CONNECTION) ? 1 : 0); // favor close distance
         probability = probability / (1+ distance1 + distance2);
@@ -728,11 +886,13 @@ public class ScoutProbabilities {
         System.out.println("  " + str);
 
         for (int i = 1; i < len; i++) {
-            for (int dir = 0; dir < mBinaryProbability[i].length;
-                    dir++) { // above, below, left, right
+            for (int dir = 0; dir < mCenterCandidates[i].length;
+                    dir++) { // vertical, horizontal
+                CenterCandidates candidates = mCenterCandidates[i][dir];
                 String tab = "";
-                for (int k = 0; k < mBinaryProbability[i][dir].length; k++) {
-                    tab += Utils.toS(mBinaryProbability[i][dir][k]) + "\n  ";
+                for (int k = 0; candidates != null && k < candidates.size(); k++) {
+                    tab += candidates.getCandidate1(k) + "," + candidates.getCandidate2(k) + " " +
+                            Utils.toS(new float[] { candidates.getProbability(k) }) + "\n  ";
                 }
                 System.out.println(Direction.toString(dir) + " " + tab);
             }
@@ -786,4 +946,131 @@ public class ScoutProbabilities {
             }
         }
     }
+
+    /**
+     * The properties of the widgets used by the estimators that come from their components, read once
+     * so that the estimators don't have to go back to the components for every candidate.
+     */
+    private static class WidgetProperties {
+        private final ScoutWidget[] mWidgets;
+        private final boolean[] mGuideline;
+        private final boolean[] mVerticalGuideline;
+        private final boolean[] mHorizontalGuideline;
+        private final boolean[] mBaseline;
+        private final boolean[] mBaselineConnection;
+
+        WidgetProperties(ScoutWidget[] list) {
+            mWidgets = list;
+            mGuideline = new boolean[list.length];
+            mVerticalGuideline = new boolean[list.length];
+            mHorizontalGuideline = new boolean[list.length];
+            mBaseline = new boolean[list.length];
+            mBaselineConnection = new boolean[list.length];
+            for (int i = 0; i < list.length; i++) {
+                ScoutWidget widget = list[i];
+                mGuideline[i] = widget.isGuideline();
+                mVerticalGuideline[i] = widget.isVerticalGuideline();
+                mHorizontalGuideline[i] = widget.isHorizontalGuideline();
+                mBaseline[i] = widget.hasBaseline();
+                mBaselineConnection[i] = widget.hasConnection(Direction.BASELINE);
+            }
+        }
+
+        boolean isGuideline(int i) {
+            return mGuideline[i];
+        }
+
+        boolean isVerticalGuideline(int i) {
+            return mVerticalGuideline[i];
+        }
+
+        boolean isHorizontalGuideline(int i) {
+            return mHorizontalGuideline[i];
+        }
+
+        boolean hasBaseline(int i) {
+            return mBaseline[i];
+        }
+
+        boolean hasBaselineConnection(int i) {
+            return mBaselineConnection[i];
+        }
+
+        float distance(int a, int b) {
+            return ScoutWidget.distance(mWidgets[a], mVerticalGuideline[a], mHorizontalGuideline[a],
+                    mWidgets[b], mVerticalGuideline[b], mHorizontalGuideline[b]);
+        }
+    }
+
+    /**
+     * The centered connections of a widget in one orientation whose probability is above
+     * {@link #MIN_CENTER_PROBABILITY}, in the order of the candidate pairs (widget and side on one side,
+     * then on the other). All other pairs can't be picked, so they are not kept.
+     */
+    @VisibleForTesting
+    static class CenterCandidates {
+        private int[] mCandidates1 = new int[4];
+        private int[] mCandidates2 = new int[4];
+        private float[] mProbabilities = new float[4];
+        private float[] mBiases = new float[4];
+        private int mSize;
+
+        void add(int candidate1, int candidate2, float probability, float bias) {
+            if (mSize == mProbabilities.length) {
+                int capacity = mSize * 2;
+                mCandidates1 = Arrays.copyOf(mCandidates1, capacity);
+                mCandidates2 = Arrays.copyOf(mCandidates2, capacity);
+                mProbabilities = Arrays.copyOf(mProbabilities, capacity);
+                mBiases = Arrays.copyOf(mBiases, capacity);
+            }
+            mCandidates1[mSize] = candidate1;
+            mCandidates2[mSize] = candidate2;
+            mProbabilities[mSize] = probability;
+            mBiases[mSize] = bias;
+            mSize++;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        int getCandidate1(int index) {
+            return mCandidates1[index];
+        }
+
+        int getCandidate2(int index) {
+            return mCandidates2[index];
+        }
+
+        float getProbability(int index) {
+            return mProbabilities[index];
+        }
+
+        float getBias(int index) {
+            return mBiases[index];
+        }
+
+        /**
+         * Returns the first candidate with the highest probability, or -1 if none is left
+         */
+        int max() {
+            int max = -1;
+            float value = 0;
+            for (int i = 0; i < mSize; i++) {
+                if (mProbabilities[i] > MIN_CENTER_PROBABILITY && (max == -1 || value < mProbabilities[i])) {
+                    max = i;
+                    value = mProbabilities[i];
+                }
+            }
+            return max;
+        }
+
+        void remove(int index) {
+            mProbabilities[index] = 0;
+        }
+
+        void clear() {
+            mSize = 0;
+        }
+    }
 }
@@ -871,6 +871,14 @@ public class ScoutWidget implements Comparable<ScoutWidget> {
    * @return the distance between two widgets at there closest point to each other
    */
   static float distance(ScoutWidget a, ScoutWidget b) {
+    return distance(a, a.isVerticalGuideline(), a.isHorizontalGuideline(), b, b.isVerticalGuideline(), b.isHorizontalGuideline());
+  }
+
+  /**
+   * Same as {@link #distance(ScoutWidget, ScoutWidget)}, for callers that already know which of the widgets are guidelines
+   */
+  static float distance(ScoutWidget a, boolean aVerticalGuideline, boolean aHorizontalGuideline,
+                        ScoutWidget b, boolean bVerticalGuideline, boolean bHorizontalGuideline) {
 
     float ax1, ax2, ay1, ay2;
     float bx1, bx2, by1, by2;
@@ -878,11 +886,11 @@ public class ScoutWidget implements Comparable<ScoutWidget> {
     ax2 = a.mX + a.mWidth;
     ay1 = a.mY;
     ay2 = a.mY + a.mHeight;
-    if (a.isVerticalGuideline()) {
+    if (aVerticalGuideline) {
       ay1 = -10000; // make the line infinite long
       ay2 = 10000;
     }
-    if (a.isHorizontalGuideline()) {
+    if (aHorizontalGuideline) {
       ax1 = -10000; // make the line infinite long
       ax2 = 10000;
     }
@@ -890,11 +898,11 @@ public class ScoutWidget implements Comparable<ScoutWidget> {
     bx2 = b.mX + b.mWidth;
     by1 = b.mY;
     by2 = b.mY + b.mHeight;
-    if (b.isVerticalGuideline()) {
+    if (bVerticalGuideline) {
       by1 = -10000; // make the line infinite long
       by2 = 10000;
     }
-    if (b.isHorizontalGuideline()) {
+    if (bHorizontalGuideline) {
       bx1 = -10000; // make the line infinite long
       bx2 = 10000;
     }
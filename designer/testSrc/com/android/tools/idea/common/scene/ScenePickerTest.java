@@ -20,6 +20,12 @@ import junit.framework.TestCase;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
 
 /**
  * Test ScenePicker
@@ -342,4 +348,70 @@ public class ScenePickerTest extends TestCase {
       scenePicker.find((int)x, (int)y);
     }
   }
+
+  public void testManyObjects() {
+    ScenePicker scenePicker = new ScenePicker();
+    List<ScenePicker> singlePickers = new ArrayList<>();
+    List<Integer> hits = new ArrayList<>();
+    addSyntheticScene(scenePicker, singlePickers, hits, 0);
+
+    Random random = new Random(0);
+    for (int i = 0; i < 300; i++) {
+      int x = random.nextInt(1700) - 50;
+      int y = random.nextInt(1100) - 50;
+      assertEquals(x + "," + y, findInEach(singlePickers, hits, x, y), find(scenePicker, hits, x, y));
+    }
+
+    // Adding the same objects again keeps the index, moving one updates it
+    scenePicker.reset();
+    addSyntheticScene(scenePicker, new ArrayList<>(), hits, 0);
+    assertEquals(Arrays.asList(0, 1), find(scenePicker, hits, 0, 0));
+    scenePicker.reset();
+    addSyntheticScene(scenePicker, new ArrayList<>(), hits, 1700);
+    assertEquals(Collections.singletonList(1), find(scenePicker, hits, 0, 0));
+    assertEquals(Collections.singletonList(0), find(scenePicker, hits, 1700, 1700));
+  }
+
+  /**
+   * Adds a scene of 500 widgets with anchors and connections, the first widget at ({@code offset}, {@code offset}).
+   * Every object is also added to its own picker in {@code singlePickers}.
+   */
+  private static void addSyntheticScene(ScenePicker scenePicker, List<ScenePicker> singlePickers, List<Integer> hits, int offset) {
+    List<Consumer<ScenePicker>> objects = new ArrayList<>();
+    objects.add(picker -> picker.addRect(0, 0, offset, offset, offset + 10, offset + 10));
+    objects.add(picker -> picker.addRect(1, 0, 0, 0, 1600, 1000));
+    for (int i = 0; i < 500; i++) {
+      int x = 20 + (i % 25) * 62;
+      int y = 20 + (i / 25) * 48;
+      int id = objects.size();
+      objects.add(picker -> picker.addRect(id, 0, x, y, x + 40, y + 30));
+      objects.add(picker -> picker.addPoint(id + 1, 5, x + 20, y));
+      objects.add(picker -> picker.addPoint(id + 2, 5, x + 20, y + 30));
+      objects.add(picker -> picker.addCircle(id + 3, 4, x, y + 15, 3));
+      objects.add(picker -> picker.addLine(id + 4, 4, x + 40, y + 15, x + 62, y + 15));
+      objects.add(picker -> picker.addCurveTo(id + 5, 4, x + 20, y + 30, x + 20, y + 40, x + 40, y + 40, x + 40, y + 48));
+    }
+    for (Consumer<ScenePicker> object : objects) {
+      object.accept(scenePicker);
+      ScenePicker singlePicker = new ScenePicker();
+      singlePicker.setSelectListener((obj, dist) -> hits.add((Integer)obj));
+      object.accept(singlePicker);
+      singlePickers.add(singlePicker);
+    }
+    scenePicker.setSelectListener((obj, dist) -> hits.add((Integer)obj));
+  }
+
+  private static List<Integer> find(ScenePicker scenePicker, List<Integer> hits, int x, int y) {
+    hits.clear();
+    scenePicker.find(x, y);
+    return new ArrayList<>(hits);
+  }
+
+  private static List<Integer> findInEach(List<ScenePicker> scenePickers, List<Integer> hits, int x, int y) {
+    hits.clear();
+    for (ScenePicker scenePicker : scenePickers) {
+      scenePicker.find(x, y);
+    }
+    return new ArrayList<>(hits);
+  }
 }
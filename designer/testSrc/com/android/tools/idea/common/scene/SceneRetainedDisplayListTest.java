@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.common.scene;
+
+import com.android.tools.idea.common.fixtures.ModelBuilder;
+import com.android.tools.idea.common.scene.draw.DisplayList;
+import com.android.tools.idea.common.scene.draw.DrawCommand;
+import com.android.tools.idea.uibuilder.scene.SceneTest;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+import static com.android.SdkConstants.*;
+
+public class SceneRetainedDisplayListTest extends SceneTest {
+  @Override
+  @NotNull
+  public ModelBuilder createModel() {
+    return model("constraint.xml",
+                 component(CONSTRAINT_LAYOUT)
+                   .id("@+id/root")
+                   .withBounds(0, 0, 2000, 2000)
+                   .width("1000dp")
+                   .height("1000dp")
+                   .children(
+                     component(LINEAR_LAYOUT)
+                       .id("@+id/linear")
+                       .withBounds(20, 20, 1980, 40)
+                       .width("980dp")
+                       .height("20dp")
+                       .children(
+                         component(TEXT_VIEW)
+                           .id("@+id/button1")
+                           .withBounds(20, 20, 1980, 40)
+                           .width("100dp")
+                           .height("20dp")
+                       ),
+                     component(LINEAR_LAYOUT)
+                       .id("@+id/linear2")
+                       .withBounds(20, 200, 1980, 40)
+                       .width("980dp")
+                       .height("20dp")
+                       .children(
+                         component(TEXT_VIEW)
+                           .id("@+id/button2")
+                           .withBounds(20, 200, 1980, 40)
+                           .width("100dp")
+                           .height("20dp")
+                       )
+                   ));
+  }
+
+  public void testRetainedListMatchesFullBuild() {
+    SceneContext context = SceneContext.get();
+    DisplayList retained = buildRetained(context);
+    assertEquals(buildFull(context), retained.serialize());
+
+    List<DrawCommand> before = retained.getCommands();
+    SceneComponent button1 = myScene.getSceneComponent("button1");
+    button1.setDrawState(SceneComponent.DrawState.HOVER);
+    myScene.needsRebuildList(button1);
+
+    DisplayList updated = buildRetained(context);
+    assertEquals(buildFull(context), updated.serialize());
+
+    // The commands of the untouched subtree are reused as they are
+    DisplayList linear2 = new DisplayList();
+    myScene.getSceneComponent("linear2").buildDisplayList(0, linear2, context);
+    int count = linear2.getCommands().size();
+    int start = indexOf(before, linear2.getCommands().get(0));
+    int updatedStart = indexOf(updated.getCommands(), linear2.getCommands().get(0));
+    assertTrue(start >= 0 && updatedStart >= 0);
+    for (int i = 0; i < count; i++) {
+      assertSame(before.get(start + i), updated.getCommands().get(updatedStart + i));
+    }
+  }
+
+  public void testGlobalInvalidation() {
+    SceneContext context = SceneContext.get();
+    DisplayList retained = buildRetained(context);
+    DrawCommand first = retained.getCommands().get(0);
+
+    myScene.needsRebuildList();
+    DisplayList rebuilt = buildRetained(context);
+    assertEquals(retained.serialize(), rebuilt.serialize());
+    assertNotSame(first, rebuilt.getCommands().get(0));
+  }
+
+  public void testRetainedListsAreKeptPerContext() {
+    SceneContext context = SceneContext.get();
+    SceneContext otherContext = SceneContext.get(myScreen.getScreen());
+    DisplayList retained = buildRetained(context);
+    DisplayList other = buildRetained(otherContext);
+    assertEquals(buildFull(otherContext), other.serialize());
+
+    // Painting the scene in another view, as in the combined design and blueprint mode, doesn't rebuild the lists of the first one
+    DisplayList again = buildRetained(context);
+    assertEquals(retained.getCommands().size(), again.getCommands().size());
+    for (int i = 0; i < retained.getCommands().size(); i++) {
+      assertSame(retained.getCommands().get(i), again.getCommands().get(i));
+    }
+  }
+
+  @NotNull
+  private DisplayList buildRetained(@NotNull SceneContext context) {
+    DisplayList list = new DisplayList();
+    myScene.layout(0, context);
+    myScene.buildRetainedDisplayList(list, 0, context);
+    return list;
+  }
+
+  @NotNull
+  private String buildFull(@NotNull SceneContext context) {
+    DisplayList list = new DisplayList();
+    myScene.buildDisplayList(list, 0, context);
+    return list.serialize();
+  }
+
+  private static int indexOf(@NotNull List<DrawCommand> commands, @NotNull DrawCommand command) {
+    for (int i = 0; i < commands.size(); i++) {
+      if (commands.get(i).serialize().equals(command.serialize())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.layout3d;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks that rendering the tiles of an image in parallel gives the same pixels as drawing the triangles one after the other.
+ */
+public class RasterizeTest {
+  // Not a multiple of the tile size, so that the last row and column of tiles are partial
+  private static final int WIDTH = 300;
+  private static final int HEIGHT = 200;
+  private static final int TEXTURE_WIDTH = 37;
+  private static final int TEXTURE_HEIGHT = 23;
+
+  private TriData myTri;
+  private int[] myTexture;
+  private double[] myMatrix;
+
+  @Before
+  public void setUp() {
+    Random random = new Random(42);
+    int triangles = 120;
+    myTri = new TriData();
+    myTri.myVert = new float[triangles * 9];
+    // Texture coordinates are indexed like the vertices
+    myTri.myTexture_uv = new float[triangles * 9];
+    myTri.myIndex = new int[triangles * 3];
+    myTri.mySurfaceType = new int[triangles];
+    for (int t = 0; t < triangles; t++) {
+      // Triangles of all sizes, overlapping each other at random depths, some of them partly off screen
+      float cx = random.nextFloat() * (WIDTH + 100) - 50;
+      float cy = random.nextFloat() * (HEIGHT + 100) - 50;
+      float size = 5 + random.nextFloat() * 150;
+      for (int v = 0; v < 3; v++) {
+        int p = (t * 3 + v) * 3;
+        myTri.myVert[p] = cx + (random.nextFloat() - .5f) * size;
+        myTri.myVert[p + 1] = cy + (random.nextFloat() - .5f) * size;
+        myTri.myVert[p + 2] = 10 + random.nextFloat() * 100;
+        myTri.myTexture_uv[p] = random.nextFloat() * TEXTURE_WIDTH;
+        myTri.myTexture_uv[p + 1] = random.nextFloat() * TEXTURE_HEIGHT;
+        myTri.myIndex[t * 3 + v] = p;
+      }
+      myTri.mySurfaceType[t] = random.nextInt(3);
+    }
+    myTexture = new int[TEXTURE_WIDTH * TEXTURE_HEIGHT];
+    for (int i = 0; i < myTexture.length; i++) {
+      myTexture[i] = random.nextInt() | 0xFF000000;
+    }
+    myMatrix = new double[16];
+  }
+
+  @Test
+  public void toZBuffMatchesSequentialRendering() {
+    float[] expectedZBuff = newZBuffer();
+    int[] expectedRgb = newImage();
+    for (int i = 0; i < myTri.myIndex.length; i += 3) {
+      int p1 = myTri.myIndex[i];
+      int p2 = myTri.myIndex[i + 1];
+      int p3 = myTri.myIndex[i + 2];
+      int type = myTri.mySurfaceType[i / 3];
+      if (type == 1) {
+        Rasterize.render_perspectiveAffine(expectedZBuff, expectedRgb, WIDTH, HEIGHT,
+                                           myTri.myVert[p1], myTri.myVert[p1 + 1], myTri.myVert[p1 + 2],
+                                           myTri.myVert[p2], myTri.myVert[p2 + 1], myTri.myVert[p2 + 2],
+                                           myTri.myVert[p3], myTri.myVert[p3 + 1], myTri.myVert[p3 + 2],
+                                           myTri.myTexture_uv[p1], myTri.myTexture_uv[p1 + 1],
+                                           myTri.myTexture_uv[p2], myTri.myTexture_uv[p2 + 1],
+                                           myTri.myTexture_uv[p3], myTri.myTexture_uv[p3 + 1],
+                                           myTexture, TEXTURE_WIDTH, TEXTURE_HEIGHT, myMatrix);
+      }
+      else {
+        Rasterize.flat(expectedZBuff, expectedRgb, WIDTH, HEIGHT,
+                       myTri.myVert[p1], myTri.myVert[p1 + 1], myTri.myVert[p1 + 2],
+                       myTri.myVert[p2], myTri.myVert[p2 + 1], myTri.myVert[p2 + 2],
+                       myTri.myVert[p3], myTri.myVert[p3 + 1], myTri.myVert[p3 + 2],
+                       (type == 0) ? Rasterize.BLUE : Rasterize.GRAY);
+      }
+    }
+
+    float[] zbuff = newZBuffer();
+    int[] rgb = newImage();
+    Rasterize.toZBuff(zbuff, rgb, WIDTH, HEIGHT, myTri, myTexture, TEXTURE_WIDTH, TEXTURE_HEIGHT, myMatrix);
+
+    assertArrayEquals(expectedRgb, rgb);
+    assertArrayEquals(expectedZBuff, zbuff, 0f);
+  }
+
+  @Test
+  public void simpleMatchesSequentialRendering() {
+    float[] expectedZBuff = newZBuffer();
+    int[] expectedRgb = newImage();
+    for (int i = 0; i < myTri.myIndex.length; i += 3) {
+      int p1 = myTri.myIndex[i];
+      int p2 = myTri.myIndex[i + 1];
+      int p3 = myTri.myIndex[i + 2];
+      Rasterize.flat(expectedZBuff, expectedRgb, WIDTH, HEIGHT,
+                     myTri.myVert[p1], myTri.myVert[p1 + 1], myTri.myVert[p1 + 2],
+                     myTri.myVert[p2], myTri.myVert[p2 + 1], myTri.myVert[p2 + 2],
+                     myTri.myVert[p3], myTri.myVert[p3 + 1], myTri.myVert[p3 + 2],
+                     (myTri.mySurfaceType[i / 3] == 0) ? Rasterize.BLUE : Rasterize.GRAY);
+    }
+
+    float[] zbuff = newZBuffer();
+    int[] rgb = newImage();
+    Rasterize.simple(zbuff, rgb, WIDTH, HEIGHT, myTri);
+
+    assertArrayEquals(expectedRgb, rgb);
+    assertArrayEquals(expectedZBuff, zbuff, 0f);
+  }
+
+  private static float[] newZBuffer() {
+    float[] zbuff = new float[WIDTH * HEIGHT];
+    Arrays.fill(zbuff, Float.MAX_VALUE);
+    return zbuff;
+  }
+
+  private static int[] newImage() {
+    int[] rgb = new int[WIDTH * HEIGHT];
+    Arrays.fill(rgb, 0xFF000000);
+    return rgb;
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scout;
+
+import com.android.tools.idea.common.fixtures.ComponentDescriptor;
+import com.android.tools.idea.common.fixtures.ModelBuilder;
+import com.android.tools.idea.common.model.NlComponent;
+import com.android.tools.idea.uibuilder.scene.SceneTest;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static com.android.SdkConstants.BUTTON;
+import static com.android.SdkConstants.CONSTRAINT_LAYOUT;
+import static com.android.SdkConstants.TEXT_VIEW;
+
+/**
+ * Check that computing the rows of the inference tables in parallel gives the same tables as computing them one after the other,
+ * and that it can be cancelled.
+ */
+public class ScoutProbabilitiesTest extends SceneTest {
+  private static final int COLUMNS = 6;
+  private static final int ROWS = 7;
+
+  @Override
+  @NotNull
+  public ModelBuilder createModel() {
+    ComponentDescriptor[] children = new ComponentDescriptor[COLUMNS * ROWS];
+    for (int row = 0; row < ROWS; row++) {
+      for (int column = 0; column < COLUMNS; column++) {
+        int index = row * COLUMNS + column;
+        // Vary sizes and offsets so that widgets line up with some of their neighbours only
+        int width = 100 + (index % 3) * 40;
+        int height = 40 + (index % 4) * 10;
+        int x = 20 + column * 320 + (row % 2) * (160 - width / 2);
+        int y = 20 + row * 280 + (column % 3) * 20;
+        children[index] = component(index % 2 == 0 ? TEXT_VIEW : BUTTON)
+          .id("@+id/widget" + index)
+          .withBounds(x, y, width, height)
+          .width(width / 2 + "dp")
+          .height(height / 2 + "dp");
+      }
+    }
+    return model("constraint.xml",
+                 component(CONSTRAINT_LAYOUT)
+                   .id("@+id/content_main")
+                   .withBounds(0, 0, 2000, 2000)
+                   .width("1000dp")
+                   .height("1000dp")
+                   .children(children));
+  }
+
+  public void testParallelComputationMatchesSequential() {
+    NlComponent root = myModel.getComponents().get(0);
+    ScoutWidget[] widgets = ScoutWidget.getWidgetArray(root);
+    assertTrue(widgets.length >= ScoutProbabilities.MIN_PARALLEL_WIDGETS);
+
+    ScoutProbabilities sequential = new ScoutProbabilities();
+    sequential.computeConstraints(widgets, false);
+    ScoutProbabilities parallel = new ScoutProbabilities();
+    parallel.computeConstraints(widgets, true);
+
+    assertTrue(Arrays.deepEquals(sequential.mProbability, parallel.mProbability));
+    assertTrue(Arrays.deepEquals(sequential.mMargin, parallel.mMargin));
+    for (int i = 1; i < widgets.length; i++) {
+      for (int horizontal = 0; horizontal < 2; horizontal++) {
+        assertSameCandidates(sequential.mCenterCandidates[i][horizontal], parallel.mCenterCandidates[i][horizontal]);
+      }
+    }
+  }
+
+  public void testCancellationStopsParallelComputation() {
+    NlComponent root = myModel.getComponents().get(0);
+    ScoutWidget[] widgets = ScoutWidget.getWidgetArray(root);
+    ProgressIndicatorBase indicator = new ProgressIndicatorBase();
+    indicator.start();
+    indicator.cancel();
+
+    ScoutProbabilities table = new ScoutProbabilities();
+    try {
+      ProgressManager.getInstance().runProcess(() -> table.computeConstraints(widgets, true), indicator);
+      fail("The computation should have been cancelled");
+    }
+    catch (ProcessCanceledException expected) {
+    }
+    // None of the widgets was computed once the indicator was cancelled
+    for (int i = 1; i < widgets.length; i++) {
+      assertNull(table.mProbability[i]);
+      assertNull(table.mCenterCandidates[i]);
+    }
+  }
+
+  private static void assertSameCandidates(@NotNull ScoutProbabilities.CenterCandidates expected,
+                                           @NotNull ScoutProbabilities.CenterCandidates actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int k = 0; k < expected.size(); k++) {
+      assertEquals(expected.getCandidate1(k), actual.getCandidate1(k));
+      assertEquals(expected.getCandidate2(k), actual.getCandidate2(k));
+      assertEquals(expected.getProbability(k), actual.getProbability(k), 0f);
+      assertEquals(expected.getBias(k), actual.getBias(k), 0f);
+    }
+  }
+}
@@ -1,7 +1,6 @@
 package org.jetbrains.jps.android;
 
 import com.intellij.openapi.util.io.FileUtil;
-import com.intellij.util.containers.HashMap;
 import com.intellij.util.containers.HashSet;
 import org.jetbrains.android.util.ResourceEntry;
 import org.jetbrains.android.util.ValueResourcesFileParser;
@@ -16,6 +15,7 @@ import org.jetbrains.jps.model.module.JpsModuleDependency;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Eugene.Kudelevsky
@@ -23,18 +23,20 @@ import java.util.*;
 public class AndroidBuildDataCache {
   private static AndroidBuildDataCache ourInstance;
 
-  private final Map<JpsModule, MyAndroidDeps> myModule2AndroidDeps = new HashMap<JpsModule, MyAndroidDeps>();
-  private final Map<String, List<ResourceEntry>> myParsedValueResourceFiles = new HashMap<String, List<ResourceEntry>>();
+  // Source generation runs for several modules in parallel, see AndroidModuleTaskScheduler. Concurrent misses may
+  // compute the same value twice, which is harmless since the computations have no side effects.
+  private final Map<JpsModule, MyAndroidDeps> myModule2AndroidDeps = new ConcurrentHashMap<JpsModule, MyAndroidDeps>();
+  private final Map<String, List<ResourceEntry>> myParsedValueResourceFiles = new ConcurrentHashMap<String, List<ResourceEntry>>();
 
   @NotNull
-  public static AndroidBuildDataCache getInstance() {
+  public static synchronized AndroidBuildDataCache getInstance() {
     if (ourInstance == null) {
       ourInstance = new AndroidBuildDataCache();
     }
     return ourInstance;
   }
 
-  public static void clean() {
+  public static synchronized void clean() {
     ourInstance = null;
   }
 
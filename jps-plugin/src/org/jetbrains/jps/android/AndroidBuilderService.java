@@ -1,12 +1,17 @@
 package org.jetbrains.jps.android;
 
+import com.intellij.util.SystemProperties;
+import org.jetbrains.android.util.AndroidBuildTestingManager;
+import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.android.builder.*;
 import org.jetbrains.jps.builders.BuildTargetType;
 import org.jetbrains.jps.incremental.BuilderService;
 import org.jetbrains.jps.incremental.ModuleLevelBuilder;
 import org.jetbrains.jps.incremental.TargetBuilder;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 
@@ -14,6 +19,26 @@ import java.util.List;
  * @author Eugene.Kudelevsky
  */
 public class AndroidBuilderService extends BuilderService {
+  @NonNls private static final String DX_DAEMON_PROPERTY = "android.jps.dx.daemon";
+  @NonNls private static final String DX_DAEMON_DIR = ".android" + File.separator + "jps-dx-daemons";
+
+  private static final AndroidDxDaemonManager ourDxDaemonManager =
+    new AndroidDxDaemonManager(new File(SystemProperties.getUserHome(), DX_DAEMON_DIR));
+
+  /**
+   * Returns the manager of the dx daemons shared by all builds on this machine, or null if dx should be run in a
+   * separate process for every invocation. Daemons are never used in tests driven by
+   * {@link AndroidBuildTestingManager}, and can be turned off with {@code -Dandroid.jps.dx.daemon=false}.
+   */
+  @Nullable
+  public static AndroidDxDaemonManager getDxDaemonManager() {
+    if (AndroidBuildTestingManager.getTestingManager() != null ||
+        !SystemProperties.getBooleanProperty(DX_DAEMON_PROPERTY, true)) {
+      return null;
+    }
+    return ourDxDaemonManager;
+  }
+
   @NotNull
   @Override
   public List<? extends BuildTargetType<?>> getTargetTypes() {
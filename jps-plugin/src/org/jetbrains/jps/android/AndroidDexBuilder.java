@@ -247,6 +247,28 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
                   DEX_BUILDER_NAME, module.getName(), module);
   }
 
+  /**
+   * Returns the dx options derived from the project's dex compiler configuration. Anything that can change the
+   * produced dex files must be listed here, since the pre-dex cache uses these options as part of its key.
+   */
+  @NotNull
+  static List<String> getDexOptions(@Nullable JpsAndroidDexCompilerConfiguration configuration) {
+    if (configuration == null) {
+      return Collections.emptyList();
+    }
+    final List<String> options = new ArrayList<String>();
+    options.addAll(Arrays.asList("--optimize", Boolean.toString(configuration.isOptimize())));
+
+    if (configuration.isForceJumbo()) {
+      options.addAll(Arrays.asList("--forceJumbo", Boolean.TRUE.toString()));
+    }
+
+    if (configuration.isCoreLibrary()) {
+      options.add("--coreLibrary");
+    }
+    return options;
+  }
+
   public static boolean runDex(@NotNull AndroidPlatform platform,
                                @NotNull String outFilePath,
                                @NotNull String[] compileTargets,
@@ -294,15 +316,7 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
       if (!AndroidCommonUtils.hasXmxParam(vmOptions)) {
         vmOptions.add("-Xmx" + configuration.getMaxHeapSize() + "M");
       }
-      programParamList.addAll(Arrays.asList("--optimize", Boolean.toString(configuration.isOptimize())));
-
-      if (configuration.isForceJumbo()) {
-        programParamList.addAll(Arrays.asList("--forceJumbo", Boolean.TRUE.toString()));
-      }
-
-      if (configuration.isCoreLibrary()) {
-        programParamList.add("--coreLibrary");
-      }
+      programParamList.addAll(getDexOptions(configuration));
     }
     else {
       vmOptions = Collections.singletonList("-Xmx1024M");
@@ -337,28 +351,55 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
     if (javaExecutable == null) {
       return false;
     }
-    final List<String> commandLine = ExternalProcessUtil
-      .buildJavaCommandLine(javaExecutable, AndroidDxRunner.class.getName(),
-                            Collections.<String>emptyList(), classPath, vmOptions, programParamList);
+    final HashMap<AndroidCompilerMessageKind, List<String>> messages = new HashMap<AndroidCompilerMessageKind, List<String>>(3);
+    messages.put(AndroidCompilerMessageKind.ERROR, new ArrayList<String>());
+    messages.put(AndroidCompilerMessageKind.WARNING, new ArrayList<String>());
+    messages.put(AndroidCompilerMessageKind.INFORMATION, new ArrayList<String>());
 
-    LOG.info(AndroidCommonUtils.command2string(commandLine));
+    final long startTime = System.currentTimeMillis();
+    final AndroidDxDaemonManager daemonManager = AndroidBuilderService.getDxDaemonManager();
+    final AndroidDxDaemonManager.DexResult daemonResult = daemonManager != null
+                                                         ? daemonManager.runDex(javaExecutable, classPath, vmOptions, programParamList,
+                                                                                context.getCancelStatus())
+                                                         : null;
 
-    final String[] commands = ArrayUtil.toStringArray(commandLine);
-    final Process process;
+    if (daemonResult == null && context.getCancelStatus().isCanceled()) {
+      return false;
+    }
 
-    if (testingManager != null) {
-      process = testingManager.getCommandExecutor().createProcess(
-        commands, Collections.<String, String>emptyMap());
+    if (daemonResult != null) {
+      LOG.info("dx daemon: " + AndroidCommonUtils.command2string(programParamList));
+      AndroidCommonUtils.handleDexCompilationResult(daemonResult.getStdout(), daemonResult.getStderr(), outFilePath, messages, multiDex);
+      final List<String> errors = messages.get(AndroidCompilerMessageKind.ERROR);
+
+      // dx may leave a partial output behind when it fails, in which case its errors were reported as warnings
+      if (daemonResult.getExitCode() != 0 && errors.isEmpty()) {
+        errors.add("dx failed with exit code " + daemonResult.getExitCode());
+      }
     }
     else {
-      process = Runtime.getRuntime().exec(commands);
-    }
-    final HashMap<AndroidCompilerMessageKind, List<String>> messages = new HashMap<AndroidCompilerMessageKind, List<String>>(3);
-    messages.put(AndroidCompilerMessageKind.ERROR, new ArrayList<String>());
-    messages.put(AndroidCompilerMessageKind.WARNING, new ArrayList<String>());
-    messages.put(AndroidCompilerMessageKind.INFORMATION, new ArrayList<String>());
+      final List<String> commandLine = ExternalProcessUtil
+        .buildJavaCommandLine(javaExecutable, AndroidDxRunner.class.getName(),
+                              Collections.<String>emptyList(), classPath, vmOptions, programParamList);
+
+      LOG.info(AndroidCommonUtils.command2string(commandLine));
+
+      final String[] commands = ArrayUtil.toStringArray(commandLine);
+      final Process process;
 
-    AndroidCommonUtils.handleDexCompilationResult(process, StringUtil.join(commandLine, " "), outFilePath, messages, multiDex);
+      if (testingManager != null) {
+        process = testingManager.getCommandExecutor().createProcess(
+          commands, Collections.<String, String>emptyMap());
+      }
+      else {
+        process = Runtime.getRuntime().exec(commands);
+      }
+      AndroidCommonUtils.handleDexCompilationResult(process, StringUtil.join(commandLine, " "), outFilePath, messages, multiDex);
+    }
+    final String timing = srcTargetName + ": dx finished in " + (System.currentTimeMillis() - startTime) + " ms" +
+                          (daemonResult != null ? " (dx daemon)" : "");
+    LOG.info(timing);
+    context.processMessage(new ProgressMessage(timing));
 
     AndroidJpsUtil.addMessages(context, messages, builderName, srcTargetName);
     final boolean success = messages.get(AndroidCompilerMessageKind.ERROR).isEmpty();
@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.android;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ArrayUtil;
+import org.jetbrains.android.compiler.tools.AndroidDxDaemonProtocol;
+import org.jetbrains.android.compiler.tools.AndroidDxDaemonProtocol.Endpoint;
+import org.jetbrains.android.compiler.tools.AndroidDxRunner;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.api.CanceledStatus;
+import org.jetbrains.jps.incremental.ExternalProcessUtil;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs dx in long-lived {@link AndroidDxRunner} daemons that outlive the build process, so that incremental
+ * builds reuse a VM in which dx is already loaded and JIT-compiled.
+ * <p>
+ * Daemons are identified by the java executable, class path and VM options used to start them. There are
+ * {@link #MAX_DAEMONS} daemon slots shared by all identities, so that concurrent dx invocations (e.g. parallel
+ * pre-dexing) don't queue up behind each other while the number of daemon VMs on the machine stays bounded. A
+ * request prefers a slot running a daemon of its identity, then an empty slot, and otherwise replaces the daemon
+ * of another identity. Each slot is guarded by a file lock held for the duration of a request, which also
+ * serializes starting the daemon between build processes. A daemon is checked with a ping before every request
+ * and replaced if it doesn't answer. Daemons are stopped when the build process that started them exits, see
+ * {@link #shutdownDaemons()}. If a daemon can't be used for any reason, including
+ * crashing while handling the request or not answering within {@link #REQUEST_TIMEOUT_MS}, {@link #runDex}
+ * returns null and the caller is expected to run dx in a separate process as before; the daemon is restarted by
+ * the next request for its slot. {@link #runDex} also returns null as soon as the build is canceled.
+ */
+public class AndroidDxDaemonManager {
+  private static final Logger LOG = Logger.getInstance(AndroidDxDaemonManager.class);
+
+  @NonNls private static final String DAEMON_ARG = "--daemon";
+  @NonNls private static final String SLOT_PREFIX = "slot-";
+  @NonNls private static final String PORT_FILE_SUFFIX = ".port";
+  /** The most daemons running at a time, whatever their identity */
+  static final int MAX_DAEMONS = 4;
+  private static final long IDLE_TIMEOUT_MS = TimeUnit.HOURS.toMillis(1);
+  private static final long STARTUP_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+  private static final int PING_TIMEOUT_MS = (int)TimeUnit.SECONDS.toMillis(5);
+  /** How long dx may run in a daemon before the daemon is considered wedged, e.g. stuck in GC or deadlocked */
+  private static final long REQUEST_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+  /** How often to check whether the build was canceled while waiting for dx */
+  private static final int CANCEL_CHECK_INTERVAL_MS = 500;
+
+  @NotNull private final File myDaemonDir;
+  /** Daemons started by this manager, guarded by itself */
+  @NotNull private final List<StartedDaemon> myStartedDaemons = new ArrayList<StartedDaemon>();
+  private boolean myShutdownHookAdded;
+
+  public AndroidDxDaemonManager(@NotNull File daemonDir) {
+    myDaemonDir = daemonDir;
+  }
+
+  /**
+   * Stops the daemons started by this manager, including the ones that are handling requests of other build
+   * processes, which then run dx in a separate process instead. Called when the build process exits.
+   */
+  public void shutdownDaemons() {
+    final List<StartedDaemon> daemons;
+
+    synchronized (myStartedDaemons) {
+      daemons = new ArrayList<StartedDaemon>(myStartedDaemons);
+      myStartedDaemons.clear();
+    }
+    for (StartedDaemon daemon : daemons) {
+      final Endpoint endpoint = AndroidDxDaemonProtocol.readPortFile(daemon.myPortFile);
+
+      // The slot may have been taken over by another daemon in the meantime
+      if (endpoint != null && daemon.myToken.equals(endpoint.getToken())) {
+        FileUtil.delete(daemon.myPortFile);
+      }
+      daemon.myProcess.destroy();
+    }
+  }
+
+  /**
+   * Runs dx with the given {@link AndroidDxRunner} arguments in a daemon started with {@code javaExecutable},
+   * {@code classPath} and {@code vmOptions}. Returns null if no daemon could handle the request, or if the build
+   * was canceled while waiting for it.
+   */
+  @Nullable
+  public DexResult runDex(@NotNull String javaExecutable,
+                          @NotNull List<String> classPath,
+                          @NotNull List<String> vmOptions,
+                          @NotNull List<String> programParams,
+                          @NotNull CanceledStatus cancelStatus) {
+    final String key = computeDaemonKey(javaExecutable, classPath, vmOptions);
+
+    if (!myDaemonDir.isDirectory() && !FileUtil.createDirectory(myDaemonDir)) {
+      LOG.info("Cannot create dx daemon directory " + myDaemonDir.getPath());
+      return null;
+    }
+    for (int slot : getSlotOrder(key)) {
+      final File lockFile = new File(myDaemonDir, SLOT_PREFIX + slot + ".lock");
+
+      try {
+        final RandomAccessFile lockAccess = new RandomAccessFile(lockFile, "rw");
+        try {
+          final FileLock lock = tryLock(lockAccess.getChannel());
+
+          if (lock == null) {
+            continue;
+          }
+          try {
+            final File portFile = new File(myDaemonDir, SLOT_PREFIX + slot + "-" + key + PORT_FILE_SUFFIX);
+            stopOtherDaemons(slot, portFile);
+            final List<String> commandLine = ExternalProcessUtil.buildJavaCommandLine(
+              javaExecutable, AndroidDxRunner.class.getName(), Collections.<String>emptyList(), classPath, vmOptions,
+              Collections.<String>emptyList());
+            return runInSlot(portFile, commandLine, programParams, cancelStatus);
+          }
+          finally {
+            lock.release();
+          }
+        }
+        finally {
+          lockAccess.close();
+        }
+      }
+      catch (IOException e) {
+        LOG.info("Cannot use dx daemon slot " + lockFile.getPath(), e);
+        return null;
+      }
+    }
+    LOG.info("All dx daemons are busy");
+    return null;
+  }
+
+  /**
+   * Returns the slots to try for a daemon with the given key: the slots running such a daemon come first, then the
+   * empty slots, and last the slots whose daemon would have to be replaced.
+   */
+  @NotNull
+  private List<Integer> getSlotOrder(@NotNull String key) {
+    final List<Integer> ownSlots = new ArrayList<Integer>();
+    final List<Integer> emptySlots = new ArrayList<Integer>();
+    final List<Integer> otherSlots = new ArrayList<Integer>();
+
+    for (int slot = 0; slot < MAX_DAEMONS; slot++) {
+      if (new File(myDaemonDir, SLOT_PREFIX + slot + "-" + key + PORT_FILE_SUFFIX).isFile()) {
+        ownSlots.add(slot);
+      }
+      else if (getPortFiles(slot).isEmpty()) {
+        emptySlots.add(slot);
+      }
+      else {
+        otherSlots.add(slot);
+      }
+    }
+    ownSlots.addAll(emptySlots);
+    ownSlots.addAll(otherSlots);
+    return ownSlots;
+  }
+
+  @NotNull
+  private List<File> getPortFiles(int slot) {
+    final String prefix = SLOT_PREFIX + slot + "-";
+    final File[] files = myDaemonDir.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.getName().startsWith(prefix) && file.getName().endsWith(PORT_FILE_SUFFIX);
+      }
+    });
+    return files != null ? Arrays.asList(files) : Collections.<File>emptyList();
+  }
+
+  /**
+   * Stops the daemons of other identities in a slot, whose lock must be held. They are idle, since their requests
+   * hold the same lock.
+   */
+  private void stopOtherDaemons(int slot, @NotNull File portFile) {
+    for (File otherPortFile : getPortFiles(slot)) {
+      if (otherPortFile.equals(portFile)) {
+        continue;
+      }
+      final Endpoint endpoint = AndroidDxDaemonProtocol.readPortFile(otherPortFile);
+
+      if (endpoint != null) {
+        shutdown(endpoint);
+      }
+      FileUtil.delete(otherPortFile);
+    }
+  }
+
+  @Nullable
+  private static FileLock tryLock(@NotNull FileChannel channel) throws IOException {
+    try {
+      return channel.tryLock();
+    }
+    catch (OverlappingFileLockException e) {
+      // Held by another thread of this build process
+      return null;
+    }
+  }
+
+  @Nullable
+  private DexResult runInSlot(@NotNull File portFile,
+                              @NotNull List<String> commandLine,
+                              @NotNull List<String> programParams,
+                              @NotNull CanceledStatus cancelStatus) {
+    Endpoint endpoint = AndroidDxDaemonProtocol.readPortFile(portFile);
+
+    if (endpoint == null || !ping(endpoint)) {
+      // Either there is no daemon yet, or it has crashed or hung. A hung daemon exits by itself once it notices
+      // that its port file is gone, or after its idle timeout at the latest.
+      FileUtil.delete(portFile);
+      endpoint = startDaemon(portFile, commandLine);
+
+      if (endpoint == null) {
+        return null;
+      }
+    }
+    try {
+      final Socket socket = connect(endpoint);
+      try {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        final BufferedInputStream response = new BufferedInputStream(socket.getInputStream());
+        AndroidDxDaemonProtocol.writeString(out, endpoint.getToken());
+        AndroidDxDaemonProtocol.writeString(out, AndroidDxDaemonProtocol.DEX);
+        AndroidDxDaemonProtocol.writeStrings(out, ArrayUtil.toStringArray(programParams));
+        out.flush();
+
+        if (!awaitResponse(socket, response, cancelStatus)) {
+          // The daemon finishes the request on its own, and the next request for this slot replaces it if it is still busy
+          LOG.info("Build canceled while waiting for the dx daemon");
+          return null;
+        }
+        // The whole response is written at once when dx is done
+        socket.setSoTimeout(PING_TIMEOUT_MS);
+        final DataInputStream in = new DataInputStream(response);
+        final int exitCode = in.readInt();
+        final String stdout = AndroidDxDaemonProtocol.readString(in);
+        final String stderr = AndroidDxDaemonProtocol.readString(in);
+        return new DexResult(exitCode, stdout, stderr);
+      }
+      finally {
+        socket.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("dx daemon failed, it will be restarted by the next request", e);
+      FileUtil.delete(portFile);
+      return null;
+    }
+  }
+
+  /**
+   * Waits until the daemon starts answering, checking for cancellation along the way. Returns false if the build
+   * was canceled, and throws a {@link SocketTimeoutException} if the daemon didn't answer in {@link #REQUEST_TIMEOUT_MS}.
+   */
+  private static boolean awaitResponse(@NotNull Socket socket, @NotNull BufferedInputStream in, @NotNull CanceledStatus cancelStatus)
+    throws IOException {
+    final long deadline = System.currentTimeMillis() + REQUEST_TIMEOUT_MS;
+    socket.setSoTimeout(CANCEL_CHECK_INTERVAL_MS);
+
+    while (true) {
+      in.mark(1);
+      try {
+        if (in.read() < 0) {
+          throw new EOFException("dx daemon closed the connection");
+        }
+        in.reset();
+        return true;
+      }
+      catch (SocketTimeoutException e) {
+        if (cancelStatus.isCanceled()) {
+          return false;
+        }
+        if (System.currentTimeMillis() > deadline) {
+          throw new SocketTimeoutException("dx daemon did not answer in " + REQUEST_TIMEOUT_MS + " ms");
+        }
+      }
+    }
+  }
+
+  private static boolean ping(@NotNull Endpoint endpoint) {
+    try {
+      final Socket socket = connect(endpoint);
+      try {
+        socket.setSoTimeout(PING_TIMEOUT_MS);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        AndroidDxDaemonProtocol.writeString(out, endpoint.getToken());
+        AndroidDxDaemonProtocol.writeString(out, AndroidDxDaemonProtocol.PING);
+        out.flush();
+        return AndroidDxDaemonProtocol.PONG.equals(AndroidDxDaemonProtocol.readString(new DataInputStream(socket.getInputStream())));
+      }
+      finally {
+        socket.close();
+      }
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void shutdown(@NotNull Endpoint endpoint) {
+    try {
+      final Socket socket = connect(endpoint);
+      try {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        AndroidDxDaemonProtocol.writeString(out, endpoint.getToken());
+        AndroidDxDaemonProtocol.writeString(out, AndroidDxDaemonProtocol.SHUTDOWN);
+        out.flush();
+      }
+      finally {
+        socket.close();
+      }
+    }
+    catch (IOException e) {
+      // Not running anymore, or it exits once it notices that its port file is gone
+    }
+  }
+
+  @NotNull
+  private static Socket connect(@NotNull Endpoint endpoint) throws IOException {
+    final Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), endpoint.getPort()), PING_TIMEOUT_MS);
+    }
+    catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+    return socket;
+  }
+
+  @Nullable
+  private Endpoint startDaemon(@NotNull File portFile, @NotNull List<String> commandLine) {
+    final List<String> command = new ArrayList<String>(commandLine);
+    command.add(DAEMON_ARG);
+    command.add(portFile.getPath());
+    command.add(Long.toString(IDLE_TIMEOUT_MS));
+    final File logFile = new File(portFile.getPath() + ".log");
+
+    LOG.info("Starting dx daemon: " + command);
+    final Process process;
+    try {
+      process = new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.to(logFile))
+        .start();
+    }
+    catch (IOException e) {
+      LOG.info("Cannot start dx daemon", e);
+      return null;
+    }
+    final long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+
+    while (System.currentTimeMillis() < deadline) {
+      final Endpoint endpoint = AndroidDxDaemonProtocol.readPortFile(portFile);
+
+      if (endpoint != null) {
+        addStartedDaemon(new StartedDaemon(portFile, endpoint.getToken(), process));
+        return endpoint;
+      }
+      if (!process.isAlive()) {
+        LOG.info("dx daemon exited with code " + process.exitValue() + ", see " + logFile.getPath());
+        return null;
+      }
+      try {
+        Thread.sleep(50);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    LOG.info("dx daemon did not start in time, see " + logFile.getPath());
+    process.destroy();
+    return null;
+  }
+
+  private void addStartedDaemon(@NotNull StartedDaemon daemon) {
+    synchronized (myStartedDaemons) {
+      if (!myShutdownHookAdded) {
+        Runtime.getRuntime().addShutdownHook(new Thread("dx daemon shutdown") {
+          @Override
+          public void run() {
+            shutdownDaemons();
+          }
+        });
+        myShutdownHookAdded = true;
+      }
+      myStartedDaemons.add(daemon);
+    }
+  }
+
+  @NotNull
+  private static String computeDaemonKey(@NotNull String javaExecutable, @NotNull List<String> classPath, @NotNull List<String> vmOptions) {
+    final Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(javaExecutable, Charsets.UTF_8);
+
+    for (String entry : classPath) {
+      hasher.putInt(entry.length());
+      hasher.putString(entry, Charsets.UTF_8);
+    }
+    hasher.putInt(-1);
+
+    for (String option : vmOptions) {
+      hasher.putInt(option.length());
+      hasher.putString(option, Charsets.UTF_8);
+    }
+    return hasher.hash().toString().substring(0, 16);
+  }
+
+  private static class StartedDaemon {
+    @NotNull private final File myPortFile;
+    @NotNull private final String myToken;
+    @NotNull private final Process myProcess;
+
+    StartedDaemon(@NotNull File portFile, @NotNull String token, @NotNull Process process) {
+      myPortFile = portFile;
+      myToken = token;
+      myProcess = process;
+    }
+  }
+
+  public static class DexResult {
+    private final int myExitCode;
+    @NotNull private final String myStdout;
+    @NotNull private final String myStderr;
+
+    DexResult(int exitCode, @NotNull String stdout, @NotNull String stderr) {
+      myExitCode = exitCode;
+      myStdout = stdout;
+      myStderr = stderr;
+    }
+
+    public int getExitCode() {
+      return myExitCode;
+    }
+
+    @NotNull
+    public String getStdout() {
+      return myStdout;
+    }
+
+    @NotNull
+    public String getStderr() {
+      return myStderr;
+    }
+  }
+}
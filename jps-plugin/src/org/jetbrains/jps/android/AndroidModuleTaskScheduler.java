@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.android;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.android.util.AndroidBuildTestingManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.incremental.CompileContext;
+import org.jetbrains.jps.incremental.messages.ProgressMessage;
+import org.jetbrains.jps.model.module.JpsModule;
+import org.jetbrains.jps.service.SharedThreadPool;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs a source generation step (aapt, AIDL, RenderScript, BuildConfig) for several modules at once.
+ * <p>
+ * A module's task is only started once the tasks of the modules it depends on have finished, so that e.g. aapt
+ * for an application sees the R.txt files of its libraries. Modules are considered in name order, so the
+ * scheduling order, and with it the order of the results, doesn't depend on hash codes. If the dependencies
+ * form a cycle, the cycle is broken at its first module in that order. The time spent on each module is
+ * reported as a progress message.
+ * <p>
+ * Builds driven by {@link AndroidBuildTestingManager} run the tasks one at a time, because their tests check the
+ * exact order of the executed commands.
+ */
+class AndroidModuleTaskScheduler {
+  private static final Logger LOG = Logger.getInstance(AndroidModuleTaskScheduler.class);
+
+  private static final int MAX_WORKERS = 4;
+
+  interface Task<R> {
+    @NotNull
+    R run(@NotNull JpsModule module) throws IOException;
+  }
+
+  private AndroidModuleTaskScheduler() {
+  }
+
+  /**
+   * Runs {@code task} for every module in {@code modules} and returns the results in scheduling order. Modules
+   * whose tasks were not run because the build was canceled have no result. If a task throws, no further tasks
+   * are started and the exception is rethrown once the running ones have finished.
+   *
+   * @param dependencies for each module, the modules whose tasks must have finished before its task starts.
+   *                     Modules not in {@code modules} are ignored.
+   */
+  @NotNull
+  static <R> Map<JpsModule, R> run(@NotNull CompileContext context,
+                                   @NotNull String stepName,
+                                   @NotNull Collection<JpsModule> modules,
+                                   @NotNull Map<JpsModule, ? extends Collection<JpsModule>> dependencies,
+                                   @NotNull Task<R> task) throws IOException {
+    final List<JpsModule> sortedModules = new ArrayList<JpsModule>(modules);
+    Collections.sort(sortedModules, new Comparator<JpsModule>() {
+      @Override
+      public int compare(JpsModule m1, JpsModule m2) {
+        return m1.getName().compareTo(m2.getName());
+      }
+    });
+    final int workerCount = AndroidBuildTestingManager.getTestingManager() != null
+                            ? 1
+                            : Math.min(sortedModules.size(), Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+    return new Run<R>(context, stepName, sortedModules, dependencies, task).execute(Math.max(1, workerCount));
+  }
+
+  private static class Run<R> {
+    @NotNull private final CompileContext myContext;
+    @NotNull private final String myStepName;
+    @NotNull private final List<JpsModule> myModules;
+    @NotNull private final Task<R> myTask;
+    @NotNull private final Map<JpsModule, Set<JpsModule>> myPendingDependencies = new HashMap<JpsModule, Set<JpsModule>>();
+    @NotNull private final Map<JpsModule, R> myResults = new LinkedHashMap<JpsModule, R>();
+    @NotNull private final Set<JpsModule> myStarted = new HashSet<JpsModule>();
+    @NotNull private final Set<JpsModule> myFinished = new HashSet<JpsModule>();
+
+    Run(@NotNull CompileContext context,
+        @NotNull String stepName,
+        @NotNull List<JpsModule> modules,
+        @NotNull Map<JpsModule, ? extends Collection<JpsModule>> dependencies,
+        @NotNull Task<R> task) {
+      myContext = context;
+      myStepName = stepName;
+      myModules = modules;
+      myTask = task;
+
+      final Set<JpsModule> moduleSet = new HashSet<JpsModule>(modules);
+
+      for (JpsModule module : modules) {
+        final Set<JpsModule> pending = new HashSet<JpsModule>();
+        final Collection<JpsModule> moduleDependencies = dependencies.get(module);
+
+        if (moduleDependencies != null) {
+          for (JpsModule dependency : moduleDependencies) {
+            if (dependency != module && moduleSet.contains(dependency)) {
+              pending.add(dependency);
+            }
+          }
+        }
+        myPendingDependencies.put(module, pending);
+      }
+    }
+
+    @NotNull
+    Map<JpsModule, R> execute(int workerCount) throws IOException {
+      if (workerCount == 1) {
+        JpsModule module;
+
+        while (!myContext.getCancelStatus().isCanceled() && (module = nextReadyModule()) != null) {
+          myStarted.add(module);
+          myResults.put(module, runTask(module));
+          finished(module);
+        }
+        return myResults;
+      }
+      final CompletionService<Void> completionService = new ExecutorCompletionService<Void>(SharedThreadPool.getInstance());
+      final Map<JpsModule, R> results = new ConcurrentHashMap<JpsModule, R>();
+      final Map<Future<Void>, JpsModule> running = new HashMap<Future<Void>, JpsModule>();
+      Throwable error = null;
+
+      while (true) {
+        JpsModule module;
+
+        while (error == null &&
+               running.size() < workerCount &&
+               !myContext.getCancelStatus().isCanceled() &&
+               (module = nextReadyModule()) != null) {
+          final JpsModule moduleToRun = module;
+          myStarted.add(moduleToRun);
+          running.put(completionService.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              results.put(moduleToRun, runTask(moduleToRun));
+              return null;
+            }
+          }), moduleToRun);
+        }
+        if (running.isEmpty()) {
+          break;
+        }
+        final Future<Void> future;
+        try {
+          future = completionService.take();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+        final JpsModule finishedModule = running.remove(future);
+
+        try {
+          future.get();
+        }
+        catch (ExecutionException e) {
+          if (error == null) {
+            error = e.getCause();
+          }
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+        finished(finishedModule);
+      }
+
+      if (error instanceof IOException) {
+        throw (IOException)error;
+      }
+      if (error instanceof RuntimeException) {
+        throw (RuntimeException)error;
+      }
+      if (error instanceof Error) {
+        throw (Error)error;
+      }
+      if (error != null) {
+        throw new IOException(error);
+      }
+      for (JpsModule module : myModules) {
+        final R result = results.get(module);
+
+        if (result != null) {
+          myResults.put(module, result);
+        }
+      }
+      return myResults;
+    }
+
+    @NotNull
+    private R runTask(@NotNull JpsModule module) throws IOException {
+      final long start = System.currentTimeMillis();
+      try {
+        return myTask.run(module);
+      }
+      finally {
+        final String message = myStepName + " [" + module.getName() + "]: " + (System.currentTimeMillis() - start) + " ms";
+        LOG.info(message);
+        myContext.processMessage(new ProgressMessage(message));
+      }
+    }
+
+    /**
+     * Returns the first module in name order that hasn't been started and has no unfinished dependencies. If
+     * there is no such module and nothing is running, the modules that have not been started yet wait for each
+     * other, and the cycle is broken by returning the first of them.
+     */
+    @Nullable
+    private JpsModule nextReadyModule() {
+      JpsModule firstWaiting = null;
+
+      for (JpsModule module : myModules) {
+        if (myStarted.contains(module)) {
+          continue;
+        }
+        if (myPendingDependencies.get(module).isEmpty()) {
+          return module;
+        }
+        if (firstWaiting == null) {
+          firstWaiting = module;
+        }
+      }
+      return myStarted.size() == myFinished.size() ? firstWaiting : null;
+    }
+
+    private void finished(@NotNull JpsModule module) {
+      myFinished.add(module);
+
+      for (Set<JpsModule> pending : myPendingDependencies.values()) {
+        pending.remove(module);
+      }
+    }
+  }
+}
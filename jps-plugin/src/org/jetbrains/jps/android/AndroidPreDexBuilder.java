@@ -1,5 +1,6 @@
 package org.jetbrains.jps.android;
 
+import com.android.sdklib.BuildToolInfo;
 import com.android.tools.idea.jps.AndroidTargetBuilder;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
@@ -9,6 +10,7 @@ import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.android.builder.AndroidPreDexBuildTarget;
+import org.jetbrains.jps.android.model.JpsAndroidExtensionService;
 import org.jetbrains.jps.builders.BuildOutputConsumer;
 import org.jetbrains.jps.builders.DirtyFilesHolder;
 import org.jetbrains.jps.builders.FileProcessor;
@@ -20,12 +22,20 @@ import org.jetbrains.jps.incremental.messages.CompilerMessage;
 import org.jetbrains.jps.incremental.messages.ProgressMessage;
 import org.jetbrains.jps.model.JpsProject;
 import org.jetbrains.jps.model.module.JpsModule;
+import org.jetbrains.jps.service.SharedThreadPool;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Eugene.Kudelevsky
@@ -33,6 +43,7 @@ import java.util.List;
 public class AndroidPreDexBuilder extends AndroidTargetBuilder<AndroidPreDexBuildTarget.MyRootDescriptor, AndroidPreDexBuildTarget> {
 
   @NonNls private static final String BUILDER_NAME = "Android Pre Dex";
+  private static final int MAX_DX_WORKERS = 4;
 
   protected AndroidPreDexBuilder() {
     super(Collections.singletonList(AndroidPreDexBuildTarget.MyTargetType.INSTANCE));
@@ -91,44 +102,53 @@ public class AndroidPreDexBuilder extends AndroidTargetBuilder<AndroidPreDexBuil
     if (platform == null) {
       return false;
     }
-    if (!filesToPreDex.isEmpty()) {
-      final File outputDir = target.getOutputFile(context);
-
-      for (Pair<File, String> pair : filesToPreDex) {
-        context.checkCanceled();
+    if (filesToPreDex.isEmpty()) {
+      return true;
+    }
+    final File outputDir = target.getOutputFile(context);
+    final List<PreDexTask> tasks = new ArrayList<PreDexTask>();
 
-        final File srcFile = pair.getFirst();
-        final String moduleName = pair.getSecond();
-        final String srcFilePath = srcFile.getAbsolutePath();
-        final File outputFile;
+    for (Pair<File, String> pair : filesToPreDex) {
+      final File srcFile = pair.getFirst();
+      final String moduleName = pair.getSecond();
+      final File outputFile;
 
-        if (moduleName != null) {
-          context.processMessage(new ProgressMessage("Pre-dex [" + moduleName + "]"));
-          outputFile = new File(new File(outputDir, moduleName), srcFile.getName());
-        }
-        else {
-          context.processMessage(new ProgressMessage("Pre-dex: " + srcFile.getName()));
-          final String outputFileName = getOutputFileNameForExternalJar(srcFile);
-
-          if (outputFileName == null) {
-            context.processMessage(new CompilerMessage(BUILDER_NAME, BuildMessage.Kind.ERROR,
-                                                       "Cannot pre-dex file " + srcFilePath + ": incorrect path", srcFilePath));
-            return false;
-          }
-          outputFile = new File(outputDir, outputFileName);
-        }
+      if (moduleName != null) {
+        outputFile = new File(new File(outputDir, moduleName), srcFile.getName());
+      }
+      else {
+        final String outputFileName = getOutputFileNameForExternalJar(srcFile);
 
-        if (AndroidJpsUtil.createDirIfNotExist(outputFile.getParentFile(), context, BUILDER_NAME) == null) {
+        if (outputFileName == null) {
+          final String srcFilePath = srcFile.getAbsolutePath();
+          context.processMessage(new CompilerMessage(BUILDER_NAME, BuildMessage.Kind.ERROR,
+                                                     "Cannot pre-dex file " + srcFilePath + ": incorrect path", srcFilePath));
           return false;
         }
+        outputFile = new File(outputDir, outputFileName);
+      }
 
-        if (!AndroidDexBuilder.runDex(platform, outputFile.getPath(), new String[]{srcFilePath}, context,
-          project, outputConsumer, BUILDER_NAME, srcFile.getName(), null)) {
-          return false;
-        }
+      if (AndroidJpsUtil.createDirIfNotExist(outputFile.getParentFile(), context, BUILDER_NAME) == null) {
+        return false;
       }
+      tasks.add(new PreDexTask(srcFile, moduleName, outputFile));
+    }
+    final PreDexRunner runner = new PreDexRunner(platform, project, context, new SynchronizedOutputConsumer(outputConsumer),
+                                                 AndroidPreDexCache.getInstance(), tasks);
+    return runner.run(getWorkerCount(tasks.size()));
+  }
+
+  /**
+   * Each dx invocation is a separate process with its own heap, so the number of concurrent invocations is kept
+   * well below the number of cores. Builds driven by {@link AndroidBuildTestingManager} check the exact order of
+   * the executed commands, so they always pre-dex sequentially.
+   */
+  private static int getWorkerCount(int taskCount) {
+    if (AndroidBuildTestingManager.getTestingManager() != null) {
+      return 1;
     }
-    return true;
+    final int workers = Math.min(MAX_DX_WORKERS, Runtime.getRuntime().availableProcessors() / 2);
+    return Math.max(1, Math.min(workers, taskCount));
   }
 
   public static boolean canBePreDexed(@NotNull File file) {
@@ -140,4 +160,168 @@ public class AndroidPreDexBuilder extends AndroidTargetBuilder<AndroidPreDexBuil
   public String getPresentableName() {
     return BUILDER_NAME;
   }
+
+  private static class PreDexTask {
+    @NotNull final File mySrcFile;
+    @Nullable final String myModuleName;
+    @NotNull final File myOutputFile;
+
+    PreDexTask(@NotNull File srcFile, @Nullable String moduleName, @NotNull File outputFile) {
+      mySrcFile = srcFile;
+      myModuleName = moduleName;
+      myOutputFile = outputFile;
+    }
+  }
+
+  /**
+   * Pre-dexes a list of jars with a fixed number of workers. The workers pull tasks from a shared queue and stop
+   * picking up new ones as soon as one of them fails or the build is canceled.
+   */
+  private static class PreDexRunner {
+    @NotNull private final AndroidPlatform myPlatform;
+    @NotNull private final JpsProject myProject;
+    @NotNull private final CompileContext myContext;
+    @NotNull private final BuildOutputConsumer myOutputConsumer;
+    @Nullable private final AndroidPreDexCache myCache;
+    @NotNull private final List<String> myDexOptions;
+    @NotNull private final Queue<PreDexTask> myQueue;
+    @NotNull private final AtomicBoolean myFailed = new AtomicBoolean();
+
+    PreDexRunner(@NotNull AndroidPlatform platform,
+                 @NotNull JpsProject project,
+                 @NotNull CompileContext context,
+                 @NotNull BuildOutputConsumer outputConsumer,
+                 @Nullable AndroidPreDexCache cache,
+                 @NotNull List<PreDexTask> tasks) {
+      myPlatform = platform;
+      myProject = project;
+      myContext = context;
+      myOutputConsumer = outputConsumer;
+      myCache = cache;
+      myDexOptions = AndroidDexBuilder.getDexOptions(
+        JpsAndroidExtensionService.getInstance().getDexCompilerConfiguration(project));
+      myQueue = new ConcurrentLinkedQueue<PreDexTask>(tasks);
+    }
+
+    boolean run(int workerCount) throws IOException, ProjectBuildException {
+      final Callable<Void> worker = new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          runWorker();
+          return null;
+        }
+      };
+
+      if (workerCount <= 1) {
+        try {
+          worker.call();
+        }
+        catch (IOException e) {
+          throw e;
+        }
+        catch (RuntimeException e) {
+          throw e;
+        }
+        catch (Exception e) {
+          throw new ProjectBuildException(e);
+        }
+      }
+      else {
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>(workerCount);
+
+        for (int i = 0; i < workerCount; i++) {
+          futures.add(SharedThreadPool.getInstance().submit(worker));
+        }
+        Throwable error = null;
+
+        for (Future<Void> future : futures) {
+          try {
+            future.get();
+          }
+          catch (ExecutionException e) {
+            if (error == null) {
+              error = e.getCause();
+            }
+          }
+          catch (InterruptedException e) {
+            myFailed.set(true);
+            Thread.currentThread().interrupt();
+            throw new ProjectBuildException(e);
+          }
+        }
+
+        if (error instanceof IOException) {
+          throw (IOException)error;
+        }
+        if (error instanceof RuntimeException) {
+          throw (RuntimeException)error;
+        }
+        if (error != null) {
+          throw new ProjectBuildException(error);
+        }
+      }
+      myContext.checkCanceled();
+      return !myFailed.get();
+    }
+
+    private void runWorker() throws IOException {
+      PreDexTask task;
+
+      while (!myFailed.get() && !myContext.getCancelStatus().isCanceled() && (task = myQueue.poll()) != null) {
+        boolean success = false;
+        try {
+          success = preDex(task);
+        }
+        finally {
+          if (!success) {
+            myFailed.set(true);
+          }
+        }
+      }
+    }
+
+    private boolean preDex(@NotNull PreDexTask task) throws IOException {
+      final File srcFile = task.mySrcFile;
+      final String srcFilePath = srcFile.getAbsolutePath();
+      final BuildToolInfo buildToolInfo = myPlatform.getTarget().getBuildToolInfo();
+      final String cacheKey = myCache != null && buildToolInfo != null
+                              ? AndroidPreDexCache.computeKey(srcFile, buildToolInfo, myDexOptions)
+                              : null;
+
+      if (cacheKey != null && myCache.restore(cacheKey, task.myOutputFile)) {
+        myContext.processMessage(new ProgressMessage("Pre-dex (cached): " + srcFile.getName()));
+        myOutputConsumer.registerOutputFile(task.myOutputFile, Collections.singletonList(srcFilePath));
+        return true;
+      }
+      myContext.processMessage(new ProgressMessage(task.myModuleName != null
+                                                   ? "Pre-dex [" + task.myModuleName + "]"
+                                                   : "Pre-dex: " + srcFile.getName()));
+
+      if (!AndroidDexBuilder.runDex(myPlatform, task.myOutputFile.getPath(), new String[]{srcFilePath}, myContext,
+                                    myProject, myOutputConsumer, BUILDER_NAME, srcFile.getName(), null)) {
+        return false;
+      }
+      if (cacheKey != null) {
+        myCache.store(cacheKey, task.myOutputFile);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The consumer passed to {@link #buildTarget} is not meant to be used from several threads at once.
+   */
+  private static class SynchronizedOutputConsumer implements BuildOutputConsumer {
+    @NotNull private final BuildOutputConsumer myDelegate;
+
+    SynchronizedOutputConsumer(@NotNull BuildOutputConsumer delegate) {
+      myDelegate = delegate;
+    }
+
+    @Override
+    public synchronized void registerOutputFile(@NotNull File outputFile, @NotNull Collection<String> sourcePaths)
+      throws IOException {
+      myDelegate.registerOutputFile(outputFile, sourcePaths);
+    }
+  }
 }
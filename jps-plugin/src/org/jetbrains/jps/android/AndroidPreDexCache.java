@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.android;
+
+import com.android.sdklib.BuildToolInfo;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.SystemProperties;
+import org.jetbrains.android.util.AndroidBuildTestingManager;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Machine-wide, content-addressed store of pre-dexed library jars.
+ * <p>
+ * Entries are keyed by the contents of the input jar, the build tools revision and the dx options, so the same
+ * support library jar is only dexed once no matter how many modules or projects depend on it. The cache is
+ * safe to share between concurrent builds: entries are written to a temporary file and then moved into place,
+ * and a failure to read or write the cache only means dx runs as it would without it.
+ */
+public class AndroidPreDexCache {
+  private static final Logger LOG = Logger.getInstance(AndroidPreDexCache.class);
+
+  @NonNls private static final String CACHE_DIR_PROPERTY = "android.jps.predex.cache.dir";
+  @NonNls private static final String DEFAULT_CACHE_DIR = ".android" + File.separator + "jps-predex-cache";
+  @NonNls private static final String ENTRY_EXTENSION = ".jar";
+  private static final long MAX_UNUSED_ENTRY_AGE_MS = TimeUnit.DAYS.toMillis(30);
+  private static final AtomicBoolean ourPruned = new AtomicBoolean();
+
+  @NotNull private final File myCacheDir;
+
+  AndroidPreDexCache(@NotNull File cacheDir) {
+    myCacheDir = cacheDir;
+  }
+
+  /**
+   * Returns the cache shared by all builds on this machine, or null if it is disabled. It is always disabled
+   * in tests driven by {@link AndroidBuildTestingManager}, which expect every dx invocation to be executed.
+   * Setting the {@code android.jps.predex.cache.dir} system property to an empty string disables it as well.
+   */
+  @Nullable
+  public static AndroidPreDexCache getInstance() {
+    if (AndroidBuildTestingManager.getTestingManager() != null) {
+      return null;
+    }
+    final String cacheDirPath = System.getProperty(CACHE_DIR_PROPERTY);
+    final File cacheDir;
+
+    if (cacheDirPath == null) {
+      cacheDir = new File(SystemProperties.getUserHome(), DEFAULT_CACHE_DIR);
+    }
+    else if (cacheDirPath.isEmpty()) {
+      return null;
+    }
+    else {
+      cacheDir = new File(cacheDirPath);
+    }
+    final AndroidPreDexCache cache = new AndroidPreDexCache(cacheDir);
+
+    if (ourPruned.compareAndSet(false, true)) {
+      cache.pruneUnusedEntries(System.currentTimeMillis() - MAX_UNUSED_ENTRY_AGE_MS);
+    }
+    return cache;
+  }
+
+  /**
+   * Computes the key under which the pre-dexed form of {@code jarFile} is stored.
+   */
+  @NotNull
+  public static String computeKey(@NotNull File jarFile, @NotNull BuildToolInfo buildToolInfo, @NotNull List<String> dexOptions)
+    throws IOException {
+    return computeKey(jarFile, buildToolInfo.getRevision().toString(), dexOptions);
+  }
+
+  @NotNull
+  static String computeKey(@NotNull File jarFile, @NotNull String buildToolsRevision, @NotNull List<String> dexOptions)
+    throws IOException {
+    final Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putBytes(Files.asByteSource(jarFile).hash(Hashing.sha256()).asBytes());
+    hasher.putString(buildToolsRevision, Charsets.UTF_8);
+
+    for (String option : dexOptions) {
+      hasher.putInt(option.length());
+      hasher.putString(option, Charsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Copies the cached entry for {@code key} to {@code outputFile}. Returns false if there is no such entry or
+   * it could not be copied, in which case the caller should run dx itself.
+   */
+  public boolean restore(@NotNull String key, @NotNull File outputFile) {
+    final File entry = getEntryFile(key);
+
+    if (!entry.isFile()) {
+      return false;
+    }
+    try {
+      FileUtil.copy(entry, outputFile);
+      // Record the use so that the entry survives pruning
+      //noinspection ResultOfMethodCallIgnored
+      entry.setLastModified(System.currentTimeMillis());
+      return true;
+    }
+    catch (IOException e) {
+      LOG.info("Cannot restore pre-dexed file " + outputFile.getPath() + " from the cache", e);
+      FileUtil.delete(outputFile);
+      return false;
+    }
+  }
+
+  /**
+   * Stores {@code dexedFile} as the entry for {@code key}. Failures are logged and otherwise ignored.
+   */
+  public void store(@NotNull String key, @NotNull File dexedFile) {
+    final File entry = getEntryFile(key);
+
+    if (entry.isFile()) {
+      return;
+    }
+    File tempFile = null;
+    try {
+      FileUtil.createDirectory(myCacheDir);
+      tempFile = FileUtil.createTempFile(myCacheDir, key, ".tmp", true, false);
+      FileUtil.copy(dexedFile, tempFile);
+
+      try {
+        java.nio.file.Files.move(tempFile.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        java.nio.file.Files.move(tempFile.toPath(), entry.toPath());
+      }
+    }
+    catch (FileAlreadyExistsException ignored) {
+      // Another build stored the same entry concurrently
+    }
+    catch (IOException e) {
+      LOG.info("Cannot store pre-dexed file " + dexedFile.getPath() + " in the cache", e);
+    }
+    finally {
+      if (tempFile != null) {
+        FileUtil.delete(tempFile);
+      }
+    }
+  }
+
+  /**
+   * Deletes entries that have not been stored or restored since {@code threshold}, along with temporary files
+   * left behind by builds that were killed while storing an entry.
+   */
+  void pruneUnusedEntries(long threshold) {
+    final File[] files = myCacheDir.listFiles();
+
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.isFile() && file.lastModified() < threshold) {
+        FileUtil.delete(file);
+      }
+    }
+  }
+
+  @NotNull
+  private File getEntryFile(@NotNull String key) {
+    assert !StringUtil.isEmpty(key);
+    return new File(myCacheDir, key + ENTRY_EXTENSION);
+  }
+}
@@ -580,73 +580,69 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
     }
   }
 
-  private static MyExitStatus runBuildConfigGeneration(@NotNull CompileContext context,
-                                                       @NotNull Map<JpsModule, MyModuleData> moduleDataMap) throws IOException {
-    boolean success = true;
-    boolean didSomething = false;
-
-    for (Map.Entry<JpsModule, MyModuleData> entry : moduleDataMap.entrySet()) {
-      final JpsModule module = entry.getKey();
-      final ModuleBuildTarget moduleTarget = new ModuleBuildTarget(module, JavaModuleBuildTargetType.PRODUCTION);
-      final AndroidBuildConfigStateStorage storage =
-        context.getProjectDescriptor().dataManager.getStorage(
-          moduleTarget, AndroidBuildConfigStateStorage.PROVIDER);
-
-      final MyModuleData moduleData = entry.getValue();
-      final JpsAndroidModuleExtension extension = AndroidJpsUtil.getExtension(module);
-
-      final File generatedSourcesDir = AndroidJpsUtil.getGeneratedSourcesStorage(module, context.getProjectDescriptor().dataManager);
-      final File outputDirectory = new File(generatedSourcesDir, AndroidJpsUtil.BUILD_CONFIG_GENERATED_SOURCE_ROOT_NAME);
-
-      try {
-        if (extension == null || isLibraryWithBadCircularDependency(extension)) {
-          if (!clearDirectoryIfNotEmpty(outputDirectory, context, ANDROID_BUILD_CONFIG_GENERATOR)) {
-            success = false;
-          }
-          continue;
+  private static MyExitStatus runBuildConfigGeneration(@NotNull final CompileContext context,
+                                                       @NotNull final Map<JpsModule, MyModuleData> moduleDataMap) throws IOException {
+    final Map<JpsModule, MyExitStatus> statuses = AndroidModuleTaskScheduler.run(
+      context, "BuildConfig", moduleDataMap.keySet(), Collections.<JpsModule, List<JpsModule>>emptyMap(),
+      new AndroidModuleTaskScheduler.Task<MyExitStatus>() {
+        @NotNull
+        @Override
+        public MyExitStatus run(@NotNull JpsModule module) throws IOException {
+          return runBuildConfigGeneration(context, module, moduleDataMap.get(module));
         }
-        final String packageName = moduleData.getPackage();
-        final boolean debug = !AndroidJpsUtil.isReleaseBuild(context);
-        final Set<String> libPackages = new HashSet<String>(getDepLibPackages(module).values());
-        libPackages.remove(packageName);
+      });
+    return MyExitStatus.combine(statuses.values(), statuses.size() == moduleDataMap.size());
+  }
 
-        final AndroidBuildConfigState newState = new AndroidBuildConfigState(packageName, libPackages, debug);
+  @NotNull
+  private static MyExitStatus runBuildConfigGeneration(@NotNull CompileContext context,
+                                                       @NotNull JpsModule module,
+                                                       @NotNull MyModuleData moduleData) throws IOException {
+    final ModuleBuildTarget moduleTarget = new ModuleBuildTarget(module, JavaModuleBuildTargetType.PRODUCTION);
+    final AndroidBuildConfigStateStorage storage =
+      context.getProjectDescriptor().dataManager.getStorage(
+        moduleTarget, AndroidBuildConfigStateStorage.PROVIDER);
+    final JpsAndroidModuleExtension extension = AndroidJpsUtil.getExtension(module);
 
-        final AndroidBuildConfigState oldState = storage.getState(module.getName());
-        if (newState.equalsTo(oldState)) {
-          continue;
-        }
-        didSomething = true;
-        context.processMessage(new ProgressMessage(AndroidJpsBundle.message("android.jps.progress.build.config", module.getName())));
+    final File generatedSourcesDir = AndroidJpsUtil.getGeneratedSourcesStorage(module, context.getProjectDescriptor().dataManager);
+    final File outputDirectory = new File(generatedSourcesDir, AndroidJpsUtil.BUILD_CONFIG_GENERATED_SOURCE_ROOT_NAME);
 
-        // clear directory, because it may contain obsolete files (ex. if package name was changed)
-        if (!clearDirectory(outputDirectory, context, ANDROID_BUILD_CONFIG_GENERATOR)) {
-          success = false;
-          continue;
-        }
+    try {
+      if (extension == null || isLibraryWithBadCircularDependency(extension)) {
+        return clearDirectoryIfNotEmpty(outputDirectory, context, ANDROID_BUILD_CONFIG_GENERATOR)
+               ? MyExitStatus.NOTHING_CHANGED
+               : MyExitStatus.FAIL;
+      }
+      final String packageName = moduleData.getPackage();
+      final boolean debug = !AndroidJpsUtil.isReleaseBuild(context);
+      final Set<String> libPackages = new LinkedHashSet<String>(getDepLibPackages(module).values());
+      libPackages.remove(packageName);
 
-        if (doBuildConfigGeneration(packageName, libPackages, debug, outputDirectory, context)) {
-          storage.update(module.getName(), newState);
-          markDirtyRecursively(outputDirectory, context, ANDROID_BUILD_CONFIG_GENERATOR, true);
-        }
-        else {
-          storage.update(module.getName(), null);
-          success = false;
-        }
+      final AndroidBuildConfigState newState = new AndroidBuildConfigState(packageName, libPackages, debug);
+
+      final AndroidBuildConfigState oldState = storage.getState(module.getName());
+      if (newState.equalsTo(oldState)) {
+        return MyExitStatus.NOTHING_CHANGED;
       }
-      catch (IOException e) {
-        AndroidJpsUtil.reportExceptionError(context, null, e, ANDROID_BUILD_CONFIG_GENERATOR);
-        success = false;
+      context.processMessage(new ProgressMessage(AndroidJpsBundle.message("android.jps.progress.build.config", module.getName())));
+
+      // clear directory, because it may contain obsolete files (ex. if package name was changed)
+      if (!clearDirectory(outputDirectory, context, ANDROID_BUILD_CONFIG_GENERATOR)) {
+        return MyExitStatus.FAIL;
       }
-    }
 
-    if (!success) {
+      if (doBuildConfigGeneration(packageName, libPackages, debug, outputDirectory, context)) {
+        storage.update(module.getName(), newState);
+        markDirtyRecursively(outputDirectory, context, ANDROID_BUILD_CONFIG_GENERATOR, true);
+        return MyExitStatus.OK;
+      }
+      storage.update(module.getName(), null);
       return MyExitStatus.FAIL;
     }
-    else if (didSomething) {
-      return MyExitStatus.OK;
+    catch (IOException e) {
+      AndroidJpsUtil.reportExceptionError(context, null, e, ANDROID_BUILD_CONFIG_GENERATOR);
+      return MyExitStatus.FAIL;
     }
-    return MyExitStatus.NOTHING_CHANGED;
   }
 
   private static boolean doBuildConfigGeneration(@NotNull String packageName,
@@ -681,347 +677,404 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
     }
   }
 
+  /**
+   * Groups dirty files by module, with each module's files sorted by path, so that they are always compiled in
+   * the same order.
+   */
+  @NotNull
+  private static Map<JpsModule, List<File>> groupFilesByModule(@NotNull Map<File, ModuleBuildTarget> files) {
+    final Map<JpsModule, List<File>> result = new HashMap<JpsModule, List<File>>();
+
+    for (Map.Entry<File, ModuleBuildTarget> entry : files.entrySet()) {
+      final JpsModule module = entry.getValue().getModule();
+      List<File> moduleFiles = result.get(module);
+
+      if (moduleFiles == null) {
+        moduleFiles = new ArrayList<File>();
+        result.put(module, moduleFiles);
+      }
+      moduleFiles.add(entry.getKey());
+    }
+    for (List<File> moduleFiles : result.values()) {
+      Collections.sort(moduleFiles);
+    }
+    return result;
+  }
+
   private static boolean runAidlCompiler(@NotNull final CompileContext context,
-                                         @NotNull Map<File, ModuleBuildTarget> files,
-                                         @NotNull Map<JpsModule, MyModuleData> moduleDataMap) {
+                                         @NotNull final Map<File, ModuleBuildTarget> files,
+                                         @NotNull final Map<JpsModule, MyModuleData> moduleDataMap) throws IOException {
     if (!files.isEmpty()) {
       context.processMessage(new ProgressMessage(AndroidJpsBundle.message("android.jps.progress.aidl")));
     }
+    final Map<JpsModule, List<File>> filesByModule = groupFilesByModule(files);
+    final Map<JpsModule, Boolean> results = AndroidModuleTaskScheduler.run(
+      context, "AIDL", filesByModule.keySet(), Collections.<JpsModule, List<JpsModule>>emptyMap(),
+      new AndroidModuleTaskScheduler.Task<Boolean>() {
+        @NotNull
+        @Override
+        public Boolean run(@NotNull JpsModule module) {
+          boolean success = true;
 
-    boolean success = true;
+          for (File file : filesByModule.get(module)) {
+            if (!runAidlCompiler(context, file, files.get(file), moduleDataMap)) {
+              success = false;
+            }
+          }
+          return success;
+        }
+      });
+    return results.size() == filesByModule.size() && !results.containsValue(Boolean.FALSE);
+  }
 
-    for (Map.Entry<File, ModuleBuildTarget> entry : files.entrySet()) {
-      final File file = entry.getKey();
-      final ModuleBuildTarget buildTarget = entry.getValue();
-      final String filePath = file.getPath();
+  private static boolean runAidlCompiler(@NotNull CompileContext context,
+                                         @NotNull File file,
+                                         @NotNull ModuleBuildTarget buildTarget,
+                                         @NotNull Map<JpsModule, MyModuleData> moduleDataMap) {
+    final String filePath = file.getPath();
 
-      final MyModuleData moduleData = moduleDataMap.get(buildTarget.getModule());
+    final MyModuleData moduleData = moduleDataMap.get(buildTarget.getModule());
 
-      if (!LOG.assertTrue(moduleData != null)) {
-        context.processMessage(
-          new CompilerMessage(ANDROID_IDL_COMPILER, BuildMessage.Kind.ERROR, AndroidJpsBundle.message("android.jps.internal.error")));
-        success = false;
-        continue;
-      }
-      final File generatedSourcesDir =
-        AndroidJpsUtil.getGeneratedSourcesStorage(buildTarget.getModule(), context.getProjectDescriptor().dataManager);
-      final File aidlOutputDirectory = new File(generatedSourcesDir, AndroidJpsUtil.AIDL_GENERATED_SOURCE_ROOT_NAME);
+    if (!LOG.assertTrue(moduleData != null)) {
+      context.processMessage(
+        new CompilerMessage(ANDROID_IDL_COMPILER, BuildMessage.Kind.ERROR, AndroidJpsBundle.message("android.jps.internal.error")));
+      return false;
+    }
+    final File generatedSourcesDir =
+      AndroidJpsUtil.getGeneratedSourcesStorage(buildTarget.getModule(), context.getProjectDescriptor().dataManager);
+    final File aidlOutputDirectory = new File(generatedSourcesDir, AndroidJpsUtil.AIDL_GENERATED_SOURCE_ROOT_NAME);
 
-      if (!aidlOutputDirectory.exists() && !aidlOutputDirectory.mkdirs()) {
-        context.processMessage(
-          new CompilerMessage(ANDROID_IDL_COMPILER, BuildMessage.Kind.ERROR,
-                              AndroidJpsBundle.message("android.jps.cannot.create.directory", aidlOutputDirectory.getPath())));
-        success = false;
-        continue;
-      }
+    if (!aidlOutputDirectory.exists() && !aidlOutputDirectory.mkdirs()) {
+      context.processMessage(
+        new CompilerMessage(ANDROID_IDL_COMPILER, BuildMessage.Kind.ERROR,
+                            AndroidJpsBundle.message("android.jps.cannot.create.directory", aidlOutputDirectory.getPath())));
+      return false;
+    }
 
-      final IAndroidTarget target = moduleData.getPlatform().getTarget();
+    final IAndroidTarget target = moduleData.getPlatform().getTarget();
 
-      try {
-        final File[] sourceRoots = AndroidJpsUtil.getSourceRootsForModuleAndDependencies(buildTarget.getModule());
-        final String[] sourceRootPaths = AndroidJpsUtil.toPaths(sourceRoots);
-        final String packageName = computePackageForFile(context, file);
+    try {
+      final File[] sourceRoots = AndroidJpsUtil.getSourceRootsForModuleAndDependencies(buildTarget.getModule());
+      final String[] sourceRootPaths = AndroidJpsUtil.toPaths(sourceRoots);
+      final String packageName = computePackageForFile(context, file);
 
-        if (packageName == null) {
-          context.processMessage(new CompilerMessage(ANDROID_IDL_COMPILER, BuildMessage.Kind.ERROR,
-                                                     AndroidJpsBundle.message("android.jps.errors.cannot.compute.package", filePath)));
-          success = false;
-          continue;
-        }
+      if (packageName == null) {
+        context.processMessage(new CompilerMessage(ANDROID_IDL_COMPILER, BuildMessage.Kind.ERROR,
+                                                   AndroidJpsBundle.message("android.jps.errors.cannot.compute.package", filePath)));
+        return false;
+      }
 
-        final File outputFile = new File(aidlOutputDirectory, packageName.replace('.', File.separatorChar) +
-                                                              File.separator + FileUtil.getNameWithoutExtension(file) + ".java");
-        final String outputFilePath = outputFile.getPath();
-        final Map<AndroidCompilerMessageKind, List<String>> messages =
-          AndroidIdl.execute(target, filePath, outputFilePath, sourceRootPaths);
+      final File outputFile = new File(aidlOutputDirectory, packageName.replace('.', File.separatorChar) +
+                                                            File.separator + FileUtil.getNameWithoutExtension(file) + ".java");
+      final String outputFilePath = outputFile.getPath();
+      final Map<AndroidCompilerMessageKind, List<String>> messages =
+        AndroidIdl.execute(target, filePath, outputFilePath, sourceRootPaths);
 
-        addMessages(context, messages, filePath, ANDROID_IDL_COMPILER);
+      addMessages(context, messages, filePath, ANDROID_IDL_COMPILER);
 
-        if (!messages.get(AndroidCompilerMessageKind.ERROR).isEmpty()) {
-          success = false;
-        }
-        else if (outputFile.exists()) {
-          final SourceToOutputMapping sourceToOutputMap = context.getProjectDescriptor().dataManager.getSourceToOutputMap(buildTarget);
-          sourceToOutputMap.setOutput(filePath, outputFilePath);
-          FSOperations.markDirty(context, CompilationRound.CURRENT, outputFile);
-        }
+      if (!messages.get(AndroidCompilerMessageKind.ERROR).isEmpty()) {
+        return false;
       }
-      catch (final IOException e) {
-        AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_IDL_COMPILER);
-        success = false;
+      else if (outputFile.exists()) {
+        final SourceToOutputMapping sourceToOutputMap = context.getProjectDescriptor().dataManager.getSourceToOutputMap(buildTarget);
+        sourceToOutputMap.setOutput(filePath, outputFilePath);
+        FSOperations.markDirty(context, CompilationRound.CURRENT, outputFile);
       }
     }
-    return success;
+    catch (final IOException e) {
+      AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_IDL_COMPILER);
+      return false;
+    }
+    return true;
   }
 
   private static boolean runRenderscriptCompiler(@NotNull final CompileContext context,
-                                                 @NotNull Map<File, ModuleBuildTarget> files,
-                                                 @NotNull Map<JpsModule, MyModuleData> moduleDataMap) {
+                                                 @NotNull final Map<File, ModuleBuildTarget> files,
+                                                 @NotNull final Map<JpsModule, MyModuleData> moduleDataMap) throws IOException {
     if (!files.isEmpty()) {
       context.processMessage(new ProgressMessage(AndroidJpsBundle.message("android.jps.progress.renderscript")));
     }
+    final Map<JpsModule, List<File>> filesByModule = groupFilesByModule(files);
+    final Map<JpsModule, Boolean> results = AndroidModuleTaskScheduler.run(
+      context, "RenderScript", filesByModule.keySet(), Collections.<JpsModule, List<JpsModule>>emptyMap(),
+      new AndroidModuleTaskScheduler.Task<Boolean>() {
+        @NotNull
+        @Override
+        public Boolean run(@NotNull JpsModule module) {
+          boolean success = true;
 
-    boolean success = true;
+          for (File file : filesByModule.get(module)) {
+            if (!runRenderscriptCompiler(context, file, files.get(file), moduleDataMap)) {
+              success = false;
+            }
+          }
+          return success;
+        }
+      });
+    return results.size() == filesByModule.size() && !results.containsValue(Boolean.FALSE);
+  }
 
-    for (Map.Entry<File, ModuleBuildTarget> entry : files.entrySet()) {
-      final File file = entry.getKey();
-      final ModuleBuildTarget buildTarget = entry.getValue();
+  private static boolean runRenderscriptCompiler(@NotNull CompileContext context,
+                                                 @NotNull File file,
+                                                 @NotNull ModuleBuildTarget buildTarget,
+                                                 @NotNull Map<JpsModule, MyModuleData> moduleDataMap) {
+    final MyModuleData moduleData = moduleDataMap.get(buildTarget.getModule());
+    if (!LOG.assertTrue(moduleData != null)) {
+      context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR,
+                                                 AndroidJpsBundle.message("android.jps.internal.error")));
+      return false;
+    }
 
-      final MyModuleData moduleData = moduleDataMap.get(buildTarget.getModule());
-      if (!LOG.assertTrue(moduleData != null)) {
-        context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR,
-                                                   AndroidJpsBundle.message("android.jps.internal.error")));
-        success = false;
-        continue;
-      }
+    final BuildDataManager dataManager = context.getProjectDescriptor().dataManager;
+    final File generatedSourcesDir = AndroidJpsUtil.getGeneratedSourcesStorage(buildTarget.getModule(), dataManager);
+    final File rsOutputDirectory = new File(generatedSourcesDir, AndroidJpsUtil.RENDERSCRIPT_GENERATED_SOURCE_ROOT_NAME);
+    if (!rsOutputDirectory.exists() && !rsOutputDirectory.mkdirs()) {
+      context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR, AndroidJpsBundle
+        .message("android.jps.cannot.create.directory", rsOutputDirectory.getPath())));
+      return false;
+    }
 
-      final BuildDataManager dataManager = context.getProjectDescriptor().dataManager;
-      final File generatedSourcesDir = AndroidJpsUtil.getGeneratedSourcesStorage(buildTarget.getModule(), dataManager);
-      final File rsOutputDirectory = new File(generatedSourcesDir, AndroidJpsUtil.RENDERSCRIPT_GENERATED_SOURCE_ROOT_NAME);
-      if (!rsOutputDirectory.exists() && !rsOutputDirectory.mkdirs()) {
-        context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR, AndroidJpsBundle
-          .message("android.jps.cannot.create.directory", rsOutputDirectory.getPath())));
-        success = false;
-        continue;
-      }
+    final File generatedResourcesDir = AndroidJpsUtil.getGeneratedResourcesStorage(buildTarget.getModule(), dataManager);
+    final File rawDir = new File(generatedResourcesDir, "raw");
 
-      final File generatedResourcesDir = AndroidJpsUtil.getGeneratedResourcesStorage(buildTarget.getModule(), dataManager);
-      final File rawDir = new File(generatedResourcesDir, "raw");
+    if (!rawDir.exists() && !rawDir.mkdirs()) {
+      context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR,
+                                                 AndroidJpsBundle.message("android.jps.cannot.create.directory", rawDir.getPath())));
+      return false;
+    }
 
-      if (!rawDir.exists() && !rawDir.mkdirs()) {
-        context.processMessage(new CompilerMessage(ANDROID_RENDERSCRIPT_COMPILER, BuildMessage.Kind.ERROR,
-                                                   AndroidJpsBundle.message("android.jps.cannot.create.directory", rawDir.getPath())));
-        success = false;
-        continue;
-      }
+    final AndroidPlatform platform = moduleData.getPlatform();
+    final IAndroidTarget target = platform.getTarget();
+    final String sdkLocation = platform.getSdk().getHomePath();
+    final String filePath = file.getPath();
 
-      final AndroidPlatform platform = moduleData.getPlatform();
-      final IAndroidTarget target = platform.getTarget();
-      final String sdkLocation = platform.getSdk().getHomePath();
-      final String filePath = file.getPath();
+    File tmpOutputDirectory = null;
 
-      File tmpOutputDirectory = null;
+    try {
+      tmpOutputDirectory = FileUtil.createTempDirectory("generated-rs-temp", null);
+      final String depFolderPath = getDependencyFolder(context, file, tmpOutputDirectory);
 
-      try {
-        tmpOutputDirectory = FileUtil.createTempDirectory("generated-rs-temp", null);
-        final String depFolderPath = getDependencyFolder(context, file, tmpOutputDirectory);
+      final Map<AndroidCompilerMessageKind, List<String>> messages =
+        AndroidRenderscript.execute(sdkLocation, target, filePath, tmpOutputDirectory.getPath(), depFolderPath, rawDir.getPath());
 
-        final Map<AndroidCompilerMessageKind, List<String>> messages =
-          AndroidRenderscript.execute(sdkLocation, target, filePath, tmpOutputDirectory.getPath(), depFolderPath, rawDir.getPath());
+      addMessages(context, messages, filePath, ANDROID_RENDERSCRIPT_COMPILER);
 
-        addMessages(context, messages, filePath, ANDROID_RENDERSCRIPT_COMPILER);
+      if (!messages.get(AndroidCompilerMessageKind.ERROR).isEmpty()) {
+        return false;
+      }
+      else {
+        final List<File> newFiles = new ArrayList<File>();
+        AndroidCommonUtils.moveAllFiles(tmpOutputDirectory, rsOutputDirectory, newFiles);
 
-        if (!messages.get(AndroidCompilerMessageKind.ERROR).isEmpty()) {
-          success = false;
+        final File bcFile = new File(rawDir, FileUtil.getNameWithoutExtension(file) + ".bc");
+        if (bcFile.exists()) {
+          newFiles.add(bcFile);
         }
-        else {
-          final List<File> newFiles = new ArrayList<File>();
-          AndroidCommonUtils.moveAllFiles(tmpOutputDirectory, rsOutputDirectory, newFiles);
-
-          final File bcFile = new File(rawDir, FileUtil.getNameWithoutExtension(file) + ".bc");
-          if (bcFile.exists()) {
-            newFiles.add(bcFile);
-          }
-          final List<String> newFilePaths = Arrays.asList(AndroidJpsUtil.toPaths(newFiles.toArray(new File[newFiles.size()])));
+        final List<String> newFilePaths = Arrays.asList(AndroidJpsUtil.toPaths(newFiles.toArray(new File[newFiles.size()])));
 
-          final SourceToOutputMapping sourceToOutputMap = dataManager.getSourceToOutputMap(buildTarget);
-          sourceToOutputMap.setOutputs(filePath, newFilePaths);
+        final SourceToOutputMapping sourceToOutputMap = dataManager.getSourceToOutputMap(buildTarget);
+        sourceToOutputMap.setOutputs(filePath, newFilePaths);
 
-          for (File newFile : newFiles) {
-            FSOperations.markDirty(context, CompilationRound.CURRENT, newFile);
-          }
+        for (File newFile : newFiles) {
+          FSOperations.markDirty(context, CompilationRound.CURRENT, newFile);
         }
       }
-      catch (IOException e) {
-        AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_RENDERSCRIPT_COMPILER);
-        success = false;
-      }
-      finally {
-        if (tmpOutputDirectory != null) {
-          FileUtil.delete(tmpOutputDirectory);
-        }
+    }
+    catch (IOException e) {
+      AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_RENDERSCRIPT_COMPILER);
+      return false;
+    }
+    finally {
+      if (tmpOutputDirectory != null) {
+        FileUtil.delete(tmpOutputDirectory);
       }
     }
-    return success;
+    return true;
   }
 
   private static MyExitStatus runAaptCompiler(@NotNull final CompileContext context,
-                                              @NotNull Map<JpsModule, MyModuleData> moduleDataMap)
+                                              @NotNull final Map<JpsModule, MyModuleData> moduleDataMap)
     throws IOException {
-    boolean success = true;
-    boolean didSomething = false;
+    // aapt for a module reads the R.txt files generated for the libraries it depends on
+    final Map<JpsModule, List<JpsModule>> libraryDependencies = new HashMap<JpsModule, List<JpsModule>>();
 
-    for (Map.Entry<JpsModule, MyModuleData> entry : moduleDataMap.entrySet()) {
-      final JpsModule module = entry.getKey();
-      final ModuleBuildTarget moduleTarget = new ModuleBuildTarget(module, JavaModuleBuildTargetType.PRODUCTION);
-      final AndroidAptStateStorage storage =
-        context.getProjectDescriptor().dataManager.getStorage(
-          moduleTarget, AndroidAptStateStorage.PROVIDER);
+    for (JpsModule module : moduleDataMap.keySet()) {
+      final List<JpsModule> libraries = new ArrayList<JpsModule>();
 
-      final MyModuleData moduleData = entry.getValue();
-      final JpsAndroidModuleExtension extension = moduleData.getAndroidExtension();
+      for (JpsAndroidModuleExtension depExtension : AndroidJpsUtil.getAllAndroidDependencies(module, true)) {
+        libraries.add(depExtension.getModule());
+      }
+      libraryDependencies.put(module, libraries);
+    }
+    final Map<JpsModule, MyExitStatus> statuses = AndroidModuleTaskScheduler.run(
+      context, "AAPT", moduleDataMap.keySet(), libraryDependencies, new AndroidModuleTaskScheduler.Task<MyExitStatus>() {
+        @NotNull
+        @Override
+        public MyExitStatus run(@NotNull JpsModule module) throws IOException {
+          return runAaptCompiler(context, module, moduleDataMap.get(module));
+        }
+      });
+    return MyExitStatus.combine(statuses.values(), statuses.size() == moduleDataMap.size());
+  }
 
-      final File generatedSourcesDir = AndroidJpsUtil.getGeneratedSourcesStorage(module, context.getProjectDescriptor().dataManager);
-      final File aptOutputDirectory = new File(generatedSourcesDir, AndroidJpsUtil.AAPT_GENERATED_SOURCE_ROOT_NAME);
-      final IAndroidTarget target = moduleData.getPlatform().getTarget();
+  @NotNull
+  private static MyExitStatus runAaptCompiler(@NotNull CompileContext context,
+                                              @NotNull JpsModule module,
+                                              @NotNull MyModuleData moduleData) throws IOException {
+    final ModuleBuildTarget moduleTarget = new ModuleBuildTarget(module, JavaModuleBuildTargetType.PRODUCTION);
+    final AndroidAptStateStorage storage =
+      context.getProjectDescriptor().dataManager.getStorage(
+        moduleTarget, AndroidAptStateStorage.PROVIDER);
 
-      try {
-        final String[] resPaths = AndroidJpsUtil.collectResourceDirsForCompilation(extension, false, context, true);
-        if (resPaths.length == 0) {
-          // there is no resources in the module
-          if (!clearDirectoryIfNotEmpty(aptOutputDirectory, context, ANDROID_APT_COMPILER)) {
-            success = false;
-          }
-          continue;
-        }
-        final String packageName = moduleData.getPackage();
-        final File manifestFile;
+    final JpsAndroidModuleExtension extension = moduleData.getAndroidExtension();
 
-        if (extension.isLibrary() || !extension.isManifestMergingEnabled()) {
-          manifestFile = moduleData.getManifestFileForCompiler();
-        }
-        else {
-          manifestFile = new File(AndroidJpsUtil.getPreprocessedManifestDirectory(module, context.
-            getProjectDescriptor().dataManager.getDataPaths()), SdkConstants.FN_ANDROID_MANIFEST_XML);
-        }
+    final File generatedSourcesDir = AndroidJpsUtil.getGeneratedSourcesStorage(module, context.getProjectDescriptor().dataManager);
+    final File aptOutputDirectory = new File(generatedSourcesDir, AndroidJpsUtil.AAPT_GENERATED_SOURCE_ROOT_NAME);
+    final IAndroidTarget target = moduleData.getPlatform().getTarget();
 
-        if (isLibraryWithBadCircularDependency(extension)) {
-          if (!clearDirectoryIfNotEmpty(aptOutputDirectory, context, ANDROID_APT_COMPILER)) {
-            success = false;
-          }
-          continue;
-        }
-        final Map<JpsModule, String> packageMap = getDepLibPackages(module);
-        packageMap.put(module, packageName);
-
-        final JpsModule circularDepLibWithSamePackage = findCircularDependencyOnLibraryWithSamePackage(extension, packageMap);
-        if (circularDepLibWithSamePackage != null && !extension.isLibrary()) {
-          final String message = "Generated fields in " +
-                                 packageName +
-                                 ".R class in module '" +
-                                 module.getName() +
-                                 "' won't be final, because of circular dependency on module '" +
-                                 circularDepLibWithSamePackage.getName() +
-                                 "'";
-          context.processMessage(new CompilerMessage(ANDROID_APT_COMPILER, BuildMessage.Kind.WARNING, message));
-        }
-        final boolean generateNonFinalFields = extension.isLibrary() || circularDepLibWithSamePackage != null;
+    try {
+      final String[] resPaths = AndroidJpsUtil.collectResourceDirsForCompilation(extension, false, context, true);
+      if (resPaths.length == 0) {
+        // there is no resources in the module
+        return clearDirectoryIfNotEmpty(aptOutputDirectory, context, ANDROID_APT_COMPILER)
+               ? MyExitStatus.NOTHING_CHANGED
+               : MyExitStatus.FAIL;
+      }
+      final String packageName = moduleData.getPackage();
+      final File manifestFile;
 
-        AndroidAptValidityState oldState;
+      if (extension.isLibrary() || !extension.isManifestMergingEnabled()) {
+        manifestFile = moduleData.getManifestFileForCompiler();
+      }
+      else {
+        manifestFile = new File(AndroidJpsUtil.getPreprocessedManifestDirectory(module, context.
+          getProjectDescriptor().dataManager.getDataPaths()), SdkConstants.FN_ANDROID_MANIFEST_XML);
+      }
 
-        try {
-          oldState = storage.getState(module.getName());
-        }
-        catch (IOException e) {
-          LOG.info(e);
-          oldState = null;
-        }
-        final Map<String, ResourceFileData> resources = new HashMap<String, ResourceFileData>();
-        final TObjectLongHashMap<String> valueResFilesTimestamps = new TObjectLongHashMap<String>();
-        collectResources(resPaths, resources, valueResFilesTimestamps, oldState);
+      if (isLibraryWithBadCircularDependency(extension)) {
+        return clearDirectoryIfNotEmpty(aptOutputDirectory, context, ANDROID_APT_COMPILER)
+               ? MyExitStatus.NOTHING_CHANGED
+               : MyExitStatus.FAIL;
+      }
+      final Map<JpsModule, String> packageMap = getDepLibPackages(module);
+      packageMap.put(module, packageName);
 
-        final List<ResourceEntry> manifestElements = collectManifestElements(manifestFile);
-        final List<Pair<String, String>> libRTextFilesAndPackages = new ArrayList<Pair<String, String>>(packageMap.size());
+      final JpsModule circularDepLibWithSamePackage = findCircularDependencyOnLibraryWithSamePackage(extension, packageMap);
+      if (circularDepLibWithSamePackage != null && !extension.isLibrary()) {
+        final String message = "Generated fields in " +
+                               packageName +
+                               ".R class in module '" +
+                               module.getName() +
+                               "' won't be final, because of circular dependency on module '" +
+                               circularDepLibWithSamePackage.getName() +
+                               "'";
+        context.processMessage(new CompilerMessage(ANDROID_APT_COMPILER, BuildMessage.Kind.WARNING, message));
+      }
+      final boolean generateNonFinalFields = extension.isLibrary() || circularDepLibWithSamePackage != null;
 
-        for (Map.Entry<JpsModule, String> entry1 : packageMap.entrySet()) {
-          final String libPackage = entry1.getValue();
+      AndroidAptValidityState oldState;
 
-          if (!packageName.equals(libPackage)) {
-            final String libRTxtFilePath = new File(new File(AndroidJpsUtil.getDirectoryForIntermediateArtifacts(
-              context, entry1.getKey()), R_TXT_OUTPUT_DIR_NAME), SdkConstants.FN_RESOURCE_TEXT).getPath();
-            libRTextFilesAndPackages.add(Pair.create(libRTxtFilePath, libPackage));
-          }
-        }
-        AndroidJpsUtil.collectRTextFilesFromAarDeps(module, libRTextFilesAndPackages);
+      try {
+        oldState = storage.getState(module.getName());
+      }
+      catch (IOException e) {
+        LOG.info(e);
+        oldState = null;
+      }
+      final Map<String, ResourceFileData> resources = new HashMap<String, ResourceFileData>();
+      final TObjectLongHashMap<String> valueResFilesTimestamps = new TObjectLongHashMap<String>();
+      collectResources(resPaths, resources, valueResFilesTimestamps, oldState);
 
-        final File outputDirForArtifacts = AndroidJpsUtil.getDirectoryForIntermediateArtifacts(context, module);
-        final String proguardOutputCfgFilePath;
+      final List<ResourceEntry> manifestElements = collectManifestElements(manifestFile);
+      final List<Pair<String, String>> libRTextFilesAndPackages = new ArrayList<Pair<String, String>>(packageMap.size());
 
-        if (AndroidJpsUtil.getProGuardConfigIfShouldRun(context, extension) != null) {
-          if (AndroidJpsUtil.createDirIfNotExist(outputDirForArtifacts, context, BUILDER_NAME) == null) {
-            success = false;
-            continue;
-          }
-          proguardOutputCfgFilePath = new File(outputDirForArtifacts, AndroidCommonUtils.PROGUARD_CFG_OUTPUT_FILE_NAME).getPath();
-        }
-        else {
-          proguardOutputCfgFilePath = null;
+      for (Map.Entry<JpsModule, String> entry1 : packageMap.entrySet()) {
+        final String libPackage = entry1.getValue();
+
+        if (!packageName.equals(libPackage)) {
+          final String libRTxtFilePath = new File(new File(AndroidJpsUtil.getDirectoryForIntermediateArtifacts(
+            context, entry1.getKey()), R_TXT_OUTPUT_DIR_NAME), SdkConstants.FN_RESOURCE_TEXT).getPath();
+          libRTextFilesAndPackages.add(Pair.create(libRTxtFilePath, libPackage));
         }
-        String rTxtOutDirOsPath = null;
+      }
+      AndroidJpsUtil.collectRTextFilesFromAarDeps(module, libRTextFilesAndPackages);
 
-        if (extension.isLibrary() || !libRTextFilesAndPackages.isEmpty()) {
-          final File rTxtOutDir = new File(outputDirForArtifacts, R_TXT_OUTPUT_DIR_NAME);
+      final File outputDirForArtifacts = AndroidJpsUtil.getDirectoryForIntermediateArtifacts(context, module);
+      final String proguardOutputCfgFilePath;
 
-          if (AndroidJpsUtil.createDirIfNotExist(rTxtOutDir, context, BUILDER_NAME) == null) {
-            success = false;
-            continue;
-          }
-          rTxtOutDirOsPath = rTxtOutDir.getPath();
+      if (AndroidJpsUtil.getProGuardConfigIfShouldRun(context, extension) != null) {
+        if (AndroidJpsUtil.createDirIfNotExist(outputDirForArtifacts, context, BUILDER_NAME) == null) {
+          return MyExitStatus.FAIL;
         }
-        final AndroidAptValidityState newState =
-          new AndroidAptValidityState(resources, valueResFilesTimestamps, manifestElements, libRTextFilesAndPackages,
-                                      packageName, proguardOutputCfgFilePath, rTxtOutDirOsPath, extension.isLibrary());
+        proguardOutputCfgFilePath = new File(outputDirForArtifacts, AndroidCommonUtils.PROGUARD_CFG_OUTPUT_FILE_NAME).getPath();
+      }
+      else {
+        proguardOutputCfgFilePath = null;
+      }
+      String rTxtOutDirOsPath = null;
 
-        if (newState.equalsTo(oldState)) {
-          // we need to update state, because it also contains myValueResFilesTimestamps not taking into account by equalsTo()
-          storage.update(module.getName(), newState);
-          continue;
+      if (extension.isLibrary() || !libRTextFilesAndPackages.isEmpty()) {
+        final File rTxtOutDir = new File(outputDirForArtifacts, R_TXT_OUTPUT_DIR_NAME);
+
+        if (AndroidJpsUtil.createDirIfNotExist(rTxtOutDir, context, BUILDER_NAME) == null) {
+          return MyExitStatus.FAIL;
         }
-        didSomething = true;
-        context.processMessage(new ProgressMessage(AndroidJpsBundle.message("android.jps.progress.aapt", module.getName())));
+        rTxtOutDirOsPath = rTxtOutDir.getPath();
+      }
+      final AndroidAptValidityState newState =
+        new AndroidAptValidityState(resources, valueResFilesTimestamps, manifestElements, libRTextFilesAndPackages,
+                                    packageName, proguardOutputCfgFilePath, rTxtOutDirOsPath, extension.isLibrary());
+
+      if (newState.equalsTo(oldState)) {
+        // we need to update state, because it also contains myValueResFilesTimestamps not taking into account by equalsTo()
+        storage.update(module.getName(), newState);
+        return MyExitStatus.NOTHING_CHANGED;
+      }
+      context.processMessage(new ProgressMessage(AndroidJpsBundle.message("android.jps.progress.aapt", module.getName())));
 
-        File tmpOutputDir = null;
-        try {
-          tmpOutputDir = FileUtil.createTempDirectory("android_apt_output", "tmp");
-          final Map<AndroidCompilerMessageKind, List<String>> messages = AndroidApt.compile(
-            target, -1, manifestFile.getPath(), packageName, tmpOutputDir.getPath(), resPaths, libRTextFilesAndPackages,
-            generateNonFinalFields, proguardOutputCfgFilePath, rTxtOutDirOsPath, !extension.isLibrary());
+      File tmpOutputDir = null;
+      try {
+        tmpOutputDir = FileUtil.createTempDirectory("android_apt_output", "tmp");
+        final Map<AndroidCompilerMessageKind, List<String>> messages = AndroidApt.compile(
+          target, -1, manifestFile.getPath(), packageName, tmpOutputDir.getPath(), resPaths, libRTextFilesAndPackages,
+          generateNonFinalFields, proguardOutputCfgFilePath, rTxtOutDirOsPath, !extension.isLibrary());
 
-          AndroidJpsUtil.addMessages(context, messages, ANDROID_APT_COMPILER, module.getName());
+        AndroidJpsUtil.addMessages(context, messages, ANDROID_APT_COMPILER, module.getName());
 
-          if (!messages.get(AndroidCompilerMessageKind.ERROR).isEmpty()) {
-            success = false;
-            storage.update(module.getName(), null);
-          }
-          else {
-            if (!AndroidCommonUtils.directoriesContainSameContent(tmpOutputDir, aptOutputDirectory, JAVA_FILE_FILTER)) {
-              if (!deleteAndMarkRecursively(aptOutputDirectory, context, ANDROID_APT_COMPILER)) {
-                success = false;
-                continue;
-              }
-              final File parent = aptOutputDirectory.getParentFile();
-              if (parent != null && !parent.exists() && !parent.mkdirs()) {
-                context.processMessage(new CompilerMessage(ANDROID_APT_COMPILER, BuildMessage.Kind.ERROR, AndroidJpsBundle.message(
-                  "android.jps.cannot.create.directory", parent.getPath())));
-                success = false;
-                continue;
-              }
-              // we use copyDir instead of moveDirWithContent here, because tmp directory may be located on other disk and
-              // moveDirWithContent doesn't work for such case
-              FileUtil.copyDir(tmpOutputDir, aptOutputDirectory);
-              markDirtyRecursively(aptOutputDirectory, context, ANDROID_APT_COMPILER, true);
-            }
-            storage.update(module.getName(), newState);
-          }
+        if (!messages.get(AndroidCompilerMessageKind.ERROR).isEmpty()) {
+          storage.update(module.getName(), null);
+          return MyExitStatus.FAIL;
         }
-        finally {
-          if (tmpOutputDir != null) {
-            FileUtil.delete(tmpOutputDir);
+        else {
+          if (!AndroidCommonUtils.directoriesContainSameContent(tmpOutputDir, aptOutputDirectory, JAVA_FILE_FILTER)) {
+            if (!deleteAndMarkRecursively(aptOutputDirectory, context, ANDROID_APT_COMPILER)) {
+              return MyExitStatus.FAIL;
+            }
+            final File parent = aptOutputDirectory.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+              context.processMessage(new CompilerMessage(ANDROID_APT_COMPILER, BuildMessage.Kind.ERROR, AndroidJpsBundle.message(
+                "android.jps.cannot.create.directory", parent.getPath())));
+              return MyExitStatus.FAIL;
+            }
+            // we use copyDir instead of moveDirWithContent here, because tmp directory may be located on other disk and
+            // moveDirWithContent doesn't work for such case
+            FileUtil.copyDir(tmpOutputDir, aptOutputDirectory);
+            markDirtyRecursively(aptOutputDirectory, context, ANDROID_APT_COMPILER, true);
           }
+          storage.update(module.getName(), newState);
+          return MyExitStatus.OK;
         }
       }
-      catch (IOException e) {
-        AndroidJpsUtil.reportExceptionError(context, null, e, ANDROID_APT_COMPILER);
-        success = false;
+      finally {
+        if (tmpOutputDir != null) {
+          FileUtil.delete(tmpOutputDir);
+        }
       }
     }
-    if (!success) {
+    catch (IOException e) {
+      AndroidJpsUtil.reportExceptionError(context, null, e, ANDROID_APT_COMPILER);
       return MyExitStatus.FAIL;
     }
-    else if (didSomething) {
-      return MyExitStatus.OK;
-    }
-    return MyExitStatus.NOTHING_CHANGED;
   }
 
   private static boolean clearDirectory(File dir, CompileContext context, String compilerName) throws IOException {
@@ -1108,7 +1161,8 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
 
   @NotNull
   private static Map<JpsModule, String> getDepLibPackages(@NotNull JpsModule module) throws IOException {
-    final Map<JpsModule, String> result = new HashMap<JpsModule, String>();
+    // keep the dependency order, so that libraries are always passed to aapt in the same order
+    final Map<JpsModule, String> result = new LinkedHashMap<JpsModule, String>();
 
     for (JpsAndroidModuleExtension depExtension : AndroidJpsUtil.getAllAndroidDependencies(module, true)) {
       final File depManifestFile = AndroidJpsUtil.getManifestFileForCompilationPath(depExtension);
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.android;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.io.FileUtilRt;
+import com.intellij.util.SystemProperties;
+import junit.framework.TestCase;
+import org.jetbrains.android.compiler.tools.AndroidDxDaemonProtocol;
+import org.jetbrains.android.compiler.tools.AndroidDxDaemonProtocol.Endpoint;
+import org.jetbrains.android.compiler.tools.AndroidDxRunner;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.api.CanceledStatus;
+import org.jetbrains.jps.cmdline.ClasspathBootstrap;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class AndroidDxDaemonTest extends TestCase {
+  private File myTempDir;
+  private File myDaemonDir;
+  private AndroidDxDaemonManager myManager;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myTempDir = FileUtil.createTempDirectory("dx-daemon", null);
+    myDaemonDir = new File(myTempDir, "daemons");
+    myManager = new AndroidDxDaemonManager(myDaemonDir);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myManager.shutdownDaemons();
+      for (File portFile : getPortFiles()) {
+        shutdown(portFile);
+      }
+      FileUtil.delete(myTempDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testStringsRoundTrip() throws Exception {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    AndroidDxDaemonProtocol.writeString(out, "dex");
+    AndroidDxDaemonProtocol.writeString(out, "");
+    AndroidDxDaemonProtocol.writeStrings(out, new String[]{"/path/to/dx.jar", "café 中文"});
+    out.flush();
+
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals("dex", AndroidDxDaemonProtocol.readString(in));
+    assertEquals("", AndroidDxDaemonProtocol.readString(in));
+    assertEquals(Arrays.asList("/path/to/dx.jar", "café 中文"), Arrays.asList(AndroidDxDaemonProtocol.readStrings(in)));
+  }
+
+  public void testInvalidStringLengthIsRejected() throws Exception {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(-1);
+    out.flush();
+
+    try {
+      AndroidDxDaemonProtocol.readString(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      fail("Negative string lengths should be rejected");
+    }
+    catch (IOException expected) {
+    }
+  }
+
+  public void testPortFileRoundTrip() throws Exception {
+    final File portFile = new File(myTempDir, "daemon.port");
+    assertNull(AndroidDxDaemonProtocol.readPortFile(portFile));
+
+    AndroidDxDaemonProtocol.writePortFile(portFile, 1234, "secret");
+    final Endpoint endpoint = AndroidDxDaemonProtocol.readPortFile(portFile);
+    assertNotNull(endpoint);
+    assertEquals(1234, endpoint.getPort());
+    assertEquals("secret", endpoint.getToken());
+
+    // Replacing an existing port file
+    AndroidDxDaemonProtocol.writePortFile(portFile, 5678, "other");
+    assertEquals(5678, AndroidDxDaemonProtocol.readPortFile(portFile).getPort());
+
+    FileUtil.writeToFile(portFile, "not a port file");
+    assertNull(AndroidDxDaemonProtocol.readPortFile(portFile));
+  }
+
+  public void testDexRequestIsServedByDaemon() throws Exception {
+    final AndroidDxDaemonManager.DexResult result = runDex();
+    assertNotNull(result);
+    // The dx jar doesn't exist, which the daemon reports the same way as the one-shot process
+    assertEquals(-1, result.getExitCode());
+    assertTrue(result.getStderr(), result.getStderr().contains("File not found"));
+    assertEquals(1, getPortFiles().size());
+  }
+
+  public void testRequestWithInvalidTokenIsRejected() throws Exception {
+    assertNotNull(runDex());
+    final Endpoint endpoint = AndroidDxDaemonProtocol.readPortFile(getPortFiles().get(0));
+    assertNotNull(endpoint);
+
+    assertNull(ping(new Endpoint(endpoint.getPort(), endpoint.getToken() + "x")));
+    // The daemon is still serving requests with the right token
+    assertEquals(AndroidDxDaemonProtocol.PONG, ping(endpoint));
+  }
+
+  public void testDaemonIsRestartedAfterDeadPortFile() throws Exception {
+    assertNotNull(runDex());
+    final File portFile = getPortFiles().get(0);
+    shutdown(portFile);
+    waitForDeletion(portFile);
+
+    // A port file left behind by a daemon that crashed
+    final int deadPort;
+    final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    try {
+      deadPort = serverSocket.getLocalPort();
+    }
+    finally {
+      serverSocket.close();
+    }
+    AndroidDxDaemonProtocol.writePortFile(portFile, deadPort, "dead");
+
+    assertNotNull(runDex());
+    final Endpoint endpoint = AndroidDxDaemonProtocol.readPortFile(portFile);
+    assertNotNull(endpoint);
+    assertFalse("dead".equals(endpoint.getToken()));
+    assertEquals(AndroidDxDaemonProtocol.PONG, ping(endpoint));
+  }
+
+  public void testDaemonsAreLimitedAcrossIdentities() throws Exception {
+    for (int i = 0; i <= AndroidDxDaemonManager.MAX_DAEMONS; i++) {
+      assertNotNull(runDex(Collections.singletonList("-Ddaemon.test=" + i)));
+    }
+    // The last request replaced the daemon of another identity
+    assertEquals(AndroidDxDaemonManager.MAX_DAEMONS, getPortFiles().size());
+  }
+
+  public void testShutdownStopsStartedDaemons() throws Exception {
+    assertNotNull(runDex());
+    final Endpoint endpoint = AndroidDxDaemonProtocol.readPortFile(getPortFiles().get(0));
+    assertNotNull(endpoint);
+
+    myManager.shutdownDaemons();
+    assertTrue(getPortFiles().isEmpty());
+    waitForShutdown(endpoint);
+  }
+
+  @Nullable
+  private AndroidDxDaemonManager.DexResult runDex() throws IOException {
+    return runDex(Collections.<String>emptyList());
+  }
+
+  @Nullable
+  private AndroidDxDaemonManager.DexResult runDex(@NotNull List<String> vmOptions) throws IOException {
+    final File input = new File(myTempDir, "classes");
+    FileUtil.createDirectory(input);
+    final String javaExecutable = new File(SystemProperties.getJavaHome(), "bin/java").getPath();
+    final List<String> classPath = Arrays.asList(ClasspathBootstrap.getResourcePath(AndroidDxRunner.class),
+                                                 ClasspathBootstrap.getResourcePath(FileUtilRt.class));
+    final List<String> programParams = Arrays.asList(new File(myTempDir, "missing-dx.jar").getPath(),
+                                                     new File(myTempDir, "classes.dex").getPath(),
+                                                     input.getPath(),
+                                                     "--exclude");
+    return myManager.runDex(javaExecutable, classPath, vmOptions, programParams, CanceledStatus.NULL);
+  }
+
+  @NotNull
+  private List<File> getPortFiles() {
+    final File[] files = myDaemonDir.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.getName().endsWith(".port");
+      }
+    });
+    return files != null ? Arrays.asList(files) : Collections.<File>emptyList();
+  }
+
+  /**
+   * Returns the answer of the daemon to a ping, or null if it closed the connection without answering.
+   */
+  @Nullable
+  private static String ping(@NotNull Endpoint endpoint) throws IOException {
+    final Socket socket = new Socket(InetAddress.getLoopbackAddress(), endpoint.getPort());
+    try {
+      socket.setSoTimeout(5000);
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      AndroidDxDaemonProtocol.writeString(out, endpoint.getToken());
+      AndroidDxDaemonProtocol.writeString(out, AndroidDxDaemonProtocol.PING);
+      out.flush();
+      return AndroidDxDaemonProtocol.readString(new DataInputStream(socket.getInputStream()));
+    }
+    catch (EOFException e) {
+      return null;
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  private static void shutdown(@NotNull File portFile) throws IOException {
+    final Endpoint endpoint = AndroidDxDaemonProtocol.readPortFile(portFile);
+
+    if (endpoint == null) {
+      return;
+    }
+    final Socket socket = new Socket(InetAddress.getLoopbackAddress(), endpoint.getPort());
+    try {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      AndroidDxDaemonProtocol.writeString(out, endpoint.getToken());
+      AndroidDxDaemonProtocol.writeString(out, AndroidDxDaemonProtocol.SHUTDOWN);
+      out.flush();
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  private static void waitForShutdown(@NotNull Endpoint endpoint) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10000;
+
+    while (System.currentTimeMillis() < deadline) {
+      try {
+        new Socket(InetAddress.getLoopbackAddress(), endpoint.getPort()).close();
+      }
+      catch (IOException e) {
+        return;
+      }
+      Thread.sleep(50);
+    }
+    fail("The daemon is still running");
+  }
+
+  private static void waitForDeletion(@NotNull File file) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10000;
+
+    while (file.exists() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertFalse(file.exists());
+  }
+}
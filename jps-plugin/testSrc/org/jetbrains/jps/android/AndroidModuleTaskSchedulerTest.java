@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.android;
+
+import junit.framework.TestCase;
+import org.jetbrains.android.util.AndroidBuildTestingManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jps.api.CanceledStatus;
+import org.jetbrains.jps.incremental.CompileContext;
+import org.jetbrains.jps.model.JpsElementFactory;
+import org.jetbrains.jps.model.java.JpsJavaModuleType;
+import org.jetbrains.jps.model.module.JpsModule;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class AndroidModuleTaskSchedulerTest extends TestCase {
+  private final AtomicBoolean myCanceled = new AtomicBoolean();
+  private final List<String> myEvents = Collections.synchronizedList(new ArrayList<String>());
+  private CompileContext myContext;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    AndroidBuildTestingManager.stopBuildTesting();
+    myContext = createContext();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      AndroidBuildTestingManager.stopBuildTesting();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testDependenciesFinishBeforeDependents() throws Exception {
+    final JpsModule app = createModule("app");
+    final JpsModule lib1 = createModule("lib1");
+    final JpsModule lib2 = createModule("lib2");
+    final JpsModule other = createModule("other");
+    final Map<JpsModule, List<JpsModule>> dependencies = new HashMap<JpsModule, List<JpsModule>>();
+    dependencies.put(app, Arrays.asList(lib1, lib2));
+    dependencies.put(lib2, Collections.singletonList(lib1));
+
+    final Map<JpsModule, String> results =
+      AndroidModuleTaskScheduler.run(myContext, "Test", Arrays.asList(other, app, lib2, lib1), dependencies, new RecordingTask());
+
+    assertEquals(Arrays.asList(app, lib1, lib2, other), new ArrayList<JpsModule>(results.keySet()));
+    for (JpsModule module : results.keySet()) {
+      assertEquals(module.getName() + " done", results.get(module));
+    }
+    assertFinishedBefore("lib1", "lib2");
+    assertFinishedBefore("lib1", "app");
+    assertFinishedBefore("lib2", "app");
+  }
+
+  public void testDependenciesOutsideTheModulesAreIgnored() throws Exception {
+    final JpsModule app = createModule("app");
+    final Map<JpsModule, List<JpsModule>> dependencies = new HashMap<JpsModule, List<JpsModule>>();
+    dependencies.put(app, Arrays.asList(app, createModule("java-lib")));
+
+    final Map<JpsModule, String> results =
+      AndroidModuleTaskScheduler.run(myContext, "Test", Collections.singletonList(app), dependencies, new RecordingTask());
+
+    assertEquals(Collections.singletonList(app), new ArrayList<JpsModule>(results.keySet()));
+  }
+
+  public void testCycleIsBrokenAtFirstModule() throws Exception {
+    final JpsModule a = createModule("a");
+    final JpsModule b = createModule("b");
+    final Map<JpsModule, List<JpsModule>> dependencies = new HashMap<JpsModule, List<JpsModule>>();
+    dependencies.put(a, Collections.singletonList(b));
+    dependencies.put(b, Collections.singletonList(a));
+
+    final Map<JpsModule, String> results =
+      AndroidModuleTaskScheduler.run(myContext, "Test", Arrays.asList(b, a), dependencies, new RecordingTask());
+
+    assertEquals(Arrays.asList(a, b), new ArrayList<JpsModule>(results.keySet()));
+    assertFinishedBefore("a", "b");
+  }
+
+  public void testFailurePreventsDependentsAndIsRethrown() throws Exception {
+    final JpsModule app = createModule("app");
+    final JpsModule lib = createModule("lib");
+    final IOException error = new IOException("[test] aapt failed");
+    final Map<JpsModule, List<JpsModule>> dependencies = new HashMap<JpsModule, List<JpsModule>>();
+    dependencies.put(app, Collections.singletonList(lib));
+
+    try {
+      AndroidModuleTaskScheduler.run(myContext, "Test", Arrays.asList(app, lib), dependencies, new RecordingTask() {
+        @NotNull
+        @Override
+        public String run(@NotNull JpsModule module) throws IOException {
+          super.run(module);
+          if (module == lib) {
+            throw error;
+          }
+          return module.getName();
+        }
+      });
+      fail("The failure of the lib task should be rethrown");
+    }
+    catch (IOException e) {
+      assertSame(error, e);
+    }
+    assertFalse(myEvents.contains("start app"));
+  }
+
+  public void testCanceledBuildHasNoResultsForModulesNotStarted() throws Exception {
+    final JpsModule app = createModule("app");
+    final JpsModule lib = createModule("lib");
+    final Map<JpsModule, List<JpsModule>> dependencies = new HashMap<JpsModule, List<JpsModule>>();
+    dependencies.put(app, Collections.singletonList(lib));
+
+    final Map<JpsModule, String> results =
+      AndroidModuleTaskScheduler.run(myContext, "Test", Arrays.asList(app, lib), dependencies, new RecordingTask() {
+        @NotNull
+        @Override
+        public String run(@NotNull JpsModule module) throws IOException {
+          myCanceled.set(true);
+          return super.run(module);
+        }
+      });
+
+    assertEquals(Collections.singletonList(lib), new ArrayList<JpsModule>(results.keySet()));
+    assertFalse(myEvents.contains("start app"));
+  }
+
+  public void testTestingModeRunsTasksOneAtATimeInNameOrder() throws Exception {
+    AndroidBuildTestingManager.startBuildTesting(new AndroidBuildTestingManager.MyCommandExecutor() {
+      @NotNull
+      @Override
+      public Process createProcess(@NotNull String[] args, @NotNull Map<? extends String, ? extends String> environment) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void log(@NotNull String s) {
+      }
+
+      @Override
+      public void checkJarContent(@NotNull String jarId, @NotNull String jarPath) {
+      }
+    });
+    final JpsModule a = createModule("a");
+    final JpsModule b = createModule("b");
+    final JpsModule c = createModule("c");
+    final JpsModule d = createModule("d");
+    final Map<JpsModule, List<JpsModule>> dependencies = new HashMap<JpsModule, List<JpsModule>>();
+    dependencies.put(b, Collections.singletonList(d));
+
+    final Map<JpsModule, String> results =
+      AndroidModuleTaskScheduler.run(myContext, "Test", Arrays.asList(d, c, b, a), dependencies, new RecordingTask());
+
+    assertEquals(Arrays.asList("start a", "finish a", "start c", "finish c", "start d", "finish d", "start b", "finish b"),
+                 myEvents);
+    assertEquals(Arrays.asList(a, c, d, b), new ArrayList<JpsModule>(results.keySet()));
+  }
+
+  private void assertFinishedBefore(@NotNull String dependency, @NotNull String dependent) {
+    final int finished = myEvents.indexOf("finish " + dependency);
+    final int started = myEvents.indexOf("start " + dependent);
+    assertTrue(myEvents.toString(), finished >= 0 && started > finished);
+  }
+
+  @NotNull
+  private static JpsModule createModule(@NotNull String name) {
+    final JpsElementFactory factory = JpsElementFactory.getInstance();
+    return factory.createModule(name, JpsJavaModuleType.INSTANCE, factory.createDummyElement());
+  }
+
+  /**
+   * Only implements the methods used by the scheduler: cancellation and progress messages.
+   */
+  @NotNull
+  private CompileContext createContext() {
+    final CanceledStatus canceledStatus = new CanceledStatus() {
+      @Override
+      public boolean isCanceled() {
+        return myCanceled.get();
+      }
+    };
+    return (CompileContext)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{CompileContext.class}, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if ("getCancelStatus".equals(method.getName())) {
+          return canceledStatus;
+        }
+        if ("processMessage".equals(method.getName())) {
+          return null;
+        }
+        throw new UnsupportedOperationException(method.getName());
+      }
+    });
+  }
+
+  /**
+   * Records when the task of each module starts and finishes, taking a little time so that tasks running in
+   * parallel overlap.
+   */
+  private class RecordingTask implements AndroidModuleTaskScheduler.Task<String> {
+    @NotNull
+    @Override
+    public String run(@NotNull JpsModule module) throws IOException {
+      myEvents.add("start " + module.getName());
+      try {
+        Thread.sleep(20);
+      }
+      catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      myEvents.add("finish " + module.getName());
+      return module.getName() + " done";
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.android;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class AndroidPreDexCacheTest extends TestCase {
+  private static final String REVISION = "27.0.3";
+  private static final List<String> DEX_OPTIONS = Arrays.asList("--dex", "--force-jumbo");
+
+  private File myTempDir;
+  private File myCacheDir;
+  private AndroidPreDexCache myCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myTempDir = FileUtil.createTempDirectory("predex-cache", null);
+    myCacheDir = new File(myTempDir, "cache");
+    myCache = new AndroidPreDexCache(myCacheDir);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myTempDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testMiss() throws Exception {
+    final File jar = createFile("lib.jar", "classes");
+    final File output = new File(myTempDir, "out/lib.jar");
+
+    assertFalse(myCache.restore(AndroidPreDexCache.computeKey(jar, REVISION, DEX_OPTIONS), output));
+    assertFalse(output.exists());
+  }
+
+  public void testHit() throws Exception {
+    final File jar = createFile("lib.jar", "classes");
+    final String key = AndroidPreDexCache.computeKey(jar, REVISION, DEX_OPTIONS);
+    myCache.store(key, createFile("dexed.jar", "dexed classes"));
+
+    // Another copy of the same jar, e.g. in another project
+    final File otherJar = createFile("other/lib.jar", "classes");
+    final File output = new File(myTempDir, "out/lib.jar");
+    assertTrue(myCache.restore(AndroidPreDexCache.computeKey(otherJar, REVISION, DEX_OPTIONS), output));
+    assertEquals("dexed classes", FileUtil.loadFile(output));
+  }
+
+  public void testStoreKeepsExistingEntry() throws Exception {
+    final String key = AndroidPreDexCache.computeKey(createFile("lib.jar", "classes"), REVISION, DEX_OPTIONS);
+    myCache.store(key, createFile("dexed.jar", "dexed classes"));
+    myCache.store(key, createFile("dexed2.jar", "other dexed classes"));
+
+    final File output = new File(myTempDir, "out/lib.jar");
+    assertTrue(myCache.restore(key, output));
+    assertEquals("dexed classes", FileUtil.loadFile(output));
+    // No temporary files are left behind
+    assertEquals(1, getCacheFiles().size());
+  }
+
+  public void testChangedJarInvalidatesEntry() throws Exception {
+    final File jar = createFile("lib.jar", "classes");
+    myCache.store(AndroidPreDexCache.computeKey(jar, REVISION, DEX_OPTIONS), createFile("dexed.jar", "dexed classes"));
+
+    FileUtil.writeToFile(jar, "changed classes");
+    assertFalse(myCache.restore(AndroidPreDexCache.computeKey(jar, REVISION, DEX_OPTIONS), new File(myTempDir, "out/lib.jar")));
+  }
+
+  public void testChangedDexOptionsInvalidateEntry() throws Exception {
+    final File jar = createFile("lib.jar", "classes");
+    final String key = AndroidPreDexCache.computeKey(jar, REVISION, DEX_OPTIONS);
+    myCache.store(key, createFile("dexed.jar", "dexed classes"));
+
+    assertFalse(key.equals(AndroidPreDexCache.computeKey(jar, REVISION, Collections.singletonList("--dex"))));
+    assertFalse(key.equals(AndroidPreDexCache.computeKey(jar, REVISION, Arrays.asList("--force-jumbo", "--dex"))));
+    // Options are delimited, so that moving characters from one option to the next changes the key
+    assertFalse(key.equals(AndroidPreDexCache.computeKey(jar, REVISION, Arrays.asList("--dex--", "force-jumbo"))));
+    assertFalse(key.equals(AndroidPreDexCache.computeKey(jar, "28.0.0", DEX_OPTIONS)));
+    assertEquals(key, AndroidPreDexCache.computeKey(jar, REVISION, Arrays.asList("--dex", "--force-jumbo")));
+  }
+
+  public void testPruneUnusedEntries() throws Exception {
+    final String usedKey = AndroidPreDexCache.computeKey(createFile("used.jar", "used"), REVISION, DEX_OPTIONS);
+    final String unusedKey = AndroidPreDexCache.computeKey(createFile("unused.jar", "unused"), REVISION, DEX_OPTIONS);
+    myCache.store(usedKey, createFile("dexed-used.jar", "dexed used"));
+    myCache.store(unusedKey, createFile("dexed-unused.jar", "dexed unused"));
+    final long threshold = System.currentTimeMillis() - 60000;
+
+    for (File file : getCacheFiles()) {
+      assertTrue(file.setLastModified(threshold - 60000));
+    }
+    // Restoring an entry records its use
+    assertTrue(myCache.restore(usedKey, new File(myTempDir, "out/used.jar")));
+    myCache.pruneUnusedEntries(threshold);
+
+    assertTrue(myCache.restore(usedKey, new File(myTempDir, "out/used2.jar")));
+    assertFalse(myCache.restore(unusedKey, new File(myTempDir, "out/unused.jar")));
+  }
+
+  @NotNull
+  private File createFile(@NotNull String relativePath, @NotNull String content) throws IOException {
+    final File file = new File(myTempDir, relativePath);
+    FileUtil.writeToFile(file, content);
+    return file;
+  }
+
+  @NotNull
+  private List<File> getCacheFiles() {
+    final File[] files = myCacheDir.listFiles();
+    return files != null ? Arrays.asList(files) : Collections.<File>emptyList();
+  }
+}
@@ -15,13 +15,16 @@
  */
 package com.android.tools.idea.observable;
 
+import com.android.tools.idea.observable.expressions.Expression;
 import com.android.tools.idea.observable.expressions.bool.BooleanExpression;
 import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 
 /**
  * Class which manages associations between source and destination values, updating the destination
@@ -31,6 +34,13 @@ import java.util.List;
  * {@link #bind(SettableValue, ObservableValue)} and
  * {@link #bindTwoWay(SettableValue, SettableValue)}.
  * <p/>
+ * Updates are applied in transactions: all destination values invalidated within one
+ * {@link BatchInvoker} batch are collected and then updated in dependency order, so that a
+ * binding whose source is derived from another binding's destination runs after it. Within a
+ * transaction, each source value is evaluated at most once, no matter how many destinations it is
+ * bound to, unless a source is invalidated while the transaction runs, and destinations which
+ * already hold the new value are not set again.
+ * <p/>
  * Note: This class is currently not thread-safe. You are expected to read, write, and bind
  * values on the dispatch thread to avoid undefined behavior.
  */
@@ -41,6 +51,25 @@ public final class BindingsManager {
 
   private final BatchInvoker myInvoker;
 
+  /**
+   * Updates requested since the last transaction started, in request order.
+   */
+  private final Set<DestUpdater<?>> myPendingUpdates = Sets.newLinkedHashSet();
+
+  /**
+   * Updates of the running transaction which haven't been applied yet. Requesting one of them again
+   * is a no-op, since it will read the latest source value anyway.
+   */
+  private final Set<DestUpdater<?>> myUnappliedUpdates = Sets.newHashSet();
+
+  /**
+   * Source values read so far in the running transaction, or null if no transaction is running.
+   * Cleared whenever a bound source is invalidated, see {@link #invalidateTransactionValues()}.
+   */
+  @Nullable private Map<ObservableValue<?>, Object> myTransactionValues;
+
+  private final Runnable myTransactionRunnable = this::runTransaction;
+
   public BindingsManager() {
     myInvoker = new BatchInvoker();
   }
@@ -151,6 +180,139 @@ public final class BindingsManager {
     myTwoWayBindings.clear();
   }
 
+  /**
+   * Forgets the source values read so far in the running transaction, if any. Called whenever a
+   * bound source is invalidated: this happens when an update sets a destination some source is
+   * derived from, but also when a listener reacts to an update by writing to any other value, and
+   * the updates still to run must not apply a value read before that.
+   */
+  private void invalidateTransactionValues() {
+    if (myTransactionValues != null) {
+      myTransactionValues.clear();
+    }
+  }
+
+  private void enqueueUpdate(@NotNull DestUpdater<?> updater) {
+    invalidateTransactionValues();
+    if (myUnappliedUpdates.contains(updater)) {
+      return;
+    }
+
+    // The first request schedules a transaction, any other requests made before it runs are lumped
+    // in with it. Requests made while a transaction is running go to the next one, which the
+    // invoker runs right after the current one.
+    boolean shouldEnqueue = myPendingUpdates.isEmpty();
+    myPendingUpdates.add(updater);
+    if (shouldEnqueue) {
+      myInvoker.enqueue(myTransactionRunnable);
+    }
+  }
+
+  /**
+   * Applies all pending updates, see the class documentation.
+   */
+  private void runTransaction() {
+    List<DestUpdater<?>> updaters = sortByDependencies(myPendingUpdates);
+    myPendingUpdates.clear();
+    myUnappliedUpdates.addAll(updaters);
+
+    // A source is only read once all updates writing to its inputs have been applied, so its value
+    // usually stays valid for the whole transaction and is shared by all destinations bound to it.
+    Map<ObservableValue<?>, Object> values = Maps.newIdentityHashMap();
+    myTransactionValues = values;
+    RuntimeException exception = null;
+    try {
+      for (DestUpdater<?> updater : updaters) {
+        myUnappliedUpdates.remove(updater);
+        try {
+          updater.update(values);
+        }
+        catch (RuntimeException ex) {
+          if (exception == null) {
+            exception = ex;
+          }
+          else {
+            exception.addSuppressed(ex);
+          }
+        }
+      }
+    }
+    finally {
+      myUnappliedUpdates.clear();
+      myTransactionValues = null;
+    }
+
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Orders updates so that each one runs after the updates writing to values its source is derived
+   * from. Updates which form a cycle, such as both directions of a two-way binding, are run in
+   * request order.
+   */
+  @NotNull
+  private static List<DestUpdater<?>> sortByDependencies(@NotNull Collection<DestUpdater<?>> updaters) {
+    Map<ObservableValue<?>, Set<ObservableValue<?>>> inputs = Maps.newIdentityHashMap();
+    Map<ObservableValue<?>, List<DestUpdater<?>>> writers = Maps.newIdentityHashMap();
+    for (DestUpdater<?> updater : updaters) {
+      writers.computeIfAbsent(updater.myDest, dest -> Lists.newArrayListWithExpectedSize(1)).add(updater);
+      inputs.computeIfAbsent(updater.mySrc, BindingsManager::collectInputs);
+    }
+
+    Map<DestUpdater<?>, List<DestUpdater<?>>> dependents = Maps.newHashMap();
+    Map<DestUpdater<?>, Integer> dependencyCounts = Maps.newHashMap();
+    for (DestUpdater<?> updater : updaters) {
+      int dependencyCount = 0;
+      for (ObservableValue<?> input : inputs.get(updater.mySrc)) {
+        for (DestUpdater<?> writer : writers.getOrDefault(input, Collections.emptyList())) {
+          if (writer != updater) {
+            dependents.computeIfAbsent(writer, w -> Lists.newArrayList()).add(updater);
+            dependencyCount++;
+          }
+        }
+      }
+      dependencyCounts.put(updater, dependencyCount);
+    }
+
+    List<DestUpdater<?>> remaining = Lists.newArrayList(updaters);
+    List<DestUpdater<?>> sorted = Lists.newArrayListWithCapacity(remaining.size());
+    while (!remaining.isEmpty()) {
+      // If every remaining update waits for another one, we're in a cycle: break it at the oldest
+      int next = 0;
+      for (int i = 0; i < remaining.size(); i++) {
+        if (dependencyCounts.get(remaining.get(i)) == 0) {
+          next = i;
+          break;
+        }
+      }
+      DestUpdater<?> updater = remaining.remove(next);
+      sorted.add(updater);
+      for (DestUpdater<?> dependent : dependents.getOrDefault(updater, Collections.emptyList())) {
+        dependencyCounts.merge(dependent, -1, Integer::sum);
+      }
+    }
+    return sorted;
+  }
+
+  /**
+   * Returns {@code value} together with all values it is (transitively) derived from.
+   */
+  @NotNull
+  private static Set<ObservableValue<?>> collectInputs(@NotNull ObservableValue<?> value) {
+    Set<ObservableValue<?>> inputs = Sets.newIdentityHashSet();
+    Deque<ObservableValue<?>> queue = new ArrayDeque<>();
+    queue.add(value);
+    while (!queue.isEmpty()) {
+      ObservableValue<?> current = queue.remove();
+      if (inputs.add(current) && current instanceof Expression) {
+        queue.addAll(((Expression<?>)current).getDependencies());
+      }
+    }
+    return inputs;
+  }
+
   private final class OneWayBinding<T> implements InvalidationListener {
     private final SettableValue<T> myDest;
     private final ObservableValue<T> mySrc;
@@ -158,8 +320,9 @@ public final class BindingsManager {
 
     @Override
     public void onInvalidated(@NotNull ObservableValue<?> sender) {
+      invalidateTransactionValues();
       if (myEnabled.get()) {
-        myInvoker.enqueue(new DestUpdater<>(myDest, mySrc));
+        enqueueUpdate(new DestUpdater<>(myDest, mySrc));
       }
     }
 
@@ -187,13 +350,13 @@ public final class BindingsManager {
     private final InvalidationListener myLeftChangedListener = new InvalidationListener() {
       @Override
       public void onInvalidated(@NotNull ObservableValue<?> sender) {
-        myInvoker.enqueue(new DestUpdater<>(myRhs, myLhs));
+        enqueueUpdate(new DestUpdater<>(myRhs, myLhs));
       }
     };
     private final InvalidationListener myRightChangedListener = new InvalidationListener() {
       @Override
       public void onInvalidated(@NotNull ObservableValue<?> sender) {
-        myInvoker.enqueue(new DestUpdater<>(myLhs, myRhs));
+        enqueueUpdate(new DestUpdater<>(myLhs, myRhs));
       }
     };
 
@@ -218,7 +381,7 @@ public final class BindingsManager {
    * value on request. This class is used by both {@link OneWayBinding} and {@link TwoWayBinding}
    * to enqueue an update after they detect a change.
    */
-  private static final class DestUpdater<T> implements Runnable {
+  private static final class DestUpdater<T> {
     private final SettableValue<T> myDest;
     private final ObservableValue<T> mySrc;
 
@@ -227,9 +390,25 @@ public final class BindingsManager {
       mySrc = src;
     }
 
-    @Override
-    public void run() {
-      myDest.set(mySrc.get());
+    /**
+     * Sets the destination to the source value, unless it already holds it. The source value is
+     * taken from {@code values} if it was already read in the current transaction, and stored there
+     * otherwise.
+     */
+    public void update(@NotNull Map<ObservableValue<?>, Object> values) {
+      T value;
+      if (values.containsKey(mySrc)) {
+        //noinspection unchecked
+        value = (T)values.get(mySrc);
+      }
+      else {
+        value = mySrc.get();
+        values.put(mySrc, value);
+      }
+
+      if (!Objects.equal(myDest.get(), value)) {
+        myDest.set(value);
+      }
     }
 
     @Override
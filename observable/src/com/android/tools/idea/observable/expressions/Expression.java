@@ -18,6 +18,10 @@ package com.android.tools.idea.observable.expressions;
 import com.android.tools.idea.observable.AbstractObservableValue;
 import com.android.tools.idea.observable.ObservableValue;
 import com.android.tools.idea.observable.InvalidationListener;
+import com.google.common.collect.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
 
 /**
  * An expression is an observable value that wraps another observable value, modifying the result
@@ -31,13 +35,28 @@ public abstract class Expression<T> extends AbstractObservableValue<T> implement
   @SuppressWarnings("FieldCanBeLocal") // must be local to avoid weak garbage collection
   private final InvalidationListener myListener = sender -> notifyInvalidated();
 
+  private final List<ObservableValue<?>> myDependencies;
+
   protected Expression(ObservableValue... values) {
     if (values.length == 0) {
       throw new IllegalArgumentException("Can't create an expression without any target observables");
     }
 
+    ImmutableList.Builder<ObservableValue<?>> dependencies = ImmutableList.builder();
     for (ObservableValue value : values) {
       value.addWeakListener(myListener);
+      dependencies.add(value);
     }
+    myDependencies = dependencies.build();
+  }
+
+  /**
+   * The observables this expression was created with, i.e. the values it is derived from. This
+   * lets clients such as {@link com.android.tools.idea.observable.BindingsManager} order updates
+   * so that an expression is only evaluated after all of its inputs have been updated.
+   */
+  @NotNull
+  public final List<ObservableValue<?>> getDependencies() {
+    return myDependencies;
   }
 }
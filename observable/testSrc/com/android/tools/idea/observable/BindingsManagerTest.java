@@ -283,4 +283,85 @@ public final class BindingsManagerTest {
     srcProperty.set(50);
     assertThat(destProperty.get()).isEqualTo(50);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void sharedSourceIsEvaluatedOncePerTransaction() {
+    TestInvokeStrategy testStrategy = new TestInvokeStrategy();
+    BindingsManager bindings = new BindingsManager(testStrategy);
+    IntValueProperty srcProperty = new IntValueProperty(1);
+    int[] evaluationCount = {0};
+    ObservableValue<Integer> doubled = srcProperty.transform(value -> {
+      evaluationCount[0]++;
+      return value * 2;
+    });
+    IntValueProperty dest1 = new IntValueProperty();
+    IntValueProperty dest2 = new IntValueProperty();
+    IntValueProperty dest3 = new IntValueProperty();
+
+    bindings.bind(dest1, doubled);
+    bindings.bind(dest2, doubled);
+    bindings.bind(dest3, doubled);
+    testStrategy.updateAllSteps();
+    assertThat(evaluationCount[0]).isEqualTo(1);
+    assertThat(dest3.get()).isEqualTo(2);
+
+    srcProperty.set(5);
+    testStrategy.updateAllSteps();
+    assertThat(evaluationCount[0]).isEqualTo(2);
+    assertThat(dest1.get()).isEqualTo(10);
+    assertThat(dest2.get()).isEqualTo(10);
+    assertThat(dest3.get()).isEqualTo(10);
+  }
+
+  @Test
+  public void chainedBindingsAreUpdatedInDependencyOrder() {
+    TestInvokeStrategy testStrategy = new TestInvokeStrategy();
+    BindingsManager bindings = new BindingsManager(testStrategy);
+    IntValueProperty a = new IntValueProperty(1);
+    IntValueProperty b = new IntValueProperty();
+    IntValueProperty c = new IntValueProperty();
+    int[] evaluationCount = {0};
+
+    // c depends on b, but its binding is requested first
+    bindings.bind(c, b.transform(value -> {
+      evaluationCount[0]++;
+      return value + 100;
+    }));
+    bindings.bind(b, a);
+    testStrategy.updateAllSteps();
+    assertThat(b.get()).isEqualTo(1);
+    assertThat(c.get()).isEqualTo(101);
+    assertThat(evaluationCount[0]).isEqualTo(1);
+
+    a.set(2);
+    testStrategy.updateAllSteps();
+    assertThat(c.get()).isEqualTo(102);
+    assertThat(evaluationCount[0]).isEqualTo(2);
+  }
+
+  @Test
+  public void sourceWrittenByListenerDuringTransactionIsReadAgain() {
+    TestInvokeStrategy testStrategy = new TestInvokeStrategy();
+    BindingsManager bindings = new BindingsManager(testStrategy);
+    IntValueProperty src = new IntValueProperty(0);
+    IntValueProperty dest1 = new IntValueProperty();
+    IntValueProperty dest2 = new IntValueProperty();
+
+    bindings.bind(dest1, src);
+    bindings.bind(dest2, src);
+    testStrategy.updateAllSteps();
+
+    // Clamp the source to 10 as soon as dest1 sees a larger value, while dest2 still waits for its update
+    dest1.addListener(sender -> {
+      if (src.get() > 10) {
+        src.set(10);
+      }
+    });
+
+    src.set(50);
+    testStrategy.updateAllSteps();
+    assertThat(src.get()).isEqualTo(10);
+    assertThat(dest1.get()).isEqualTo(10);
+    assertThat(dest2.get()).isEqualTo(10);
+  }
+}
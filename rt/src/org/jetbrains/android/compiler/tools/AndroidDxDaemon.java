@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.compiler.tools;
+
+import org.jetbrains.android.compiler.tools.AndroidDxDaemonProtocol.Endpoint;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+
+/**
+ * Long-lived dx worker, started with {@code AndroidDxRunner --daemon <port file> <idle timeout ms>}.
+ * <p>
+ * Requests (see {@link AndroidDxDaemonProtocol}) are served one at a time, since dx keeps its state in static
+ * fields. Keeping dx loaded in the same VM between builds avoids paying for JVM startup, class loading and JIT
+ * warm-up on every invocation. dx clears most of that state at the start of each run, but not all of it, so the
+ * daemon is recycled after {@link #MAX_DEX_REQUESTS} runs to keep leaks from piling up across builds. It also exits
+ * once it has been idle for the given timeout, after an {@link Error} such as running out of memory, or when asked
+ * to. The next request then starts a fresh daemon.
+ */
+@SuppressWarnings({"UseOfSystemOutOrSystemErr", "CallToPrintStackTrace"})
+class AndroidDxDaemon {
+  private static final int REQUEST_READ_TIMEOUT_MS = 60 * 1000;
+  private static final int MAX_DEX_REQUESTS = 50;
+
+  private final File myPortFile;
+  private final String myToken;
+  private int myDexRequestCount;
+
+  private AndroidDxDaemon(File portFile, String token) {
+    myPortFile = portFile;
+    myToken = token;
+  }
+
+  static void main(String[] args) {
+    if (args.length != 2) {
+      System.err.println("Usage: --daemon <port file> <idle timeout ms>");
+      System.exit(1);
+    }
+    final File portFile = new File(args[0]);
+    final int idleTimeout = Integer.parseInt(args[1]);
+    final String token = new BigInteger(130, new SecureRandom()).toString(32);
+
+    try {
+      final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      try {
+        serverSocket.setSoTimeout(idleTimeout);
+        AndroidDxDaemonProtocol.writePortFile(portFile, serverSocket.getLocalPort(), token);
+        new AndroidDxDaemon(portFile, token).serve(serverSocket);
+      }
+      finally {
+        serverSocket.close();
+      }
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
+    finally {
+      final Endpoint endpoint = AndroidDxDaemonProtocol.readPortFile(portFile);
+
+      // A new daemon may have taken over the port file after we stopped answering pings
+      if (endpoint != null && token.equals(endpoint.getToken())) {
+        //noinspection ResultOfMethodCallIgnored
+        portFile.delete();
+      }
+    }
+    System.exit(0);
+  }
+
+  private void serve(ServerSocket serverSocket) throws IOException {
+    while (myPortFile.isFile()) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      }
+      catch (SocketTimeoutException e) {
+        return;
+      }
+      try {
+        if (!handle(socket)) {
+          return;
+        }
+      }
+      catch (IOException e) {
+        // The client went away, which doesn't affect other requests
+        e.printStackTrace();
+      }
+      finally {
+        socket.close();
+      }
+    }
+  }
+
+  /**
+   * Serves a single request. Returns false if the daemon should exit.
+   */
+  private boolean handle(Socket socket) throws IOException {
+    socket.setSoTimeout(REQUEST_READ_TIMEOUT_MS);
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+    if (!myToken.equals(AndroidDxDaemonProtocol.readString(in))) {
+      System.err.println("Rejected a request with an invalid token");
+      return true;
+    }
+    final String command = AndroidDxDaemonProtocol.readString(in);
+
+    if (AndroidDxDaemonProtocol.PING.equals(command)) {
+      AndroidDxDaemonProtocol.writeString(out, AndroidDxDaemonProtocol.PONG);
+      out.flush();
+      return true;
+    }
+    if (AndroidDxDaemonProtocol.SHUTDOWN.equals(command)) {
+      return false;
+    }
+    if (!AndroidDxDaemonProtocol.DEX.equals(command)) {
+      System.err.println("Unknown command: " + command);
+      return true;
+    }
+    final String[] args = AndroidDxDaemonProtocol.readStrings(in);
+    final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    final PrintStream systemOut = System.out;
+    final PrintStream systemErr = System.err;
+    boolean healthy = true;
+    int exitCode;
+
+    System.setOut(new PrintStream(stdout, true));
+    System.setErr(new PrintStream(stderr, true));
+    try {
+      exitCode = AndroidDxRunner.run(args);
+    }
+    catch (Throwable t) {
+      t.printStackTrace();
+      exitCode = -1;
+      // Errors such as OutOfMemoryError may leave dx in an inconsistent state, so let the next build start afresh
+      healthy = !(t instanceof Error);
+    }
+    finally {
+      System.setOut(systemOut);
+      System.setErr(systemErr);
+    }
+    out.writeInt(exitCode);
+    AndroidDxDaemonProtocol.writeString(out, stdout.toString());
+    AndroidDxDaemonProtocol.writeString(out, stderr.toString());
+    out.flush();
+    return healthy && ++myDexRequestCount < MAX_DEX_REQUESTS;
+  }
+}
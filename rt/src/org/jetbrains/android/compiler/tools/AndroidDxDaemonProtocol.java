@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.compiler.tools;
+
+import com.intellij.openapi.util.io.FileUtilRt;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Wire format shared by {@link AndroidDxDaemon} and the build process talking to it.
+ * <p>
+ * The daemon listens on a loopback port which it publishes, together with a random token, in a port file only
+ * readable by the current user. Every connection carries a single request: the token, a command and its
+ * arguments. {@link #PING} is answered with {@link #PONG}; {@link #DEX} takes the {@link AndroidDxRunner}
+ * command line and is answered with the dx exit code followed by everything dx printed to stdout and stderr;
+ * {@link #SHUTDOWN} stops the daemon without an answer.
+ */
+public class AndroidDxDaemonProtocol {
+  @NonNls public static final String PING = "ping";
+  @NonNls public static final String PONG = "pong";
+  @NonNls public static final String DEX = "dex";
+  @NonNls public static final String SHUTDOWN = "shutdown";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int MAX_STRING_LENGTH = 64 * 1024 * 1024;
+
+  private AndroidDxDaemonProtocol() {
+  }
+
+  public static void writeString(@NotNull DataOutputStream out, @NotNull String value) throws IOException {
+    final byte[] bytes = value.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  @NotNull
+  public static String readString(@NotNull DataInputStream in) throws IOException {
+    final int length = in.readInt();
+
+    if (length < 0 || length > MAX_STRING_LENGTH) {
+      throw new IOException("Invalid string length " + length);
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  public static void writeStrings(@NotNull DataOutputStream out, @NotNull String[] values) throws IOException {
+    out.writeInt(values.length);
+
+    for (String value : values) {
+      writeString(out, value);
+    }
+  }
+
+  @NotNull
+  public static String[] readStrings(@NotNull DataInputStream in) throws IOException {
+    final int count = in.readInt();
+
+    if (count < 0 || count > MAX_STRING_LENGTH) {
+      throw new IOException("Invalid string count " + count);
+    }
+    final String[] values = new String[count];
+
+    for (int i = 0; i < count; i++) {
+      values[i] = readString(in);
+    }
+    return values;
+  }
+
+  /**
+   * Atomically replaces {@code portFile} with one pointing at {@code port} and {@code token}.
+   */
+  public static void writePortFile(@NotNull File portFile, int port, @NotNull String token) throws IOException {
+    final File tempFile = new File(portFile.getPath() + ".tmp");
+    //noinspection ResultOfMethodCallIgnored
+    tempFile.delete();
+
+    if (!tempFile.createNewFile()) {
+      throw new IOException("Cannot create " + tempFile.getPath());
+    }
+    // The token is what keeps other users from asking the daemon to write files on our behalf
+    //noinspection ResultOfMethodCallIgnored
+    tempFile.setReadable(false, false);
+    //noinspection ResultOfMethodCallIgnored
+    tempFile.setReadable(true, true);
+    final OutputStream out = new FileOutputStream(tempFile);
+    try {
+      out.write((port + " " + token).getBytes(UTF_8));
+    }
+    finally {
+      out.close();
+    }
+
+    if (!tempFile.renameTo(portFile)) {
+      //noinspection ResultOfMethodCallIgnored
+      portFile.delete();
+
+      if (!tempFile.renameTo(portFile)) {
+        throw new IOException("Cannot rename " + tempFile.getPath() + " to " + portFile.getPath());
+      }
+    }
+  }
+
+  /**
+   * Returns the endpoint stored in {@code portFile}, or null if it doesn't exist or cannot be parsed.
+   */
+  @Nullable
+  public static Endpoint readPortFile(@NotNull File portFile) {
+    if (!portFile.isFile()) {
+      return null;
+    }
+    try {
+      final String[] parts = FileUtilRt.loadFile(portFile).trim().split(" ");
+
+      if (parts.length != 2) {
+        return null;
+      }
+      return new Endpoint(Integer.parseInt(parts[0]), parts[1]);
+    }
+    catch (IOException e) {
+      return null;
+    }
+    catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  public static class Endpoint {
+    private final int myPort;
+    @NotNull private final String myToken;
+
+    public Endpoint(int port, @NotNull String token) {
+      myPort = port;
+      myToken = token;
+    }
+
+    public int getPort() {
+      return myPort;
+    }
+
+    @NotNull
+    public String getToken() {
+      return myToken;
+    }
+  }
+}
@@ -44,6 +44,9 @@ public class AndroidDxRunner {
 
   @NonNls private final static String MAIN_RUN = "run";
 
+  @NonNls private final static String DAEMON_ARG = "--daemon";
+
+  private static String myLoadedDxPath;
   private static Method myMethod;
 
   private static Constructor<?> myConstructor;
@@ -66,6 +69,13 @@ public class AndroidDxRunner {
   private AndroidDxRunner() { }
 
   private static void loadDex(String dxPath) {
+    if (myMethod != null && dxPath.equals(myLoadedDxPath)) {
+      // Keep the already loaded classes, so that a daemon reuses the JIT-compiled dx code
+      return;
+    }
+    myMethod = null;
+    myLoadedDxPath = null;
+
     try {
       File f = new File(dxPath);
       if (!f.isFile()) {
@@ -97,6 +107,7 @@ public class AndroidDxRunner {
       myMultiDex = getFieldIfPossible(argClass, "multiDex");
       myMainDexList = getFieldIfPossible(argClass, "mainDexListFile");
       myMinimalMainDex = getFieldIfPossible(argClass, "minimalMainDex");
+      myLoadedDxPath = dxPath;
     }
     catch (SecurityException e) {
       reportError("Unable to find API for dex.jar", e);
@@ -148,6 +159,9 @@ public class AndroidDxRunner {
                             boolean coreLibrary, boolean multiDex, String mainDexList, boolean minimalMainDex) {
     loadDex(dxPath);
 
+    if (myMethod == null) {
+      return -1;
+    }
     try {
       if (myConsoleErr != null) myConsoleErr.set(null, System.err);
       if (myConsoleOut != null) myConsoleOut.set(null, System.out);
@@ -270,6 +284,18 @@ public class AndroidDxRunner {
   }
 
   public static void main(String[] args) {
+    if (args.length > 0 && DAEMON_ARG.equals(args[0])) {
+      AndroidDxDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    run(args);
+  }
+
+  /**
+   * Runs dx with the given command line arguments and returns its exit code. Messages are printed to
+   * {@link System#out} and {@link System#err}.
+   */
+  static int run(String[] args) {
     if (args.length == 0) {
       System.err.println("Error: dx path must be passed as first argument");
     }
@@ -346,6 +372,6 @@ public class AndroidDxRunner {
     files.removeAll(Arrays.asList(excludedFiles));
     String[] filesArray = files.toArray(new String[files.size()]);
     //System.out.println("file names: " + concat(filesArray));
-    runDex(dxPath, outFilePath, filesArray, optimize, forceJumbo, coreLibrary, multiDex, mainDexList, minimalMainDex);
+    return runDex(dxPath, outFilePath, filesArray, optimize, forceJumbo, coreLibrary, multiDex, mainDexList, minimalMainDex);
   }
 }